@@ -33,22 +33,32 @@ import entropy.configuration.Node;
 }
 
 @parser::members {
-	private VirtualMachine vm;
-	private Node n;
 	public int evaluate(VirtualMachine v) throws org.antlr.runtime.RecognitionException {
 		if (v == null) {
 			return -1;
 		}
-		vm = v;		
-		return new Double(vm_expr().value).intValue();
+		return compileVM().evaluate(v);
 	}
 	
 	public int evaluate(Node node) throws org.antlr.runtime.RecognitionException {
 		if (node == null) {
 			return -1;
 		}
-		n = node;
-		return new Double(node_expr().value).intValue();
+		return compileNode().evaluate(node);
+	}
+
+	/**
+	 * Compile an expression that refers to a virtual machine.
+	 */
+	public DurationExpression compileVM() throws org.antlr.runtime.RecognitionException {
+		return vm_expr().expr;
+	}
+
+	/**
+	 * Compile an expression that refers to a node.
+	 */
+	public DurationExpression compileNode() throws org.antlr.runtime.RecognitionException {
+		return node_expr().expr;
 	}
 }
 
@@ -76,43 +86,43 @@ FLOAT  :   ('0'..'9')+ '.' ('0'..'9')+ ;
 
 WS  :   (' ') {$channel=HIDDEN;};
     
-node_expression returns [double value]: e=node_expr {$value = $e.value;};
-node_expr returns [double value]: e=node_multiplicative_expr {$value = $e.value;} 
+node_expression returns [DurationExpression expr]: e=node_expr {$expr = $e.expr;};
+node_expr returns [DurationExpression expr]: e=node_multiplicative_expr {$expr = $e.expr;} 
 	(
-	PLUS e=node_multiplicative_expr{$value += $e.value;}
-	|MINUS e=node_multiplicative_expr{$value -= $e.value;}
+	PLUS e=node_multiplicative_expr{$expr = DurationExpression.binary(DurationExpression.Operator.ADD, $expr, $e.expr);}
+	|MINUS e=node_multiplicative_expr{$expr = DurationExpression.binary(DurationExpression.Operator.SUB, $expr, $e.expr);}
 	)*;
-node_multiplicative_expr returns [double value]
-	: e=node_unary_expr {$value=$e.value;} 
-	(MULTIPLY e=node_unary_expr {$value *=$e.value;}
-	|DIV e=node_unary_expr {$value /= $e.value;}
+node_multiplicative_expr returns [DurationExpression expr]
+	: e=node_unary_expr {$expr=$e.expr;} 
+	(MULTIPLY e=node_unary_expr {$expr = DurationExpression.binary(DurationExpression.Operator.MUL, $expr, $e.expr);}
+	|DIV e=node_unary_expr {$expr = DurationExpression.binary(DurationExpression.Operator.DIV, $expr, $e.expr);}
 	)*;
-node_unary_expr returns [double value]:
-	INT {$value = Integer.parseInt($INT.text);}
-	|FLOAT {$value = Double.parseDouble($FLOAT.text);}
-	| NODE_ID SUB MEMORY {$value = n.getMemoryCapacity();}
-	| NODE_ID SUB CPU_CAPA {$value = n.getCPUCapacity();}
-	| NODE_ID SUB CPU_NB {$value = n.getNbOfCPUs();}
-	| LPARA node_expr RPARA {$value = $node_expr.value;}
+node_unary_expr returns [DurationExpression expr]:
+	INT {$expr = DurationExpression.constant(Integer.parseInt($INT.text));}
+	|FLOAT {$expr = DurationExpression.constant(Double.parseDouble($FLOAT.text));}
+	| NODE_ID SUB MEMORY {$expr = DurationExpression.variable(DurationExpression.Variable.NODE_MEMORY);}
+	| NODE_ID SUB CPU_CAPA {$expr = DurationExpression.variable(DurationExpression.Variable.NODE_CPU_CAPACITY);}
+	| NODE_ID SUB CPU_NB {$expr = DurationExpression.variable(DurationExpression.Variable.NODE_CPU_NB);}
+	| LPARA node_expr RPARA {$expr = $node_expr.expr;}
 	;
 	
-vm_expression returns [double value]: e=vm_expr {$value = $e.value;};
-vm_expr returns [double value]: e=vm_multiplicative_expr {$value = $e.value;} 
+vm_expression returns [DurationExpression expr]: e=vm_expr {$expr = $e.expr;};
+vm_expr returns [DurationExpression expr]: e=vm_multiplicative_expr {$expr = $e.expr;} 
 	(
-	PLUS e=vm_multiplicative_expr{$value += $e.value;}
-	|MINUS e=vm_multiplicative_expr{$value -= $e.value;}
+	PLUS e=vm_multiplicative_expr{$expr = DurationExpression.binary(DurationExpression.Operator.ADD, $expr, $e.expr);}
+	|MINUS e=vm_multiplicative_expr{$expr = DurationExpression.binary(DurationExpression.Operator.SUB, $expr, $e.expr);}
 	)*;
-vm_multiplicative_expr returns [double value]
-	: e=vm_unary_expr {$value=$e.value;} 
-	(MULTIPLY e2=vm_unary_expr {$value *=$e2.value;}
-	|DIV e2=vm_unary_expr {$value /= $e2.value;}
+vm_multiplicative_expr returns [DurationExpression expr]
+	: e=vm_unary_expr {$expr=$e.expr;} 
+	(MULTIPLY e2=vm_unary_expr {$expr = DurationExpression.binary(DurationExpression.Operator.MUL, $expr, $e2.expr);}
+	|DIV e2=vm_unary_expr {$expr = DurationExpression.binary(DurationExpression.Operator.DIV, $expr, $e2.expr);}
 	)*;
-vm_unary_expr returns [double value]:
-	INT {$value = Integer.parseInt($INT.text);}
-	|FLOAT {$value = Double.parseDouble($FLOAT.text);}
-	| VM_ID SUB MEMORY {$value = vm.getMemoryConsumption();}
-	| VM_ID SUB CPU_DEMAND {$value = vm.getCPUConsumption();}
-	| VM_ID SUB CPU_CONS {$value = vm.getCPUConsumption();}
-	| VM_ID SUB CPU_NB {$value = vm.getNbOfCPUs();}
-	| LPARA vm_expr RPARA {$value = $vm_expr.value;}
+vm_unary_expr returns [DurationExpression expr]:
+	INT {$expr = DurationExpression.constant(Integer.parseInt($INT.text));}
+	|FLOAT {$expr = DurationExpression.constant(Double.parseDouble($FLOAT.text));}
+	| VM_ID SUB MEMORY {$expr = DurationExpression.variable(DurationExpression.Variable.VM_MEMORY);}
+	| VM_ID SUB CPU_DEMAND {$expr = DurationExpression.variable(DurationExpression.Variable.VM_CPU_CONSUMPTION);}
+	| VM_ID SUB CPU_CONS {$expr = DurationExpression.variable(DurationExpression.Variable.VM_CPU_CONSUMPTION);}
+	| VM_ID SUB CPU_NB {$expr = DurationExpression.variable(DurationExpression.Variable.VM_CPU_NB);}
+	| LPARA vm_expr RPARA {$expr = $vm_expr.expr;}
 	;
\ No newline at end of file
@@ -290,7 +290,7 @@ public final class Entropy extends Thread implements EntropyMBean {
             }
             getLogger().debug("Waiting ...");
             try {
-                Thread.sleep(this.sleepDelay * SECONDS);
+                this.controlLoop.waitNextIteration(this.sleepDelay * SECONDS);
             } catch (InterruptedException e) {
                 getLogger().error(e.getMessage(), e);
             }
@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The differences between two configurations. Each change
+ * indicates the state of an element in both configurations and,
+ * for a running or a sleeping virtual machine, its hosting node.
+ * <p/>
+ * A delta is computed using {@link Configurations#diff(Configuration, Configuration)}
+ * and may be replayed on a configuration using {@link #apply(Configuration)}.
+ *
+ * @author Fabien Hermenier
+ */
+public class ConfigurationDelta {
+
+    /**
+     * The possible states of an element in a configuration.
+     */
+    public static enum State {
+        /**
+         * The element is not in the configuration.
+         */
+        Absent,
+        /**
+         * A running virtual machine.
+         */
+        Running,
+        /**
+         * A sleeping virtual machine.
+         */
+        Sleeping,
+        /**
+         * A waiting virtual machine.
+         */
+        Waiting,
+        /**
+         * An online node.
+         */
+        Online,
+        /**
+         * An offline node.
+         */
+        Offline
+    }
+
+    /**
+     * The change of an element.
+     */
+    private static final class Change<E extends ManagedElement> {
+
+        private final E element;
+
+        private final State from;
+
+        private final Node fromNode;
+
+        private final State to;
+
+        private final Node toNode;
+
+        private Change(E element, State from, Node fromNode, State to, Node toNode) {
+            this.element = element;
+            this.from = from;
+            this.fromNode = fromNode;
+            this.to = to;
+            this.toNode = toNode;
+        }
+    }
+
+    private List<Change<VirtualMachine>> vmChanges;
+
+    private List<Change<Node>> nodeChanges;
+
+    /**
+     * Make an empty delta.
+     */
+    public ConfigurationDelta() {
+        vmChanges = new ArrayList<Change<VirtualMachine>>();
+        nodeChanges = new ArrayList<Change<Node>>();
+    }
+
+    /**
+     * Add the change of a virtual machine.
+     *
+     * @param vm       the virtual machine
+     * @param from     its state in the source configuration
+     * @param fromNode its hosting node in the source configuration, {@code null} if it is not running or sleeping
+     * @param to       its state in the destination configuration
+     * @param toNode   its hosting node in the destination configuration, {@code null} if it is not running or sleeping
+     */
+    public void addChange(VirtualMachine vm, State from, Node fromNode, State to, Node toNode) {
+        vmChanges.add(new Change<VirtualMachine>(vm, from, fromNode, to, toNode));
+    }
+
+    /**
+     * Add the change of a node.
+     *
+     * @param n    the node
+     * @param from its state in the source configuration
+     * @param to   its state in the destination configuration
+     */
+    public void addChange(Node n, State from, State to) {
+        nodeChanges.add(new Change<Node>(n, from, null, to, null));
+    }
+
+    /**
+     * Get the number of changes.
+     *
+     * @return a positive integer
+     */
+    public int size() {
+        return vmChanges.size() + nodeChanges.size();
+    }
+
+    /**
+     * Check whether the delta is empty.
+     *
+     * @return {@code true} if there is no change
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Get the virtual machines that are only in the destination configuration.
+     *
+     * @return a set of virtual machines, may be empty
+     */
+    public ManagedElementSet<VirtualMachine> getAddedVirtualMachines() {
+        ManagedElementSet<VirtualMachine> res = new SimpleManagedElementSet<VirtualMachine>();
+        for (Change<VirtualMachine> c : vmChanges) {
+            if (c.from == State.Absent) {
+                res.add(c.element);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Get the virtual machines that are only in the source configuration.
+     *
+     * @return a set of virtual machines, may be empty
+     */
+    public ManagedElementSet<VirtualMachine> getRemovedVirtualMachines() {
+        ManagedElementSet<VirtualMachine> res = new SimpleManagedElementSet<VirtualMachine>();
+        for (Change<VirtualMachine> c : vmChanges) {
+            if (c.to == State.Absent) {
+                res.add(c.element);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Get the virtual machines that stay in the same state but on another node.
+     *
+     * @return a set of virtual machines, may be empty
+     */
+    public ManagedElementSet<VirtualMachine> getMovedVirtualMachines() {
+        ManagedElementSet<VirtualMachine> res = new SimpleManagedElementSet<VirtualMachine>();
+        for (Change<VirtualMachine> c : vmChanges) {
+            if (c.from == c.to) {
+                res.add(c.element);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Get the virtual machines that are in both configurations but in a different state.
+     *
+     * @return a set of virtual machines, may be empty
+     */
+    public ManagedElementSet<VirtualMachine> getStateChangedVirtualMachines() {
+        ManagedElementSet<VirtualMachine> res = new SimpleManagedElementSet<VirtualMachine>();
+        for (Change<VirtualMachine> c : vmChanges) {
+            if (c.from != c.to && c.from != State.Absent && c.to != State.Absent) {
+                res.add(c.element);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Get the nodes that are only in the destination configuration.
+     *
+     * @return a set of nodes, may be empty
+     */
+    public ManagedElementSet<Node> getAddedNodes() {
+        ManagedElementSet<Node> res = new SimpleManagedElementSet<Node>();
+        for (Change<Node> c : nodeChanges) {
+            if (c.from == State.Absent) {
+                res.add(c.element);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Get the nodes that are only in the source configuration.
+     *
+     * @return a set of nodes, may be empty
+     */
+    public ManagedElementSet<Node> getRemovedNodes() {
+        ManagedElementSet<Node> res = new SimpleManagedElementSet<Node>();
+        for (Change<Node> c : nodeChanges) {
+            if (c.to == State.Absent) {
+                res.add(c.element);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Get the nodes that are in both configurations but in a different state.
+     *
+     * @return a set of nodes, may be empty
+     */
+    public ManagedElementSet<Node> getStateChangedNodes() {
+        ManagedElementSet<Node> res = new SimpleManagedElementSet<Node>();
+        for (Change<Node> c : nodeChanges) {
+            if (c.from != State.Absent && c.to != State.Absent) {
+                res.add(c.element);
+            }
+        }
+        return res;
+    }
+
+    /**
+     * Get the state of a virtual machine in the destination configuration.
+     *
+     * @param vm the virtual machine
+     * @return its state, {@code null} if the virtual machine is not impacted by the delta
+     */
+    public State getNewState(VirtualMachine vm) {
+        for (Change<VirtualMachine> c : vmChanges) {
+            if (c.element.equals(vm)) {
+                return c.to;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the hosting node of a virtual machine in the destination configuration.
+     *
+     * @param vm the virtual machine
+     * @return the node, {@code null} if the virtual machine is not impacted by the delta
+     *         or is not running or sleeping in the destination configuration
+     */
+    public Node getNewLocation(VirtualMachine vm) {
+        for (Change<VirtualMachine> c : vmChanges) {
+            if (c.element.equals(vm)) {
+                return c.toNode;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Apply the delta on a configuration. Nodes that are set online are
+     * updated first, then the virtual machines, then the nodes that are set offline
+     * or removed.
+     *
+     * @param cfg the configuration to modify
+     * @throws ConfigurationsException if a change cannot be applied
+     */
+    public void apply(Configuration cfg) throws ConfigurationsException {
+        for (Change<Node> c : nodeChanges) {
+            if (c.to == State.Online) {
+                cfg.addOnline(c.element);
+            }
+        }
+        for (Change<VirtualMachine> c : vmChanges) {
+            switch (c.to) {
+                case Absent:
+                    cfg.remove(c.element);
+                    break;
+                case Waiting:
+                    cfg.addWaiting(c.element);
+                    break;
+                case Running:
+                    if (!cfg.setRunOn(c.element, c.toNode)) {
+                        throw new ConfigurationsException(cfg, "Unable to place running '" + c.element.getName() + "' on '" + c.toNode.getName() + "'");
+                    }
+                    break;
+                case Sleeping:
+                    if (!cfg.setSleepOn(c.element, c.toNode)) {
+                        throw new ConfigurationsException(cfg, "Unable to place sleeping '" + c.element.getName() + "' on '" + c.toNode.getName() + "'");
+                    }
+                    break;
+                default:
+                    throw new ConfigurationsException(cfg, "Unsupported state '" + c.to + "' for '" + c.element.getName() + "'");
+            }
+        }
+        for (Change<Node> c : nodeChanges) {
+            if (c.to == State.Offline && !cfg.addOffline(c.element)) {
+                throw new ConfigurationsException(cfg, "Unable to set '" + c.element.getName() + "' offline");
+            } else if (c.to == State.Absent && !cfg.remove(c.element)) {
+                throw new ConfigurationsException(cfg, "Unable to remove '" + c.element.getName() + "'");
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        for (Change<Node> c : nodeChanges) {
+            b.append(c.element.getName()).append(": ").append(c.from).append(" -> ").append(c.to).append("\n");
+        }
+        for (Change<VirtualMachine> c : vmChanges) {
+            b.append(c.element.getName()).append(": ").append(c.from);
+            if (c.fromNode != null) {
+                b.append("(").append(c.fromNode.getName()).append(")");
+            }
+            b.append(" -> ").append(c.to);
+            if (c.toNode != null) {
+                b.append("(").append(c.toNode.getName()).append(")");
+            }
+            b.append("\n");
+        }
+        return b.toString();
+    }
+}
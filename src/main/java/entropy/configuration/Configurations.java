@@ -101,6 +101,9 @@ public final class Configurations {
      * @return a subset of nodes, may be empty.
      */
     public static ManagedElementSet<Node> currentlyOverloadedNodes(Configuration cfg) {
+        if (cfg instanceof SimpleConfiguration) {
+            return ((SimpleConfiguration) cfg).getCurrentlyOverloadedNodes();
+        }
         ManagedElementSet<Node> nodes = new SimpleManagedElementSet<Node>();
         for (Node n : cfg.getOnlines()) {
             int cpuCapa = n.getCPUCapacity();
@@ -126,6 +129,9 @@ public final class Configurations {
      */
 
     public static ManagedElementSet<Node> futureOverloadedNodes(Configuration cfg) {
+        if (cfg instanceof SimpleConfiguration) {
+            return ((SimpleConfiguration) cfg).getFutureOverloadedNodes();
+        }
         ManagedElementSet<Node> nodes = new SimpleManagedElementSet<Node>();
         for (Node n : cfg.getOnlines()) {
             int cpuCapa = n.getCPUCapacity();
@@ -148,6 +154,9 @@ public final class Configurations {
      * @return true if at least one node is overloaded
      */
     public static boolean isCurrentlyViable(Configuration cfg) {
+        if (cfg instanceof SimpleConfiguration) {
+            return !((SimpleConfiguration) cfg).isCurrentlyOverloaded();
+        }
         for (Node n : cfg.getOnlines()) {
             int cpuCapa = n.getCPUCapacity();
             int memCapa = n.getMemoryCapacity();
@@ -169,6 +178,9 @@ public final class Configurations {
      * @return true if at least one node is overloaded
      */
     public static boolean isFutureViable(Configuration cfg) {
+        if (cfg instanceof SimpleConfiguration) {
+            return !((SimpleConfiguration) cfg).isFutureOverloaded();
+        }
         for (Node n : cfg.getOnlines()) {
             int cpuCapa = n.getCPUCapacity();
             int memCapa = n.getMemoryCapacity();
@@ -183,6 +195,80 @@ public final class Configurations {
         return true;
     }
 
+    /**
+     * Notify a configuration that the resources of some of its elements were modified,
+     * so the overload queries consider the new values.
+     *
+     * @param cfg the configuration
+     */
+    public static void refreshAggregates(Configuration cfg) {
+        if (cfg instanceof SimpleConfiguration) {
+            ((SimpleConfiguration) cfg).refreshAggregates();
+        }
+    }
+
+    /**
+     * Compute a fingerprint of a configuration, from the state, the location and the resources
+     * of its elements. Equal configurations have the same fingerprint, whatever the order of their elements,
+     * while different configurations have different fingerprints with a high probability.
+     *
+     * @param cfg the configuration
+     * @return the fingerprint
+     */
+    public static long fingerprint(Configuration cfg) {
+        long h = 0;
+        for (Node n : cfg.getAllNodes()) {
+            long x = n.getName().hashCode();
+            x = x * 31 + (cfg.isOnline(n) ? 1 : 2);
+            x = x * 31 + n.getNbOfCPUs();
+            x = x * 31 + n.getCPUCapacity();
+            x = x * 31 + n.getMemoryCapacity();
+            h += mix(x);
+        }
+        for (VirtualMachine vm : cfg.getAllVirtualMachines()) {
+            Node n = cfg.getLocation(vm);
+            long x = vm.getName().hashCode();
+            x = x * 31 + (cfg.isRunning(vm) ? 1 : cfg.isSleeping(vm) ? 2 : 3);
+            x = x * 31 + (n == null ? 0 : n.getName().hashCode());
+            x = x * 31 + vm.getNbOfCPUs();
+            x = x * 31 + vm.getCPUConsumption();
+            x = x * 31 + vm.getCPUDemand();
+            x = x * 31 + vm.getMemoryConsumption();
+            x = x * 31 + vm.getMemoryDemand();
+            h += mix(x);
+        }
+        return h;
+    }
+
+    /**
+     * Spread the bits of a value, so that the sum of the mixed values is sensitive to each of them.
+     */
+    private static long mix(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+        return x;
+    }
+
+    /**
+     * Get the registry that identifies the elements of a configuration.
+     * Sets of elements that rely on this registry are compared with
+     * the sets of the configuration using bitsets.
+     *
+     * @param cfg the configuration
+     * @return the registry, {@code null} if the configuration does not rely on a registry
+     */
+    public static ElementRegistry getRegistry(Configuration cfg) {
+        if (cfg instanceof SimpleConfiguration) {
+            return ((SimpleConfiguration) cfg).getRegistry();
+        } else if (cfg instanceof DenseConfiguration) {
+            return ((DenseConfiguration) cfg).getRegistry();
+        }
+        return null;
+    }
+
     /**
      * Compute a sub configuration that only consider a subset of nodes and virtual machines
      * All the virtual machines must be hosted on the subset of nodes or be in a waiting state
@@ -232,6 +318,96 @@ public final class Configurations {
         return sub;
     }
 
+    /**
+     * Compute the differences between two configurations.
+     * When both configurations are {@link DenseConfiguration}s, including {@link PersistentConfiguration}s,
+     * that share a same registry, only the elements that may have changed are considered.
+     * Otherwise, all the elements of the two configurations are compared.
+     *
+     * @param src the source configuration
+     * @param dst the destination configuration
+     * @return the delta to apply on {@code src} to obtain {@code dst}
+     */
+    public static ConfigurationDelta diff(Configuration src, Configuration dst) {
+        ConfigurationDelta delta = new ConfigurationDelta();
+        if (src instanceof DenseConfiguration && dst instanceof DenseConfiguration
+                && ((DenseConfiguration) src).getRegistry() == ((DenseConfiguration) dst).getRegistry()) {
+            DenseConfiguration a = (DenseConfiguration) src;
+            DenseConfiguration b = (DenseConfiguration) dst;
+            diff(delta, src, dst, a.getRegistry(), a.changedNodes(b), a.changedVirtualMachines(b));
+        } else {
+            for (Node n : src.getAllNodes()) {
+                diff(delta, src, dst, n);
+            }
+            for (Node n : dst.getAllNodes()) {
+                if (!src.contains(n)) {
+                    diff(delta, src, dst, n);
+                }
+            }
+            for (VirtualMachine vm : src.getAllVirtualMachines()) {
+                diff(delta, src, dst, vm);
+            }
+            for (VirtualMachine vm : dst.getAllVirtualMachines()) {
+                if (!src.contains(vm)) {
+                    diff(delta, src, dst, vm);
+                }
+            }
+        }
+        return delta;
+    }
+
+    private static void diff(ConfigurationDelta delta, Configuration src, Configuration dst,
+                             ElementRegistry registry, int[] nodes, int[] vms) {
+        for (int id : nodes) {
+            diff(delta, src, dst, registry.getNode(id));
+        }
+        for (int id : vms) {
+            diff(delta, src, dst, registry.getVirtualMachine(id));
+        }
+    }
+
+    private static void diff(ConfigurationDelta delta, Configuration src, Configuration dst, Node n) {
+        ConfigurationDelta.State from = stateOf(src, n);
+        ConfigurationDelta.State to = stateOf(dst, n);
+        if (from != to) {
+            delta.addChange(n, from, to);
+        }
+    }
+
+    private static void diff(ConfigurationDelta delta, Configuration src, Configuration dst, VirtualMachine vm) {
+        ConfigurationDelta.State from = stateOf(src, vm);
+        ConfigurationDelta.State to = stateOf(dst, vm);
+        Node fromNode = isHosted(from) ? src.getLocation(vm) : null;
+        Node toNode = isHosted(to) ? dst.getLocation(vm) : null;
+        if (from != to || (fromNode != null && !fromNode.equals(toNode))) {
+            delta.addChange(vm, from, fromNode, to, toNode);
+        }
+    }
+
+    private static boolean isHosted(ConfigurationDelta.State st) {
+        return st == ConfigurationDelta.State.Running || st == ConfigurationDelta.State.Sleeping;
+    }
+
+    private static ConfigurationDelta.State stateOf(Configuration cfg, Node n) {
+        if (cfg.isOnline(n)) {
+            return ConfigurationDelta.State.Online;
+        } else if (cfg.isOffline(n)) {
+            return ConfigurationDelta.State.Offline;
+        }
+        return ConfigurationDelta.State.Absent;
+    }
+
+    private static ConfigurationDelta.State stateOf(Configuration cfg, VirtualMachine vm) {
+        if (cfg.isRunning(vm)) {
+            return ConfigurationDelta.State.Running;
+        } else if (cfg.isSleeping(vm)) {
+            return ConfigurationDelta.State.Sleeping;
+        } else if (cfg.isWaiting(vm)) {
+            return ConfigurationDelta.State.Waiting;
+        }
+        return ConfigurationDelta.State.Absent;
+    }
+
     /**
      * Merge a list of Configurations.
      * The set of virtual machines in the configuration is supposed to be disjoint while
@@ -0,0 +1,751 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.configuration;
+
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.util.Arrays;
+
+/**
+ * A configuration that relies on the dense identifiers of an {@link ElementRegistry}.
+ * The state and the location of each element are stored in arrays of integers indexed
+ * by the identifiers. The elements in a same state and the virtual machines hosted
+ * by a same node are chained into linked lists made of these arrays, so a change
+ * of state or location is performed in constant time. The arrays are plain arrays,
+ * so a clone is a copy of the arrays. {@link PersistentConfiguration} relies on
+ * {@link SharedIntArray}s to share them with its clones instead.
+ * <p/>
+ * The elements exposed by the configuration are the ones that were added, so their resources
+ * are read through them. A clone shares the registry of the original configuration, so the
+ * elements are not duplicated.
+ * The sets of elements returned by the getters are computed on demand, modifying
+ * them has no impact on the configuration.
+ *
+ * @author Fabien Hermenier
+ */
+public class DenseConfiguration implements Configuration, Cloneable {
+
+    private static final int NIL = -1;
+
+    private static final int IDX_SHIFT = -1;
+
+    private static final int RUNNINGS = 1;
+
+    private static final int SLEEPINGS = 2;
+
+    private static final int WAITINGS = 3;
+
+    private static final int ONLINES = 1;
+
+    private static final int OFFLINES = 2;
+
+    private ElementRegistry registry;
+
+    /**
+     * The state of each virtual machine. {@code 0} if it is not in the configuration.
+     */
+    private IntArray vmState;
+
+    /**
+     * The identifier of the hosting node of each running or sleeping virtual machine.
+     */
+    private IntArray vmHost;
+
+    /**
+     * The links between the virtual machines in a same state.
+     */
+    private IntArray vmNext, vmPrev;
+
+    /**
+     * The links between the virtual machines hosted by a same node in a same state.
+     */
+    private IntArray hostedNext, hostedPrev;
+
+    private IntArray vmHead, vmTail, vmSize;
+
+    /**
+     * The state of each node. {@code 0} if it is not in the configuration.
+     */
+    private IntArray nodeState;
+
+    /**
+     * The links between the nodes in a same state.
+     */
+    private IntArray nodeNext, nodePrev;
+
+    private IntArray nodeHead, nodeTail, nodeSize;
+
+    /**
+     * The lists of hosted virtual machines. The running virtual machines of node {@code i}
+     * are indexed by {@code 2 * i}, the sleeping ones by {@code 2 * i + 1}.
+     */
+    private IntArray hostedHead, hostedTail, hostedSize;
+
+    /**
+     * The slot in the registry of each element that differs from the element
+     * registered with the same name. {@link #NIL} for the registered element.
+     */
+    private IntArray vmSlot, nodeSlot;
+
+    /**
+     * Build an empty configuration with its own registry.
+     */
+    public DenseConfiguration() {
+        this(new ElementRegistry());
+    }
+
+    /**
+     * Build an empty configuration.
+     *
+     * @param registry the registry that gives an identifier to the elements
+     */
+    public DenseConfiguration(ElementRegistry registry) {
+        this(registry, false);
+    }
+
+    /**
+     * Build an empty configuration.
+     *
+     * @param registry the registry that gives an identifier to the elements
+     * @param shared   {@code true} to store the state in {@link SharedIntArray}s that are
+     *                 shared with the clones, {@code false} to store it in plain arrays
+     */
+    protected DenseConfiguration(ElementRegistry registry, boolean shared) {
+        this.registry = registry;
+        int nbVMs = registry.getNbOfVirtualMachines();
+        int nbNodes = registry.getNbOfNodes();
+        vmState = newArray(shared, 0, nbVMs);
+        vmHost = newArray(shared, NIL, nbVMs);
+        vmNext = newArray(shared, NIL, nbVMs);
+        vmPrev = newArray(shared, NIL, nbVMs);
+        hostedNext = newArray(shared, NIL, nbVMs);
+        hostedPrev = newArray(shared, NIL, nbVMs);
+        vmHead = newArray(shared, NIL, 3);
+        vmTail = newArray(shared, NIL, 3);
+        vmSize = newArray(shared, 0, 3);
+        nodeState = newArray(shared, 0, nbNodes);
+        nodeNext = newArray(shared, NIL, nbNodes);
+        nodePrev = newArray(shared, NIL, nbNodes);
+        nodeHead = newArray(shared, NIL, 2);
+        nodeTail = newArray(shared, NIL, 2);
+        nodeSize = newArray(shared, 0, 2);
+        hostedHead = newArray(shared, NIL, nbNodes * 2);
+        hostedTail = newArray(shared, NIL, nbNodes * 2);
+        hostedSize = newArray(shared, 0, nbNodes * 2);
+        vmSlot = newArray(shared, NIL, nbVMs);
+        nodeSlot = newArray(shared, NIL, nbNodes);
+    }
+
+    /**
+     * Copy constructor. The arrays are copied, the registry is shared.
+     *
+     * @param ref the configuration to copy
+     */
+    protected DenseConfiguration(DenseConfiguration ref) {
+        registry = ref.registry;
+        vmState = ref.vmState.copy();
+        vmHost = ref.vmHost.copy();
+        vmNext = ref.vmNext.copy();
+        vmPrev = ref.vmPrev.copy();
+        hostedNext = ref.hostedNext.copy();
+        hostedPrev = ref.hostedPrev.copy();
+        vmHead = ref.vmHead.copy();
+        vmTail = ref.vmTail.copy();
+        vmSize = ref.vmSize.copy();
+        nodeState = ref.nodeState.copy();
+        nodeNext = ref.nodeNext.copy();
+        nodePrev = ref.nodePrev.copy();
+        nodeHead = ref.nodeHead.copy();
+        nodeTail = ref.nodeTail.copy();
+        nodeSize = ref.nodeSize.copy();
+        hostedHead = ref.hostedHead.copy();
+        hostedTail = ref.hostedTail.copy();
+        hostedSize = ref.hostedSize.copy();
+        vmSlot = ref.vmSlot.copy();
+        nodeSlot = ref.nodeSlot.copy();
+    }
+
+    private static IntArray newArray(boolean shared, int dflt, int capacity) {
+        return shared ? new SharedIntArray(dflt) : new PlainIntArray(dflt, capacity);
+    }
+
+    /**
+     * Get the registry that gives an identifier to the elements.
+     *
+     * @return the registry
+     */
+    public ElementRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Get the virtual machines which state or location may differ in a configuration
+     * that shares the same registry. With {@link SharedIntArray}s, only the pages
+     * that are not shared are browsed.
+     *
+     * @param o the configuration to compare with
+     * @return the sorted identifiers of the virtual machines
+     */
+    int[] changedVirtualMachines(DenseConfiguration o) {
+        TIntHashSet ids = new TIntHashSet();
+        vmState.diff(o.vmState, ids);
+        vmHost.diff(o.vmHost, ids);
+        int[] res = ids.toArray();
+        Arrays.sort(res);
+        return res;
+    }
+
+    /**
+     * Get the nodes which state may differ in a configuration
+     * that shares the same registry. With {@link SharedIntArray}s, only the pages
+     * that are not shared are browsed.
+     *
+     * @param o the configuration to compare with
+     * @return the sorted identifiers of the nodes
+     */
+    int[] changedNodes(DenseConfiguration o) {
+        TIntHashSet ids = new TIntHashSet();
+        nodeState.diff(o.nodeState, ids);
+        int[] res = ids.toArray();
+        Arrays.sort(res);
+        return res;
+    }
+
+    /**
+     * Append an element at the end of a list.
+     */
+    private static void link(IntArray heads, IntArray tails, IntArray sizes, int l,
+                             IntArray next, IntArray prev, int e) {
+        int tail = tails.get(l);
+        prev.set(e, tail);
+        next.set(e, NIL);
+        if (tail == NIL) {
+            heads.set(l, e);
+        } else {
+            next.set(tail, e);
+        }
+        tails.set(l, e);
+        sizes.set(l, sizes.get(l) + 1);
+    }
+
+    /**
+     * Remove an element from a list.
+     */
+    private static void unlink(IntArray heads, IntArray tails, IntArray sizes, int l,
+                               IntArray next, IntArray prev, int e) {
+        int p = prev.get(e);
+        int n = next.get(e);
+        if (p == NIL) {
+            heads.set(l, n);
+        } else {
+            next.set(p, n);
+        }
+        if (n == NIL) {
+            tails.set(l, p);
+        } else {
+            prev.set(n, p);
+        }
+        sizes.set(l, sizes.get(l) - 1);
+    }
+
+    /**
+     * Get the identifier of a virtual machine in the configuration.
+     *
+     * @param vm the virtual machine
+     * @return its identifier or {@link #NIL} if it is not in the configuration
+     */
+    private int vmId(VirtualMachine vm) {
+        int id = registry.getId(vm);
+        return id != NIL && vmState.get(id) != 0 ? id : NIL;
+    }
+
+    /**
+     * Get the identifier of a node in the configuration.
+     *
+     * @param n the node
+     * @return its identifier or {@link #NIL} if it is not in the configuration
+     */
+    private int nodeId(Node n) {
+        int id = registry.getId(n);
+        return id != NIL && nodeState.get(id) != 0 ? id : NIL;
+    }
+
+    /**
+     * Register a virtual machine and remember the element.
+     *
+     * @param vm the virtual machine
+     * @return its identifier
+     */
+    private int importVM(VirtualMachine vm) {
+        int id = registry.register(vm);
+        int s = registry.getVirtualMachine(id) == vm ? NIL : registry.getSlot(vm);
+        if (vmSlot.get(id) != s) {
+            vmSlot.set(id, s);
+        }
+        return id;
+    }
+
+    /**
+     * Get a virtual machine of the configuration.
+     *
+     * @param id the identifier of the virtual machine
+     * @return the virtual machine that was added
+     */
+    private VirtualMachine vm(int id) {
+        int s = vmSlot.get(id);
+        return s == NIL ? registry.getVirtualMachine(id) : (VirtualMachine) registry.getElement(s);
+    }
+
+    /**
+     * Register a node and remember the element.
+     *
+     * @param n the node
+     * @return its identifier
+     */
+    private int importNode(Node n) {
+        int id = registry.register(n);
+        int s = registry.getNode(id) == n ? NIL : registry.getSlot(n);
+        if (nodeSlot.get(id) != s) {
+            nodeSlot.set(id, s);
+        }
+        return id;
+    }
+
+    /**
+     * Get a node of the configuration.
+     *
+     * @param id the identifier of the node
+     * @return the node that was added
+     */
+    private Node node(int id) {
+        int s = nodeSlot.get(id);
+        return s == NIL ? registry.getNode(id) : (Node) registry.getElement(s);
+    }
+
+    private int hostedIdx(int nodeId, int state) {
+        return nodeId * 2 + state + IDX_SHIFT;
+    }
+
+    /**
+     * Remove a virtual machine from its hosting list.
+     */
+    private void unhost(int id) {
+        int st = vmState.get(id);
+        if (st == RUNNINGS || st == SLEEPINGS) {
+            unlink(hostedHead, hostedTail, hostedSize, hostedIdx(vmHost.get(id), st), hostedNext, hostedPrev, id);
+        }
+    }
+
+    /**
+     * Change the state and the location of a virtual machine.
+     *
+     * @param id     the identifier of the virtual machine
+     * @param nodeId the identifier of its new hosting node. {@link #NIL} if it is waiting
+     * @param state  the new state of the virtual machine
+     */
+    private void place(int id, int nodeId, int state) {
+        int curState = vmState.get(id);
+        unhost(id);
+        if (curState != state) {
+            if (curState != 0) {
+                unlink(vmHead, vmTail, vmSize, curState + IDX_SHIFT, vmNext, vmPrev, id);
+            }
+            link(vmHead, vmTail, vmSize, state + IDX_SHIFT, vmNext, vmPrev, id);
+            vmState.set(id, state);
+        }
+        vmHost.set(id, nodeId);
+        if (nodeId != NIL) {
+            link(hostedHead, hostedTail, hostedSize, hostedIdx(nodeId, state), hostedNext, hostedPrev, id);
+        }
+    }
+
+    /**
+     * Change the state of a node.
+     *
+     * @param id    the identifier of the node
+     * @param state the new state, {@code 0} to remove the node
+     */
+    private void switchState(int id, int state) {
+        int curState = nodeState.get(id);
+        if (curState == state) {
+            return;
+        }
+        if (curState != 0) {
+            unlink(nodeHead, nodeTail, nodeSize, curState + IDX_SHIFT, nodeNext, nodePrev, id);
+        }
+        if (state != 0) {
+            link(nodeHead, nodeTail, nodeSize, state + IDX_SHIFT, nodeNext, nodePrev, id);
+        }
+        nodeState.set(id, state);
+    }
+
+    private boolean isUsed(int nodeId) {
+        return hostedSize.get(hostedIdx(nodeId, RUNNINGS)) > 0 || hostedSize.get(hostedIdx(nodeId, SLEEPINGS)) > 0;
+    }
+
+    private boolean setOn(VirtualMachine vm, Node node, int state) {
+        int nId = nodeId(node);
+        if (nId == NIL || nodeState.get(nId) != ONLINES) {
+            return false;
+        }
+        place(importVM(vm), nId, state);
+        return true;
+    }
+
+    private boolean setOn(int vmId, int nodeId, int state) {
+        if (nodeState.get(nodeId) != ONLINES) {
+            return false;
+        }
+        vmSlot.set(vmId, NIL);
+        place(vmId, nodeId, state);
+        return true;
+    }
+
+    /**
+     * Set a registered virtual machine running on a registered node.
+     *
+     * @param vmId   the identifier of the virtual machine in the registry
+     * @param nodeId the identifier of the node in the registry
+     * @return {@code true} if the node is online
+     */
+    public boolean setRunOn(int vmId, int nodeId) {
+        return setOn(vmId, nodeId, RUNNINGS);
+    }
+
+    /**
+     * Set a registered virtual machine sleeping on a registered node.
+     *
+     * @param vmId   the identifier of the virtual machine in the registry
+     * @param nodeId the identifier of the node in the registry
+     * @return {@code true} if the node is online
+     */
+    public boolean setSleepOn(int vmId, int nodeId) {
+        return setOn(vmId, nodeId, SLEEPINGS);
+    }
+
+    /**
+     * Set a registered virtual machine in the waiting state.
+     *
+     * @param vmId the identifier of the virtual machine in the registry
+     */
+    public void addWaiting(int vmId) {
+        vmSlot.set(vmId, NIL);
+        place(vmId, NIL, WAITINGS);
+    }
+
+    /**
+     * Set a registered node online.
+     *
+     * @param nodeId the identifier of the node in the registry
+     */
+    public void addOnline(int nodeId) {
+        nodeSlot.set(nodeId, NIL);
+        switchState(nodeId, ONLINES);
+    }
+
+    /**
+     * Set a registered node offline.
+     *
+     * @param nodeId the identifier of the node in the registry
+     * @return {@code false} if the node is hosting virtual machines
+     */
+    public boolean addOffline(int nodeId) {
+        if (isUsed(nodeId)) {
+            return false;
+        }
+        nodeSlot.set(nodeId, NIL);
+        switchState(nodeId, OFFLINES);
+        return true;
+    }
+
+    @Override
+    public boolean setRunOn(VirtualMachine vm, Node node) {
+        return setOn(vm, node, RUNNINGS);
+    }
+
+    @Override
+    public boolean setSleepOn(VirtualMachine vm, Node node) {
+        return setOn(vm, node, SLEEPINGS);
+    }
+
+    @Override
+    public void addWaiting(VirtualMachine vm) {
+        place(importVM(vm), NIL, WAITINGS);
+    }
+
+    @Override
+    public void remove(VirtualMachine vm) {
+        int id = vmId(vm);
+        if (id != NIL) {
+            unhost(id);
+            unlink(vmHead, vmTail, vmSize, vmState.get(id) + IDX_SHIFT, vmNext, vmPrev, id);
+            vmState.set(id, 0);
+        }
+    }
+
+    @Override
+    public boolean remove(Node n) {
+        int id = nodeId(n);
+        if (id != NIL) {
+            if (isUsed(id)) {
+                return false;
+            }
+            switchState(id, 0);
+        }
+        return true;
+    }
+
+    @Override
+    public void addOnline(Node n) {
+        switchState(importNode(n), ONLINES);
+    }
+
+    @Override
+    public boolean addOffline(Node n) {
+        int id = nodeId(n);
+        if (id != NIL && isUsed(id)) {
+            return false;
+        }
+        switchState(importNode(n), OFFLINES);
+        return true;
+    }
+
+    private ManagedElementSet<Node> nodes(int state) {
+        ManagedElementSet<Node> res = new IndexedManagedElementSet<Node>(registry);
+        for (int x = nodeHead.get(state + IDX_SHIFT); x != NIL; x = nodeNext.get(x)) {
+            res.add(node(x));
+        }
+        return res;
+    }
+
+    private ManagedElementSet<VirtualMachine> vms(int state) {
+        ManagedElementSet<VirtualMachine> res = new IndexedManagedElementSet<VirtualMachine>(registry);
+        for (int x = vmHead.get(state + IDX_SHIFT); x != NIL; x = vmNext.get(x)) {
+            res.add(vm(x));
+        }
+        return res;
+    }
+
+    private void hosted(int nodeId, int state, ManagedElementSet<VirtualMachine> res) {
+        for (int x = hostedHead.get(hostedIdx(nodeId, state)); x != NIL; x = hostedNext.get(x)) {
+            res.add(vm(x));
+        }
+    }
+
+    private ManagedElementSet<VirtualMachine> hosted(Node n, int state) {
+        int id = nodeId(n);
+        if (id == NIL) {
+            return null;
+        }
+        ManagedElementSet<VirtualMachine> res = new IndexedManagedElementSet<VirtualMachine>(registry);
+        hosted(id, state, res);
+        return res;
+    }
+
+    @Override
+    public ManagedElementSet<Node> getOnlines() {
+        return nodes(ONLINES);
+    }
+
+    @Override
+    public ManagedElementSet<Node> getOfflines() {
+        return nodes(OFFLINES);
+    }
+
+    @Override
+    public ManagedElementSet<VirtualMachine> getRunnings() {
+        return vms(RUNNINGS);
+    }
+
+    @Override
+    public ManagedElementSet<VirtualMachine> getSleepings() {
+        return vms(SLEEPINGS);
+    }
+
+    @Override
+    public ManagedElementSet<VirtualMachine> getWaitings() {
+        return vms(WAITINGS);
+    }
+
+    @Override
+    public ManagedElementSet<VirtualMachine> getSleepings(Node n) {
+        return hosted(n, SLEEPINGS);
+    }
+
+    @Override
+    public ManagedElementSet<VirtualMachine> getRunnings(Node n) {
+        return hosted(n, RUNNINGS);
+    }
+
+    @Override
+    public ManagedElementSet<VirtualMachine> getRunnings(ManagedElementSet<Node> ns) {
+        ManagedElementSet<VirtualMachine> vms = new IndexedManagedElementSet<VirtualMachine>(registry);
+        for (Node n : ns) {
+            int id = nodeId(n);
+            if (id != NIL) {
+                hosted(id, RUNNINGS, vms);
+            }
+        }
+        return vms;
+    }
+
+    @Override
+    public ManagedElementSet<VirtualMachine> getAllVirtualMachines() {
+        ManagedElementSet<VirtualMachine> all = vms(RUNNINGS);
+        all.addAll(vms(SLEEPINGS));
+        all.addAll(vms(WAITINGS));
+        return all;
+    }
+
+    @Override
+    public ManagedElementSet<Node> getAllNodes() {
+        ManagedElementSet<Node> all = nodes(ONLINES);
+        all.addAll(nodes(OFFLINES));
+        return all;
+    }
+
+    @Override
+    public Node getSleepingLocation(VirtualMachine vm) {
+        return isSleeping(vm) ? getLocation(vm) : null;
+    }
+
+    @Override
+    public Node getRunningLocation(VirtualMachine vm) {
+        return isRunning(vm) ? getLocation(vm) : null;
+    }
+
+    @Override
+    public Node getLocation(VirtualMachine vm) {
+        int id = vmId(vm);
+        if (id == NIL || vmState.get(id) == WAITINGS) {
+            return null;
+        }
+        return node(vmHost.get(id));
+    }
+
+    private int stateOf(Node n) {
+        int id = nodeId(n);
+        return id == NIL ? 0 : nodeState.get(id);
+    }
+
+    private int stateOf(VirtualMachine vm) {
+        int id = vmId(vm);
+        return id == NIL ? 0 : vmState.get(id);
+    }
+
+    @Override
+    public boolean isOnline(Node n) {
+        return stateOf(n) == ONLINES;
+    }
+
+    @Override
+    public boolean isOffline(Node n) {
+        return stateOf(n) == OFFLINES;
+    }
+
+    @Override
+    public boolean isRunning(VirtualMachine vm) {
+        return stateOf(vm) == RUNNINGS;
+    }
+
+    @Override
+    public boolean isWaiting(VirtualMachine vm) {
+        return stateOf(vm) == WAITINGS;
+    }
+
+    @Override
+    public boolean isSleeping(VirtualMachine vm) {
+        return stateOf(vm) == SLEEPINGS;
+    }
+
+    @Override
+    public Configuration clone() {
+        return new DenseConfiguration(this);
+    }
+
+    @Override
+    public boolean contains(Node n) {
+        return nodeId(n) != NIL;
+    }
+
+    @Override
+    public boolean contains(VirtualMachine vm) {
+        return vmId(vm) != NIL;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null) {
+            return false;
+        } else if (o == this) {
+            return true;
+        } else if (o instanceof Configuration) {
+            Configuration ref = (Configuration) o;
+            if (!ref.getOfflines().equals(getOfflines())
+                    || !ref.getOnlines().equals(getOnlines())
+                    || !ref.getWaitings().equals(getWaitings())) {
+                return false;
+            }
+            for (Node n : ref.getOnlines()) {
+                if (!ref.getRunnings(n).equals(getRunnings(n))
+                        || !ref.getSleepings(n).equals(getSleepings(n))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Textual representation of the configuration.
+     *
+     * @return the textual representation
+     */
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        for (Node n : getAllNodes()) {
+            if (isOffline(n)) {
+                buf.append("(").append(n.getName()).append(")");
+            } else {
+                buf.append(n.getName());
+            }
+            buf.append(":");
+            for (VirtualMachine vm : this.getRunnings(n)) {
+                buf.append(" ");
+                buf.append(vm.getName());
+            }
+            for (VirtualMachine vm : this.getSleepings(n)) {
+                buf.append(" (");
+                buf.append(vm.getName());
+                buf.append(")");
+            }
+            buf.append("\n");
+        }
+        buf.append("FARM");
+        for (VirtualMachine vm : this.getWaitings()) {
+            buf.append(" ");
+            buf.append(vm.getName());
+        }
+        buf.append("\n");
+        return buf.toString();
+    }
+}
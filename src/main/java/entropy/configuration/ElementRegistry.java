@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.configuration;
+
+import gnu.trove.impl.Constants;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A registry that gives a dense integer identifier to each virtual machine
+ * and each node, using their names, in the order they are registered. Identifiers are never recycled.
+ * <p/>
+ * The registry stores the elements as is, so their resources are the ones of the elements
+ * and are read through them. The first element registered with a given name is returned
+ * by {@link #getVirtualMachine(int)} or {@link #getNode(int)}. The configurations that rely on the
+ * registry may hold another element having the same name, for example when an element is removed then
+ * added again. Such an element is given a slot using {@link #getSlot(ManagedElement)} that the
+ * configurations store in place of the element.
+ *
+ * @author Fabien Hermenier
+ */
+public class ElementRegistry {
+
+    /**
+     * The value returned for unknown elements.
+     */
+    public static final int NO_ID = -1;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private TObjectIntHashMap<String> vmIds;
+
+    private VirtualMachine[] vms;
+
+    private int nbVMs;
+
+    private TObjectIntHashMap<String> nodeIds;
+
+    private Node[] nodes;
+
+    private int nbNodes;
+
+    /**
+     * The elements that differ from the ones registered with the same name.
+     */
+    private List<ManagedElement> others;
+
+    /**
+     * The slot of each element in {@link #others}.
+     */
+    private Map<ManagedElement, Integer> slots;
+
+    /**
+     * Make an empty registry.
+     */
+    public ElementRegistry() {
+        this(DEFAULT_CAPACITY, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Make an empty registry with an initial capacity.
+     *
+     * @param nbVMs   the expected number of virtual machines
+     * @param nbNodes the expected number of nodes
+     */
+    public ElementRegistry(int nbVMs, int nbNodes) {
+        int vCapa = Math.max(nbVMs, 1);
+        int nCapa = Math.max(nbNodes, 1);
+        vmIds = new TObjectIntHashMap<String>(vCapa, Constants.DEFAULT_LOAD_FACTOR, NO_ID);
+        vms = new VirtualMachine[vCapa];
+        nodeIds = new TObjectIntHashMap<String>(nCapa, Constants.DEFAULT_LOAD_FACTOR, NO_ID);
+        nodes = new Node[nCapa];
+        others = new ArrayList<ManagedElement>();
+        slots = new IdentityHashMap<ManagedElement, Integer>();
+    }
+
+    /**
+     * Register a virtual machine.
+     * If a virtual machine with the same name is already registered, it is left unchanged.
+     *
+     * @param vm the virtual machine
+     * @return the identifier of the virtual machine
+     */
+    public int register(VirtualMachine vm) {
+        int id = vmIds.get(vm.getName());
+        if (id != NO_ID) {
+            return id;
+        }
+        if (nbVMs == vms.length) {
+            vms = Arrays.copyOf(vms, vms.length * 2);
+        }
+        id = nbVMs++;
+        vmIds.put(vm.getName(), id);
+        vms[id] = vm;
+        return id;
+    }
+
+    /**
+     * Register a node.
+     * If a node with the same name is already registered, it is left unchanged.
+     *
+     * @param n the node
+     * @return the identifier of the node
+     */
+    public int register(Node n) {
+        int id = nodeIds.get(n.getName());
+        if (id != NO_ID) {
+            return id;
+        }
+        if (nbNodes == nodes.length) {
+            nodes = Arrays.copyOf(nodes, nodes.length * 2);
+        }
+        id = nbNodes++;
+        nodeIds.put(n.getName(), id);
+        nodes[id] = n;
+        return id;
+    }
+
+    /**
+     * Get the slot of an element that differs from the element registered with the same name.
+     * The slot is allocated the first time the element is met.
+     *
+     * @param e the element
+     * @return the slot of the element
+     */
+    public int getSlot(ManagedElement e) {
+        Integer s = slots.get(e);
+        if (s == null) {
+            s = others.size();
+            others.add(e);
+            slots.put(e, s);
+        }
+        return s;
+    }
+
+    /**
+     * Get the element stored into a slot.
+     *
+     * @param slot the slot
+     * @return the element
+     */
+    public ManagedElement getElement(int slot) {
+        return others.get(slot);
+    }
+
+    /**
+     * Get the identifier of a virtual machine.
+     *
+     * @param vm the virtual machine
+     * @return its identifier or {@link #NO_ID} if it is not registered
+     */
+    public int getId(VirtualMachine vm) {
+        return vmIds.get(vm.getName());
+    }
+
+    /**
+     * Get the identifier of a node.
+     *
+     * @param n the node
+     * @return its identifier or {@link #NO_ID} if it is not registered
+     */
+    public int getId(Node n) {
+        return nodeIds.get(n.getName());
+    }
+
+    /**
+     * Get the first virtual machine registered with an identifier.
+     *
+     * @param id the identifier of the virtual machine
+     * @return the virtual machine
+     */
+    public VirtualMachine getVirtualMachine(int id) {
+        return vms[id];
+    }
+
+    /**
+     * Get the first node registered with an identifier.
+     *
+     * @param id the identifier of the node
+     * @return the node
+     */
+    public Node getNode(int id) {
+        return nodes[id];
+    }
+
+    /**
+     * Get the number of registered virtual machines.
+     *
+     * @return a positive integer
+     */
+    public int getNbOfVirtualMachines() {
+        return nbVMs;
+    }
+
+    /**
+     * Get the number of registered nodes.
+     *
+     * @return a positive integer
+     */
+    public int getNbOfNodes() {
+        return nbNodes;
+    }
+}
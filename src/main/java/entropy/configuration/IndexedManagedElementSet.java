@@ -0,0 +1,507 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.configuration;
+
+import gnu.trove.impl.Constants;
+import gnu.trove.map.hash.TIntIntHashMap;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.RandomAccess;
+
+/**
+ * A set of elements that indexes the position of each element.
+ * Lookups and removals are made in constant time: a removed element
+ * is replaced by the last element of the set, so the removals do not
+ * preserve the ordering.
+ * <p/>
+ * When a registry is provided, the set also maintains a bitset
+ * of the identifiers of its elements. The bulk operations between two
+ * sets that share the same registry are then performed on the bitsets.
+ *
+ * @author Fabien Hermenier
+ */
+public class IndexedManagedElementSet<E extends ManagedElement> extends AbstractList<E> implements ManagedElementSet<E>, RandomAccess, Cloneable {
+
+    private static final int NO_POS = -1;
+
+    private Object[] elems;
+
+    private int size;
+
+    /**
+     * The position of each element, indexed by their hashcode.
+     */
+    private TIntIntHashMap positions;
+
+    private ElementRegistry registry;
+
+    /**
+     * The identifiers of the elements in the registry, if any.
+     */
+    private BitSet ids;
+
+    /**
+     * Make an empty set.
+     */
+    public IndexedManagedElementSet() {
+        this((ElementRegistry) null);
+    }
+
+    /**
+     * Make a set with one element.
+     *
+     * @param e the element to add
+     */
+    public IndexedManagedElementSet(E e) {
+        this();
+        this.add(e);
+    }
+
+    /**
+     * Make an empty set that relies on a registry.
+     *
+     * @param registry the registry that provides the identifiers of the elements. May be {@code null}
+     */
+    public IndexedManagedElementSet(ElementRegistry registry) {
+        this.elems = new Object[10];
+        this.positions = new TIntIntHashMap(Constants.DEFAULT_CAPACITY, Constants.DEFAULT_LOAD_FACTOR, 0, NO_POS);
+        this.registry = registry;
+        if (registry != null) {
+            ids = new BitSet();
+        }
+    }
+
+    /**
+     * Make a copy of a set. The copy relies on the same registry.
+     *
+     * @param ref the set to copy
+     */
+    protected IndexedManagedElementSet(IndexedManagedElementSet<E> ref) {
+        this.elems = Arrays.copyOf(ref.elems, Math.max(ref.size, 10));
+        this.size = ref.size;
+        this.positions = new TIntIntHashMap(ref.positions);
+        this.registry = ref.registry;
+        if (registry != null) {
+            ids = (BitSet) ref.ids.clone();
+        }
+    }
+
+    /**
+     * Get the registry used by the set.
+     *
+     * @return the registry, {@code null} if the set does not rely on a registry
+     */
+    public ElementRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Register an element and mark its identifier.
+     */
+    private void mark(E e) {
+        if (e instanceof VirtualMachine) {
+            ids.set(registry.register((VirtualMachine) e));
+        } else if (e instanceof Node) {
+            ids.set(registry.register((Node) e));
+        }
+    }
+
+    /**
+     * Unmark the identifier of an element.
+     */
+    private void unmark(E e) {
+        int id = idOf(e);
+        if (id != ElementRegistry.NO_ID) {
+            ids.clear(id);
+        }
+    }
+
+    /**
+     * Get the identifier of a registered element.
+     */
+    private int idOf(Object e) {
+        if (e instanceof VirtualMachine) {
+            return registry.getId((VirtualMachine) e);
+        } else if (e instanceof Node) {
+            return registry.getId((Node) e);
+        }
+        return ElementRegistry.NO_ID;
+    }
+
+    /**
+     * Get the hashcode of a registered element.
+     */
+    private int keyOf(int id, ManagedElement sample) {
+        if (sample instanceof VirtualMachine) {
+            return registry.getVirtualMachine(id).hashCode();
+        }
+        return registry.getNode(id).hashCode();
+    }
+
+    /**
+     * Check whether bulk operations with another set can be made using the bitsets.
+     */
+    private boolean sameRegistry(ManagedElementSet<E> o) {
+        return registry != null && o instanceof IndexedManagedElementSet
+                && ((IndexedManagedElementSet<E>) o).registry == registry;
+    }
+
+    @Override
+    public E get(int i) {
+        if (i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+        return (E) elems[i];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public E get(String name) {
+        int p = positions.get(name.hashCode());
+        return p == NO_POS ? null : (E) elems[p];
+    }
+
+    @Override
+    public boolean contains(E e) {
+        return positions.containsKey(e.hashCode());
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o != null && positions.containsKey(o.hashCode());
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        return o == null ? -1 : positions.get(o.hashCode());
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return indexOf(o);
+    }
+
+    @Override
+    public boolean add(E e) {
+        int k = e.hashCode();
+        if (positions.containsKey(k)) {
+            return false;
+        }
+        if (size == elems.length) {
+            elems = Arrays.copyOf(elems, size * 2);
+        }
+        positions.put(k, size);
+        elems[size++] = e;
+        if (registry != null) {
+            mark(e);
+        }
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public void add(int i, E e) {
+        if (i > size || i < 0) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+        if (add(e) && i != size - 1) {
+            //Shift the following elements
+            System.arraycopy(elems, i, elems, i + 1, size - 1 - i);
+            elems[i] = e;
+            for (int x = i; x < size; x++) {
+                positions.put(elems[x].hashCode(), x);
+            }
+        }
+    }
+
+    @Override
+    public E set(int i, E e) {
+        E old = get(i);
+        if (old.hashCode() == e.hashCode()) {
+            elems[i] = e;
+            return old;
+        }
+        int p = positions.get(e.hashCode());
+        if (p != NO_POS) {
+            //e is already in, it is a position change
+            elems[p] = old;
+            positions.put(old.hashCode(), p);
+        } else {
+            positions.remove(old.hashCode());
+            if (registry != null) {
+                unmark(old);
+                mark(e);
+            }
+        }
+        elems[i] = e;
+        positions.put(e.hashCode(), i);
+        return old;
+    }
+
+    /**
+     * Remove an element. The last element of the set takes its position.
+     *
+     * @param i the position of the element to remove
+     * @return the removed element
+     */
+    @Override
+    public E remove(int i) {
+        E old = get(i);
+        positions.remove(old.hashCode());
+        int last = --size;
+        if (i != last) {
+            elems[i] = elems[last];
+            positions.put(elems[i].hashCode(), i);
+        }
+        elems[last] = null;
+        if (registry != null) {
+            unmark(old);
+        }
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public boolean remove(E e) {
+        return remove((Object) e);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+        int p = positions.get(o.hashCode());
+        if (p == NO_POS) {
+            return false;
+        }
+        remove(p);
+        return true;
+    }
+
+    /**
+     * Remove an element using its hashcode.
+     */
+    private void removeKey(int k) {
+        int p = positions.get(k);
+        if (p != NO_POS) {
+            remove(p);
+        }
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(elems, 0, size, null);
+        size = 0;
+        positions.clear();
+        if (registry != null) {
+            ids.clear();
+        }
+        modCount++;
+    }
+
+    @Override
+    public boolean addAll(ManagedElementSet<E> elems) {
+        if (sameRegistry(elems)) {
+            IndexedManagedElementSet<E> o = (IndexedManagedElementSet<E>) elems;
+            if (size == 0) {
+                if (o.size == 0) {
+                    return false;
+                }
+                //Plain copy of the other set
+                this.elems = Arrays.copyOf(o.elems, Math.max(o.size, 10));
+                this.size = o.size;
+                this.positions = new TIntIntHashMap(o.positions);
+                this.ids = (BitSet) o.ids.clone();
+                modCount++;
+                return true;
+            }
+            BitSet missing = (BitSet) o.ids.clone();
+            missing.andNot(ids);
+            if (missing.isEmpty()) {
+                return false;
+            }
+            //Only the missing elements are picked in the other set
+            E sample = o.get(0);
+            for (int id = missing.nextSetBit(0); id >= 0; id = missing.nextSetBit(id + 1)) {
+                add((E) o.elems[o.positions.get(keyOf(id, sample))]);
+            }
+            return true;
+        }
+        boolean ret = false;
+        for (E e : elems) {
+            ret |= this.add(e);
+        }
+        return ret;
+    }
+
+    @Override
+    public boolean containsAll(ManagedElementSet<E> elems) {
+        if (sameRegistry(elems)) {
+            BitSet missing = (BitSet) ((IndexedManagedElementSet<E>) elems).ids.clone();
+            missing.andNot(ids);
+            return missing.isEmpty();
+        }
+        for (E e : elems) {
+            if (!this.contains(e)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean removeAll(ManagedElementSet<E> elems) {
+        if (sameRegistry(elems)) {
+            BitSet common = (BitSet) ((IndexedManagedElementSet<E>) elems).ids.clone();
+            common.and(ids);
+            removeIds(common);
+            return !common.isEmpty();
+        }
+        boolean ret = false;
+        for (E e : elems) {
+            ret |= this.remove(e);
+        }
+        return ret;
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> objects) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean retainAll(ManagedElementSet<E> elems) {
+        if (sameRegistry(elems)) {
+            BitSet out = (BitSet) ids.clone();
+            out.andNot(((IndexedManagedElementSet<E>) elems).ids);
+            removeIds(out);
+            return !out.isEmpty();
+        }
+        boolean ret = false;
+        int i = 0;
+        while (i < size) {
+            if (!elems.contains(get(i))) {
+                remove(i);
+                ret = true;
+            } else {
+                i++;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Remove the elements having the given identifiers.
+     */
+    private void removeIds(BitSet toRemove) {
+        if (toRemove.isEmpty()) {
+            return;
+        }
+        E sample = get(0);
+        for (int id = toRemove.nextSetBit(0); id >= 0; id = toRemove.nextSetBit(id + 1)) {
+            removeKey(keyOf(id, sample));
+        }
+    }
+
+    /**
+     * Make the union of this set with another one.
+     *
+     * @param elems the other set
+     * @return a new set
+     */
+    public IndexedManagedElementSet<E> union(ManagedElementSet<E> elems) {
+        IndexedManagedElementSet<E> res = clone();
+        res.addAll(elems);
+        return res;
+    }
+
+    /**
+     * Make the difference between this set and another one.
+     *
+     * @param elems the elements to exclude
+     * @return a new set
+     */
+    public IndexedManagedElementSet<E> difference(ManagedElementSet<E> elems) {
+        IndexedManagedElementSet<E> res = clone();
+        res.removeAll(elems);
+        return res;
+    }
+
+    @Override
+    public IndexedManagedElementSet<E> clone() {
+        return new IndexedManagedElementSet<E>(this);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder("{");
+        for (Iterator<E> ite = this.iterator(); ite.hasNext(); ) {
+            E e = ite.next();
+            b.append(e.getName());
+            if (ite.hasNext()) {
+                b.append(", ");
+            }
+        }
+        return b.append("}").toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null) {
+            return false;
+        } else if (o == this) {
+            return true;
+        } else if (o instanceof ManagedElementSet) {
+            //The ordering is not considered
+            ManagedElementSet<E> ref = (ManagedElementSet<E>) o;
+            if (ref.size() != this.size()) {
+                return false;
+            }
+            if (sameRegistry(ref)) {
+                return ids.equals(((IndexedManagedElementSet<E>) ref).ids);
+            }
+            for (E e : ref) {
+                if (!contains(e)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 0;
+        for (int i = 0; i < size; i++) {
+            h += elems[i].hashCode();
+        }
+        return h;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package entropy.configuration;
+
+import gnu.trove.set.hash.TIntHashSet;
+
+/**
+ * An unbounded array of integers used to store the state of a {@link DenseConfiguration}.
+ * The cells that were never set have a default value.
+ *
+ * @author Fabien Hermenier
+ */
+abstract class IntArray {
+
+    /**
+     * The value of the cells that were never set.
+     */
+    protected final int dflt;
+
+    /**
+     * Make a new array.
+     *
+     * @param dflt the value of the cells that were never set
+     */
+    protected IntArray(int dflt) {
+        this.dflt = dflt;
+    }
+
+    /**
+     * Get the value of a cell.
+     *
+     * @param i the index of the cell
+     * @return its value
+     */
+    public abstract int get(int i);
+
+    /**
+     * Set the value of a cell.
+     *
+     * @param i the index of the cell
+     * @param v the new value
+     */
+    public abstract void set(int i, int v);
+
+    /**
+     * Get the number of cells that may have been set.
+     * All the cells after are at their default value.
+     *
+     * @return a number of cells
+     */
+    public abstract int length();
+
+    /**
+     * Copy the array. The modifications of the copy are not visible in this array
+     * and vice versa.
+     *
+     * @return a new array
+     */
+    public abstract IntArray copy();
+
+    /**
+     * Collect the indexes of the cells that differ from another array.
+     *
+     * @param o   the array to compare with
+     * @param res the set to fill with the indexes
+     */
+    public void diff(IntArray o, TIntHashSet res) {
+        int nb = Math.max(length(), o.length());
+        for (int i = 0; i < nb; i++) {
+            if (get(i) != o.get(i)) {
+                res.add(i);
+            }
+        }
+    }
+}
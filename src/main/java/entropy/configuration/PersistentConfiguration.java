@@ -0,0 +1,91 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package entropy.configuration;
+
+/**
+ * A configuration that shares its structure with its clones.
+ * The layout is the one of {@link DenseConfiguration} but the arrays are
+ * {@link SharedIntArray}s, so {@link #clone()} is made in constant time and a modification
+ * only copies the pages that contain the touched elements, typically the source and the
+ * destination of a virtual machine. This fits the paths that take a lot of snapshots
+ * and modify a few elements in each: plans, simulations or logging.
+ * Each access to the state goes through a page table, so the other paths are
+ * slower than with a {@link DenseConfiguration}.
+ *
+ * @author Fabien Hermenier
+ */
+public class PersistentConfiguration extends DenseConfiguration {
+
+    /**
+     * Build an empty configuration with its own registry.
+     */
+    public PersistentConfiguration() {
+        this(new ElementRegistry());
+    }
+
+    /**
+     * Build an empty configuration.
+     *
+     * @param registry the registry that gives an identifier to the elements
+     */
+    public PersistentConfiguration(ElementRegistry registry) {
+        super(registry, true);
+    }
+
+    /**
+     * Build a configuration from another one.
+     * The elements are registered into a new registry.
+     *
+     * @param ref the configuration to copy
+     */
+    public PersistentConfiguration(Configuration ref) {
+        this(new ElementRegistry(ref.getAllVirtualMachines().size(), ref.getAllNodes().size()));
+        for (Node n : ref.getOfflines()) {
+            addOffline(n);
+        }
+        for (Node n : ref.getOnlines()) {
+            addOnline(n);
+            for (VirtualMachine vm : ref.getRunnings(n)) {
+                setRunOn(vm, n);
+            }
+            for (VirtualMachine vm : ref.getSleepings(n)) {
+                setSleepOn(vm, n);
+            }
+        }
+        for (VirtualMachine vm : ref.getWaitings()) {
+            addWaiting(vm);
+        }
+    }
+
+    /**
+     * Copy constructor. The arrays and the registry are shared.
+     *
+     * @param ref the configuration to copy
+     */
+    private PersistentConfiguration(PersistentConfiguration ref) {
+        super(ref);
+    }
+
+    @Override
+    public Configuration clone() {
+        return new PersistentConfiguration(this);
+    }
+}
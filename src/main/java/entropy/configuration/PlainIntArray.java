@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package entropy.configuration;
+
+import java.util.Arrays;
+
+/**
+ * An unbounded array of integers backed by a primitive array
+ * that grows on demand. A copy duplicates the whole array.
+ *
+ * @author Fabien Hermenier
+ */
+final class PlainIntArray extends IntArray {
+
+    private int[] values;
+
+    /**
+     * Make a new array.
+     *
+     * @param dflt     the value of the cells that were never set
+     * @param capacity the initial number of cells
+     */
+    public PlainIntArray(int dflt, int capacity) {
+        super(dflt);
+        values = new int[Math.max(capacity, 1)];
+        if (dflt != 0) {
+            Arrays.fill(values, dflt);
+        }
+    }
+
+    /**
+     * Make a copy.
+     *
+     * @param ref the array to copy
+     */
+    private PlainIntArray(PlainIntArray ref) {
+        super(ref.dflt);
+        values = ref.values.clone();
+    }
+
+    @Override
+    public int get(int i) {
+        return i < values.length ? values[i] : dflt;
+    }
+
+    @Override
+    public void set(int i, int v) {
+        if (i >= values.length) {
+            int old = values.length;
+            values = Arrays.copyOf(values, Math.max(i + 1, old * 2));
+            if (dflt != 0) {
+                Arrays.fill(values, old, values.length, dflt);
+            }
+        }
+        values[i] = v;
+    }
+
+    @Override
+    public int length() {
+        return values.length;
+    }
+
+    @Override
+    public PlainIntArray copy() {
+        return new PlainIntArray(this);
+    }
+}
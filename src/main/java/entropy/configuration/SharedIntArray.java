@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.configuration;
+
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.util.Arrays;
+
+/**
+ * An unbounded array of integers split into pages that are shared between copies.
+ * A copy is made in constant time. A page is copied the first time it is
+ * modified after a copy, so the other pages stay shared.
+ *
+ * @author Fabien Hermenier
+ */
+final class SharedIntArray extends IntArray {
+
+    private static final int SHIFT = 8;
+
+    private static final int PAGE_SIZE = 1 << SHIFT;
+
+    private static final int MASK = PAGE_SIZE - 1;
+
+    private int[][] pages;
+
+    /**
+     * The owner of each page. A page can be modified in place only if its owner is {@link #owner}.
+     */
+    private Object[] owners;
+
+    private Object owner;
+
+    /**
+     * Indicates whether the page table is shared with another array.
+     */
+    private boolean sharedTable;
+
+    /**
+     * Make a new array.
+     *
+     * @param dflt the value of the cells that were never set
+     */
+    public SharedIntArray(int dflt) {
+        super(dflt);
+        this.pages = new int[1][];
+        this.owners = new Object[1];
+        this.owner = new Object();
+    }
+
+    /**
+     * Make a copy.
+     *
+     * @param ref the array to copy
+     */
+    private SharedIntArray(SharedIntArray ref) {
+        super(ref.dflt);
+        this.pages = ref.pages;
+        this.owners = ref.owners;
+        this.owner = new Object();
+        this.sharedTable = true;
+    }
+
+    @Override
+    public int get(int i) {
+        int p = i >>> SHIFT;
+        if (p >= pages.length || pages[p] == null) {
+            return dflt;
+        }
+        return pages[p][i & MASK];
+    }
+
+    @Override
+    public void set(int i, int v) {
+        int p = i >>> SHIFT;
+        if (sharedTable || p >= pages.length) {
+            int size = Math.max(pages.length, p + 1);
+            if (p >= pages.length) {
+                size = Math.max(size, pages.length * 2);
+            }
+            pages = Arrays.copyOf(pages, size);
+            owners = Arrays.copyOf(owners, size);
+            sharedTable = false;
+        }
+        int[] page = pages[p];
+        if (page == null) {
+            page = new int[PAGE_SIZE];
+            if (dflt != 0) {
+                Arrays.fill(page, dflt);
+            }
+            pages[p] = page;
+            owners[p] = owner;
+        } else if (owners[p] != owner) {
+            page = page.clone();
+            pages[p] = page;
+            owners[p] = owner;
+        }
+        page[i & MASK] = v;
+    }
+
+    @Override
+    public int length() {
+        return pages.length << SHIFT;
+    }
+
+    /**
+     * {@inheritDoc}
+     * When the other array is a {@link SharedIntArray}, the pages shared by the two arrays are skipped.
+     */
+    @Override
+    public void diff(IntArray other, TIntHashSet res) {
+        if (!(other instanceof SharedIntArray)) {
+            super.diff(other, res);
+            return;
+        }
+        SharedIntArray o = (SharedIntArray) other;
+        int nb = Math.max(pages.length, o.pages.length);
+        for (int p = 0; p < nb; p++) {
+            int[] mine = p < pages.length ? pages[p] : null;
+            int[] theirs = p < o.pages.length ? o.pages[p] : null;
+            if (mine == theirs) {
+                continue;
+            }
+            int base = p << SHIFT;
+            for (int x = 0; x < PAGE_SIZE; x++) {
+                int v1 = mine == null ? dflt : mine[x];
+                int v2 = theirs == null ? o.dflt : theirs[x];
+                if (v1 != v2) {
+                    res.add(base + x);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copy the array. The pages are shared until they are modified
+     * on one side or the other.
+     *
+     * @return a new array
+     */
+    @Override
+    public SharedIntArray copy() {
+        //The pages are no longer owned by this array
+        owner = new Object();
+        sharedTable = true;
+        return new SharedIntArray(this);
+    }
+}
@@ -24,6 +24,17 @@ import gnu.trove.map.hash.TIntObjectHashMap;
 
 /**
  * Default implementation of Configuration.
+ * <p/>
+ * The configuration maintains the CPU and memory consumption and demand
+ * of the running virtual machines on each node, and the nodes that are overloaded.
+ * These aggregates are updated when a virtual machine is placed or removed, or when
+ * a node changes its state, so the overload queries do not browse the elements.
+ * The elements are not aware of the configurations that contain them, so a modification
+ * of the resources of an element that is in the configuration must be followed by
+ * a call to {@link #refreshAggregates()}.
+ * <p/>
+ * The sets of elements rely on a registry that is specific to the configuration so
+ * the bulk operations between them are made using bitsets.
  *
  * @author Fabien Hermenier
  */
@@ -41,6 +52,11 @@ public class SimpleConfiguration implements Configuration, Cloneable {
 
     private static final int OFFLINES = 2;
 
+    /**
+     * The registry that identifies the elements in the sets of the configuration.
+     */
+    private ElementRegistry registry;
+
     private ManagedElementSet<Node> allNodes;
 
     private ManagedElementSet<VirtualMachine> allVMs;
@@ -57,29 +73,184 @@ public class SimpleConfiguration implements Configuration, Cloneable {
 
     private TIntObjectHashMap<ManagedElementSet<VirtualMachine>>[] hosted;
 
+    /**
+     * The resources used by the running virtual machines on each node.
+     */
+    private TIntIntHashMap cpuConsumption, memConsumption, cpuDemand, memDemand;
+
+    private ManagedElementSet<Node> currentlyOverloaded;
+
+    private ManagedElementSet<Node> futureOverloaded;
+
     /**
      * Build an empty configuration.
      */
     public SimpleConfiguration() {
+        this.registry = new ElementRegistry();
         this.vmsByState = new ManagedElementSet[3];
         this.vmState = new TIntIntHashMap();
         this.nodeState = new TIntIntHashMap();
 
         nodesByState = new ManagedElementSet[2];
         for (int i = 0; i < nodesByState.length; i++) {
-            nodesByState[i] = new SimpleManagedElementSet<Node>();
+            nodesByState[i] = new IndexedManagedElementSet<Node>(registry);
         }
 
         for (int i = 0; i < vmsByState.length; i++) {
-            vmsByState[i] = new SimpleManagedElementSet<VirtualMachine>();
+            vmsByState[i] = new IndexedManagedElementSet<VirtualMachine>(registry);
         }
         this.hosted = new TIntObjectHashMap[2];
         for (int i = 0; i < hosted.length; i++) {
             this.hosted[i] = new TIntObjectHashMap<ManagedElementSet<VirtualMachine>>();
         }
-        this.allNodes = new SimpleManagedElementSet<Node>();
-        this.allVMs = new SimpleManagedElementSet<VirtualMachine>();
+        this.allNodes = new IndexedManagedElementSet<Node>(registry);
+        this.allVMs = new IndexedManagedElementSet<VirtualMachine>(registry);
         this.vmPlace = new TIntObjectHashMap<Node>();
+        this.cpuConsumption = new TIntIntHashMap();
+        this.memConsumption = new TIntIntHashMap();
+        this.cpuDemand = new TIntIntHashMap();
+        this.memDemand = new TIntIntHashMap();
+        this.currentlyOverloaded = new IndexedManagedElementSet<Node>(registry);
+        this.futureOverloaded = new IndexedManagedElementSet<Node>(registry);
+    }
+
+    /**
+     * Get the registry that identifies the elements in the sets of the configuration.
+     *
+     * @return the registry
+     */
+    public ElementRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Add the resources of a running virtual machine to the aggregates of a node.
+     *
+     * @param n  the node
+     * @param vm the virtual machine
+     */
+    private void load(Node n, VirtualMachine vm) {
+        adjust(n, vm.getCPUConsumption(), vm.getMemoryConsumption(), vm.getCPUDemand(), vm.getMemoryDemand());
+        checkOverload(n);
+    }
+
+    /**
+     * Remove the resources of a running virtual machine from the aggregates of a node.
+     *
+     * @param n  the node
+     * @param vm the virtual machine
+     */
+    private void unload(Node n, VirtualMachine vm) {
+        adjust(n, -vm.getCPUConsumption(), -vm.getMemoryConsumption(), -vm.getCPUDemand(), -vm.getMemoryDemand());
+        checkOverload(n);
+    }
+
+    /**
+     * Adjust the aggregates of a node.
+     *
+     * @param n  the node
+     * @param cc the CPU consumption to add
+     * @param mc the memory consumption to add
+     * @param cd the CPU demand to add
+     * @param md the memory demand to add
+     */
+    private void adjust(Node n, int cc, int mc, int cd, int md) {
+        int k = n.hashCode();
+        cpuConsumption.adjustOrPutValue(k, cc, cc);
+        memConsumption.adjustOrPutValue(k, mc, mc);
+        cpuDemand.adjustOrPutValue(k, cd, cd);
+        memDemand.adjustOrPutValue(k, md, md);
+    }
+
+    /**
+     * Update the overloaded status of a node with regards to its aggregates.
+     *
+     * @param n the node
+     */
+    private void checkOverload(Node n) {
+        int k = n.hashCode();
+        if (cpuConsumption.get(k) > n.getCPUCapacity() || memConsumption.get(k) > n.getMemoryCapacity()) {
+            currentlyOverloaded.add(n);
+        } else {
+            currentlyOverloaded.remove(n);
+        }
+        if (cpuDemand.get(k) > n.getCPUCapacity() || memDemand.get(k) > n.getMemoryCapacity()) {
+            futureOverloaded.add(n);
+        } else {
+            futureOverloaded.remove(n);
+        }
+    }
+
+    /**
+     * Remove a node from the aggregates.
+     *
+     * @param n the node
+     */
+    private void unload(Node n) {
+        int k = n.hashCode();
+        cpuConsumption.remove(k);
+        memConsumption.remove(k);
+        cpuDemand.remove(k);
+        memDemand.remove(k);
+        currentlyOverloaded.remove(n);
+        futureOverloaded.remove(n);
+    }
+
+    /**
+     * Compute the aggregates again from the resources of the running virtual machines
+     * and the capacities of the online nodes. This must be called once the resources
+     * of elements that are in the configuration were modified.
+     */
+    public void refreshAggregates() {
+        cpuConsumption.clear();
+        memConsumption.clear();
+        cpuDemand.clear();
+        memDemand.clear();
+        currentlyOverloaded.clear();
+        futureOverloaded.clear();
+        for (Node n : getOnlines()) {
+            for (VirtualMachine vm : hosted[RUNNINGS + IDX_SHIFT].get(n.hashCode())) {
+                adjust(n, vm.getCPUConsumption(), vm.getMemoryConsumption(), vm.getCPUDemand(), vm.getMemoryDemand());
+            }
+            checkOverload(n);
+        }
+    }
+
+    /**
+     * Get the online nodes that are currently overloaded. A node is overloaded if the
+     * CPU or memory consumption of its running virtual machines exceeds its capacity.
+     *
+     * @return a new set of nodes, may be empty
+     */
+    public ManagedElementSet<Node> getCurrentlyOverloadedNodes() {
+        return currentlyOverloaded.clone();
+    }
+
+    /**
+     * Get the online nodes that cannot satisfy the demand of their running virtual machines.
+     *
+     * @return a new set of nodes, may be empty
+     */
+    public ManagedElementSet<Node> getFutureOverloadedNodes() {
+        return futureOverloaded.clone();
+    }
+
+    /**
+     * Check whether an online node is currently overloaded.
+     *
+     * @return {@code true} if at least one node is overloaded
+     */
+    public boolean isCurrentlyOverloaded() {
+        return !currentlyOverloaded.isEmpty();
+    }
+
+    /**
+     * Check whether an online node cannot satisfy the demand of its running virtual machines.
+     *
+     * @return {@code true} if at least one node is overloaded
+     */
+    public boolean isFutureOverloaded() {
+        return !futureOverloaded.isEmpty();
     }
 
     private boolean switchState(Node n, int newState) {
@@ -97,6 +268,9 @@ public class SimpleConfiguration implements Configuration, Cloneable {
     private boolean replace(VirtualMachine vm, Node newNode, int newState) {
         Node oldNode = vmPlace.put(vm.hashCode(), newNode);
         int oldState = vmState.get(vm.hashCode());
+        if (oldState == RUNNINGS) {
+            unload(oldNode, vm);
+        }
         if (oldState == 0) { //Unknown VM
             allVMs.add(vm);
         }
@@ -113,6 +287,9 @@ public class SimpleConfiguration implements Configuration, Cloneable {
             hosted[oldState + IDX_SHIFT].get(oldNode.hashCode()).remove(vm);
         }
         hosted[newState + IDX_SHIFT].get(newNode.hashCode()).add(vm);
+        if (newState == RUNNINGS) {
+            load(newNode, vm);
+        }
         return true;
     }
 
@@ -149,6 +326,9 @@ public class SimpleConfiguration implements Configuration, Cloneable {
             vmState.put(vm.hashCode(), WAITINGS);
             //Change hoster
             hosted[curState + IDX_SHIFT].get(oldNode.hashCode()).remove(vm);
+            if (curState == RUNNINGS) {
+                unload(oldNode, vm);
+            }
         }
     }
 
@@ -161,6 +341,9 @@ public class SimpleConfiguration implements Configuration, Cloneable {
             Node oldNode = vmPlace.remove(vm.hashCode());
             if (oldNode != null) {
                 hosted[curState + IDX_SHIFT].get(oldNode.hashCode()).remove(vm);
+                if (curState == RUNNINGS) {
+                    unload(oldNode, vm);
+                }
             }
         }
     }
@@ -176,6 +359,7 @@ public class SimpleConfiguration implements Configuration, Cloneable {
                 hosted[i].remove(n.hashCode());
             }
             nodesByState[curState + IDX_SHIFT].remove(n);
+            unload(n);
         }
         return true;
     }
@@ -183,11 +367,12 @@ public class SimpleConfiguration implements Configuration, Cloneable {
     @Override
     public void addOnline(Node n) {
         if (nodeState.get(n.hashCode()) != ONLINES) {
-            hosted[RUNNINGS + IDX_SHIFT].put(n.hashCode(), new SimpleManagedElementSet<VirtualMachine>());
-            hosted[SLEEPINGS + IDX_SHIFT].put(n.hashCode(), new SimpleManagedElementSet<VirtualMachine>());
+            hosted[RUNNINGS + IDX_SHIFT].put(n.hashCode(), new IndexedManagedElementSet<VirtualMachine>(registry));
+            hosted[SLEEPINGS + IDX_SHIFT].put(n.hashCode(), new IndexedManagedElementSet<VirtualMachine>(registry));
         }
         this.allNodes.add(n);
         switchState(n, ONLINES);
+        checkOverload(n);
 
     }
 
@@ -212,9 +397,10 @@ public class SimpleConfiguration implements Configuration, Cloneable {
         if (isUsed(n)) {
             return false;
         }
-        hosted[RUNNINGS + IDX_SHIFT].put(n.hashCode(), new SimpleManagedElementSet<VirtualMachine>());
-        hosted[SLEEPINGS + IDX_SHIFT].put(n.hashCode(), new SimpleManagedElementSet<VirtualMachine>());
+        hosted[RUNNINGS + IDX_SHIFT].put(n.hashCode(), new IndexedManagedElementSet<VirtualMachine>(registry));
+        hosted[SLEEPINGS + IDX_SHIFT].put(n.hashCode(), new IndexedManagedElementSet<VirtualMachine>(registry));
         allNodes.add(n);
+        unload(n);
         return switchState(n, OFFLINES);
     }
 
@@ -256,7 +442,7 @@ public class SimpleConfiguration implements Configuration, Cloneable {
 
     @Override
     public ManagedElementSet<VirtualMachine> getRunnings(ManagedElementSet<Node> ns) {
-        ManagedElementSet<VirtualMachine> vms = new SimpleManagedElementSet<VirtualMachine>();
+        ManagedElementSet<VirtualMachine> vms = new IndexedManagedElementSet<VirtualMachine>(registry);
         for (Node n : ns) {
             vms.addAll(getRunnings(n));
         }
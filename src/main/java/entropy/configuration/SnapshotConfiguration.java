@@ -0,0 +1,740 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.configuration;
+
+import gnu.trove.impl.Constants;
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A read-only view on a columnar snapshot of a configuration.
+ * The snapshot is a buffer, typically a memory-mapped file, that is read
+ * without any parsing: the resources, the states and the locations of the elements
+ * are stored in columns of integers, and the names in a dictionary that is decoded
+ * on demand.
+ * <p/>
+ * The first modification of the configuration makes a {@link SimpleConfiguration}
+ * from the snapshot. All the following operations are then delegated to it.
+ * A clone of an unmodified view shares the snapshot.
+ * <p/>
+ * Layout of a snapshot, big-endian:
+ * <ul>
+ * <li>the header: {@link #MAGIC}, {@link #VERSION}, the number of nodes, the number of
+ * virtual machines, the size of the node lookup table, the size of the virtual machine lookup table,
+ * the size of the name dictionary in bytes</li>
+ * <li>the node resource columns: number of CPUs, CPU capacity, memory capacity</li>
+ * <li>the virtual machine resource columns: number of CPUs, CPU consumption, memory consumption,
+ * CPU demand, memory demand</li>
+ * <li>the virtual machine location column: the index of the hosting node, {@code -1} for a waiting virtual machine</li>
+ * <li>the index of the first virtual machine hosted by each node, and the number of running ones.
+ * The running then the sleeping virtual machines of a node are contiguous,
+ * the waiting virtual machines are at the end</li>
+ * <li>the node and the virtual machine lookup tables, that associate the hashcode of a name to an index</li>
+ * <li>the offsets of the names in the dictionary. Nodes first, then virtual machines</li>
+ * <li>the state columns of the nodes and the virtual machines, one byte per element</li>
+ * <li>the name dictionary, in UTF-8</li>
+ * </ul>
+ * The view is not thread-safe.
+ *
+ * @author Fabien Hermenier
+ */
+public class SnapshotConfiguration implements Configuration, Cloneable {
+
+    /**
+     * The first integer of a snapshot.
+     */
+    public static final int MAGIC = 0x454e5453;
+
+    /**
+     * The version of the layout.
+     */
+    public static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 7;
+
+    private static final int NIL = -1;
+
+    private static final byte ONLINE = 1;
+
+    private static final byte OFFLINE = 2;
+
+    private static final byte RUNNING = 1;
+
+    private static final byte SLEEPING = 2;
+
+    private static final byte WAITING = 3;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The columns of the snapshot, shared with the clones.
+     */
+    private final Snapshot snap;
+
+    /**
+     * The modifiable copy of the snapshot, once a modification occurred.
+     */
+    private Configuration copy;
+
+    /**
+     * Make a view on a snapshot.
+     *
+     * @param buf the buffer that contains the snapshot, from its current position
+     * @throws IllegalArgumentException if the buffer does not contain a snapshot
+     */
+    public SnapshotConfiguration(ByteBuffer buf) {
+        this.snap = new Snapshot(buf);
+    }
+
+    private SnapshotConfiguration(Snapshot snap) {
+        this.snap = snap;
+    }
+
+    /**
+     * Indicates whether the snapshot was copied following a modification.
+     *
+     * @return {@code true} if the view is no longer backed by the snapshot
+     */
+    public boolean isCopied() {
+        return copy != null;
+    }
+
+    /**
+     * Get the configuration to modify, copy the snapshot if needed.
+     *
+     * @return the copy of the snapshot
+     */
+    private Configuration writable() {
+        if (copy == null) {
+            Configuration c = new SimpleConfiguration();
+            for (int i = 0; i < snap.nbNodes; i++) {
+                if (snap.nodeStates.get(i) == ONLINE) {
+                    c.addOnline(snap.node(i));
+                } else {
+                    c.addOffline(snap.node(i));
+                }
+            }
+            for (int i = 0; i < snap.nbVMs; i++) {
+                byte st = snap.vmStates.get(i);
+                if (st == RUNNING) {
+                    c.setRunOn(snap.vm(i), snap.node(snap.vmHost.get(i)));
+                } else if (st == SLEEPING) {
+                    c.setSleepOn(snap.vm(i), snap.node(snap.vmHost.get(i)));
+                } else {
+                    c.addWaiting(snap.vm(i));
+                }
+            }
+            copy = c;
+        }
+        return copy;
+    }
+
+    @Override
+    public boolean setRunOn(VirtualMachine vm, Node node) {
+        return writable().setRunOn(vm, node);
+    }
+
+    @Override
+    public boolean setSleepOn(VirtualMachine vm, Node node) {
+        return writable().setSleepOn(vm, node);
+    }
+
+    @Override
+    public void addWaiting(VirtualMachine vm) {
+        writable().addWaiting(vm);
+    }
+
+    @Override
+    public void remove(VirtualMachine vm) {
+        writable().remove(vm);
+    }
+
+    @Override
+    public boolean remove(Node n) {
+        return writable().remove(n);
+    }
+
+    @Override
+    public void addOnline(Node node) {
+        writable().addOnline(node);
+    }
+
+    @Override
+    public boolean addOffline(Node node) {
+        return writable().addOffline(node);
+    }
+
+    private ManagedElementSet<Node> nodes(byte state) {
+        ManagedElementSet<Node> res = new SimpleManagedElementSet<Node>();
+        for (int i = 0; i < snap.nbNodes; i++) {
+            if (snap.nodeStates.get(i) == state) {
+                res.add(snap.node(i));
+            }
+        }
+        return res;
+    }
+
+    private ManagedElementSet<VirtualMachine> vms(int from, int to, byte state) {
+        ManagedElementSet<VirtualMachine> res = new SimpleManagedElementSet<VirtualMachine>();
+        for (int i = from; i < to; i++) {
+            if (snap.vmStates.get(i) == state) {
+                res.add(snap.vm(i));
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public ManagedElementSet<Node> getOnlines() {
+        return copy != null ? copy.getOnlines() : nodes(ONLINE);
+    }
+
+    @Override
+    public ManagedElementSet<Node> getOfflines() {
+        return copy != null ? copy.getOfflines() : nodes(OFFLINE);
+    }
+
+    @Override
+    public ManagedElementSet<VirtualMachine> getRunnings() {
+        return copy != null ? copy.getRunnings() : vms(0, snap.hostedStart.get(snap.nbNodes), RUNNING);
+    }
+
+    @Override
+    public ManagedElementSet<VirtualMachine> getSleepings() {
+        return copy != null ? copy.getSleepings() : vms(0, snap.hostedStart.get(snap.nbNodes), SLEEPING);
+    }
+
+    @Override
+    public ManagedElementSet<VirtualMachine> getWaitings() {
+        return copy != null ? copy.getWaitings() : vms(snap.hostedStart.get(snap.nbNodes), snap.nbVMs, WAITING);
+    }
+
+    @Override
+    public ManagedElementSet<VirtualMachine> getSleepings(Node n) {
+        if (copy != null) {
+            return copy.getSleepings(n);
+        }
+        int id = snap.nodeIndex(n);
+        if (id == NIL) {
+            return null;
+        }
+        return vms(snap.hostedStart.get(id) + snap.nbRunnings.get(id), snap.hostedStart.get(id + 1), SLEEPING);
+    }
+
+    @Override
+    public ManagedElementSet<VirtualMachine> getRunnings(Node n) {
+        if (copy != null) {
+            return copy.getRunnings(n);
+        }
+        int id = snap.nodeIndex(n);
+        if (id == NIL) {
+            return null;
+        }
+        int from = snap.hostedStart.get(id);
+        return vms(from, from + snap.nbRunnings.get(id), RUNNING);
+    }
+
+    @Override
+    public ManagedElementSet<VirtualMachine> getRunnings(ManagedElementSet<Node> ns) {
+        if (copy != null) {
+            return copy.getRunnings(ns);
+        }
+        ManagedElementSet<VirtualMachine> res = new SimpleManagedElementSet<VirtualMachine>();
+        for (Node n : ns) {
+            int id = snap.nodeIndex(n);
+            if (id != NIL) {
+                int from = snap.hostedStart.get(id);
+                for (int i = from; i < from + snap.nbRunnings.get(id); i++) {
+                    res.add(snap.vm(i));
+                }
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public ManagedElementSet<VirtualMachine> getAllVirtualMachines() {
+        if (copy != null) {
+            return copy.getAllVirtualMachines();
+        }
+        ManagedElementSet<VirtualMachine> res = new SimpleManagedElementSet<VirtualMachine>();
+        for (int i = 0; i < snap.nbVMs; i++) {
+            res.add(snap.vm(i));
+        }
+        return res;
+    }
+
+    @Override
+    public ManagedElementSet<Node> getAllNodes() {
+        if (copy != null) {
+            return copy.getAllNodes();
+        }
+        ManagedElementSet<Node> res = new SimpleManagedElementSet<Node>();
+        for (int i = 0; i < snap.nbNodes; i++) {
+            res.add(snap.node(i));
+        }
+        return res;
+    }
+
+    @Override
+    public Node getSleepingLocation(VirtualMachine vm) {
+        return isSleeping(vm) ? getLocation(vm) : null;
+    }
+
+    @Override
+    public Node getRunningLocation(VirtualMachine vm) {
+        return isRunning(vm) ? getLocation(vm) : null;
+    }
+
+    @Override
+    public Node getLocation(VirtualMachine vm) {
+        if (copy != null) {
+            return copy.getLocation(vm);
+        }
+        int id = snap.vmIndex(vm);
+        if (id == NIL || snap.vmStates.get(id) == WAITING) {
+            return null;
+        }
+        return snap.node(snap.vmHost.get(id));
+    }
+
+    private int stateOf(Node n) {
+        int id = snap.nodeIndex(n);
+        return id == NIL ? 0 : snap.nodeStates.get(id);
+    }
+
+    private int stateOf(VirtualMachine vm) {
+        int id = snap.vmIndex(vm);
+        return id == NIL ? 0 : snap.vmStates.get(id);
+    }
+
+    @Override
+    public boolean isOnline(Node n) {
+        return copy != null ? copy.isOnline(n) : stateOf(n) == ONLINE;
+    }
+
+    @Override
+    public boolean isOffline(Node n) {
+        return copy != null ? copy.isOffline(n) : stateOf(n) == OFFLINE;
+    }
+
+    @Override
+    public boolean isRunning(VirtualMachine vm) {
+        return copy != null ? copy.isRunning(vm) : stateOf(vm) == RUNNING;
+    }
+
+    @Override
+    public boolean isWaiting(VirtualMachine vm) {
+        return copy != null ? copy.isWaiting(vm) : stateOf(vm) == WAITING;
+    }
+
+    @Override
+    public boolean isSleeping(VirtualMachine vm) {
+        return copy != null ? copy.isSleeping(vm) : stateOf(vm) == SLEEPING;
+    }
+
+    @Override
+    public Configuration clone() {
+        if (copy != null) {
+            return copy.clone();
+        }
+        return new SnapshotConfiguration(snap);
+    }
+
+    @Override
+    public boolean contains(Node n) {
+        return copy != null ? copy.contains(n) : snap.nodeIndex(n) != NIL;
+    }
+
+    @Override
+    public boolean contains(VirtualMachine vm) {
+        return copy != null ? copy.contains(vm) : snap.vmIndex(vm) != NIL;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null) {
+            return false;
+        } else if (o == this) {
+            return true;
+        } else if (o instanceof Configuration) {
+            Configuration ref = (Configuration) o;
+            if (!ref.getOfflines().equals(getOfflines())
+                    || !ref.getOnlines().equals(getOnlines())
+                    || !ref.getWaitings().equals(getWaitings())) {
+                return false;
+            }
+            for (Node n : ref.getOnlines()) {
+                if (!ref.getRunnings(n).equals(getRunnings(n))
+                        || !ref.getSleepings(n).equals(getSleepings(n))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Textual representation of the configuration.
+     *
+     * @return the textual representation
+     */
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder();
+        for (Node n : getAllNodes()) {
+            if (isOffline(n)) {
+                buf.append("(").append(n.getName()).append(")");
+            } else {
+                buf.append(n.getName());
+            }
+            buf.append(":");
+            for (VirtualMachine vm : this.getRunnings(n)) {
+                buf.append(" ");
+                buf.append(vm.getName());
+            }
+            for (VirtualMachine vm : this.getSleepings(n)) {
+                buf.append(" (");
+                buf.append(vm.getName());
+                buf.append(")");
+            }
+            buf.append("\n");
+        }
+        buf.append("FARM");
+        for (VirtualMachine vm : this.getWaitings()) {
+            buf.append(" ");
+            buf.append(vm.getName());
+        }
+        buf.append("\n");
+        return buf.toString();
+    }
+
+    /**
+     * Write the snapshot of a configuration.
+     *
+     * @param cfg the configuration
+     * @param o   the stream to write on. It is flushed but not closed
+     * @throws IOException if an error occurred while writing
+     */
+    public static void write(Configuration cfg, OutputStream o) throws IOException {
+        List<Node> nodes = new ArrayList<Node>(cfg.getOnlines());
+        int nbOnlines = nodes.size();
+        nodes.addAll(cfg.getOfflines());
+        int nbNodes = nodes.size();
+
+        TObjectIntHashMap<String> nodeIdx = new TObjectIntHashMap<String>(Math.max(nbNodes, 1), Constants.DEFAULT_LOAD_FACTOR, NIL);
+        List<VirtualMachine> vms = new ArrayList<VirtualMachine>();
+        int[] hostedStart = new int[nbNodes + 1];
+        int[] nbRunnings = new int[nbNodes];
+        for (int i = 0; i < nbNodes; i++) {
+            Node n = nodes.get(i);
+            nodeIdx.put(n.getName(), i);
+            hostedStart[i] = vms.size();
+            if (i < nbOnlines) {
+                ManagedElementSet<VirtualMachine> runs = cfg.getRunnings(n);
+                nbRunnings[i] = runs.size();
+                vms.addAll(runs);
+                vms.addAll(cfg.getSleepings(n));
+            }
+        }
+        hostedStart[nbNodes] = vms.size();
+        vms.addAll(cfg.getWaitings());
+        int nbVMs = vms.size();
+
+        byte[][] names = new byte[nbNodes + nbVMs][];
+        int nameBytes = 0;
+        for (int i = 0; i < names.length; i++) {
+            names[i] = (i < nbNodes ? nodes.get(i).getName() : vms.get(i - nbNodes).getName()).getBytes(UTF8);
+            nameBytes += names[i].length;
+        }
+        int[] nodeTable = table(nodes);
+        int[] vmTable = table(vms);
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(o));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(nbNodes);
+        out.writeInt(nbVMs);
+        out.writeInt(nodeTable.length);
+        out.writeInt(vmTable.length);
+        out.writeInt(nameBytes);
+
+        for (Node n : nodes) {
+            out.writeInt(n.getNbOfCPUs());
+        }
+        for (Node n : nodes) {
+            out.writeInt(n.getCPUCapacity());
+        }
+        for (Node n : nodes) {
+            out.writeInt(n.getMemoryCapacity());
+        }
+
+        for (VirtualMachine vm : vms) {
+            out.writeInt(vm.getNbOfCPUs());
+        }
+        for (VirtualMachine vm : vms) {
+            out.writeInt(vm.getCPUConsumption());
+        }
+        for (VirtualMachine vm : vms) {
+            out.writeInt(vm.getMemoryConsumption());
+        }
+        for (VirtualMachine vm : vms) {
+            out.writeInt(vm.getCPUDemand());
+        }
+        for (VirtualMachine vm : vms) {
+            out.writeInt(vm.getMemoryDemand());
+        }
+
+        for (int i = 0; i < nbVMs; i++) {
+            out.writeInt(i < hostedStart[nbNodes] ? nodeIdx.get(cfg.getLocation(vms.get(i)).getName()) : NIL);
+        }
+        for (int x : hostedStart) {
+            out.writeInt(x);
+        }
+        for (int x : nbRunnings) {
+            out.writeInt(x);
+        }
+        for (int x : nodeTable) {
+            out.writeInt(x);
+        }
+        for (int x : vmTable) {
+            out.writeInt(x);
+        }
+
+        int offset = 0;
+        for (byte[] name : names) {
+            out.writeInt(offset);
+            offset += name.length;
+        }
+        out.writeInt(offset);
+
+        for (int i = 0; i < nbNodes; i++) {
+            out.writeByte(i < nbOnlines ? ONLINE : OFFLINE);
+        }
+        for (int i = 0; i < nbVMs; i++) {
+            VirtualMachine vm = vms.get(i);
+            if (i >= hostedStart[nbNodes]) {
+                out.writeByte(WAITING);
+            } else {
+                out.writeByte(cfg.isRunning(vm) ? RUNNING : SLEEPING);
+            }
+        }
+        for (byte[] name : names) {
+            out.write(name);
+        }
+        out.flush();
+    }
+
+    private static int mix(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Make an open-addressing table that associates the hashcode of the name
+     * of each element to its index plus one.
+     */
+    private static int[] table(List<? extends ManagedElement> elems) {
+        int[] table = new int[Integer.highestOneBit(Math.max(elems.size(), 1)) * 4];
+        int mask = table.length - 1;
+        for (int i = 0; i < elems.size(); i++) {
+            int x = mix(elems.get(i).getName().hashCode()) & mask;
+            while (table[x] != 0) {
+                x = (x + 1) & mask;
+            }
+            table[x] = i + 1;
+        }
+        return table;
+    }
+
+    /**
+     * The columns of a snapshot.
+     */
+    private static final class Snapshot {
+
+        private final int nbNodes;
+
+        private final int nbVMs;
+
+        private final IntBuffer nodeCPUs, nodeCPUCapacity, nodeMemCapacity;
+
+        private final IntBuffer vmCPUs, vmCPUConsumption, vmMemConsumption, vmCPUDemand, vmMemDemand;
+
+        private final IntBuffer vmHost;
+
+        private final IntBuffer hostedStart, nbRunnings;
+
+        private final IntBuffer nodeTable, vmTable;
+
+        private final IntBuffer nameOffsets;
+
+        private final ByteBuffer nodeStates, vmStates;
+
+        private final ByteBuffer names;
+
+        /**
+         * The elements and the names already decoded.
+         */
+        private Node[] nodeCache;
+
+        private VirtualMachine[] vmCache;
+
+        private String[] nameCache;
+
+        private int pos;
+
+        private final ByteBuffer buf;
+
+        private Snapshot(ByteBuffer b) {
+            buf = b;
+            pos = b.position();
+            if (b.remaining() < HEADER_SIZE * 4) {
+                throw new IllegalArgumentException("Not a snapshot: too short");
+            }
+            IntBuffer header = ints(HEADER_SIZE);
+            if (header.get(0) != MAGIC) {
+                throw new IllegalArgumentException("Not a snapshot: bad magic number");
+            }
+            if (header.get(1) != VERSION) {
+                throw new IllegalArgumentException("Unsupported snapshot version: " + header.get(1));
+            }
+            nbNodes = header.get(2);
+            nbVMs = header.get(3);
+            int nodeTableSize = header.get(4);
+            int vmTableSize = header.get(5);
+            int nameBytes = header.get(6);
+            try {
+                nodeCPUs = ints(nbNodes);
+                nodeCPUCapacity = ints(nbNodes);
+                nodeMemCapacity = ints(nbNodes);
+                vmCPUs = ints(nbVMs);
+                vmCPUConsumption = ints(nbVMs);
+                vmMemConsumption = ints(nbVMs);
+                vmCPUDemand = ints(nbVMs);
+                vmMemDemand = ints(nbVMs);
+                vmHost = ints(nbVMs);
+                hostedStart = ints(nbNodes + 1);
+                nbRunnings = ints(nbNodes);
+                nodeTable = ints(nodeTableSize);
+                vmTable = ints(vmTableSize);
+                nameOffsets = ints(nbNodes + nbVMs + 1);
+                nodeStates = bytes(nbNodes);
+                vmStates = bytes(nbVMs);
+                names = bytes(nameBytes);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Not a snapshot: truncated content");
+            }
+        }
+
+        /**
+         * Get a region of the buffer and move after it.
+         */
+        private ByteBuffer bytes(int size) {
+            ByteBuffer b = buf.duplicate();
+            b.limit(pos + size);
+            b.position(pos);
+            pos += size;
+            return b.slice();
+        }
+
+        private IntBuffer ints(int size) {
+            return bytes(size * 4).asIntBuffer();
+        }
+
+        private String name(int i) {
+            if (nameCache == null) {
+                nameCache = new String[nbNodes + nbVMs];
+            }
+            String n = nameCache[i];
+            if (n == null) {
+                int from = nameOffsets.get(i);
+                byte[] b = new byte[nameOffsets.get(i + 1) - from];
+                ByteBuffer d = names.duplicate();
+                d.position(from);
+                d.get(b);
+                n = new String(b, UTF8);
+                nameCache[i] = n;
+            }
+            return n;
+        }
+
+        private Node node(int i) {
+            if (nodeCache == null) {
+                nodeCache = new Node[nbNodes];
+            }
+            Node n = nodeCache[i];
+            if (n == null) {
+                n = new SimpleNode(name(i), nodeCPUs.get(i), nodeCPUCapacity.get(i), nodeMemCapacity.get(i));
+                nodeCache[i] = n;
+            }
+            return n;
+        }
+
+        private VirtualMachine vm(int i) {
+            if (vmCache == null) {
+                vmCache = new VirtualMachine[nbVMs];
+            }
+            VirtualMachine vm = vmCache[i];
+            if (vm == null) {
+                vm = new SimpleVirtualMachine(name(nbNodes + i), vmCPUs.get(i), vmCPUConsumption.get(i),
+                        vmMemConsumption.get(i), vmCPUDemand.get(i), vmMemDemand.get(i));
+                vmCache[i] = vm;
+            }
+            return vm;
+        }
+
+        /**
+         * Look for the index of an element using its name.
+         *
+         * @param table the lookup table
+         * @param base  the index of the first name of the kind of element
+         * @param name  the name of the element
+         * @return its index or {@link #NIL}
+         */
+        private int lookup(IntBuffer table, int base, String name) {
+            int mask = table.limit() - 1;
+            for (int i = mix(name.hashCode()) & mask; ; i = (i + 1) & mask) {
+                int x = table.get(i) - 1;
+                if (x < 0) {
+                    return NIL;
+                } else if (name(base + x).equals(name)) {
+                    return x;
+                }
+            }
+        }
+
+        private int nodeIndex(Node n) {
+            return lookup(nodeTable, 0, n.getName());
+        }
+
+        private int vmIndex(VirtualMachine vm) {
+            return lookup(vmTable, nbNodes, vm.getName());
+        }
+    }
+}
@@ -32,6 +32,8 @@ import entropy.configuration.DefaultConfiguration;
  * <ul>
  * <li>{@link PlainTextConfigurationSerializer}: File extension must be {@value #PLAIN_TEXT_EXTENSION}. </li>
  * <li>{@link ProtobufConfigurationSerializer}: File extension must be {@value #PROTOBUF_EXTENSION}. </li>
+ * <li>{@link StreamedProtobufConfigurationSerializer}: File extension must be {@value #STREAMED_PROTOBUF_EXTENSION}. </li>
+ * <li>{@link SnapshotConfigurationSerializer}: File extension must be {@value #SNAPSHOT_EXTENSION}. </li>
  * </ul>
  *
  * @author Fabien Hermenier
@@ -48,6 +50,16 @@ public final class FileConfigurationSerializerFactory {
      */
     public static final String PROTOBUF_EXTENSION = ".pbd";
 
+    /**
+     * File extension to specify a storage using a stream of protobuf messages.
+     */
+    public static final String STREAMED_PROTOBUF_EXTENSION = ".pbs";
+
+    /**
+     * File extension to specify a storage using a memory-mappable snapshot.
+     */
+    public static final String SNAPSHOT_EXTENSION = ".snp";
+
     /**
      * File extension to specify a storage using plain text.
      */
@@ -115,6 +127,10 @@ public final class FileConfigurationSerializerFactory {
             return PlainTextConfigurationSerializer.getInstance();
         } else if (path.endsWith(PROTOBUF_EXTENSION)) {
             return ProtobufConfigurationSerializer.getInstance();
+        } else if (path.endsWith(STREAMED_PROTOBUF_EXTENSION)) {
+            return StreamedProtobufConfigurationSerializer.getInstance();
+        } else if (path.endsWith(SNAPSHOT_EXTENSION)) {
+            return SnapshotConfigurationSerializer.getInstance();
         }
         return null;
     }
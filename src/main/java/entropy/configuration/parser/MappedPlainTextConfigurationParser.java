@@ -0,0 +1,577 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.configuration.parser;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import entropy.configuration.DenseConfiguration;
+import entropy.configuration.ElementRegistry;
+import entropy.configuration.SimpleNode;
+import entropy.configuration.SimpleVirtualMachine;
+
+/**
+ * A parser for the plain text format of {@link PlainTextConfigurationSerializer}
+ * dedicated to large configurations. The file is read through memory-mapped buffers
+ * and the lines are tokenized in place. The elements are directly registered into
+ * the registry of a {@link DenseConfiguration}, so a virtual machine and its name are
+ * the only objects allocated for it.
+ * <p/>
+ * Names are decoded using the default charset, like {@link PlainTextConfigurationSerializer}
+ * writes them. A parser is not thread-safe but it may be reused.
+ *
+ * @author Fabien Hermenier
+ */
+public final class MappedPlainTextConfigurationParser {
+
+    /**
+     * The maximum size of a mapped region of the file.
+     */
+    private static final int WINDOW = 1 << 30;
+
+    private static final int NONE = 0;
+
+    private static final int NODES = 1;
+
+    private static final int VMS = 2;
+
+    private static final int CONFIG = 3;
+
+    private static final byte[] LIST_NODES = ascii(PlainTextConfigurationSerializer.LIST_NODES);
+
+    private static final byte[] LIST_VMS = ascii(PlainTextConfigurationSerializer.LIST_VMS);
+
+    private static final byte[] START_CONFIG = ascii(PlainTextConfigurationSerializer.CONFIG);
+
+    private static final byte[] END_CONFIG = ascii(PlainTextConfigurationSerializer.END_CONFIG);
+
+    private static final byte[] START_PLAN = ascii(PlainTextConfigurationSerializer.START_PLAN);
+
+    private static final byte[] FARM = ascii(PlainTextConfigurationSerializer.FARM);
+
+    private static final byte SEP = ' ';
+
+    private ByteBuffer buf;
+
+    private ElementRegistry registry;
+
+    private DenseConfiguration cfg;
+
+    private NameTable vms;
+
+    private NameTable nodes;
+
+    private int section;
+
+    /**
+     * Indicates whether the end of the configuration was reached.
+     */
+    private boolean done;
+
+    /**
+     * The bounds of the tokens in the current line.
+     */
+    private int[] starts = new int[16];
+
+    private int[] ends = new int[16];
+
+    private int nbTokens;
+
+    private static byte[] ascii(String s) {
+        byte[] b = new byte[s.length()];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) s.charAt(i);
+        }
+        return b;
+    }
+
+    /**
+     * Read a configuration from a file.
+     *
+     * @param path the file
+     * @return the configuration
+     * @throws IOException if an error occurred while reading the file
+     * @throws ConfigurationSerializerException
+     *                     if an error occurred while parsing the file
+     */
+    public DenseConfiguration read(String path) throws IOException, ConfigurationSerializerException {
+        RandomAccessFile f = new RandomAccessFile(path, "r");
+        try {
+            FileChannel ch = f.getChannel();
+            long size = ch.size();
+            reset();
+            long pos = 0;
+            while (pos < size && !done) {
+                long len = Math.min(WINDOW, size - pos);
+                //A region ends at the last complete line, the next one starts there
+                int consumed = parse(ch.map(FileChannel.MapMode.READ_ONLY, pos, len), pos + len == size);
+                if (consumed == 0) {
+                    throw new ConfigurationSerializerException("Line too long at offset " + pos);
+                }
+                pos += consumed;
+            }
+            return result();
+        } finally {
+            f.close();
+        }
+    }
+
+    /**
+     * Parse a configuration stored in a buffer.
+     *
+     * @param b the buffer. Its content is parsed from its current position to its limit
+     * @return the configuration
+     * @throws ConfigurationSerializerException
+     *          if an error occurred while parsing the buffer
+     */
+    public DenseConfiguration parse(ByteBuffer b) throws ConfigurationSerializerException {
+        reset();
+        parse(b, true);
+        return result();
+    }
+
+    private void reset() {
+        registry = new ElementRegistry();
+        cfg = null;
+        vms = new NameTable();
+        nodes = new NameTable();
+        section = NONE;
+        done = false;
+    }
+
+    private DenseConfiguration result() {
+        DenseConfiguration res = configuration();
+        buf = null;
+        cfg = null;
+        vms = null;
+        nodes = null;
+        return res;
+    }
+
+    /**
+     * Get the configuration to fulfill. It is made once the elements are declared
+     * so the arrays are sized accordingly.
+     */
+    private DenseConfiguration configuration() {
+        if (cfg == null) {
+            cfg = new DenseConfiguration(registry);
+        }
+        return cfg;
+    }
+
+    /**
+     * Parse the lines of a buffer.
+     *
+     * @param b    the buffer
+     * @param last {@code true} if the buffer ends the input
+     * @return the number of bytes consumed. Only complete lines are consumed if it is not the last buffer
+     */
+    private int parse(ByteBuffer b, boolean last) throws ConfigurationSerializerException {
+        buf = b;
+        int from = b.position();
+        int limit = b.limit();
+        int start = from;
+        for (int i = from; i < limit && !done; i++) {
+            if (b.get(i) == '\n') {
+                line(start, i);
+                start = i + 1;
+            }
+        }
+        if (done) {
+            return limit - from;
+        }
+        if (last && start < limit) {
+            line(start, limit);
+            start = limit;
+        }
+        return start - from;
+    }
+
+    private void line(int s, int e) throws ConfigurationSerializerException {
+        if (e > s && buf.get(e - 1) == '\r') {
+            e--;
+        }
+        if (e == s) {
+            return;
+        }
+        if (buf.get(s) == '#') {
+            if (equals(s, e, END_CONFIG) || startsWith(s, e, START_PLAN)) {
+                done = true;
+                return;
+            } else if (startsWith(s, e, LIST_NODES)) {
+                section = NODES;
+                return;
+            } else if (startsWith(s, e, LIST_VMS)) {
+                section = VMS;
+                return;
+            } else if (startsWith(s, e, START_CONFIG)) {
+                section = CONFIG;
+                return;
+            }
+        }
+        tokenize(s, e);
+        switch (section) {
+            case NODES:
+                readNode(s, e);
+                break;
+            case VMS:
+                readVirtualMachine(s, e);
+                break;
+            case CONFIG:
+                readPlacement();
+                break;
+            default:
+                throw new ConfigurationSerializerException("Unrecognized characters: " + string(s, e));
+        }
+    }
+
+    private void tokenize(int s, int e) {
+        nbTokens = 0;
+        int i = s;
+        while (i < e) {
+            while (i < e && buf.get(i) == SEP) {
+                i++;
+            }
+            if (i == e) {
+                break;
+            }
+            if (nbTokens == starts.length) {
+                starts = Arrays.copyOf(starts, nbTokens * 2);
+                ends = Arrays.copyOf(ends, nbTokens * 2);
+            }
+            starts[nbTokens] = i;
+            while (i < e && buf.get(i) != SEP) {
+                i++;
+            }
+            ends[nbTokens++] = i;
+        }
+    }
+
+    private void readNode(int s, int e) throws ConfigurationSerializerException {
+        if (nbTokens != PlainTextConfigurationSerializer.NODE_NB_TOKENS) {
+            throw new ConfigurationSerializerException("'" + string(s, e) + "' should have 4 tokens");
+        }
+        int nbCPU = integer(PlainTextConfigurationSerializer.NODE_NB_CPU_IDX, s, e);
+        int capaCPU = integer(PlainTextConfigurationSerializer.NODE_CAPA_CPU_IDX, s, e);
+        int capaMem = integer(PlainTextConfigurationSerializer.NODE_CAPA_MEM_IDX, s, e);
+        if (nbCPU <= 0 || capaCPU < 0 || capaMem < 0) {
+            throw new ConfigurationSerializerException("Incorrect value for '" + string(s, e) + "'. all numbers must be positive");
+        }
+        String name = token(PlainTextConfigurationSerializer.NODE_NAME_IDX);
+        int id = registry.register(new SimpleNode(name, nbCPU, capaCPU, capaMem));
+        nodes.put(name, id);
+    }
+
+    private void readVirtualMachine(int s, int e) throws ConfigurationSerializerException {
+        if (nbTokens < PlainTextConfigurationSerializer.VM_NB_MIN_TOKENS) {
+            throw new ConfigurationSerializerException("'" + string(s, e) + "' should have at lease "
+                    + PlainTextConfigurationSerializer.VM_NB_MIN_TOKENS + " tokens");
+        }
+        int nbCPU = integer(PlainTextConfigurationSerializer.VM_NB_CPU_IDX, s, e);
+
+        int t = PlainTextConfigurationSerializer.VM_CONSO_CPU_IDX;
+        int sep = demandSeparator(t);
+        int consoCPU = integer(starts[t], sep < 0 ? ends[t] : sep, s, e);
+        int needCPU = sep < 0 ? consoCPU : integer(sep + 2, ends[t], s, e);
+
+        t = PlainTextConfigurationSerializer.VM_CONSO_MEM_IDX;
+        sep = demandSeparator(t);
+        int consoMem = integer(starts[t], sep < 0 ? ends[t] : sep, s, e);
+        int needMem = sep < 0 ? consoMem : integer(sep + 2, ends[t], s, e);
+
+        if (nbCPU <= 0 || consoCPU < 0 || consoMem < 0) {
+            throw new ConfigurationSerializerException("Incorrect value for '" + string(s, e) + "'. all numbers must be positive");
+        }
+        String name = token(PlainTextConfigurationSerializer.VM_NAME_IDX);
+        int id = registry.register(new SimpleVirtualMachine(name, nbCPU, consoCPU, consoMem, needCPU, needMem));
+        vms.put(name, id);
+    }
+
+    private void readPlacement() throws ConfigurationSerializerException {
+        DenseConfiguration c = configuration();
+        int s = starts[0];
+        int e = ends[0];
+        if (equals(s, e, FARM)) {
+            for (int i = 1; i < nbTokens; i++) {
+                c.addWaiting(vmId(starts[i], ends[i]));
+            }
+        } else if (buf.get(s) == '(') {
+            c.addOffline(nodeId(s + 1, closing(s, e)));
+        } else {
+            int n = nodeId(s, e);
+            c.addOnline(n);
+            for (int i = 1; i < nbTokens; i++) {
+                s = starts[i];
+                e = ends[i];
+                if (buf.get(s) == '(') {
+                    c.setSleepOn(vmId(s + 1, closing(s, e)), n);
+                } else {
+                    c.setRunOn(vmId(s, e), n);
+                }
+            }
+        }
+    }
+
+    private int vmId(int s, int e) throws ConfigurationSerializerException {
+        int id = vms.get(buf, s, e);
+        if (id == ElementRegistry.NO_ID) {
+            throw new ConfigurationSerializerException("VirtualMachine '" + string(s, e) + "' is unknown");
+        }
+        return id;
+    }
+
+    private int nodeId(int s, int e) throws ConfigurationSerializerException {
+        int id = nodes.get(buf, s, e);
+        if (id == ElementRegistry.NO_ID) {
+            throw new ConfigurationSerializerException("Node '" + string(s, e) + "' is unknown");
+        }
+        return id;
+    }
+
+    /**
+     * Get the position of the closing parenthesis in a token.
+     */
+    private int closing(int s, int e) {
+        for (int i = s + 1; i < e; i++) {
+            if (buf.get(i) == ')') {
+                return i;
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Get the position of the demand separator in a token.
+     *
+     * @return the position, {@code -1} if there is no separator
+     */
+    private int demandSeparator(int t) {
+        for (int i = starts[t]; i < ends[t] - 1; i++) {
+            if (buf.get(i) == '-' && buf.get(i + 1) == '>') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int integer(int t, int s, int e) throws ConfigurationSerializerException {
+        return integer(starts[t], ends[t], s, e);
+    }
+
+    /**
+     * Parse an integer.
+     *
+     * @param from the position of the first byte
+     * @param to   the position after the last byte
+     * @param s    the start of the line, for the error message
+     * @param e    the end of the line, for the error message
+     */
+    private int integer(int from, int to, int s, int e) throws ConfigurationSerializerException {
+        int i = from;
+        boolean neg = false;
+        if (i < to && buf.get(i) == '-') {
+            neg = true;
+            i++;
+        }
+        if (i == to) {
+            throw new ConfigurationSerializerException("Unable to read an integer in '" + string(s, e) + "'");
+        }
+        long v = 0;
+        for (; i < to; i++) {
+            int d = buf.get(i) - '0';
+            if (d < 0 || d > 9) {
+                throw new ConfigurationSerializerException("Unable to read an integer in '" + string(s, e) + "'");
+            }
+            v = v * 10 + d;
+            if (v > Integer.MAX_VALUE) {
+                throw new ConfigurationSerializerException("Integer overflow in '" + string(s, e) + "'");
+            }
+        }
+        return (int) (neg ? -v : v);
+    }
+
+    private String token(int t) {
+        return string(starts[t], ends[t]);
+    }
+
+    private String string(int s, int e) {
+        return decode(buf, s, e);
+    }
+
+    /**
+     * Decode a string. ASCII bytes are copied as is, the other strings are decoded
+     * using the default charset.
+     *
+     * @param b the buffer
+     * @param s the position of the first byte
+     * @param e the position after the last byte
+     * @return the decoded string
+     */
+    private static String decode(ByteBuffer b, int s, int e) {
+        char[] cs = new char[e - s];
+        for (int i = 0; i < cs.length; i++) {
+            byte c = b.get(s + i);
+            if (c < 0) {
+                byte[] bs = new byte[e - s];
+                for (int j = 0; j < bs.length; j++) {
+                    bs[j] = b.get(s + j);
+                }
+                return new String(bs, Charset.defaultCharset());
+            }
+            cs[i] = (char) c;
+        }
+        return new String(cs);
+    }
+
+    private boolean equals(int s, int e, byte[] b) {
+        return e - s == b.length && startsWith(s, e, b);
+    }
+
+    private boolean startsWith(int s, int e, byte[] b) {
+        if (e - s < b.length) {
+            return false;
+        }
+        for (int i = 0; i < b.length; i++) {
+            if (buf.get(s + i) != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * An open-addressing table that associates the names of the elements to
+     * their identifier. The lookups are made directly from the bytes of a buffer.
+     */
+    private static final class NameTable {
+
+        /**
+         * The identifier plus one of the element in each slot, {@code 0} for an empty slot.
+         */
+        private int[] slots = new int[1024];
+
+        private String[] names = new String[1024];
+
+        private int size;
+
+        private static int hash(int h) {
+            return h ^ (h >>> 16);
+        }
+
+        /**
+         * Add an element if there is no element with the same name.
+         *
+         * @param name the name of the element
+         * @param id   its identifier
+         */
+        void put(String name, int id) {
+            if ((size + 1) * 2 > slots.length) {
+                rehash();
+            }
+            int mask = slots.length - 1;
+            for (int i = hash(name.hashCode()) & mask; ; i = (i + 1) & mask) {
+                int x = slots[i] - 1;
+                if (x < 0) {
+                    slots[i] = id + 1;
+                    if (id >= names.length) {
+                        names = Arrays.copyOf(names, Math.max(id + 1, names.length * 2));
+                    }
+                    names[id] = name;
+                    size++;
+                    return;
+                } else if (names[x].equals(name)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Get the identifier of an element.
+         *
+         * @param b the buffer that contains the name
+         * @param s the position of the first byte of the name
+         * @param e the position after the last byte of the name
+         * @return the identifier, {@link ElementRegistry#NO_ID} if the element is unknown
+         */
+        int get(ByteBuffer b, int s, int e) {
+            //For an ASCII name, same hashcode as the name decoded into a String
+            int h = 0;
+            for (int i = s; i < e; i++) {
+                byte c = b.get(i);
+                if (c < 0) {
+                    return get(decode(b, s, e));
+                }
+                h = 31 * h + c;
+            }
+            int mask = slots.length - 1;
+            for (int i = hash(h) & mask; ; i = (i + 1) & mask) {
+                int x = slots[i] - 1;
+                if (x < 0) {
+                    return ElementRegistry.NO_ID;
+                } else if (matches(names[x], b, s, e)) {
+                    return x;
+                }
+            }
+        }
+
+        private int get(String name) {
+            int mask = slots.length - 1;
+            for (int i = hash(name.hashCode()) & mask; ; i = (i + 1) & mask) {
+                int x = slots[i] - 1;
+                if (x < 0) {
+                    return ElementRegistry.NO_ID;
+                } else if (names[x].equals(name)) {
+                    return x;
+                }
+            }
+        }
+
+        private static boolean matches(String name, ByteBuffer b, int s, int e) {
+            if (name.length() != e - s) {
+                return false;
+            }
+            for (int i = 0; i < name.length(); i++) {
+                if (name.charAt(i) != (b.get(s + i) & 0xff)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void rehash() {
+            int[] old = slots;
+            slots = new int[old.length * 2];
+            int mask = slots.length - 1;
+            for (int x : old) {
+                if (x != 0) {
+                    int i = hash(names[x - 1].hashCode()) & mask;
+                    while (slots[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    slots[i] = x;
+                }
+            }
+        }
+    }
+}
@@ -28,6 +28,7 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 
 import entropy.configuration.Configuration;
+import entropy.configuration.DenseConfiguration;
 import entropy.configuration.ManagedElementSet;
 import entropy.configuration.Node;
 import entropy.configuration.SimpleConfiguration;
@@ -40,6 +41,8 @@ import entropy.configuration.VirtualMachine;
 /**
  * Serialize and un-serialize a configuration from/to a plain text format, human readable.
  * Mostly the original format of a configuration.
+ * <p/>
+ * Large files should be read using {@link #readMapped(String)}.
  *
  * @author Fabien Hermenier
  */
@@ -224,6 +227,20 @@ public final class PlainTextConfigurationSerializer extends FileConfigurationSer
         return conf;
     }
 
+    /**
+     * Read a configuration from a file through memory-mapped buffers.
+     * This is dedicated to large configurations, see {@link MappedPlainTextConfigurationParser}.
+     *
+     * @param path the file
+     * @return the configuration
+     * @throws IOException if an error occurred while reading the file
+     * @throws ConfigurationSerializerException
+     *                     if an error occurred while parsing the file
+     */
+    public DenseConfiguration readMapped(String path) throws IOException, ConfigurationSerializerException {
+        return new MappedPlainTextConfigurationParser().read(path);
+    }
+
     @Override
     public Configuration unSerialize(InputStream in) throws IOException, ConfigurationSerializerException {
         return unSerialize(new BufferedReader(new InputStreamReader(in)));
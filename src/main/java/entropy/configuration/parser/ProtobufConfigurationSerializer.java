@@ -67,18 +67,18 @@ public final class ProtobufConfigurationSerializer extends FileConfigurationSeri
         }
     }
 
-    private DefaultVirtualMachine convert(PBVirtualMachine.VirtualMachine pbVM) {
+    DefaultVirtualMachine convert(PBVirtualMachine.VirtualMachine pbVM) {
         DefaultVirtualMachine vm2 = new DefaultVirtualMachine(pbVM.getName(), pbVM.getNbOfCPUs(), pbVM.getCpuConsumption(), pbVM.getMemoryConsumption());
         vm2.setCPUNeed(pbVM.getCpuDemand());
         vm2.setMemoryNeed(pbVM.getMemoryDemand());
         return vm2;
     }
 
-    private DefaultNode convert(PBNode.Node pbNode) {
+    DefaultNode convert(PBNode.Node pbNode) {
         return new DefaultNode(pbNode.getName(), pbNode.getNbOfCPUs(), pbNode.getCpuCapacity(), pbNode.getMemoryCapacity());
     }
 
-    private PBNode.Node convert(Node n) {
+    PBNode.Node convert(Node n) {
         PBNode.Node.Builder b2 = PBNode.Node.newBuilder();
         b2.setName(n.getName());
         b2.setNbOfCPUs(n.getNbOfCPUs());
@@ -87,7 +87,7 @@ public final class ProtobufConfigurationSerializer extends FileConfigurationSeri
         return b2.build();
     }
 
-    private PBVirtualMachine.VirtualMachine convert(VirtualMachine vm) {
+    PBVirtualMachine.VirtualMachine convert(VirtualMachine vm) {
         PBVirtualMachine.VirtualMachine.Builder b2 = PBVirtualMachine.VirtualMachine.newBuilder();
         b2.setName(vm.getName());
         b2.setNbOfCPUs(vm.getNbOfCPUs());
@@ -114,26 +114,36 @@ public final class ProtobufConfigurationSerializer extends FileConfigurationSeri
             cfg.addWaiting(vm2);
         }
         for (PBConfiguration.Configuration.Hoster h : c.getOnlinesList()) {
-            PBNode.Node n = h.getNode();
-            DefaultNode n2 = convert(n);
-            cfg.addOnline(n2);
-            for (PBConfiguration.Configuration.Hosted hosted : h.getHostedList()) {
-                PBConfiguration.Configuration.HostedVMState st = hosted.getState();
-                PBVirtualMachine.VirtualMachine vm = hosted.getVm();
-                DefaultVirtualMachine vm2 = convert(vm);
-                switch (st) {
-                    case RUNNING:
-                        cfg.setRunOn(vm2, n2);
-                        break;
-                    case SLEEPING:
-                        cfg.setSleepOn(vm2, n2);
-                        break;
-                }
-            }
+            convert(h, cfg);
         }
         return cfg;
     }
 
+    /**
+     * Add an online node and its hosted virtual machines into a configuration.
+     *
+     * @param h   the node and its hosted virtual machines
+     * @param cfg the configuration to fulfill
+     */
+    void convert(PBConfiguration.Configuration.Hoster h, Configuration cfg) {
+        PBNode.Node n = h.getNode();
+        DefaultNode n2 = convert(n);
+        cfg.addOnline(n2);
+        for (PBConfiguration.Configuration.Hosted hosted : h.getHostedList()) {
+            PBConfiguration.Configuration.HostedVMState st = hosted.getState();
+            PBVirtualMachine.VirtualMachine vm = hosted.getVm();
+            DefaultVirtualMachine vm2 = convert(vm);
+            switch (st) {
+                case RUNNING:
+                    cfg.setRunOn(vm2, n2);
+                    break;
+                case SLEEPING:
+                    cfg.setSleepOn(vm2, n2);
+                    break;
+            }
+        }
+    }
+
     public PBConfiguration.Configuration convert(Configuration cfg) {
         PBConfiguration.Configuration.Builder b = PBConfiguration.Configuration.newBuilder();
         for (Node n : cfg.getOfflines()) {
@@ -143,26 +153,37 @@ public final class ProtobufConfigurationSerializer extends FileConfigurationSeri
             b.addWaitings(convert(vm));
         }
         for (Node n : cfg.getOnlines()) {
-            PBNode.Node n2 = convert(n);
-            PBConfiguration.Configuration.Hoster.Builder hoster = PBConfiguration.Configuration.Hoster.newBuilder();
-            hoster.setNode(n2);
-            for (VirtualMachine vm : cfg.getRunnings(n)) {
-                PBConfiguration.Configuration.Hosted.Builder hosted = PBConfiguration.Configuration.Hosted.newBuilder();
-                hosted.setState(PBConfiguration.Configuration.HostedVMState.RUNNING);
-                PBVirtualMachine.VirtualMachine vm2 = convert(vm);
-                hosted.setVm(vm2);
-                hoster.addHosted(hosted.build());
-            }
-
-            for (VirtualMachine vm : cfg.getSleepings(n)) {
-                PBConfiguration.Configuration.Hosted.Builder hosted = PBConfiguration.Configuration.Hosted.newBuilder();
-                hosted.setState(PBConfiguration.Configuration.HostedVMState.SLEEPING);
-                PBVirtualMachine.VirtualMachine vm2 = convert(vm);
-                hosted.setVm(vm2);
-                hoster.addHosted(hosted.build());
-            }
-            b.addOnlines(hoster.build());
+            b.addOnlines(convert(cfg, n));
         }
         return b.build();
     }
+
+    /**
+     * Convert an online node and its hosted virtual machines.
+     *
+     * @param cfg the configuration
+     * @param n   the online node
+     * @return the resulting message
+     */
+    PBConfiguration.Configuration.Hoster convert(Configuration cfg, Node n) {
+        PBNode.Node n2 = convert(n);
+        PBConfiguration.Configuration.Hoster.Builder hoster = PBConfiguration.Configuration.Hoster.newBuilder();
+        hoster.setNode(n2);
+        for (VirtualMachine vm : cfg.getRunnings(n)) {
+            PBConfiguration.Configuration.Hosted.Builder hosted = PBConfiguration.Configuration.Hosted.newBuilder();
+            hosted.setState(PBConfiguration.Configuration.HostedVMState.RUNNING);
+            PBVirtualMachine.VirtualMachine vm2 = convert(vm);
+            hosted.setVm(vm2);
+            hoster.addHosted(hosted.build());
+        }
+
+        for (VirtualMachine vm : cfg.getSleepings(n)) {
+            PBConfiguration.Configuration.Hosted.Builder hosted = PBConfiguration.Configuration.Hosted.newBuilder();
+            hosted.setState(PBConfiguration.Configuration.HostedVMState.SLEEPING);
+            PBVirtualMachine.VirtualMachine vm2 = convert(vm);
+            hosted.setVm(vm2);
+            hoster.addHosted(hosted.build());
+        }
+        return hoster.build();
+    }
 }
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.configuration.parser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import entropy.configuration.Configuration;
+import entropy.configuration.SnapshotConfiguration;
+
+/**
+ * Serialize and un-serialize a configuration from/to a columnar snapshot.
+ * When the snapshot is read from a file, the file is memory-mapped and the
+ * resulting {@link SnapshotConfiguration} reads it without any parsing.
+ * See {@link SnapshotConfiguration} for the layout.
+ *
+ * @author Fabien Hermenier
+ */
+public final class SnapshotConfigurationSerializer extends FileConfigurationSerializer {
+
+    /**
+     * The instance of the singleton.
+     */
+    private static final SnapshotConfigurationSerializer INSTANCE = new SnapshotConfigurationSerializer();
+
+    /**
+     * Private constructor, managed by the singleton.
+     */
+    private SnapshotConfigurationSerializer() {
+    }
+
+    /**
+     * Get the unique instance.
+     *
+     * @return an instance
+     */
+    public static SnapshotConfigurationSerializer getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public void serialize(Configuration cfg, OutputStream out) throws IOException {
+        SnapshotConfiguration.write(cfg, out);
+    }
+
+    /**
+     * Un-serialize a snapshot.
+     * The content of a file stream is memory-mapped from its current position, other
+     * streams are read entirely.
+     *
+     * @param in the stream to read
+     * @return a {@link SnapshotConfiguration}
+     * @throws IOException if an error occurred while reading the stream
+     * @throws ConfigurationSerializerException
+     *                     if the stream does not contain a snapshot
+     */
+    @Override
+    public Configuration unSerialize(InputStream in) throws IOException, ConfigurationSerializerException {
+        ByteBuffer buf;
+        if (in instanceof FileInputStream) {
+            FileChannel ch = ((FileInputStream) in).getChannel();
+            buf = ch.map(FileChannel.MapMode.READ_ONLY, ch.position(), ch.size() - ch.position());
+        } else {
+            ByteArrayOutputStream bout = new ByteArrayOutputStream();
+            byte[] b = new byte[8192];
+            int nb = in.read(b);
+            while (nb >= 0) {
+                bout.write(b, 0, nb);
+                nb = in.read(b);
+            }
+            buf = ByteBuffer.wrap(bout.toByteArray());
+        }
+        try {
+            return new SnapshotConfiguration(buf);
+        } catch (IllegalArgumentException e) {
+            throw new ConfigurationSerializerException(e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.configuration.parser;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+
+import entropy.configuration.Configuration;
+import entropy.configuration.DefaultConfiguration;
+import entropy.configuration.ManagedElementSet;
+import entropy.configuration.Node;
+import entropy.configuration.VirtualMachine;
+
+/**
+ * Serialize and un-serialize a configuration from/to a stream of
+ * Google Protocol buffers messages. Contrary to {@link ProtobufConfigurationSerializer},
+ * the configuration is never converted into a single message, so only one node
+ * and its hosted virtual machines are in memory at once.
+ * <p/>
+ * The stream is made of three sections: the online nodes, the offline nodes
+ * and the waiting virtual machines. Each section starts with its number of messages
+ * and each message is prefixed by its length:
+ * <ul>
+ * <li>the online nodes are {@code PBConfiguration.Configuration.Hoster} messages</li>
+ * <li>the offline nodes are {@code PBNode.Node} messages</li>
+ * <li>the waiting virtual machines are {@code PBVirtualMachine.VirtualMachine} messages</li>
+ * </ul>
+ * The online nodes may be parsed in parallel by chunks of {@value #CHUNK_SIZE} messages
+ * using {@link #unSerialize(InputStream, int)}.
+ *
+ * @author Fabien Hermenier
+ */
+public final class StreamedProtobufConfigurationSerializer extends FileConfigurationSerializer {
+
+    /**
+     * The number of online nodes parsed by a worker at once.
+     */
+    public static final int CHUNK_SIZE = 256;
+
+    /**
+     * The instance of the singleton.
+     */
+    private static final StreamedProtobufConfigurationSerializer INSTANCE = new StreamedProtobufConfigurationSerializer();
+
+    /**
+     * Private constructor, managed by the singleton.
+     */
+    private StreamedProtobufConfigurationSerializer() {
+    }
+
+    /**
+     * Get the unique instance.
+     *
+     * @return an instance
+     */
+    public static StreamedProtobufConfigurationSerializer getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public void serialize(Configuration cfg, OutputStream out) throws IOException {
+        ProtobufConfigurationSerializer pb = ProtobufConfigurationSerializer.getInstance();
+        CodedOutputStream o = CodedOutputStream.newInstance(out);
+
+        ManagedElementSet<Node> onlines = cfg.getOnlines();
+        o.writeRawVarint32(onlines.size());
+        for (Node n : onlines) {
+            write(o, pb.convert(cfg, n));
+        }
+
+        ManagedElementSet<Node> offlines = cfg.getOfflines();
+        o.writeRawVarint32(offlines.size());
+        for (Node n : offlines) {
+            write(o, pb.convert(n));
+        }
+
+        ManagedElementSet<VirtualMachine> waitings = cfg.getWaitings();
+        o.writeRawVarint32(waitings.size());
+        for (VirtualMachine vm : waitings) {
+            write(o, pb.convert(vm));
+        }
+        o.flush();
+    }
+
+    private static void write(CodedOutputStream o, MessageLite m) throws IOException {
+        o.writeRawVarint32(m.getSerializedSize());
+        m.writeTo(o);
+    }
+
+    /**
+     * Read the next message of the stream.
+     *
+     * @param in the stream
+     * @return the bytes of the message
+     */
+    private static byte[] next(CodedInputStream in) throws IOException {
+        byte[] b = in.readRawBytes(in.readRawVarint32());
+        //The stream is not bounded
+        in.resetSizeCounter();
+        return b;
+    }
+
+    @Override
+    public Configuration unSerialize(InputStream in) throws IOException, ConfigurationSerializerException {
+        return unSerialize(in, 1);
+    }
+
+    /**
+     * Un-serialize a configuration. The online nodes may be parsed in parallel.
+     *
+     * @param in        the stream to read
+     * @param nbWorkers the number of threads used to parse the online nodes. {@code 1} to parse
+     *                  them in the current thread
+     * @return the configuration
+     * @throws IOException if an error occurred while reading the stream
+     * @throws ConfigurationSerializerException
+     *                     if an error occurred while parsing the stream
+     */
+    public Configuration unSerialize(InputStream in, int nbWorkers) throws IOException, ConfigurationSerializerException {
+        ProtobufConfigurationSerializer pb = ProtobufConfigurationSerializer.getInstance();
+        CodedInputStream cin = CodedInputStream.newInstance(in);
+        Configuration cfg = new DefaultConfiguration();
+        try {
+            int nb = cin.readRawVarint32();
+            if (nbWorkers > 1) {
+                readOnlines(cin, nb, nbWorkers, cfg);
+            } else {
+                for (int i = 0; i < nb; i++) {
+                    pb.convert(PBConfiguration.Configuration.Hoster.parseFrom(next(cin)), cfg);
+                }
+            }
+
+            nb = cin.readRawVarint32();
+            for (int i = 0; i < nb; i++) {
+                cfg.addOffline(pb.convert(PBNode.Node.parseFrom(next(cin))));
+            }
+
+            nb = cin.readRawVarint32();
+            for (int i = 0; i < nb; i++) {
+                cfg.addWaiting(pb.convert(PBVirtualMachine.VirtualMachine.parseFrom(next(cin))));
+            }
+        } catch (InvalidProtocolBufferException e) {
+            throw new ConfigurationSerializerException(e);
+        }
+        return cfg;
+    }
+
+    /**
+     * Read a configuration from a file. The online nodes may be parsed in parallel.
+     *
+     * @param path      the file
+     * @param nbWorkers the number of threads used to parse the online nodes
+     * @return the configuration
+     * @throws IOException if an error occurred while reading the file
+     * @throws ConfigurationSerializerException
+     *                     if an error occurred while parsing the file
+     */
+    public Configuration read(String path, int nbWorkers) throws IOException, ConfigurationSerializerException {
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(path));
+            return unSerialize(in, nbWorkers);
+        } finally {
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Parse the online nodes in parallel. The messages are read by chunks in the current
+     * thread and parsed by the workers. The chunks are then added into the configuration
+     * in their original order. At most two chunks per worker are pending.
+     */
+    private void readOnlines(CodedInputStream cin, int nb, int nbWorkers, Configuration cfg) throws IOException, ConfigurationSerializerException {
+        ProtobufConfigurationSerializer pb = ProtobufConfigurationSerializer.getInstance();
+        ExecutorService exec = Executors.newFixedThreadPool(nbWorkers);
+        LinkedList<Future<List<PBConfiguration.Configuration.Hoster>>> pending = new LinkedList<Future<List<PBConfiguration.Configuration.Hoster>>>();
+        try {
+            int read = 0;
+            while (read < nb || !pending.isEmpty()) {
+                while (read < nb && pending.size() < 2 * nbWorkers) {
+                    final byte[][] chunk = new byte[Math.min(CHUNK_SIZE, nb - read)][];
+                    for (int i = 0; i < chunk.length; i++) {
+                        chunk[i] = next(cin);
+                    }
+                    read += chunk.length;
+                    pending.add(exec.submit(new Callable<List<PBConfiguration.Configuration.Hoster>>() {
+                        @Override
+                        public List<PBConfiguration.Configuration.Hoster> call() throws InvalidProtocolBufferException {
+                            List<PBConfiguration.Configuration.Hoster> res = new ArrayList<PBConfiguration.Configuration.Hoster>(chunk.length);
+                            for (byte[] b : chunk) {
+                                res.add(PBConfiguration.Configuration.Hoster.parseFrom(b));
+                            }
+                            return res;
+                        }
+                    }));
+                }
+                for (PBConfiguration.Configuration.Hoster h : pending.removeFirst().get()) {
+                    pb.convert(h, cfg);
+                }
+            }
+        } catch (ExecutionException e) {
+            throw new ConfigurationSerializerException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConfigurationSerializerException(e);
+        } finally {
+            exec.shutdownNow();
+        }
+    }
+}
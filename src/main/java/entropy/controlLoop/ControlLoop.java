@@ -91,6 +91,17 @@ public abstract class ControlLoop {
      */
     public abstract boolean runLoop();
 
+    /**
+     * Wait before the next iteration of the loop.
+     * By default, the loop waits for the whole delay.
+     *
+     * @param delay the maximum delay in milliseconds
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void waitNextIteration(long delay) throws InterruptedException {
+        Thread.sleep(delay);
+    }
+
 
     /**
      * Log a configuration into a file.
@@ -28,9 +28,12 @@ import entropy.PropertiesHelper;
 import entropy.PropertiesHelperException;
 import entropy.execution.TimedReconfigurationExecuter;
 import entropy.execution.driver.DriverFactory;
+import entropy.execution.driver.SSHSessionPool;
 import entropy.monitoring.Monitor;
+import entropy.plan.AdaptivePlanningBudget;
 import entropy.plan.durationEvaluator.DurationEvaluator;
 import entropy.plan.durationEvaluator.DurationEvaluatorFactory;
+import entropy.plan.durationEvaluator.LearnedDurationEvaluator;
 import entropy.vjob.builder.ConstraintsCalalogBuilderException;
 import entropy.vjob.builder.ConstraintsCatalog;
 import entropy.vjob.builder.ConstraintsCatalogBuilder;
@@ -128,13 +131,42 @@ public class ControlLoopFactory {
         VJobBuilder vJobBuilder = new VJobBuilder(new VJobElementBuilder(vmBuilder), buildConstraintsCatalog());
         DurationEvaluator eval = DurationEvaluatorFactory.readFromProperties(properties);
         VJobsPool pool = new FCFSPersistentQueue(vJobBuilder, new File(properties.getRequiredProperty(CONTROL_LOOP + "." + CUSTOM + ".vjobsPath")));
-        CustomizableControlLoop loop = new CustomizableControlLoop(monitoring, pool, vJobBuilder, eval, new TimedReconfigurationExecuter(new DriverFactory(this.properties)));
+        SSHSessionPool sshPool = new SSHSessionPool(properties.getOptionalProperty(SSHSessionPool.MAX_SESSIONS_PROPERTY, SSHSessionPool.DEFAULT_MAX_SESSIONS),
+                properties.getOptionalProperty(SSHSessionPool.MAX_CHANNELS_PROPERTY, SSHSessionPool.DEFAULT_MAX_CHANNELS),
+                properties.getOptionalProperty(SSHSessionPool.KEEP_ALIVE_PROPERTY, SSHSessionPool.DEFAULT_KEEP_ALIVE));
+        TimedReconfigurationExecuter exec = new TimedReconfigurationExecuter(new DriverFactory(this.properties, sshPool),
+                properties.getOptionalProperty(CONTROL_LOOP + "." + CUSTOM + ".executer.poolSize", TimedReconfigurationExecuter.DEFAULT_POOL_SIZE));
+        exec.setMigrationLimits(properties.getOptionalProperty(CONTROL_LOOP + "." + CUSTOM + ".executer.maxOutgoingMigrations", 0),
+                properties.getOptionalProperty(CONTROL_LOOP + "." + CUSTOM + ".executer.maxIncomingMigrations", 0),
+                properties.getOptionalProperty(CONTROL_LOOP + "." + CUSTOM + ".executer.maxMigrations", 0));
+        if (eval instanceof LearnedDurationEvaluator) {
+            exec.setLearner((LearnedDurationEvaluator) eval);
+        }
+        CustomizableControlLoop loop = new CustomizableControlLoop(monitoring, pool, vJobBuilder, eval, exec);
         loop.setAssignTimeout(properties.getRequiredPropertyAsInt(CONTROL_LOOP + "." + CUSTOM + ".assignTimeout"));
         loop.setPlanTimeout(properties.getRequiredPropertyAsInt(CONTROL_LOOP + "." + CUSTOM + ".planTimeout"));
+        if (properties.getOptionalProperty(CONTROL_LOOP + "." + CUSTOM + ".planTimeout.adaptive", false)) {
+            loop.setPlanningBudget(new AdaptivePlanningBudget(properties.getOptionalProperty(CONTROL_LOOP + "." + CUSTOM + ".planTimeout.min", 5),
+                    loop.getPlanTimeout()));
+        }
         loop.setPartsFile(properties.getRequiredProperty(CONTROL_LOOP + "." + CUSTOM + ".parts"));
         loop.setMasterVJobFile(properties.getRequiredProperty(CONTROL_LOOP + "." + CUSTOM + ".masterVJob"));
         loop.setPredictionStep(properties.getRequiredPropertyAsInt(CONTROL_LOOP + "." + CUSTOM + ".prediction.step"));
         loop.allowReconfiguration(properties.getRequiredPropertyAsBoolean(CONTROL_LOOP + "." + CUSTOM + ".reconfigure"));
+        loop.setMigrationBandwidth(properties.getOptionalProperty(CONTROL_LOOP + "." + CUSTOM + ".network.capacity", 0),
+                properties.getOptionalProperty(CONTROL_LOOP + "." + CUSTOM + ".network.migration", 0));
+        loop.setRefreshDelay(properties.getOptionalProperty(CONTROL_LOOP + "." + CUSTOM + ".refreshDelay", 10));
+        loop.setEventDriven(properties.getOptionalProperty(CONTROL_LOOP + "." + CUSTOM + ".eventDriven", false));
+        loop.setDebounce(properties.getOptionalProperty(CONTROL_LOOP + "." + CUSTOM + ".debounce", 1000));
+        loop.setSkipViable(properties.getOptionalProperty(CONTROL_LOOP + "." + CUSTOM + ".skipViable", false));
+        loop.setPreemptive(properties.getOptionalProperty(CONTROL_LOOP + "." + CUSTOM + ".preemptive", false));
+        loop.setPipelined(properties.getOptionalProperty(CONTROL_LOOP + "." + CUSTOM + ".pipelined", false));
+        loop.setPersistentSnapshots(properties.getOptionalProperty(CONTROL_LOOP + "." + CUSTOM + ".persistentSnapshots", false));
+        loop.setStreamedPlanLogs(properties.getOptionalProperty(CONTROL_LOOP + "." + CUSTOM + ".logs.streamed", false));
+        String journalDir = properties.getOptionalProperty(CONTROL_LOOP + "." + CUSTOM + ".journalDir", (String) null);
+        if (journalDir != null) {
+            loop.setJournal(new Journal(journalDir));
+        }
         return loop;
     }
 
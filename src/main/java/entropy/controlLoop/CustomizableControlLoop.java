@@ -20,11 +20,16 @@ package entropy.controlLoop;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.SynchronousQueue;
 
 import entropy.configuration.Configuration;
 import entropy.configuration.Configurations;
@@ -32,20 +37,27 @@ import entropy.configuration.DefaultConfiguration;
 import entropy.configuration.DefaultManagedElementSet;
 import entropy.configuration.ManagedElementSet;
 import entropy.configuration.Node;
+import entropy.configuration.PersistentConfiguration;
 import entropy.configuration.VirtualMachine;
 import entropy.decision.AssignmentException;
 import entropy.decision.predictor.TendencyBasedDecisionModule;
 import entropy.execution.TimedReconfigurationExecuter;
 import entropy.monitoring.Monitor;
 import entropy.monitoring.MonitoringException;
+import entropy.plan.AdaptivePlanningBudget;
 import entropy.plan.CustomizablePlannerModule;
 import entropy.plan.PlanException;
+import entropy.plan.SolutionStatistics;
 import entropy.plan.TimedReconfigurationPlan;
+import entropy.plan.TimedReconfigurationPlans;
 import entropy.plan.choco.ChocoCustomRP;
 import entropy.plan.durationEvaluator.DurationEvaluator;
+import entropy.plan.parser.FileTimedReconfigurationPlanSerializerFactory;
 import entropy.plan.parser.PlainTextTimedReconfigurationPlanSerializer;
+import entropy.plan.parser.StreamedTimedReconfigurationPlanSerializer;
 import entropy.vjob.BasicVJob;
 import entropy.vjob.ExplodedSet;
+import entropy.vjob.PlacementConstraint;
 import entropy.vjob.VJob;
 import entropy.vjob.builder.VJobBuilder;
 import entropy.vjob.builder.VJobBuilderException;
@@ -54,6 +66,15 @@ import entropy.vjob.queue.VJobsPool;
 /**
  * A basic control loop where the decision module and the planner module is customizable
  * with several constraints.
+ * <p/>
+ * In the pipelined mode, the plans are executed by a dedicated thread. The loop
+ * hands a plan off to this thread, then monitors and plans the next iteration while it
+ * is executed. This next plan is computed from the configuration projected once the running
+ * plan is terminated, and is executed after it.
+ * <p/>
+ * In the preemptive mode, a refresh that reveals a violation the running plan will not fix
+ * cancels the actions of this plan that are not started. A new plan is computed immediately from
+ * the configuration projected once the started actions are terminated.
  *
  * @author Fabien Hermenier
  */
@@ -116,23 +137,174 @@ public class CustomizableControlLoop extends ControlLoop implements Runnable {
     /**
      * Delay in seconds between two iterations of the loop.
      */
-    private int refreshDelay = 10;
+    private volatile int refreshDelay = 10;
 
     /**
      * Stop the loop ?
      */
-    private boolean stop = false;
+    private volatile boolean stop = false;
 
     /**
      * Indicates the loop is performing a reconfiguration.
      */
-    private boolean isReconfiguring;
+    private volatile boolean isReconfiguring;
 
     /**
      * The plan module to assign the VMs and plan the actions.
      */
     private CustomizablePlannerModule planner;
 
+    /**
+     * The journal of the configurations and the plans. {@code null} to log them into files.
+     */
+    private Journal journal;
+
+    /**
+     * The number of the current iteration.
+     */
+    private long iteration;
+
+    /**
+     * The events that trigger an iteration in the event-driven mode.
+     */
+    private static final Set<LoopEvent> TRIGGERS = EnumSet.of(LoopEvent.VIOLATION, LoopEvent.VJOBS_CHANGED);
+
+    /**
+     * Wait for events between two iterations, instead of the whole delay.
+     */
+    private volatile boolean eventDriven = false;
+
+    /**
+     * The delay in milliseconds to coalesce the events once an iteration is triggered.
+     */
+    private long debounce = 1000;
+
+    /**
+     * The events posted by the refresh of the configuration and the executions of the plans.
+     */
+    private final EventQueue events = new EventQueue();
+
+    /**
+     * Indicates a refresh is requested before the end of the refresh delay.
+     */
+    private boolean refreshRequested;
+
+    /**
+     * Indicates a violation was observed by the last refresh.
+     */
+    private boolean violated;
+
+    /**
+     * The identifiers of the vjobs observed by the last refresh.
+     */
+    private Set<String> lastVJobs;
+
+    /**
+     * Execute the plans in a dedicated thread.
+     */
+    private volatile boolean pipelined = false;
+
+    /**
+     * The hand-off between the planning stage and the execution stage.
+     * A plan is handed off once the previous one is terminated.
+     */
+    private final SynchronousQueue<TimedReconfigurationPlan> plans = new SynchronousQueue<TimedReconfigurationPlan>();
+
+    /**
+     * The thread that executes the plans in the pipelined mode.
+     */
+    private Thread executer;
+
+    /**
+     * The last plan handed off to the execution stage.
+     */
+    private TimedReconfigurationPlan submitted;
+
+    /**
+     * The last plan that was executed.
+     */
+    private volatile TimedReconfigurationPlan completed;
+
+    /**
+     * The latency of the refresh of the configuration and the vjobs.
+     */
+    private final StageStatistics monitoringStats = new StageStatistics("monitoring");
+
+    /**
+     * The latency of the computation of the plans.
+     */
+    private final StageStatistics planningStats = new StageStatistics("planning");
+
+    /**
+     * The latency of the execution of the plans.
+     */
+    private final StageStatistics executionStats = new StageStatistics("execution");
+
+    /**
+     * Cancel the running plan when a violation it will not fix appears.
+     */
+    private volatile boolean preemptive = false;
+
+    /**
+     * The plan in progress.
+     */
+    private volatile TimedReconfigurationPlan executing;
+
+    /**
+     * The started actions of the last cancelled plan, not yet considered by the planning.
+     */
+    private volatile TimedReconfigurationPlan partial;
+
+    /**
+     * The controller of the planning timeout. {@code null} for a fixed timeout.
+     */
+    private AdaptivePlanningBudget budget;
+
+    /**
+     * Skip the planning when the configuration is viable and the constraints are satisfied.
+     */
+    private boolean skipViable = false;
+
+    /**
+     * Log the plans using the streamed format instead of the plain text format.
+     */
+    private boolean streamedPlanLogs = false;
+
+    /**
+     * Store the expected configuration as a {@link PersistentConfiguration} to take the snapshots in constant time.
+     */
+    private boolean persistentSnapshots = false;
+
+    /**
+     * The fingerprint of the expected configuration, computed by the last refresh.
+     */
+    private long currentFingerprint;
+
+    /**
+     * The fingerprint of the configuration checked by the last iteration.
+     */
+    private long lastFingerprint;
+
+    /**
+     * The constraints checked by the last iteration.
+     */
+    private List<PlacementConstraint> lastConstraints = new ArrayList<PlacementConstraint>();
+
+    /**
+     * The result of the last check.
+     */
+    private boolean lastViable;
+
+    /**
+     * The number of iterations that checked the configuration before planning.
+     */
+    private long nbChecks;
+
+    /**
+     * The number of iterations that skipped the planning.
+     */
+    private long nbSkips;
+
     /**
      * Make a new loop.
      *
@@ -171,9 +343,23 @@ public class CustomizableControlLoop extends ControlLoop implements Runnable {
 
             //System.err.println(this.masterVJobFile);
             List<VJob> vjobs;
+            long fp;
             synchronized (refreshLock) {
-                expected = new DefaultConfiguration(currentExpected);
+                expected = persistentSnapshots ? currentExpected.clone() : new DefaultConfiguration(currentExpected);
                 vjobs = new LinkedList<VJob>(currentVJob);
+                fp = currentFingerprint;
+            }
+            TimedReconfigurationPlan running = submitted;
+            TimedReconfigurationPlan started = partial;
+            if (started != null) {
+                partial = null;
+                getLogger().debug("Planning from the configuration projected after the cancelled plan");
+                expected = TimedReconfigurationPlans.project(expected, started);
+                fp = Configurations.fingerprint(expected);
+            } else if (pipelined && running != null && running != completed) {
+                getLogger().debug("Planning from the configuration projected after the running plan");
+                expected = TimedReconfigurationPlans.project(expected, running);
+                fp = Configurations.fingerprint(expected);
             }
 
             builder.getElementBuilder().useConfiguration(expected);
@@ -199,40 +385,196 @@ public class CustomizableControlLoop extends ControlLoop implements Runnable {
                 getLogger().debug("No reconfiguration allowed.");
                 return false;
             }
-            plan = this.planner.compute(expected,
-                    allRunnings,
-                    new DefaultManagedElementSet<VirtualMachine>(),
-                    //expected.getWaitings(),
-                    expected.getSleepings(),
-                    new DefaultManagedElementSet<VirtualMachine>(),
-                    expected.getOnlines(),
-                    expected.getOfflines(),
-                    vjobs);
+            if (skipViable && isViable(expected, fp, vjobs)) {
+                getLogger().info("No reconfiguration is necessary. Planning skipped (skip rate: "
+                        + String.format("%.2f", getSkipRate()) + ")");
+                return false;
+            }
+            AdaptivePlanningBudget budgetCtl = budget;
+            int size = expected.getAllVirtualMachines().size() + expected.getAllNodes().size();
+            if (budgetCtl != null) {
+                planner.setTimeLimit(budgetCtl.getTimeout(size));
+            }
+            long st = System.currentTimeMillis();
+            try {
+                plan = this.planner.compute(expected,
+                        allRunnings,
+                        new DefaultManagedElementSet<VirtualMachine>(),
+                        //expected.getWaitings(),
+                        expected.getSleepings(),
+                        new DefaultManagedElementSet<VirtualMachine>(),
+                        expected.getOnlines(),
+                        expected.getOfflines(),
+                        vjobs);
+            } catch (PlanException e) {
+                //A failed planning only counts as a timeout without solution, its solutions are not a part of the history
+                if (budgetCtl != null) {
+                    budgetCtl.record(size, new ArrayList<SolutionStatistics>(), planner.getSolvingStatistics());
+                }
+                throw e;
+            } finally {
+                planningStats.record(System.currentTimeMillis() - st);
+            }
+            if (budgetCtl != null) {
+                budgetCtl.record(size, planner.getSolutionsStatistics(), planner.getSolvingStatistics());
+            }
             if (plan.size() > 0) {
                 getLogger().debug(plan.size() + " actions to execute:\n" + plan);
-                isReconfiguring = true;
-                exec.start(plan);
-                isReconfiguring = false;
+                if (pipelined) {
+                    plans.put(plan);
+                    submitted = plan;
+                } else {
+                    execute(plan);
+                }
             } else {
                 getLogger().info("No reconfiguration is necessary");
             }
         } catch (PlanException e) {
             getLogger().error(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            getLogger().warn(e.getMessage(), e);
         } finally {
-            if (expected != null) {
+            if (expected != null && journal != null) {
+                journal.append(iteration, timeStamp, expected);
+                if (plan != null && plan.size() > 0) {
+                    journal.append(iteration, timeStamp, plan);
+                }
+            } else if (expected != null) {
+                String src = null;
                 if (getLogger().isDebugEnabled()) {
-                    String file = logConfiguration(expected, timeStamp, "src");
-                    getLogger().info("Source configuration available into '" + file + "'");
+                    src = logConfiguration(expected, timeStamp, "src");
+                    getLogger().info("Source configuration available into '" + src + "'");
                 }
                 if (plan != null && plan.size() > 0) {
-                    String file = logPlan(plan, timeStamp, "plan");
+                    String file = logPlan(plan, timeStamp, "plan", src);
                     getLogger().info("Plan available into '" + file + "'");
                 }
             }
+            iteration++;
+            getLogger().debug(monitoringStats + "; " + planningStats + "; " + executionStats);
         }
         return false;
     }
 
+    /**
+     * Check whether a configuration is viable and satisfies the constraints of the vjobs, so
+     * the planning can be skipped. The check is only performed when the configuration changed or
+     * when the constraints are not equal to the constraints of the last iteration. As the vjobs
+     * are rebuilt at each refresh, the constraints are compared using their definition. The constraints
+     * that do not define their equality are always considered as new ones.
+     * <p/>
+     * The fingerprint of the refreshed configuration is computed by the refresh. Only the iterations
+     * that plan from a projected configuration scan it to compute its fingerprint.
+     *
+     * @param cfg   the configuration
+     * @param fp    the fingerprint of the configuration
+     * @param vjobs the vjobs
+     * @return {@code true} if there is nothing to repair
+     */
+    private boolean isViable(Configuration cfg, long fp, List<VJob> vjobs) {
+        List<PlacementConstraint> cstrs = new ArrayList<PlacementConstraint>();
+        for (VJob v : vjobs) {
+            cstrs.addAll(v.getConstraints());
+        }
+        synchronized (this) {
+            nbChecks++;
+            if (nbChecks == 1 || fp != lastFingerprint || !cstrs.equals(lastConstraints)) {
+                lastViable = !hasViolation(cfg, vjobs);
+                lastFingerprint = fp;
+                lastConstraints = cstrs;
+            }
+            if (lastViable) {
+                nbSkips++;
+            }
+            return lastViable;
+        }
+    }
+
+    /**
+     * Skip the planning when the configuration is viable and the constraints of the vjobs are satisfied.
+     *
+     * @param b {@code true} to skip the planning when there is nothing to repair
+     */
+    public void setSkipViable(boolean b) {
+        this.skipViable = b;
+    }
+
+    /**
+     * Indicates wether the planning is skipped when there is nothing to repair.
+     *
+     * @return {@code true} if the planning may be skipped
+     */
+    public boolean isSkipViable() {
+        return this.skipViable;
+    }
+
+    /**
+     * Set the format of the logged plans.
+     *
+     * @param b {@code true} to use the streamed format with compressed actions,
+     *          {@code false} to use the plain text format
+     */
+    public void setStreamedPlanLogs(boolean b) {
+        this.streamedPlanLogs = b;
+    }
+
+    /**
+     * Indicates whether the plans are logged using the streamed format.
+     *
+     * @return {@code true} for the streamed format, {@code false} for the plain text format
+     */
+    public boolean isStreamedPlanLogs() {
+        return this.streamedPlanLogs;
+    }
+
+    /**
+     * Store the expected configuration as a {@link PersistentConfiguration}, so each iteration
+     * takes its snapshot in constant time. The getters of the snapshots compute the sets of elements
+     * on demand, so this only fits the large configurations.
+     *
+     * @param b {@code true} to use persistent snapshots, {@code false} to copy the configuration at each iteration
+     */
+    public void setPersistentSnapshots(boolean b) {
+        this.persistentSnapshots = b;
+    }
+
+    /**
+     * Indicates whether the snapshots of the expected configuration are persistent.
+     *
+     * @return {@code true} if the snapshots are persistent
+     */
+    public boolean isPersistentSnapshots() {
+        return this.persistentSnapshots;
+    }
+
+    /**
+     * Get the ratio of iterations that skipped the planning.
+     *
+     * @return a ratio between 0 and 1
+     */
+    public synchronized double getSkipRate() {
+        return nbChecks == 0 ? 0 : (double) nbSkips / nbChecks;
+    }
+
+    /**
+     * Execute a plan.
+     *
+     * @param plan the plan to execute
+     */
+    private void execute(TimedReconfigurationPlan plan) {
+        isReconfiguring = true;
+        executing = plan;
+        long st = System.currentTimeMillis();
+        exec.start(plan);
+        executionStats.record(System.currentTimeMillis() - st);
+        executing = null;
+        isReconfiguring = false;
+        completed = plan;
+        if (eventDriven) {
+            planCompleted();
+        }
+    }
+
     /**
      * Set the timeout of the decision module.
      *
@@ -269,6 +611,53 @@ public class CustomizableControlLoop extends ControlLoop implements Runnable {
         return this.planner.getTimeLimit();
     }
 
+    /**
+     * Set the plan module. Its timeout is set to the timeout of the current module.
+     *
+     * @param p the module that computes the plans
+     */
+    public void setPlannerModule(CustomizablePlannerModule p) {
+        p.setTimeLimit(this.planner.getTimeLimit());
+        this.planner = p;
+    }
+
+    /**
+     * Get the plan module.
+     *
+     * @return the module that computes the plans
+     */
+    public CustomizablePlannerModule getPlannerModule() {
+        return this.planner;
+    }
+
+    /**
+     * Pick the timeout of the plan module at each iteration, from the history of the solving processes.
+     *
+     * @param b the controller of the timeout. {@code null} to use the timeout set by {@link #setPlanTimeout(int)}
+     */
+    public void setPlanningBudget(AdaptivePlanningBudget b) {
+        this.budget = b;
+    }
+
+    /**
+     * Get the controller of the timeout of the plan module.
+     *
+     * @return the controller, {@code null} if the timeout is fixed
+     */
+    public AdaptivePlanningBudget getPlanningBudget() {
+        return this.budget;
+    }
+
+    /**
+     * Restrict the number of simultaneous migrations with regards to the network.
+     *
+     * @param capacity  the bandwidth of the network interface of each node. {@code 0} to ignore the network
+     * @param bandwidth the bandwidth consumed by a migration
+     */
+    public void setMigrationBandwidth(int capacity, int bandwidth) {
+        ((ChocoCustomRP) this.planner).setMigrationBandwidth(capacity, bandwidth);
+    }
+
     /**
      * Set the file that contains the different parts of the infrastructure.
      *
@@ -295,6 +684,25 @@ public class CustomizableControlLoop extends ControlLoop implements Runnable {
         this.partsFile = file;
     }
 
+    /**
+     * Store the configurations and the plans into a journal rather than into files.
+     * The journal is closed when the loop is destroyed.
+     *
+     * @param j the journal. {@code null} to log into files
+     */
+    public void setJournal(Journal j) {
+        this.journal = j;
+    }
+
+    /**
+     * Get the journal of the configurations and the plans.
+     *
+     * @return the journal, {@code null} if they are logged into files
+     */
+    public Journal getJournal() {
+        return this.journal;
+    }
+
     public void setPredictionStep(int st) {
         this.decision.setStep(st);
     }
@@ -306,6 +714,100 @@ public class CustomizableControlLoop extends ControlLoop implements Runnable {
     @Override
 	public void destroy() {
         this.stop = true;
+        synchronized (plans) {
+            if (executer != null) {
+                executer.interrupt();
+            }
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (InterruptedException e) {
+                getLogger().warn(e.getMessage(), e);
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Execute the plans in a dedicated thread, while the next iteration is monitored and planned.
+     *
+     * @param b {@code true} to pipeline the executions of the plans
+     */
+    public void setPipelined(boolean b) {
+        synchronized (plans) {
+            this.pipelined = b;
+            if (b && executer == null) {
+                executer = new Thread("executer") {
+                    @Override
+                    public void run() {
+                        while (!stop) {
+                            try {
+                                execute(plans.take());
+                            } catch (InterruptedException e) {
+                                getLogger().debug("Executer interrupted");
+                            }
+                        }
+                    }
+                };
+                executer.setDaemon(true);
+                executer.start();
+            }
+        }
+    }
+
+    /**
+     * Cancel the running plan when a refresh reveals a violation it will not fix.
+     *
+     * @param b {@code true} to allow the cancellation of the plans
+     */
+    public void setPreemptive(boolean b) {
+        this.preemptive = b;
+    }
+
+    /**
+     * Indicates wether the running plan may be cancelled.
+     *
+     * @return {@code true} if the plans are preemptible
+     */
+    public boolean isPreemptive() {
+        return this.preemptive;
+    }
+
+    /**
+     * Indicates wether the plans are executed in a dedicated thread.
+     *
+     * @return {@code true} if the executions of the plans are pipelined
+     */
+    public boolean isPipelined() {
+        return this.pipelined;
+    }
+
+    /**
+     * Get the latency of the refresh of the configuration and the vjobs.
+     *
+     * @return the statistics of the monitoring stage
+     */
+    public StageStatistics getMonitoringStatistics() {
+        return monitoringStats;
+    }
+
+    /**
+     * Get the latency of the computation of the plans.
+     *
+     * @return the statistics of the planning stage
+     */
+    public StageStatistics getPlanningStatistics() {
+        return planningStats;
+    }
+
+    /**
+     * Get the latency of the execution of the plans.
+     *
+     * @return the statistics of the execution stage
+     */
+    public StageStatistics getExecutionStatistics() {
+        return executionStats;
     }
 
     private void makeCurrents() {
@@ -343,6 +845,11 @@ public class CustomizableControlLoop extends ControlLoop implements Runnable {
 
                 partsJob.addVirtualMachines(new ExplodedSet<VirtualMachine>("$ALL", allVMs));
 
+                //Each iteration of the loop takes a snapshot of the configuration, make it cheap
+                if (persistentSnapshots) {
+                    currentExpected = new PersistentConfiguration(currentExpected);
+                }
+
                 vjobs.add(0, partsJob);
 
                 //Add the master vjob at the end of the queue, if it exists
@@ -353,6 +860,7 @@ public class CustomizableControlLoop extends ControlLoop implements Runnable {
 
                 currentVJob.clear();
                 currentVJob.addAll(vjobs);
+                currentFingerprint = Configurations.fingerprint(currentExpected);
             }
         } catch (AssignmentException e) {
             getLogger().error(e.getMessage(), e);
@@ -370,11 +878,19 @@ public class CustomizableControlLoop extends ControlLoop implements Runnable {
         StateAnalyzer analyzer = new StateAnalyzer("analyze.txt");
         while (!stop) {
             try {
-                Thread.sleep(refreshDelay * 1000L);
+                waitRefresh();
+                long st = System.currentTimeMillis();
                 makeCurrents();
+                monitoringStats.record(System.currentTimeMillis() - st);
                 synchronized (this.refreshLock) {
                     analyzer.analyze(currentExpected, currentVJob, isReconfiguring);
                     getLogger().debug("Refreshing expected configuration & vjobs");
+                    if (preemptive) {
+                        checkPreemption();
+                    }
+                    if (eventDriven) {
+                        postEvents();
+                    }
                 }
                 //Wait
             } catch (InterruptedException e) {
@@ -383,6 +899,187 @@ public class CustomizableControlLoop extends ControlLoop implements Runnable {
         }
     }
 
+    /**
+     * Wait for the refresh delay, or for a refresh request.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private void waitRefresh() throws InterruptedException {
+        synchronized (events) {
+            long end = System.currentTimeMillis() + refreshDelay * 1000L;
+            long now = System.currentTimeMillis();
+            while (!refreshRequested && now < end) {
+                events.wait(end - now);
+                now = System.currentTimeMillis();
+            }
+            refreshRequested = false;
+        }
+    }
+
+    /**
+     * Signal the termination of a plan: the configuration is refreshed immediately, and
+     * a violation that remains is considered as a new one.
+     */
+    private void planCompleted() {
+        synchronized (refreshLock) {
+            violated = false;
+        }
+        synchronized (events) {
+            refreshRequested = true;
+            events.notifyAll();
+        }
+        events.post(LoopEvent.PLAN_COMPLETED);
+    }
+
+    /**
+     * Cancel the running plan if the configuration it leads to violates the requirements of the vjobs.
+     * The lock on the configuration must be held.
+     */
+    private void checkPreemption() {
+        TimedReconfigurationPlan p = executing;
+        if (p == null || !hasViolation(TimedReconfigurationPlans.project(currentExpected, p), currentVJob)) {
+            return;
+        }
+        TimedReconfigurationPlan started = exec.cancel();
+        if (started != null) {
+            getLogger().info("Violation not fixed by the running plan. " + (p.size() - started.size())
+                    + " action(s) cancelled");
+            partial = started;
+        }
+    }
+
+    /**
+     * Post the events related to the refreshed configuration and vjobs.
+     * The lock on the configuration must be held.
+     */
+    private void postEvents() {
+        events.post(LoopEvent.CONFIGURATION_CHANGED);
+        Set<String> ids = new HashSet<String>();
+        for (VJob v : currentVJob) {
+            ids.add(v.id());
+        }
+        if (lastVJobs != null && !lastVJobs.equals(ids)) {
+            events.post(LoopEvent.VJOBS_CHANGED);
+        }
+        lastVJobs = ids;
+
+        boolean v = hasViolation(currentExpected, currentVJob);
+        if (v && !violated) {
+            events.post(LoopEvent.VIOLATION);
+        }
+        violated = v;
+    }
+
+    /**
+     * Check whether a configuration violates the requirements of the vjobs: a node is overloaded,
+     * a virtual machine is waiting, or a placement constraint is not satisfied.
+     *
+     * @param cfg   the configuration
+     * @param vjobs the vjobs
+     * @return {@code true} if there is a violation
+     */
+    public static boolean hasViolation(Configuration cfg, List<VJob> vjobs) {
+        if (!cfg.getWaitings().isEmpty() || !Configurations.isFutureViable(cfg)) {
+            return true;
+        }
+        for (VJob v : vjobs) {
+            for (PlacementConstraint c : v.getConstraints()) {
+                if (!c.isSatisfied(cfg)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * In the event-driven mode, wait for a violation or a change in the vjobs, then for the debouncing delay.
+     * Otherwise, wait for the whole delay.
+     *
+     * @param delay the maximum delay in milliseconds
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    @Override
+    public void waitNextIteration(long delay) throws InterruptedException {
+        if (partial != null) {
+            getLogger().debug("Immediate iteration after a cancelled plan");
+            return;
+        }
+        if (!eventDriven) {
+            super.waitNextIteration(delay);
+            return;
+        }
+        Set<LoopEvent> evts = events.await(TRIGGERS, delay, debounce);
+        if (evts.contains(LoopEvent.VIOLATION) || evts.contains(LoopEvent.VJOBS_CHANGED)) {
+            getLogger().debug("Iteration triggered by " + evts);
+        } else {
+            getLogger().debug("Periodic iteration");
+        }
+    }
+
+    /**
+     * Use the event-driven mode or not.
+     *
+     * @param b {@code true} to wait for events between two iterations
+     */
+    public void setEventDriven(boolean b) {
+        this.eventDriven = b;
+    }
+
+    /**
+     * Indicates wether the loop uses the event-driven mode.
+     *
+     * @return {@code true} if the loop waits for events between two iterations
+     */
+    public boolean isEventDriven() {
+        return this.eventDriven;
+    }
+
+    /**
+     * Set the delay to coalesce the events once an iteration is triggered.
+     *
+     * @param ms the delay in milliseconds
+     */
+    public void setDebounce(long ms) {
+        this.debounce = ms;
+    }
+
+    /**
+     * Get the delay to coalesce the events once an iteration is triggered.
+     *
+     * @return a delay in milliseconds
+     */
+    public long getDebounce() {
+        return this.debounce;
+    }
+
+    /**
+     * Set the delay between two refreshes of the configuration and the vjobs.
+     *
+     * @param sec the delay in seconds
+     */
+    public void setRefreshDelay(int sec) {
+        this.refreshDelay = sec;
+    }
+
+    /**
+     * Get the delay between two refreshes of the configuration and the vjobs.
+     *
+     * @return a delay in seconds
+     */
+    public int getRefreshDelay() {
+        return this.refreshDelay;
+    }
+
+    /**
+     * Get the queue of the events of the loop.
+     *
+     * @return the queue
+     */
+    public EventQueue getEvents() {
+        return this.events;
+    }
+
     /**
      * Log a plan into a file.
      * If an error occurs, it is logged at the error level
@@ -393,12 +1090,35 @@ public class CustomizableControlLoop extends ControlLoop implements Runnable {
      * @return the pathname of the log file
      */
     public String logPlan(TimedReconfigurationPlan p, Date timeStamp, String suffix) {
+        return logPlan(p, timeStamp, suffix, null);
+    }
+
+    /**
+     * Log a plan into a file.
+     * The plain text format is used unless {@link #setStreamedPlanLogs(boolean)} selects
+     * the streamed format, with compressed actions.
+     * If an error occurs, it is logged at the error level
+     *
+     * @param p         the plan to store
+     * @param timeStamp the timeStamp for the configuration
+     * @param suffix    the suffix of the log file
+     * @param source    with the streamed format, the path of the logged source configuration of the plan,
+     *                  referenced by the log file relatively to its folder. {@code null} to store the source
+     *                  configuration with the plan
+     * @return the pathname of the log file
+     */
+    public String logPlan(TimedReconfigurationPlan p, Date timeStamp, String suffix, String source) {
         if (getLogsDir() != null) {
             String filename = this.getLogsDir() + "/" + DATE_FORMAT.format(timeStamp) + "/"
-                    + HOUR_FORMAT.format(timeStamp) + "-"
-                    + suffix + ".txt";
+                    + HOUR_FORMAT.format(timeStamp) + "-" + suffix;
             try {
-                PlainTextTimedReconfigurationPlanSerializer.getInstance().write(p, filename);
+                if (streamedPlanLogs) {
+                    filename += FileTimedReconfigurationPlanSerializerFactory.STREAMED_PROTOBUF_EXTENSION;
+                    StreamedTimedReconfigurationPlanSerializer.getInstance().write(p, filename, source, true);
+                } else {
+                    filename += ".txt";
+                    PlainTextTimedReconfigurationPlanSerializer.getInstance().write(p, filename);
+                }
             } catch (Exception e) {
                 getLogger().warn("Unable to store the plan: " + e.getMessage());
             }
@@ -431,6 +1151,7 @@ public class CustomizableControlLoop extends ControlLoop implements Runnable {
                 }
             }
         }
+        Configurations.refreshAggregates(cfg);
     }
 
     /**
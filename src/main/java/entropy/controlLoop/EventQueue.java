@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.controlLoop;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * A queue that coalesces the events posted to a control loop.
+ * <p/>
+ * The events are not stored individually: a same event posted several times
+ * before being consumed is delivered once. The consumer waits for one of the
+ * events it is interested in, then for a debouncing delay to collect the events
+ * that follow, and gets all the pending events at once.
+ *
+ * @author Fabien Hermenier
+ */
+public class EventQueue {
+
+    private final EnumSet<LoopEvent> pending = EnumSet.noneOf(LoopEvent.class);
+
+    private long nbPosted;
+
+    /**
+     * Post an event.
+     *
+     * @param e the event
+     */
+    public synchronized void post(LoopEvent e) {
+        pending.add(e);
+        nbPosted++;
+        notifyAll();
+    }
+
+    /**
+     * Wait for an event.
+     *
+     * @param triggers the events that end the waiting
+     * @param timeout  the maximum waiting time in milliseconds
+     * @param debounce the time to wait in milliseconds once a triggering event is received,
+     *                 to coalesce the events that follow
+     * @return the pending events, that are consumed. If the timeout is reached, they
+     *         do not contain any triggering event
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public synchronized Set<LoopEvent> await(Set<LoopEvent> triggers, long timeout, long debounce) throws InterruptedException {
+        long end = System.currentTimeMillis() + timeout;
+        long now = System.currentTimeMillis();
+        while (!isTriggered(triggers) && now < end) {
+            wait(end - now);
+            now = System.currentTimeMillis();
+        }
+        if (isTriggered(triggers) && debounce > 0) {
+            long quiet = now + debounce;
+            while (now < quiet) {
+                wait(quiet - now);
+                now = System.currentTimeMillis();
+            }
+        }
+        EnumSet<LoopEvent> res = EnumSet.copyOf(pending);
+        pending.clear();
+        return res;
+    }
+
+    private boolean isTriggered(Set<LoopEvent> triggers) {
+        for (LoopEvent e : triggers) {
+            if (pending.contains(e)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the number of posted events.
+     *
+     * @return a positive number
+     */
+    public synchronized long getNbPosted() {
+        return nbPosted;
+    }
+}
@@ -0,0 +1,467 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.controlLoop;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.protobuf.CodedOutputStream;
+
+import entropy.configuration.Configuration;
+import entropy.configuration.ConfigurationDelta;
+import entropy.configuration.Configurations;
+import entropy.configuration.ManagedElementSet;
+import entropy.configuration.Node;
+import entropy.configuration.SimpleConfiguration;
+import entropy.configuration.VirtualMachine;
+import entropy.plan.TimedReconfigurationPlan;
+import entropy.plan.parser.StreamedTimedReconfigurationPlanSerializer;
+
+/**
+ * An append-only journal of the configurations and the plans of a control loop.
+ * <p/>
+ * The configurations are stored as deltas with the previous stored configuration, and
+ * periodically as full snapshots. The plans are stored using the format of
+ * {@link StreamedTimedReconfigurationPlanSerializer}, their source configuration being the
+ * configuration stored for the same iteration.
+ * <p/>
+ * The records are encoded and written by a background thread. The caller only captures
+ * the state of the configurations and puts it into a bounded queue. When the queue is full,
+ * the record is dropped: as the deltas are computed against the last written configuration,
+ * this does not prevent the replay of the following iterations.
+ * <p/>
+ * The records are appended into segment files. A new segment is started once the current one
+ * exceeds a given size. Each segment starts with a snapshot so it can be replayed on its own.
+ * Use {@link JournalReader} to replay a journal.
+ *
+ * @author Fabien Hermenier
+ */
+public class Journal {
+
+    /**
+     * The default number of records that may wait for the writer.
+     */
+    public static final int DEFAULT_QUEUE_SIZE = 64;
+
+    /**
+     * The default number of configurations between two snapshots.
+     */
+    public static final int DEFAULT_SNAPSHOT_PERIOD = 100;
+
+    /**
+     * The default size of the segments in bytes.
+     */
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * The prefix of the segment files.
+     */
+    static final String SEGMENT_PREFIX = "segment-";
+
+    /**
+     * The extension of the segment files.
+     */
+    static final String SEGMENT_EXTENSION = ".jnl";
+
+    static final byte SNAPSHOT = 1;
+
+    static final byte DELTA = 2;
+
+    static final byte PLAN = 3;
+
+    static final byte ONLINE = 1;
+
+    static final byte OFFLINE = 2;
+
+    static final byte RUNNING = 1;
+
+    static final byte SLEEPING = 2;
+
+    static final byte WAITING = 3;
+
+    /**
+     * The reference to the source configuration in the plan records.
+     */
+    static final String PLAN_SOURCE = "journal";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("Journal");
+
+    /**
+     * The marker to stop the writer.
+     */
+    private static final Object END = new Object();
+
+    private final File dir;
+
+    private final int snapshotPeriod;
+
+    private final long segmentSize;
+
+    private final BlockingQueue<Object> queue;
+
+    private final Thread writer;
+
+    private final AtomicInteger dropped = new AtomicInteger();
+
+    private volatile boolean closed;
+
+    /**
+     * The current segment. Only accessed by the writer.
+     */
+    private OutputStream out;
+
+    private int segment;
+
+    private long written;
+
+    /**
+     * The last written configuration. Only accessed by the writer.
+     */
+    private State last;
+
+    private int nbDeltas;
+
+    /**
+     * Make a journal with the default settings.
+     *
+     * @param dir the folder that contains the segments
+     * @throws IOException if the folder can not be created
+     */
+    public Journal(String dir) throws IOException {
+        this(dir, DEFAULT_QUEUE_SIZE, DEFAULT_SNAPSHOT_PERIOD, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Make a journal.
+     * The segments are appended after the existing ones.
+     *
+     * @param dir            the folder that contains the segments
+     * @param queueSize      the number of records that may wait for the writer
+     * @param snapshotPeriod the number of configurations between two snapshots
+     * @param segmentSize    the size in bytes above which a new segment is started
+     * @throws IOException if the folder can not be created
+     */
+    public Journal(String dir, int queueSize, int snapshotPeriod, long segmentSize) throws IOException {
+        this.dir = new File(dir);
+        if (!this.dir.isDirectory() && !this.dir.mkdirs()) {
+            throw new IOException("Unable to create folder '" + this.dir.getAbsolutePath() + "'");
+        }
+        this.snapshotPeriod = snapshotPeriod;
+        this.segmentSize = segmentSize;
+        this.queue = new ArrayBlockingQueue<Object>(queueSize);
+        File[] segments = JournalReader.getSegments(this.dir);
+        segment = segments.length == 0 ? 0 : JournalReader.getSegmentNumber(segments[segments.length - 1]) + 1;
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Append a configuration.
+     *
+     * @param iteration the iteration of the control loop
+     * @param timeStamp the moment of the iteration
+     * @param cfg       the configuration. Its state is captured before the method returns
+     * @return {@code true} if the record is queued, {@code false} if it is dropped
+     */
+    public boolean append(long iteration, Date timeStamp, Configuration cfg) {
+        return offer(new Entry(iteration, timeStamp.getTime(), new State(cfg)));
+    }
+
+    /**
+     * Append a plan. Its source configuration is expected to be appended for the same iteration.
+     *
+     * @param iteration the iteration of the control loop
+     * @param timeStamp the moment of the iteration
+     * @param plan      the plan. It must not be modified after the call
+     * @return {@code true} if the record is queued, {@code false} if it is dropped
+     */
+    public boolean append(long iteration, Date timeStamp, TimedReconfigurationPlan plan) {
+        return offer(new Entry(iteration, timeStamp.getTime(), plan));
+    }
+
+    private boolean offer(Entry e) {
+        if (closed || !queue.offer(e)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Get the number of records dropped as the queue was full.
+     *
+     * @return a positive integer
+     */
+    public int getNbDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Write the queued records then close the journal.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting for the writer
+     */
+    public void close() throws InterruptedException {
+        if (!closed) {
+            closed = true;
+            queue.put(END);
+            writer.join();
+        }
+    }
+
+    /**
+     * The loop of the writer.
+     */
+    private void write() {
+        try {
+            while (true) {
+                Object o = queue.poll();
+                if (o == null) {
+                    //Nothing to do, the time to flush
+                    flush();
+                    o = queue.take();
+                }
+                if (o == END) {
+                    break;
+                }
+                try {
+                    write((Entry) o);
+                } catch (IOException e) {
+                    LOGGER.warn("Unable to write into the journal: " + e.getMessage());
+                    closeSegment();
+                }
+            }
+        } catch (InterruptedException e) {
+            LOGGER.warn("Journal writer interrupted");
+        } finally {
+            closeSegment();
+        }
+    }
+
+    private void flush() {
+        if (out != null) {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to flush the journal: " + e.getMessage());
+                closeSegment();
+            }
+        }
+    }
+
+    private void closeSegment() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to close the journal: " + e.getMessage());
+            }
+            out = null;
+        }
+        //The next segment must start with a snapshot
+        last = null;
+    }
+
+    private void write(Entry e) throws IOException {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        byte type;
+        if (e.plan != null) {
+            type = PLAN;
+            if (out == null) {
+                openSegment();
+            }
+            StreamedTimedReconfigurationPlanSerializer.getInstance().serialize(e.plan, payload, PLAN_SOURCE, true);
+        } else {
+            if (out == null || written >= segmentSize) {
+                closeSegment();
+                openSegment();
+            }
+            CodedOutputStream o = CodedOutputStream.newInstance(payload);
+            if (last == null || nbDeltas >= snapshotPeriod) {
+                type = SNAPSHOT;
+                e.state.writeDelta(null, o);
+                nbDeltas = 0;
+            } else {
+                type = DELTA;
+                e.state.writeDelta(last, o);
+                nbDeltas++;
+            }
+            o.flush();
+            last = e.state;
+        }
+        ByteArrayOutputStream header = new ByteArrayOutputStream(24);
+        CodedOutputStream h = CodedOutputStream.newInstance(header);
+        h.writeRawByte(type);
+        h.writeRawVarint64(e.iteration);
+        h.writeRawLittleEndian64(e.timeStamp);
+        h.writeRawVarint32(payload.size());
+        h.flush();
+        header.writeTo(out);
+        payload.writeTo(out);
+        written += header.size() + payload.size();
+    }
+
+    private void openSegment() throws IOException {
+        File f = new File(dir, String.format("%s%08d%s", SEGMENT_PREFIX, segment++, SEGMENT_EXTENSION));
+        out = new BufferedOutputStream(new FileOutputStream(f));
+        written = 0;
+        last = null;
+    }
+
+    /**
+     * A record waiting for the writer.
+     */
+    private static final class Entry {
+
+        private final long iteration;
+
+        private final long timeStamp;
+
+        private final State state;
+
+        private final TimedReconfigurationPlan plan;
+
+        private Entry(long iteration, long timeStamp, State state) {
+            this.iteration = iteration;
+            this.timeStamp = timeStamp;
+            this.state = state;
+            this.plan = null;
+        }
+
+        private Entry(long iteration, long timeStamp, TimedReconfigurationPlan plan) {
+            this.iteration = iteration;
+            this.timeStamp = timeStamp;
+            this.state = null;
+            this.plan = plan;
+        }
+    }
+
+    /**
+     * The state of a configuration at a given moment.
+     */
+    private static final class State {
+
+        /**
+         * The placement of the elements, compared using {@link Configurations#diff(Configuration, Configuration)}.
+         */
+        private final Configuration cfg;
+
+        /**
+         * The resources of the nodes, as the elements may be modified after the capture.
+         */
+        private final Map<Node, int[]> nodes = new HashMap<Node, int[]>();
+
+        /**
+         * The resources of the virtual machines.
+         */
+        private final Map<VirtualMachine, int[]> vms = new HashMap<VirtualMachine, int[]>();
+
+        private State(Configuration cfg) {
+            this.cfg = cfg.clone();
+            for (Node n : this.cfg.getAllNodes()) {
+                nodes.put(n, new int[]{n.getNbOfCPUs(), n.getCPUCapacity(), n.getMemoryCapacity()});
+            }
+            for (VirtualMachine vm : this.cfg.getAllVirtualMachines()) {
+                vms.put(vm, new int[]{vm.getNbOfCPUs(), vm.getCPUConsumption(), vm.getMemoryConsumption(),
+                        vm.getCPUDemand(), vm.getMemoryDemand()});
+            }
+        }
+
+        /**
+         * Write the difference with a previous state:
+         * the removed virtual machines, the removed nodes, the new or modified nodes then
+         * the new or modified virtual machines.
+         *
+         * @param prev the previous state. {@code null} to write the whole state
+         * @param o    the stream to write on
+         * @throws IOException if an error occurred while writing
+         */
+        private void writeDelta(State prev, CodedOutputStream o) throws IOException {
+            ConfigurationDelta delta = Configurations.diff(prev == null ? new SimpleConfiguration() : prev.cfg, cfg);
+
+            ManagedElementSet<VirtualMachine> removedVMs = delta.getRemovedVirtualMachines();
+            o.writeRawVarint32(removedVMs.size());
+            for (VirtualMachine vm : removedVMs) {
+                o.writeStringNoTag(vm.getName());
+            }
+            ManagedElementSet<Node> removedNodes = delta.getRemovedNodes();
+            o.writeRawVarint32(removedNodes.size());
+            for (Node n : removedNodes) {
+                o.writeStringNoTag(n.getName());
+            }
+
+            ManagedElementSet<Node> changedNodes = delta.getAddedNodes();
+            changedNodes.addAll(delta.getStateChangedNodes());
+            for (Map.Entry<Node, int[]> e : nodes.entrySet()) {
+                if (!Arrays.equals(e.getValue(), prev == null ? null : prev.nodes.get(e.getKey()))) {
+                    changedNodes.add(e.getKey());
+                }
+            }
+            o.writeRawVarint32(changedNodes.size());
+            for (Node n : changedNodes) {
+                o.writeStringNoTag(n.getName());
+                write(cfg.isOnline(n) ? ONLINE : OFFLINE, nodes.get(n), o);
+            }
+
+            ManagedElementSet<VirtualMachine> changedVMs = delta.getAddedVirtualMachines();
+            changedVMs.addAll(delta.getStateChangedVirtualMachines());
+            changedVMs.addAll(delta.getMovedVirtualMachines());
+            for (Map.Entry<VirtualMachine, int[]> e : vms.entrySet()) {
+                if (!Arrays.equals(e.getValue(), prev == null ? null : prev.vms.get(e.getKey()))) {
+                    changedVMs.add(e.getKey());
+                }
+            }
+            o.writeRawVarint32(changedVMs.size());
+            for (VirtualMachine vm : changedVMs) {
+                o.writeStringNoTag(vm.getName());
+                byte st = cfg.isRunning(vm) ? RUNNING : cfg.isSleeping(vm) ? SLEEPING : WAITING;
+                o.writeStringNoTag(st == WAITING ? "" : cfg.getLocation(vm).getName());
+                write(st, vms.get(vm), o);
+            }
+        }
+
+        private static void write(byte state, int[] values, CodedOutputStream o) throws IOException {
+            o.writeRawByte(state);
+            for (int v : values) {
+                o.writeInt32NoTag(v);
+            }
+        }
+    }
+}
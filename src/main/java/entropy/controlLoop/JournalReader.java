@@ -0,0 +1,360 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.controlLoop;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.protobuf.CodedInputStream;
+
+import entropy.configuration.Configuration;
+import entropy.configuration.Node;
+import entropy.configuration.SimpleConfiguration;
+import entropy.configuration.SimpleNode;
+import entropy.configuration.SimpleVirtualMachine;
+import entropy.configuration.VirtualMachine;
+import entropy.plan.DefaultTimedReconfigurationPlan;
+import entropy.plan.TimedReconfigurationPlan;
+import entropy.plan.action.Action;
+import entropy.plan.parser.StreamedPlanReader;
+import entropy.plan.parser.TimedReconfigurationPlanSerializerException;
+
+/**
+ * Replay a journal written by {@link Journal} to rebuild the configuration
+ * or the plan of a given iteration.
+ * <p/>
+ * The replay starts from the last segment that begins before the requested iteration.
+ *
+ * @author Fabien Hermenier
+ */
+public class JournalReader {
+
+    private final File[] segments;
+
+    /**
+     * Make a reader for the journal stored in a folder.
+     *
+     * @param dir the folder that contains the segments
+     */
+    public JournalReader(String dir) {
+        segments = getSegments(new File(dir));
+    }
+
+    /**
+     * Get the segments of a journal, in their writing order.
+     *
+     * @param dir the folder that contains the segments
+     * @return the segments
+     */
+    static File[] getSegments(File dir) {
+        File[] fs = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File d, String name) {
+                return name.startsWith(Journal.SEGMENT_PREFIX) && name.endsWith(Journal.SEGMENT_EXTENSION);
+            }
+        });
+        if (fs == null) {
+            return new File[0];
+        }
+        //Fixed-width numbers, so the lexicographic order is the writing order
+        Arrays.sort(fs);
+        return fs;
+    }
+
+    /**
+     * Get the number of a segment.
+     *
+     * @param f the segment
+     * @return its number
+     */
+    static int getSegmentNumber(File f) {
+        String n = f.getName();
+        return Integer.parseInt(n.substring(Journal.SEGMENT_PREFIX.length(), n.length() - Journal.SEGMENT_EXTENSION.length()));
+    }
+
+    /**
+     * Get the number of segments.
+     *
+     * @return a positive integer
+     */
+    public int getNbSegments() {
+        return segments.length;
+    }
+
+    /**
+     * Get the iterations having a stored configuration.
+     *
+     * @return the iterations, in the writing order
+     * @throws IOException if an error occurred while reading the journal
+     */
+    public List<Long> getIterations() throws IOException {
+        List<Long> its = new ArrayList<Long>();
+        for (File f : segments) {
+            Cursor c = new Cursor(f);
+            try {
+                while (c.next()) {
+                    if (c.type != Journal.PLAN) {
+                        its.add(c.iteration);
+                    }
+                }
+            } finally {
+                c.close();
+            }
+        }
+        return its;
+    }
+
+    /**
+     * Rebuild the configuration of an iteration.
+     *
+     * @param iteration the iteration
+     * @return the last configuration stored at or before the iteration, {@code null} if there is none
+     * @throws IOException if an error occurred while reading the journal
+     */
+    public Configuration getConfiguration(long iteration) throws IOException {
+        Configuration cfg = null;
+        for (int i = firstSegment(iteration); i < segments.length; i++) {
+            Cursor c = new Cursor(segments[i]);
+            try {
+                while (c.next()) {
+                    if (c.iteration > iteration) {
+                        return cfg;
+                    }
+                    if (c.type != Journal.PLAN) {
+                        cfg = c.apply(cfg);
+                    }
+                }
+            } finally {
+                c.close();
+            }
+        }
+        return cfg;
+    }
+
+    /**
+     * Rebuild the plan computed at an iteration.
+     *
+     * @param iteration the iteration
+     * @return the plan, {@code null} if there is no plan for this iteration
+     * @throws IOException if an error occurred while reading the journal
+     * @throws TimedReconfigurationPlanSerializerException
+     *                     if an error occurred while parsing the plan
+     */
+    public TimedReconfigurationPlan getPlan(long iteration) throws IOException, TimedReconfigurationPlanSerializerException {
+        Configuration cfg = null;
+        for (int i = firstSegment(iteration); i < segments.length; i++) {
+            Cursor c = new Cursor(segments[i]);
+            try {
+                while (c.next()) {
+                    if (c.iteration > iteration) {
+                        return null;
+                    }
+                    if (c.type != Journal.PLAN) {
+                        cfg = c.apply(cfg);
+                    } else if (c.iteration == iteration && cfg != null) {
+                        return c.plan(cfg);
+                    }
+                }
+            } finally {
+                c.close();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the index of the last segment that starts before an iteration.
+     */
+    private int firstSegment(long iteration) throws IOException {
+        int res = 0;
+        for (int i = 0; i < segments.length; i++) {
+            Cursor c = new Cursor(segments[i]);
+            try {
+                if (c.next()) {
+                    if (c.iteration > iteration) {
+                        break;
+                    }
+                    if (c.type == Journal.SNAPSHOT) {
+                        res = i;
+                    }
+                }
+            } finally {
+                c.close();
+            }
+        }
+        return res;
+    }
+
+    /**
+     * A sequential reader of the records of a segment.
+     */
+    private static final class Cursor {
+
+        private final InputStream in;
+
+        private final CodedInputStream cin;
+
+        private byte type;
+
+        private long iteration;
+
+        private long timeStamp;
+
+        private byte[] payload;
+
+        private Cursor(File f) throws IOException {
+            in = new BufferedInputStream(new FileInputStream(f));
+            cin = CodedInputStream.newInstance(in);
+        }
+
+        /**
+         * Read the next record.
+         *
+         * @return {@code false} if the end of the segment is reached
+         */
+        private boolean next() throws IOException {
+            if (cin.isAtEnd()) {
+                return false;
+            }
+            type = cin.readRawByte();
+            iteration = cin.readRawVarint64();
+            timeStamp = cin.readRawLittleEndian64();
+            payload = cin.readRawBytes(cin.readRawVarint32());
+            //The segment is not bounded
+            cin.resetSizeCounter();
+            return true;
+        }
+
+        private void close() throws IOException {
+            in.close();
+        }
+
+        /**
+         * Apply the current record on a configuration.
+         *
+         * @param cfg the configuration. {@code null} if not known yet
+         * @return the resulting configuration, {@code null} if the record is a delta and the configuration is not known
+         */
+        private Configuration apply(Configuration cfg) throws IOException {
+            if (type == Journal.SNAPSHOT) {
+                cfg = new SimpleConfiguration();
+            } else if (cfg == null) {
+                return null;
+            }
+            CodedInputStream d = CodedInputStream.newInstance(payload);
+            int nb = d.readRawVarint32();
+            for (int i = 0; i < nb; i++) {
+                cfg.remove(cfg.getAllVirtualMachines().get(d.readString()));
+            }
+            nb = d.readRawVarint32();
+            List<Node> removed = new ArrayList<Node>(nb);
+            for (int i = 0; i < nb; i++) {
+                removed.add(cfg.getAllNodes().get(d.readString()));
+            }
+
+            //Online nodes first, to host the virtual machines, offline nodes at the end, once left by the virtual machines
+            nb = d.readRawVarint32();
+            List<Node> offlines = new ArrayList<Node>();
+            for (int i = 0; i < nb; i++) {
+                String name = d.readString();
+                byte st = d.readRawByte();
+                int nbCPUs = d.readInt32();
+                int cpu = d.readInt32();
+                int mem = d.readInt32();
+                Node n = cfg.getAllNodes().get(name);
+                if (n == null) {
+                    n = new SimpleNode(name, nbCPUs, cpu, mem);
+                } else {
+                    n.setNbOfCPUs(nbCPUs);
+                    n.setCPUCapacity(cpu);
+                    n.setMemoryCapacity(mem);
+                }
+                if (st == Journal.ONLINE) {
+                    cfg.addOnline(n);
+                } else {
+                    offlines.add(n);
+                }
+            }
+
+            nb = d.readRawVarint32();
+            for (int i = 0; i < nb; i++) {
+                String name = d.readString();
+                String host = d.readString();
+                byte st = d.readRawByte();
+                int nbCPUs = d.readInt32();
+                int cpuCons = d.readInt32();
+                int memCons = d.readInt32();
+                int cpuDemand = d.readInt32();
+                int memDemand = d.readInt32();
+                VirtualMachine vm = cfg.getAllVirtualMachines().get(name);
+                if (vm == null) {
+                    vm = new SimpleVirtualMachine(name, nbCPUs, cpuCons, memCons, cpuDemand, memDemand);
+                } else {
+                    vm.setNbOfCPUs(nbCPUs);
+                    vm.setCPUConsumption(cpuCons);
+                    vm.setMemoryConsumption(memCons);
+                    vm.setCPUDemand(cpuDemand);
+                    vm.setMemoryDemand(memDemand);
+                }
+                if (st == Journal.RUNNING) {
+                    cfg.setRunOn(vm, cfg.getAllNodes().get(host));
+                } else if (st == Journal.SLEEPING) {
+                    cfg.setSleepOn(vm, cfg.getAllNodes().get(host));
+                } else {
+                    cfg.addWaiting(vm);
+                }
+            }
+            for (Node n : offlines) {
+                cfg.addOffline(n);
+            }
+            for (Node n : removed) {
+                cfg.remove(n);
+            }
+            return cfg;
+        }
+
+        /**
+         * Decode the plan of the current record.
+         *
+         * @param cfg the source configuration of the plan
+         * @return the plan
+         */
+        private TimedReconfigurationPlan plan(Configuration cfg) throws IOException, TimedReconfigurationPlanSerializerException {
+            StreamedPlanReader r = new StreamedPlanReader(new ByteArrayInputStream(payload), cfg.clone());
+            try {
+                TimedReconfigurationPlan p = new DefaultTimedReconfigurationPlan(r.getSource());
+                for (Action a = r.next(); a != null; a = r.next()) {
+                    p.add(a);
+                }
+                return p;
+            } finally {
+                r.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.controlLoop;
+
+/**
+ * The events that may wake up an event-driven control loop.
+ *
+ * @author Fabien Hermenier
+ */
+public enum LoopEvent {
+
+    /**
+     * The monitoring refreshed the configuration.
+     */
+    CONFIGURATION_CHANGED,
+
+    /**
+     * A violation appeared: an overloaded node, a waiting virtual machine
+     * or an unsatisfied placement constraint.
+     */
+    VIOLATION,
+
+    /**
+     * The set of vjobs changed.
+     */
+    VJOBS_CHANGED,
+
+    /**
+     * The execution of a plan is terminated.
+     */
+    PLAN_COMPLETED
+}
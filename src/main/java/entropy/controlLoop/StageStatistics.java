@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.controlLoop;
+
+/**
+ * Latency statistics of a stage of the control loop.
+ *
+ * @author Fabien Hermenier
+ */
+public class StageStatistics {
+
+    private final String name;
+
+    private long nb;
+
+    private long total;
+
+    private long max;
+
+    private long last;
+
+    /**
+     * Make new statistics.
+     *
+     * @param name the name of the stage
+     */
+    public StageStatistics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Get the name of the stage.
+     *
+     * @return a name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Record the duration of an execution of the stage.
+     *
+     * @param ms the duration in milliseconds
+     */
+    public synchronized void record(long ms) {
+        nb++;
+        total += ms;
+        last = ms;
+        if (ms > max) {
+            max = ms;
+        }
+    }
+
+    /**
+     * Get the number of executions of the stage.
+     *
+     * @return a positive number
+     */
+    public synchronized long getNbSamples() {
+        return nb;
+    }
+
+    /**
+     * Get the duration of the last execution.
+     *
+     * @return a duration in milliseconds
+     */
+    public synchronized long getLast() {
+        return last;
+    }
+
+    /**
+     * Get the longest duration.
+     *
+     * @return a duration in milliseconds
+     */
+    public synchronized long getMax() {
+        return max;
+    }
+
+    /**
+     * Get the average duration.
+     *
+     * @return a duration in milliseconds, {@code 0} if the stage was never executed
+     */
+    public synchronized double getAverage() {
+        return nb == 0 ? 0 : (double) total / nb;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return name + ": " + nb + " executions, last=" + last + "ms, avg=" + String.format("%.1f", getAverage())
+                + "ms, max=" + max + "ms";
+    }
+}
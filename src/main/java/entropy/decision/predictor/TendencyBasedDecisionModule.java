@@ -23,6 +23,7 @@ import java.util.HashMap;
 import java.util.Map;
 
 import entropy.configuration.Configuration;
+import entropy.configuration.Configurations;
 import entropy.configuration.VirtualMachine;
 import entropy.decision.AssignmentException;
 import entropy.decision.DecisionModule;
@@ -60,7 +61,7 @@ public class TendencyBasedDecisionModule extends DecisionModule {
                 vm.setCPUDemand(cfg.getLocation(vm).getCPUCapacity());
             }
         }
-
+        Configurations.refreshAggregates(cfg);
         return cfg;
     }
 
@@ -23,12 +23,13 @@ import entropy.execution.driver.Driver;
 import entropy.execution.driver.DriverException;
 
 /**
- * An executor that execute an action in parallel.
+ * An executor that execute an action in parallel, in a thread
+ * of the pool of the reconfiguration executer.
  * Once the execution is terminated, it is signaled to
  * the reconfiguration executer using the method commit.
  * @author Fabien Hermenier
  */
-public class Executor extends Thread {
+public class Executor implements Runnable {
 
     /**
      * The driver that wrap the action to execute.
@@ -45,6 +46,11 @@ public class Executor extends Thread {
      */
     private TimedReconfigurationExecuter master;
 
+    /**
+     * The duration of the execution in milliseconds.
+     */
+    private long duration;
+
 
     /**
      * Make a new executor.
@@ -57,21 +63,31 @@ public class Executor extends Thread {
     }
 
     /**
-     * Start to execute the action in another thread.
+     * Execute the action.
      * When the action is terminated, it is signaled to the TimedReconfigurationExector
      * even if an error occurred
      */
     @Override
     public void run() {
+        long st = System.currentTimeMillis();
         try {
             drv.execute();
         } catch (DriverException e) {           
             exception = e;
         } finally {
+            duration = System.currentTimeMillis() - st;
             master.commit(this);
         }
     }
 
+    /**
+     * Get the duration of the execution of the action.
+     * @return a duration in milliseconds
+     */
+    public long getDuration() {
+        return this.duration;
+    }
+
     /**
      * Indicates wether the action succeed or not.
      * @return true if the action succeed.
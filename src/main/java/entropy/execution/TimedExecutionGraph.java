@@ -19,9 +19,15 @@
 
 package entropy.execution;
 
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -31,11 +37,22 @@ import entropy.plan.action.Action;
 /**
  * A graph to represent dependencies between the
  * actions to perform on a graph
+ * <p/>
+ * The dependencies are computed once, when they are requested after an insertion. For each node,
+ * the outgoing actions are sorted by finish moment, so the dependencies of an incoming action
+ * are the prefix of the outgoing actions that terminate before its start moment, found by a binary search.
  *
  * @author Fabien Hermenier
  */
 public class TimedExecutionGraph {
 
+    private static final Comparator<Action> FINISH_CMP = new Comparator<Action>() {
+        @Override
+        public int compare(Action a1, Action a2) {
+            return a1.getFinishMoment() - a2.getFinishMoment();
+        }
+    };
+
     /**
      * All the actions that terminate on a node.
      */
@@ -46,6 +63,21 @@ public class TimedExecutionGraph {
      */
     private Map<Node, Set<Action>> outgoings;
 
+    /**
+     * The actions of the graph, identified by their index.
+     */
+    private Action[] actions;
+
+    /**
+     * For each incoming action of each node, the index of the action.
+     */
+    private int[] dependents;
+
+    /**
+     * For each incoming action of each node, the index of the actions it depends on.
+     */
+    private int[][] dependencies;
+
     /**
      * Instantiate a new empty graph.
      */
@@ -54,6 +86,78 @@ public class TimedExecutionGraph {
         this.outgoings = new HashMap<Node, Set<Action>>();
     }
 
+    /**
+     * Compute the dependencies between the actions.
+     */
+    private void index() {
+        TObjectIntHashMap<Action> ids = new TObjectIntHashMap<Action>(10, 0.5f, -1);
+        List<Action> all = new ArrayList<Action>();
+        int nb = 0;
+        for (Set<Action> in : incomings.values()) {
+            nb += in.size();
+        }
+        dependents = new int[nb];
+        dependencies = new int[nb][];
+        int cur = 0;
+        for (Map.Entry<Node, Set<Action>> e : this.incomings.entrySet()) {
+            Set<Action> outs = outgoings.get(e.getKey());
+            Action[] sorted = outs == null ? new Action[0] : outs.toArray(new Action[outs.size()]);
+            Arrays.sort(sorted, FINISH_CMP);
+            int[] finishes = new int[sorted.length];
+            int[] sortedIds = new int[sorted.length];
+            for (int i = 0; i < sorted.length; i++) {
+                finishes[i] = sorted[i].getFinishMoment();
+                sortedIds[i] = id(ids, all, sorted[i]);
+            }
+            for (Action a : e.getValue()) {
+                int id = id(ids, all, a);
+                //The number of outgoing actions that terminate before the start of the action
+                int k = upperBound(finishes, a.getStartMoment());
+                int[] deps = new int[k];
+                int nbDeps = 0;
+                for (int i = 0; i < k; i++) {
+                    if (sortedIds[i] != id) {
+                        deps[nbDeps++] = sortedIds[i];
+                    }
+                }
+                dependents[cur] = id;
+                dependencies[cur++] = nbDeps == k ? deps : Arrays.copyOf(deps, nbDeps);
+            }
+        }
+        actions = all.toArray(new Action[all.size()]);
+    }
+
+    private static int id(TObjectIntHashMap<Action> ids, List<Action> all, Action a) {
+        int id = ids.get(a);
+        if (id < 0) {
+            id = all.size();
+            ids.put(a, id);
+            all.add(a);
+        }
+        return id;
+    }
+
+    /**
+     * Get the number of values lower or equals to a given value.
+     *
+     * @param values the values, sorted in ascending order
+     * @param v      the value
+     * @return the index of the first value greater than {@code v}
+     */
+    private static int upperBound(int[] values, int v) {
+        int lo = 0;
+        int hi = values.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (values[mid] <= v) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
     /**
      * Extracts all the dependencies of the graph.
      * A dependencie occures when the start moment of an incoming action
@@ -63,17 +167,16 @@ public class TimedExecutionGraph {
      * @return a list of dependencies. May be empty
      */
     public Set<Dependencies> extractDependencies() {
+        if (actions == null) {
+            index();
+        }
         Set<Dependencies> l = new HashSet<Dependencies>();
-        for (Map.Entry<Node, Set<Action>> e : this.incomings.entrySet()) {
-            for (Action a : e.getValue()) {
-                Dependencies dep = new Dependencies(a);
-                for (Action a2 : getOutgoingsFor(e.getKey())) {
-                    if (a2 != a && a2.getFinishMoment() <= a.getStartMoment()) {
-                        dep.addDependency(a2);
-                    }
-                }
-                l.add(dep);
+        for (int i = 0; i < dependents.length; i++) {
+            Dependencies dep = new Dependencies(actions[dependents[i]]);
+            for (int d : dependencies[i]) {
+                dep.addDependency(actions[d]);
             }
+            l.add(dep);
         }
         return l;
     }
@@ -87,6 +190,8 @@ public class TimedExecutionGraph {
      * @return a list, may be empty
      */
     public Set<Action> getIncomingsFor(Node n) {
+        //The set may be modified
+        actions = null;
         if (!this.incomings.containsKey(n)) {
             this.incomings.put(n, new HashSet<Action>());
         }
@@ -102,6 +207,8 @@ public class TimedExecutionGraph {
      * @return a list, may be empty
      */
     public Set<Action> getOutgoingsFor(Node n) {
+        //The set may be modified
+        actions = null;
         if (!this.outgoings.containsKey(n)) {
             this.outgoings.put(n, new HashSet<Action>());
         }
@@ -116,13 +223,19 @@ public class TimedExecutionGraph {
      */
     public String toEventAgenda() {
         StringBuilder buffer = new StringBuilder();
-        Set<Dependencies> deps = this.extractDependencies();
+        if (actions == null) {
+            index();
+        }
         Map<Set<Action>, Set<Action>> events = new HashMap<Set<Action>, Set<Action>>();
-        for (Dependencies dep : deps) {
-            if (!events.containsKey(dep.getUnsatisfiedDependencies())) {
-                events.put(dep.getUnsatisfiedDependencies(), new HashSet<Action>());
+        for (int i = 0; i < dependents.length; i++) {
+            Set<Action> key = new HashSet<Action>();
+            for (int d : dependencies[i]) {
+                key.add(actions[d]);
+            }
+            if (!events.containsKey(key)) {
+                events.put(key, new HashSet<Action>());
             }
-            events.get(dep.getUnsatisfiedDependencies()).add(dep.getAction());
+            events.get(key).add(actions[dependents[i]]);
         }
         for (Map.Entry<Set<Action>, Set<Action>> e : events.entrySet()) {
             if (e.getKey().size() == 0) {
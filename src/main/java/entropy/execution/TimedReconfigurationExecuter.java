@@ -18,32 +18,70 @@
  */
 package entropy.execution;
 
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import entropy.configuration.ManagedElement;
+import entropy.configuration.Node;
 import entropy.execution.driver.Driver;
 import entropy.execution.driver.DriverFactory;
 import entropy.execution.driver.DriverInstantiationException;
+import entropy.plan.DefaultTimedReconfigurationPlan;
 import entropy.plan.TimedReconfigurationPlan;
 import entropy.plan.action.Action;
+import entropy.plan.action.ActionComparator;
+import entropy.plan.action.MovingVirtualMachineAction;
+import entropy.plan.action.NodeAction;
+import entropy.plan.action.VirtualMachineAction;
+import entropy.plan.durationEvaluator.LearnedDurationEvaluator;
 
 /**
- * An execution module dedicated to the execution of time bounded Action. All feasible actions are made in parallel.
- * The execution module try to execute new action when a Action is committed.
+ * An execution module dedicated to the execution of time bounded Action. All feasible actions are made in parallel,
+ * using a bounded pool of threads. The execution module try to execute new action when a Action is committed.
+ * <p/>
+ * The execution of a plan can be cancelled: the actions that are not started yet are dropped
+ * while the started ones terminate in background. A new plan can then be executed immediately.
+ * Its actions that manipulate a virtual machine or a node still manipulated by an action of
+ * the cancelled plan are delayed until this action is committed.
+ * <p/>
+ * The number of simultaneous migrations can be limited per node, for the outgoing and the incoming
+ * migrations, and globally. A migration that would exceed a limit waits until another migration
+ * is committed. The waiting migrations are started by decreasing length of their critical path,
+ * i.e. the longest chain of actions that depend on them.
  *
  * @author Fabien Hermenier
  */
 public class TimedReconfigurationExecuter {
 
     /**
-     * Get the dependencies, an action is for
+     * The default number of actions executed simultaneously.
+     */
+    public static final int DEFAULT_POOL_SIZE = 32;
+
+    private static final ActionComparator cmp = new ActionComparator(ActionComparator.Type.start);
+
+    /**
+     * The threads that execute the actions.
      */
-    private Map<Action, List<Dependencies>> revDependencies;
+    private final ThreadPoolExecutor pool;
 
     /**
      * The factory to create drivers.
@@ -51,9 +89,69 @@ public class TimedReconfigurationExecuter {
     private DriverFactory factory;
 
     /**
-     * All the action that don't have been commited.
+     * The current execution. {@code null} if no plan was executed.
+     */
+    private Execution current;
+
+    /**
+     * The execution of each started action that is not committed.
+     */
+    private final Map<Action, Execution> owners = new IdentityHashMap<Action, Execution>();
+
+    /**
+     * The started action that manipulates each element.
      */
-    private List<Action> uncommited;
+    private final Map<ManagedElement, Action> busy = new HashMap<ManagedElement, Action>();
+
+    /**
+     * The actions waiting for the termination of the action that manipulates their element.
+     */
+    private final Map<ManagedElement, List<Action>> delayed = new HashMap<ManagedElement, List<Action>>();
+
+    /**
+     * The execution of each delayed action.
+     */
+    private final Map<Action, Execution> delayedOwners = new IdentityHashMap<Action, Execution>();
+
+    /**
+     * The actions waiting for the admission of a migration.
+     */
+    private final PriorityQueue<Pending> waiting = new PriorityQueue<Pending>();
+
+    /**
+     * The number of outgoing migrations of each node.
+     */
+    private final TObjectIntHashMap<Node> outgoing = new TObjectIntHashMap<Node>();
+
+    /**
+     * The number of incoming migrations of each node.
+     */
+    private final TObjectIntHashMap<Node> incoming = new TObjectIntHashMap<Node>();
+
+    /**
+     * The number of migrations in progress.
+     */
+    private int nbMigrations;
+
+    /**
+     * The maximum number of outgoing migrations per node. {@code 0} for no limit.
+     */
+    private int maxOutgoing = 0;
+
+    /**
+     * The maximum number of incoming migrations per node. {@code 0} for no limit.
+     */
+    private int maxIncoming = 0;
+
+    /**
+     * The maximum number of migrations. {@code 0} for no limit.
+     */
+    private int maxMigrations = 0;
+
+    /**
+     * The evaluator that learns from the durations of the actions. May be {@code null}.
+     */
+    private LearnedDurationEvaluator learner;
 
     private Logger logger = LoggerFactory.getLogger("Actuator");
 
@@ -64,32 +162,69 @@ public class TimedReconfigurationExecuter {
      * @param f the DriverFactory to transfrom the action into a driver
      */
     public TimedReconfigurationExecuter(DriverFactory f) {
+        this(f, DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * Make a new Execution module with a bounded number of actions executed simultaneously.
+     * The actions that exceed this number are queued until a thread is available.
+     *
+     * @param f          the DriverFactory to transfrom the action into a driver
+     * @param nbThreads the maximum number of actions executed simultaneously
+     */
+    public TimedReconfigurationExecuter(DriverFactory f, int nbThreads) {
         this.factory = f;
-        this.revDependencies = new HashMap<Action, List<Dependencies>>();
-        this.uncommited = new LinkedList<Action>();
+        pool = new ThreadPoolExecutor(nbThreads, nbThreads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private int nb = 0;
+
+                    @Override
+                    public synchronized Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "executer-" + (nb++));
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Get the maximum number of actions executed simultaneously.
+     *
+     * @return a positive number
+     */
+    public int getPoolSize() {
+        return pool.getMaximumPoolSize();
+    }
+
+    /**
+     * Stop the threads once the actions in progress are terminated.
+     * No plan can be executed after.
+     */
+    public void shutdown() {
+        pool.shutdown();
     }
 
     /**
      * Start the execution of a plan.
-     * The method is blocking and ends once all the actions have been performed
+     * The method is blocking and ends once all the actions have been performed,
+     * or once the execution is cancelled.
      *
      * @param plan the plan to execute
      */
-    public void start(TimedReconfigurationPlan plan) {
-
-        revDependencies.clear();
-        uncommited.clear();
-        uncommited.addAll(plan.getActions());
+    public synchronized void start(TimedReconfigurationPlan plan) {
+        Execution x = new Execution(plan);
+        current = x;
 
         TimedExecutionGraph g = plan.extractExecutionGraph();
 
         //Set the reverse dependencies map
         for (Dependencies dep : g.extractDependencies()) {
             for (Action a : dep.getUnsatisfiedDependencies()) {
-                if (!revDependencies.containsKey(a)) {
-                    revDependencies.put(a, new LinkedList<Dependencies>());
+                if (!x.revDependencies.containsKey(a)) {
+                    x.revDependencies.put(a, new LinkedList<Dependencies>());
                 }
-                revDependencies.get(a).add(dep);
+                x.revDependencies.get(a).add(dep);
 
             }
         }
@@ -98,14 +233,14 @@ public class TimedReconfigurationExecuter {
         // ie, actions with a start moment equals to 0.
         for (Action a : plan) {
             if (a.getStartMoment() == 0) {
-                instantiateAndStart(a);
+                launch(x, a);
             }
         }
 
-        //Check each second if all the actions has been performed
-        while (uncommited.size() != 0) {
+        //Wait for the commit of all the actions, or a cancellation
+        while (x.uncommited.size() != 0 && !x.cancelled) {
             try {
-                Thread.sleep(1000);
+                wait();
             } catch (InterruptedException e) {
                 logger.error(e.getMessage(), e);
             }
@@ -113,18 +248,220 @@ public class TimedReconfigurationExecuter {
     }
 
     /**
-     * Associate an action with a driver and start its execution
-     * using a {@link Executor}.
+     * Cancel the execution of the current plan.
+     * The actions that are not started are dropped and {@link #start(TimedReconfigurationPlan)} returns.
+     * The started actions terminate in background.
+     *
+     * @return a plan made of the started actions, from the source configuration of the cancelled plan.
+     *         Its destination configuration is the configuration once the started actions are terminated.
+     *         {@code null} if there is no plan in progress
+     */
+    public synchronized TimedReconfigurationPlan cancel() {
+        Execution x = current;
+        if (x == null || x.cancelled || x.uncommited.isEmpty()) {
+            return null;
+        }
+        x.cancelled = true;
+        int nb = x.uncommited.size();
+        x.uncommited.retainAll(x.started);
+        for (Iterator<Pending> ite = waiting.iterator(); ite.hasNext();) {
+            if (ite.next().execution == x) {
+                ite.remove();
+            }
+        }
+        for (List<Action> l : delayed.values()) {
+            for (Iterator<Action> ite = l.iterator(); ite.hasNext();) {
+                Action a = ite.next();
+                if (delayedOwners.get(a) == x) {
+                    delayedOwners.remove(a);
+                    ite.remove();
+                }
+            }
+        }
+        logger.info("Execution cancelled: " + (nb - x.uncommited.size()) + " action(s) dropped, "
+                + x.uncommited.size() + " in progress");
+
+        List<Action> started = new ArrayList<Action>(x.started);
+        Collections.sort(started, cmp);
+        TimedReconfigurationPlan res = new DefaultTimedReconfigurationPlan(x.plan.getSource());
+        for (Action a : started) {
+            if (!res.add(a)) {
+                logger.warn("Unable to apply '" + a + "' on the partial configuration");
+            }
+        }
+        notifyAll();
+        return res;
+    }
+
+    /**
+     * Get the element an action manipulates.
      *
-     * @param a the action to instantiate and start
+     * @param a the action
+     * @return the virtual machine or the node, {@code null} if unknown
      */
-    private void instantiateAndStart(Action a) {
+    private static ManagedElement getElement(Action a) {
+        if (a instanceof VirtualMachineAction) {
+            return ((VirtualMachineAction) a).getVirtualMachine();
+        } else if (a instanceof NodeAction) {
+            return ((NodeAction) a).getNode();
+        }
+        return null;
+    }
+
+    /**
+     * Start an action, or delay it if its element is manipulated by another action.
+     *
+     * @param x the execution of the action
+     * @param a the action to start
+     */
+    private void launch(Execution x, Action a) {
+        ManagedElement e = getElement(a);
+        if (e != null) {
+            if (busy.containsKey(e)) {
+                List<Action> l = delayed.get(e);
+                if (l == null) {
+                    l = new LinkedList<Action>();
+                    delayed.put(e, l);
+                }
+                l.add(a);
+                delayedOwners.put(a, x);
+                return;
+            }
+        }
+        if (!isAdmissible(a)) {
+            waiting.add(new Pending(x, a, criticalPath(x, a)));
+            return;
+        }
+        Driver drv;
         try {
-            Driver drv = factory.transform(a);
-            new Executor(drv, this).start();
+            drv = factory.transform(a);
         } catch (DriverInstantiationException ex) {
+            //The action is failed: it is commited but the actions that depend on it are not launched
             logger.error(ex.getMessage(), ex);
+            x.uncommited.remove(a);
+            notifyAll();
+            return;
+        }
+        if (e != null) {
+            busy.put(e, a);
         }
+        if (isMigration(a)) {
+            MovingVirtualMachineAction m = (MovingVirtualMachineAction) a;
+            outgoing.adjustOrPutValue(m.getHost(), 1, 1);
+            incoming.adjustOrPutValue(m.getDestination(), 1, 1);
+            nbMigrations++;
+        }
+        x.started.add(a);
+        owners.put(a, x);
+        pool.execute(new Executor(drv, this));
+    }
+
+    /**
+     * Check whether an action moves a virtual machine from a node to another.
+     *
+     * @param a the action
+     * @return {@code true} for a migration or a remote resume
+     */
+    private static boolean isMigration(Action a) {
+        return a instanceof MovingVirtualMachineAction
+                && !((MovingVirtualMachineAction) a).getHost().equals(((MovingVirtualMachineAction) a).getDestination());
+    }
+
+    /**
+     * Check whether an action can be started without exceeding the limits on the migrations.
+     *
+     * @param a the action
+     * @return {@code true} if the action can be started
+     */
+    private boolean isAdmissible(Action a) {
+        if (!isMigration(a)) {
+            return true;
+        }
+        MovingVirtualMachineAction m = (MovingVirtualMachineAction) a;
+        return (maxMigrations <= 0 || nbMigrations < maxMigrations)
+                && (maxOutgoing <= 0 || outgoing.get(m.getHost()) < maxOutgoing)
+                && (maxIncoming <= 0 || incoming.get(m.getDestination()) < maxIncoming);
+    }
+
+    /**
+     * Get the length of the critical path of an action: its duration plus
+     * the length of the longest critical path of the actions that depend on it.
+     *
+     * @param x the execution of the action
+     * @param a the action
+     * @return a duration
+     */
+    private static int criticalPath(Execution x, Action a) {
+        if (x.criticalPaths.containsKey(a)) {
+            return x.criticalPaths.get(a);
+        }
+        int cp = 0;
+        List<Dependencies> deps = x.revDependencies.get(a);
+        if (deps != null) {
+            for (Dependencies d : deps) {
+                cp = Math.max(cp, criticalPath(x, d.getAction()));
+            }
+        }
+        cp += a.getFinishMoment() - a.getStartMoment();
+        x.criticalPaths.put(a, cp);
+        return cp;
+    }
+
+    /**
+     * Start the waiting actions that are now admissible, by decreasing length of their critical path.
+     */
+    private void admitWaitings() {
+        List<Pending> rejected = new ArrayList<Pending>();
+        while (!waiting.isEmpty()) {
+            Pending p = waiting.poll();
+            if (isAdmissible(p.action)) {
+                launch(p.execution, p.action);
+            } else {
+                rejected.add(p);
+            }
+        }
+        waiting.addAll(rejected);
+    }
+
+    /**
+     * Set the limits on the number of simultaneous migrations.
+     *
+     * @param outgoing the maximum number of outgoing migrations per node. {@code 0} for no limit
+     * @param incoming the maximum number of incoming migrations per node. {@code 0} for no limit
+     * @param global   the maximum number of migrations. {@code 0} for no limit
+     */
+    public synchronized void setMigrationLimits(int outgoing, int incoming, int global) {
+        this.maxOutgoing = outgoing;
+        this.maxIncoming = incoming;
+        this.maxMigrations = global;
+        admitWaitings();
+    }
+
+    /**
+     * Get the maximum number of outgoing migrations per node.
+     *
+     * @return a positive number, {@code 0} if there is no limit
+     */
+    public synchronized int getMaxOutgoingMigrations() {
+        return maxOutgoing;
+    }
+
+    /**
+     * Get the maximum number of incoming migrations per node.
+     *
+     * @return a positive number, {@code 0} if there is no limit
+     */
+    public synchronized int getMaxIncomingMigrations() {
+        return maxIncoming;
+    }
+
+    /**
+     * Get the maximum number of simultaneous migrations.
+     *
+     * @return a positive number, {@code 0} if there is no limit
+     */
+    public synchronized int getMaxMigrations() {
+        return maxMigrations;
     }
 
     /**
@@ -134,17 +471,43 @@ public class TimedReconfigurationExecuter {
      *
      * @param e the executor that commit the action
      */
-    public void commit(Executor e) {
+    public synchronized void commit(Executor e) {
         Action a = e.getDriver().getAction();
-        uncommited.remove(a);
+        Execution x = owners.remove(a);
+        if (learner != null && e.hasSuceeded()) {
+            learner.record(a, e.getDuration());
+        }
+        if (isMigration(a)) {
+            MovingVirtualMachineAction m = (MovingVirtualMachineAction) a;
+            outgoing.adjustValue(m.getHost(), -1);
+            incoming.adjustValue(m.getDestination(), -1);
+            nbMigrations--;
+        }
+        ManagedElement elmt = getElement(a);
+        if (elmt != null) {
+            busy.remove(elmt);
+            List<Action> l = delayed.remove(elmt);
+            if (l != null && !l.isEmpty()) {
+                Action next = l.remove(0);
+                if (!l.isEmpty()) {
+                    delayed.put(elmt, l);
+                }
+                launch(delayedOwners.remove(next), next);
+            }
+        }
+        admitWaitings();
+        if (x == null) {
+            return;
+        }
+        x.uncommited.remove(a);
         if (e.hasSuceeded()) {
-            if (revDependencies.containsKey(a)) {
+            if (!x.cancelled && x.revDependencies.containsKey(a)) {
                 //Get the associated depenencies and update it
-                for (Dependencies dep : revDependencies.get(a)) {
+                for (Dependencies dep : x.revDependencies.get(a)) {
                     dep.removeDependency(a);
                     //Launch new feasible actions.
                     if (dep.isFeasible()) {
-                        instantiateAndStart(dep.getAction());
+                        launch(x, dep.getAction());
                     }
                 }
             }
@@ -152,16 +515,98 @@ public class TimedReconfigurationExecuter {
             logger.error("Reconfiguration aborded: " +
                     e.getException().getMessage(), e.getException());
         }
+        notifyAll();
     }
 
     /**
-     * Get all the uncommited actions.
+     * Set the evaluator that learns from the durations of the succeeded actions.
+     *
+     * @param l the evaluator. {@code null} to not record the durations
+     */
+    public void setLearner(LearnedDurationEvaluator l) {
+        this.learner = l;
+    }
+
+    /**
+     * Get the evaluator that learns from the durations of the actions.
+     *
+     * @return the evaluator, may be {@code null}
+     */
+    public LearnedDurationEvaluator getLearner() {
+        return this.learner;
+    }
+
+    /**
+     * Get all the uncommited actions of the current plan.
      * A reconfiguration process is terminated once
      * all the actions on a plan has been commited
      *
      * @return a list that may be empty
      */
-    public List<Action> getUncommitedActions() {
-        return this.uncommited;
+    public synchronized List<Action> getUncommitedActions() {
+        if (current == null) {
+            return new LinkedList<Action>();
+        }
+        return new LinkedList<Action>(current.uncommited);
+    }
+
+    /**
+     * The state of the execution of a plan.
+     */
+    private static final class Execution {
+
+        private final TimedReconfigurationPlan plan;
+
+        /**
+         * Get the dependencies, an action is for
+         */
+        private final Map<Action, List<Dependencies>> revDependencies = new HashMap<Action, List<Dependencies>>();
+
+        /**
+         * All the action that don't have been commited. The actions are
+         * identified by their reference, so a commit is made in constant time.
+         */
+        private final Set<Action> uncommited;
+
+        /**
+         * The started actions.
+         */
+        private final Set<Action> started = new HashSet<Action>();
+
+        /**
+         * The length of the critical path of the actions, computed on demand.
+         */
+        private final TObjectIntHashMap<Action> criticalPaths = new TObjectIntHashMap<Action>();
+
+        private boolean cancelled;
+
+        private Execution(TimedReconfigurationPlan p) {
+            this.plan = p;
+            this.uncommited = Collections.newSetFromMap(new IdentityHashMap<Action, Boolean>());
+            this.uncommited.addAll(p.getActions());
+        }
+    }
+
+    /**
+     * An action waiting for its admission.
+     */
+    private static final class Pending implements Comparable<Pending> {
+
+        private final Execution execution;
+
+        private final Action action;
+
+        private final int priority;
+
+        private Pending(Execution x, Action a, int p) {
+            this.execution = x;
+            this.action = a;
+            this.priority = p;
+        }
+
+        @Override
+        public int compareTo(Pending p) {
+            return p.priority - priority;
+        }
     }
 }
@@ -43,6 +43,7 @@ import entropy.plan.action.Suspend;
  * <li>Action <b>stop</b>: {@link SSHStop}</li>
  * <li>Action <b>run</b>: {@link SSHRun}</li>
  * </ul>
+ * The SSH drivers created by a factory share a same {@link SSHSessionPool}.
  * @see Driver
  * @author Fabien Hermenier
  *
@@ -55,11 +56,44 @@ public class DriverFactory {
 	private PropertiesHelper props;
 	
 	/**
-	 * Create a new Factory.
+	 * The sessions shared by the SSH drivers.
+	 */
+	private SSHSessionPool sshPool;
+	
+	/**
+	 * Create a new Factory with a default pool of SSH sessions.
 	 * @param properties The properties used to create the factory
 	 */
 	public DriverFactory(PropertiesHelper properties) {
+		this(properties, new SSHSessionPool());
+	}
+	
+	/**
+	 * Create a new Factory.
+	 * @param properties The properties used to create the factory
+	 * @param pool the pool of sessions shared by the SSH drivers
+	 */
+	public DriverFactory(PropertiesHelper properties, SSHSessionPool pool) {
 		this.props = properties;
+		this.sshPool = pool;
+	}
+	
+	/**
+	 * Get the pool of sessions shared by the SSH drivers.
+	 * @return the pool
+	 */
+	public SSHSessionPool getSSHSessionPool() {
+		return this.sshPool;
+	}
+	
+	/**
+	 * Attach the shared pool of sessions to a SSH driver.
+	 * @param d the driver
+	 * @return the driver
+	 */
+	private SSHDriver pooled(SSHDriver d) {
+		d.setSessionPool(sshPool);
+		return d;
 	}
 		
 	/**
@@ -80,7 +114,7 @@ public class DriverFactory {
                 }
 			} else if ("sshMigration".equals(drv)) {
                 try {
-    				return new SSHMigration((Migration) action, props);
+    				return pooled(new SSHMigration((Migration) action, props));
                 } catch (PropertiesHelperException e) {
                     throw new DriverInstantiationException(action, SSHMigration.class, e);
                 }
@@ -94,7 +128,7 @@ public class DriverFactory {
 			String drv = ((Shutdown) action).getNode().getShutdownDriverID();
 			if ("sshShutdown".equals(drv)) {
                 try {
-				    return new SSHShutdown((Shutdown) action, props);
+				    return pooled(new SSHShutdown((Shutdown) action, props));
                 } catch (PropertiesHelperException e) {
                     throw new DriverInstantiationException(action, SSHShutdown.class , e);
                 }                    
@@ -119,7 +153,7 @@ public class DriverFactory {
 
 			} else if ("sshResume".equals(drv)) {
                 try {
-				    return new SSHResume((Resume) action, props);
+				    return pooled(new SSHResume((Resume) action, props));
                 } catch (PropertiesHelperException e) {
                     throw new DriverInstantiationException(action, SSHResume.class, e);
                 }
@@ -128,7 +162,7 @@ public class DriverFactory {
 			String drv = ((Run) action).getHost().getRunDriverID();
 			if ("sshRun".equals(drv)) {
                 try {
-				    return new SSHRun((Run) action, props);
+				    return pooled(new SSHRun((Run) action, props));
                 } catch (PropertiesHelperException e) {
                     throw new DriverInstantiationException(action, SSHRun.class, e);
                 }
@@ -137,7 +171,7 @@ public class DriverFactory {
 			String drv = ((Stop) action).getHost().getStopDriverID();
 			if ("sshStop".equals(drv)) {
                 try {
-				    return new SSHStop((Stop) action, props);
+				    return pooled(new SSHStop((Stop) action, props));
                 } catch (PropertiesHelperException e) {
                     throw new DriverInstantiationException(action, SSHStop.class, e);
                 }                
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package entropy.execution.driver;
+
+import com.jcraft.jsch.JSchException;
+
+/**
+ * An exception to signal that a command was not sent to the SSH server,
+ * because the session was closed or the channel could not be opened.
+ * The command was not executed at all, so it can be executed again safely.
+ *
+ * @author Fabien Hermenier
+ */
+public class SSHCommandNotSentException extends JSchException {
+
+    /**
+     * Default serial UID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Make a new exception.
+     *
+     * @param msg the error message
+     */
+    public SSHCommandNotSentException(String msg) {
+        super(msg);
+    }
+
+    /**
+     * Make a new exception.
+     *
+     * @param msg the error message
+     * @param t   the reason
+     */
+    public SSHCommandNotSentException(String msg, Throwable t) {
+        super(msg, t);
+    }
+}
@@ -43,6 +43,11 @@ public abstract class SSHDriver extends Driver {
 	 */
 	private String username;
 	
+	/**
+	 * The pool of sessions, if any.
+	 */
+	private SSHSessionPool sessionPool;
+	
 
 	/**
 	 * Create and configure the driver to execute an action.
@@ -72,6 +77,23 @@ public abstract class SSHDriver extends Driver {
 		return this.identityFile;
 	}
 	
+	/**
+	 * Set the pool of sessions used to execute the command.
+	 * Without pool, a session is opened for the command only.
+	 * @param pool the pool to use. {@code null} to not use a pool
+	 */
+	public void setSessionPool(SSHSessionPool pool) {
+		this.sessionPool = pool;
+	}
+	
+	/**
+	 * Get the pool of sessions used to execute the command.
+	 * @return the pool, {@code null} if there is no pool
+	 */
+	public SSHSessionPool getSessionPool() {
+		return this.sessionPool;
+	}
+	
 	/**
 	 * Get the name of the remote host.
 	 * @return a host name
@@ -81,11 +103,16 @@ public abstract class SSHDriver extends Driver {
 	@Override
 	public void execute() throws DriverException {
 		try {
-			SSHExec ssh = new SSHExec(getRemoteHostname(), SSHExec.DEFAULT_PORT, this.getUsername());
-						
-			ssh.useIdentity(this.getIdentityFile());
 			String realCmd = this.getCommandToExecute();
-			int ret = ssh.executeCommand(realCmd); 
+			int ret;
+			if (sessionPool != null) {
+				ret = sessionPool.executeCommand(getRemoteHostname(), SSHExec.DEFAULT_PORT, this.getUsername(),
+						this.getIdentityFile(), realCmd, new StringBuilder(), new StringBuilder());
+			} else {
+				SSHExec ssh = new SSHExec(getRemoteHostname(), SSHExec.DEFAULT_PORT, this.getUsername());
+				ssh.useIdentity(this.getIdentityFile());
+				ret = ssh.executeCommand(realCmd);
+			}
 			if (ret != 0) {
 				throw new DriverException(this, "Error while execute the command '" + realCmd + "': return " + ret);
 			}
@@ -32,6 +32,10 @@ import com.jcraft.jsch.Session;
 /**
  * Tool to execute remote shell command on a SSH server.
  * The tool support authentification through password or identity file.
+ * <p/>
+ * By default, a session is opened then closed for each command. Once {@link #connect()} is called,
+ * the session stays opened until {@link #disconnect()} and each command is executed into its own channel,
+ * so several commands can be executed simultaneously.
  *
  * @author Fabien Hermenier
  */
@@ -62,6 +66,11 @@ public class SSHExec {
      */
     private Session session;
 
+    /**
+     * {@code true} once {@link #connect()} is called: the session is kept opened between the commands.
+     */
+    private volatile boolean pooled;
+
     /**
      * The buffer that contains all the standard output.
      */
@@ -188,6 +197,44 @@ public class SSHExec {
         return this.errorBuffer.toString();
     }
 
+    /**
+     * Set the interval between two keep-alive messages sent to the server.
+     * The session is closed after 3 unanswered messages.
+     *
+     * @param millis the interval in milliseconds. {@code 0} to disable the messages
+     * @throws JSchException if an error occurs
+     */
+    public void setServerAliveInterval(int millis) throws JSchException {
+        this.session.setServerAliveInterval(millis);
+    }
+
+    /**
+     * Open the session to execute several commands.
+     *
+     * @throws JSchException if an error occurs
+     */
+    public void connect() throws JSchException {
+        this.session.connect();
+        this.pooled = true;
+    }
+
+    /**
+     * Indicates whether the session is opened.
+     *
+     * @return {@code true} if the session is opened
+     */
+    public boolean isConnected() {
+        return this.session.isConnected();
+    }
+
+    /**
+     * Close the session.
+     */
+    public void disconnect() {
+        this.pooled = false;
+        this.session.disconnect();
+    }
+
     /**
      * Execute a command through a SSH session.
      *
@@ -197,36 +244,64 @@ public class SSHExec {
      * @throws IOException   if an error occurs
      */
     public int executeCommand(String command) throws JSchException, IOException {
+        outputBuffer = new StringBuilder();
+        errorBuffer = new StringBuilder();
+        return executeCommand(command, outputBuffer, errorBuffer);
+    }
 
-        session.connect();
+    /**
+     * Execute a command through a SSH session.
+     * Unless {@link #connect()} was called, the session is opened then closed once the command is executed.
+     * Otherwise, the command is executed into a new channel of the session. If that session was
+     * closed meanwhile, the command fails rather than disconnecting the other channels at its end.
+     *
+     * @param command the command to execute
+     * @param out     the buffer to fill with the standard output
+     * @param err     the buffer to fill with the standard error
+     * @return the exit code
+     * @throws SSHCommandNotSentException if the command was not sent to the server
+     * @throws JSchException              if an error occurs once the command was sent
+     * @throws IOException                if an error occurs
+     */
+    public int executeCommand(String command, StringBuilder out, StringBuilder err) throws JSchException, IOException {
+
+        boolean once = !pooled;
+        if (once) {
+            session.connect();
+        } else if (!session.isConnected()) {
+            throw new SSHCommandNotSentException("The session to '" + hostname + "' is closed");
+        }
 
         int exitCode = -1;
         ChannelExec channel = null;
         BufferedReader stdoutReader = null;
         BufferedReader stderrReader = null;
 
-
-        outputBuffer = new StringBuilder();
-        errorBuffer = new StringBuilder();
         try {
-            channel = (ChannelExec) session.openChannel("exec");
+            InputStream stdout;
+            InputStream stderr;
+            try {
+                channel = (ChannelExec) session.openChannel("exec");
 
-            channel.setCommand(command + "\n");
+                channel.setCommand(command + "\n");
 
-            InputStream stdout = channel.getInputStream();
-            InputStream stderr = channel.getErrStream();
+                stdout = channel.getInputStream();
+                stderr = channel.getErrStream();
 
-            channel.connect();
+                channel.connect();
+            } catch (JSchException e) {
+                throw new SSHCommandNotSentException("Unable to send the command to '" + hostname + "': " + e.getMessage(), e);
+            }
 
             stdoutReader = new BufferedReader(new InputStreamReader(stdout));
             stderrReader = new BufferedReader(new InputStreamReader(stderr));
 
             while (stdoutReader.read() != -1) {
-                outputBuffer.append(stdoutReader.readLine());
+                out.append(stdoutReader.readLine());
             }
 
             while (stderrReader.read() != -1) {
-                errorBuffer.append(stderrReader.readLine());
+                err.append(stderrReader.readLine());
             }
 
             exitCode = channel.getExitStatus();
@@ -241,6 +316,8 @@ public class SSHExec {
             }
             if (channel != null) {
                 channel.disconnect();
+            }
+            if (once) {
                 session.disconnect();
             }
         }        
@@ -0,0 +1,378 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package entropy.execution.driver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import com.jcraft.jsch.JSchException;
+
+/**
+ * A pool of SSH sessions shared by the drivers.
+ * <p/>
+ * A session is opened per host, user and identity file, and is reused by the following commands.
+ * Each command is executed into its own channel, so a session executes up to {@code maxChannels}
+ * commands simultaneously. When all the sessions of a host are busy, a new session is opened, up to
+ * {@code maxSessions} sessions per host. Then the commands wait for a channel.
+ * <p/>
+ * The server is polled every {@code keepAlive} milliseconds to detect the sessions that are broken.
+ * A session that is not used for {@code keepAlive} milliseconds is closed.
+ * <p/>
+ * The pool is configured with the properties {@value #MAX_SESSIONS_PROPERTY},
+ * {@value #MAX_CHANNELS_PROPERTY} and {@value #KEEP_ALIVE_PROPERTY}.
+ *
+ * @author Fabien Hermenier
+ */
+public class SSHSessionPool {
+
+    /**
+     * The property that defines the maximum number of sessions per host.
+     */
+    public static final String MAX_SESSIONS_PROPERTY = "driver.ssh.maxSessions";
+
+    /**
+     * The property that defines the maximum number of channels per session.
+     */
+    public static final String MAX_CHANNELS_PROPERTY = "driver.ssh.maxChannels";
+
+    /**
+     * The property that defines the interval between two keep-alive messages.
+     */
+    public static final String KEEP_ALIVE_PROPERTY = "driver.ssh.keepAlive";
+
+    /**
+     * The default maximum number of sessions per host.
+     */
+    public static final int DEFAULT_MAX_SESSIONS = 2;
+
+    /**
+     * The default maximum number of channels per session.
+     * The OpenSSH server accepts 10 channels per session by default.
+     */
+    public static final int DEFAULT_MAX_CHANNELS = 8;
+
+    /**
+     * The default interval between two keep-alive messages, in milliseconds.
+     */
+    public static final int DEFAULT_KEEP_ALIVE = 30000;
+
+    private final int maxSessions;
+
+    private final int maxChannels;
+
+    private final int keepAlive;
+
+    /**
+     * The sessions of each host.
+     */
+    private final Map<String, List<PooledSession>> sessions;
+
+    /**
+     * For each host, the number of sessions that are being opened.
+     */
+    private final Map<String, Integer> openings;
+
+    /**
+     * The timer that closes the idle sessions.
+     */
+    private Timer reaper;
+
+    private long nbOpened;
+
+    /**
+     * Make a new pool with the default parameters.
+     */
+    public SSHSessionPool() {
+        this(DEFAULT_MAX_SESSIONS, DEFAULT_MAX_CHANNELS, DEFAULT_KEEP_ALIVE);
+    }
+
+    /**
+     * Make a new pool.
+     *
+     * @param maxSessions the maximum number of sessions per host
+     * @param maxChannels the maximum number of channels per session
+     * @param keepAlive   the interval between two keep-alive messages, in milliseconds
+     */
+    public SSHSessionPool(int maxSessions, int maxChannels, int keepAlive) {
+        this.maxSessions = maxSessions;
+        this.maxChannels = maxChannels;
+        this.keepAlive = keepAlive;
+        this.sessions = new HashMap<String, List<PooledSession>>();
+        this.openings = new HashMap<String, Integer>();
+    }
+
+    /**
+     * Get the maximum number of sessions per host.
+     *
+     * @return a positive number
+     */
+    public int getMaxSessions() {
+        return maxSessions;
+    }
+
+    /**
+     * Get the maximum number of channels per session.
+     *
+     * @return a positive number
+     */
+    public int getMaxChannels() {
+        return maxChannels;
+    }
+
+    /**
+     * Get the interval between two keep-alive messages.
+     *
+     * @return a duration in milliseconds
+     */
+    public int getKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Execute a command on a remote host.
+     * If the command could not be sent because the session is broken, it is sent again
+     * into another session. A failure once the command was sent is not retried,
+     * as the command may have been executed.
+     *
+     * @param host     the hostname of the server
+     * @param port     the listening port
+     * @param user     the login of the user
+     * @param identity the pathname of the private key
+     * @param command  the command to execute
+     * @param out      the buffer to fill with the standard output
+     * @param err      the buffer to fill with the standard error
+     * @return the exit code
+     * @throws JSchException if an error occurs
+     * @throws IOException   if an error occurs
+     */
+    public int executeCommand(String host, int port, String user, String identity,
+                              String command, StringBuilder out, StringBuilder err) throws JSchException, IOException {
+        String key = user + "@" + host + ":" + port + "/" + identity;
+        for (int i = 0; ; i++) {
+            PooledSession s = acquire(key, host, port, user, identity);
+            try {
+                return s.ssh.executeCommand(command, out, err);
+            } catch (SSHCommandNotSentException e) {
+                //The session may have been closed by the server since its last use
+                if (i > 0) {
+                    throw e;
+                }
+            } finally {
+                release(key, s);
+            }
+        }
+    }
+
+    /**
+     * Get a session having a free channel. Wait if all the sessions are busy.
+     */
+    private PooledSession acquire(String key, String host, int port, String user, String identity) throws JSchException {
+        synchronized (this) {
+            while (true) {
+                List<PooledSession> l = sessions.get(key);
+                if (l == null) {
+                    l = new ArrayList<PooledSession>();
+                    sessions.put(key, l);
+                }
+                PooledSession best = null;
+                for (Iterator<PooledSession> ite = l.iterator(); ite.hasNext();) {
+                    PooledSession s = ite.next();
+                    if (!s.ssh.isConnected() && s.channels == 0) {
+                        ite.remove();
+                    } else if (s.ssh.isConnected() && s.channels < maxChannels && (best == null || s.channels < best.channels)) {
+                        best = s;
+                    }
+                }
+                if (best != null) {
+                    best.channels++;
+                    return best;
+                }
+                int nbOpenings = openings.containsKey(key) ? openings.get(key) : 0;
+                if (l.size() + nbOpenings < maxSessions) {
+                    openings.put(key, nbOpenings + 1);
+                    break;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new JSchException("Interrupted while waiting for a session to '" + host + "'");
+                }
+            }
+        }
+        //The handshake is made outside of the lock to not delay the other hosts
+        PooledSession s = null;
+        try {
+            SSHExec ssh = open(host, port, user, identity);
+            ssh.connect();
+            s = new PooledSession(ssh);
+            s.channels = 1;
+            return s;
+        } finally {
+            synchronized (this) {
+                int nbOpenings = openings.get(key) - 1;
+                if (nbOpenings == 0) {
+                    openings.remove(key);
+                } else {
+                    openings.put(key, nbOpenings);
+                }
+                if (s != null) {
+                    List<PooledSession> l = sessions.get(key);
+                    if (l == null) {
+                        l = new ArrayList<PooledSession>();
+                        sessions.put(key, l);
+                    }
+                    l.add(s);
+                    nbOpened++;
+                    if (reaper == null) {
+                        reaper = new Timer("ssh-reaper", true);
+                        reaper.schedule(new TimerTask() {
+                            @Override
+                            public void run() {
+                                closeIdleSessions();
+                            }
+                        }, keepAlive, keepAlive);
+                    }
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    private synchronized void release(String key, PooledSession s) {
+        s.channels--;
+        s.lastUse = System.currentTimeMillis();
+        List<PooledSession> l = sessions.get(key);
+        if (l != null && !s.ssh.isConnected() && s.channels == 0) {
+            l.remove(s);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Make a session to a host.
+     *
+     * @param host     the hostname of the server
+     * @param port     the listening port
+     * @param user     the login of the user
+     * @param identity the pathname of the private key
+     * @return a session that is not opened
+     * @throws JSchException if an error occurs
+     */
+    protected SSHExec open(String host, int port, String user, String identity) throws JSchException {
+        SSHExec ssh = new SSHExec(host, port, user);
+        ssh.useIdentity(identity);
+        ssh.setServerAliveInterval(keepAlive);
+        return ssh;
+    }
+
+    /**
+     * Close the sessions that are not used since {@code keepAlive} milliseconds.
+     */
+    public synchronized void closeIdleSessions() {
+        long now = System.currentTimeMillis();
+        for (Iterator<List<PooledSession>> ite = sessions.values().iterator(); ite.hasNext();) {
+            List<PooledSession> l = ite.next();
+            for (Iterator<PooledSession> ite2 = l.iterator(); ite2.hasNext();) {
+                PooledSession s = ite2.next();
+                if (s.channels == 0 && (!s.ssh.isConnected() || now - s.lastUse >= keepAlive)) {
+                    s.ssh.disconnect();
+                    ite2.remove();
+                }
+            }
+            if (l.isEmpty()) {
+                ite.remove();
+            }
+        }
+        if (sessions.isEmpty() && openings.isEmpty() && reaper != null) {
+            reaper.cancel();
+            reaper = null;
+        }
+    }
+
+    /**
+     * Close all the sessions.
+     * The commands being executed are interrupted.
+     */
+    public synchronized void close() {
+        for (List<PooledSession> l : sessions.values()) {
+            for (PooledSession s : l) {
+                s.ssh.disconnect();
+            }
+        }
+        sessions.clear();
+        if (reaper != null) {
+            reaper.cancel();
+            reaper = null;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Get the number of opened sessions.
+     *
+     * @return a positive number
+     */
+    public synchronized int getNbSessions() {
+        int nb = 0;
+        for (List<PooledSession> l : sessions.values()) {
+            nb += l.size();
+        }
+        return nb;
+    }
+
+    /**
+     * Get the number of sessions opened since the creation of the pool.
+     *
+     * @return a positive number
+     */
+    public synchronized long getNbOpenedSessions() {
+        return nbOpened;
+    }
+
+    @Override
+    public String toString() {
+        return "sshPool(maxSessions=" + maxSessions + ", maxChannels=" + maxChannels + ", keepAlive=" + keepAlive + ")";
+    }
+
+    /**
+     * A session and its number of opened channels.
+     */
+    private static final class PooledSession {
+
+        private final SSHExec ssh;
+
+        private int channels;
+
+        private long lastUse;
+
+        private PooledSession(SSHExec ssh) {
+            this.ssh = ssh;
+            this.lastUse = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.plan;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A controller that picks the timeout of the planning for each iteration of a control loop.
+ * <p/>
+ * The controller keeps a history of the solving processes: the size of the problem, the time to
+ * get the first solution, the time to get the last one, and the time to get a solution that is
+ * close to the last one. The latter marks the beginning of a plateau where the improvements are marginal.
+ * The timeout of a new problem is the time the history predicts to reach the plateau for its size,
+ * with a safety margin, so the solver stops once the improvements should have plateaued.
+ * The plateau is not detected while solving: the predicted timeout only approximates it.
+ * Each solving process that reaches the timeout without any solution doubles the timeout.
+ * Without history, the maximum timeout is used.
+ *
+ * @author Fabien Hermenier
+ */
+public class AdaptivePlanningBudget {
+
+    /**
+     * The number of solving processes in the history.
+     */
+    public static final int HISTORY = 32;
+
+    /**
+     * The relative distance to the objective of the last solution that denotes the plateau.
+     */
+    private static final double PLATEAU = 0.01;
+
+    /**
+     * The safety margin applied on the predicted time.
+     */
+    private static final double MARGIN = 2;
+
+    private final int minTimeout;
+
+    private final int maxTimeout;
+
+    /**
+     * The solving processes. For each, the size of the problem, the time to the first solution,
+     * the time to the last solution and the time to the plateau, in milliseconds.
+     */
+    private final LinkedList<long[]> history;
+
+    /**
+     * The number of consecutive solving processes that reached the timeout without any solution.
+     */
+    private int nbTimeouts;
+
+    /**
+     * Make a new controller.
+     *
+     * @param min the minimum timeout in seconds
+     * @param max the maximum timeout in seconds
+     */
+    public AdaptivePlanningBudget(int min, int max) {
+        this.minTimeout = min;
+        this.maxTimeout = max;
+        this.history = new LinkedList<long[]>();
+    }
+
+    /**
+     * Get the timeout for a problem.
+     *
+     * @param size the size of the problem, i.e. its number of elements
+     * @return a timeout in seconds, between the minimum and the maximum timeout
+     */
+    public synchronized int getTimeout(int size) {
+        if (history.isEmpty()) {
+            return maxTimeout;
+        }
+        //The slowest rate of the history, to be safe
+        double rate = 0;
+        for (long[] h : history) {
+            rate = Math.max(rate, (double) Math.max(h[1], h[3]) / Math.max(1, h[0]));
+        }
+        double ms = rate * Math.max(1, size) * MARGIN * (1L << Math.min(nbTimeouts, 16));
+        long t = (long) Math.ceil(ms / 1000);
+        return (int) Math.max(minTimeout, Math.min(maxTimeout, t));
+    }
+
+    /**
+     * Record a solving process.
+     *
+     * @param size  the size of the problem
+     * @param sols  the statistics of the solutions, sorted by time
+     * @param stats the statistics of the solving process
+     */
+    public synchronized void record(int size, List<SolutionStatistics> sols, SolvingStatistics stats) {
+        if (sols.isEmpty()) {
+            if (stats.hasReachedTimeout()) {
+                nbTimeouts++;
+            }
+            return;
+        }
+        nbTimeouts = 0;
+        SolutionStatistics first = sols.get(0);
+        SolutionStatistics last = sols.get(sols.size() - 1);
+        long plateau = last.getTimeCount();
+        if (last.isOptimizationProblem()) {
+            double tolerance = Math.abs(last.getObjective()) * PLATEAU;
+            for (SolutionStatistics s : sols) {
+                if (Math.abs(s.getObjective() - last.getObjective()) <= tolerance) {
+                    plateau = s.getTimeCount();
+                    break;
+                }
+            }
+        }
+        history.add(new long[]{size, first.getTimeCount(), last.getTimeCount(), plateau});
+        if (history.size() > HISTORY) {
+            history.removeFirst();
+        }
+    }
+
+    /**
+     * Get the number of solving processes in the history.
+     *
+     * @return a positive number
+     */
+    public synchronized int getNbSamples() {
+        return history.size();
+    }
+
+    /**
+     * Get the number of consecutive solving processes that reached the timeout without any solution.
+     *
+     * @return a positive number
+     */
+    public synchronized int getNbTimeouts() {
+        return nbTimeouts;
+    }
+
+    /**
+     * Get the minimum timeout.
+     *
+     * @return a duration in seconds
+     */
+    public int getMinTimeout() {
+        return minTimeout;
+    }
+
+    /**
+     * Get the maximum timeout.
+     *
+     * @return a duration in seconds
+     */
+    public int getMaxTimeout() {
+        return maxTimeout;
+    }
+}
@@ -59,6 +59,7 @@ public class SolvingStatistics implements Cloneable {
         this.nbNodes = nbNodes;
         this.nbBacktracks = nbBacktracks;
         this.timeCount = timeCount;
+        this.timeout = timeout;
     }
 
     /**
@@ -21,13 +21,19 @@ package entropy.plan;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import entropy.configuration.Configuration;
 import entropy.configuration.Configurations;
 import entropy.configuration.ConfigurationsException;
+import entropy.configuration.Node;
+import entropy.configuration.VirtualMachine;
 import entropy.plan.action.Action;
 import entropy.plan.action.ActionComparator;
+import entropy.plan.action.NodeAction;
+import entropy.plan.action.VirtualMachineAction;
 
 /**
  * Common tools related to TimedReconfigurationPlan.
@@ -96,4 +102,66 @@ public final class TimedReconfigurationPlans {
         }
 
     }
+
+    /**
+     * Project a configuration once a plan is executed. The elements involved in the
+     * actions of the plan are put into their state in the destination configuration of the plan,
+     * the other elements and the resource consumptions are kept.
+     *
+     * @param cur  the current configuration, that may be in the middle of the execution of the plan
+     * @param plan the plan
+     * @return the projected configuration
+     */
+    public static Configuration project(Configuration cur, TimedReconfigurationPlan plan) {
+        Configuration res = cur.clone();
+        Configuration dst = plan.getDestination();
+        Map<String, Node> nodes = new HashMap<String, Node>();
+        for (Node n : res.getAllNodes()) {
+            nodes.put(n.getName(), n);
+        }
+        Map<String, VirtualMachine> vms = new HashMap<String, VirtualMachine>();
+        for (VirtualMachine vm : res.getAllVirtualMachines()) {
+            vms.put(vm.getName(), vm);
+        }
+        //Boot the nodes first, and shut them down once the virtual machines are moved
+        for (Action a : plan) {
+            if (a instanceof NodeAction) {
+                Node n = nodes.get(((NodeAction) a).getNode().getName());
+                if (n != null && dst.isOnline(n)) {
+                    res.addOnline(n);
+                }
+            }
+        }
+        for (Action a : plan) {
+            if (a instanceof VirtualMachineAction) {
+                VirtualMachine old = ((VirtualMachineAction) a).getVirtualMachine();
+                VirtualMachine vm = vms.get(old.getName());
+                if (vm == null) {
+                    continue;
+                }
+                if (dst.isRunning(old)) {
+                    Node n = nodes.get(dst.getLocation(old).getName());
+                    if (n != null) {
+                        res.setRunOn(vm, n);
+                    }
+                } else if (dst.isSleeping(old)) {
+                    Node n = nodes.get(dst.getLocation(old).getName());
+                    if (n != null) {
+                        res.setSleepOn(vm, n);
+                    }
+                } else if (!dst.contains(old)) {
+                    res.remove(vm);
+                }
+            }
+        }
+        for (Action a : plan) {
+            if (a instanceof NodeAction) {
+                Node n = nodes.get(((NodeAction) a).getNode().getName());
+                if (n != null && dst.isOffline(n)) {
+                    res.addOffline(n);
+                }
+            }
+        }
+        return res;
+    }
 }
@@ -41,6 +41,7 @@ import entropy.plan.choco.actionModel.ActionModel;
 import entropy.plan.choco.actionModel.ActionModels;
 import entropy.plan.choco.actionModel.VirtualMachineActionModel;
 import entropy.plan.choco.actionModel.slice.Slice;
+import entropy.plan.choco.constraint.sliceScheduling.BandwidthPlanner;
 import entropy.plan.durationEvaluator.DurationEvaluationException;
 import entropy.plan.durationEvaluator.DurationEvaluator;
 import entropy.vjob.PlacementConstraint;
@@ -64,6 +65,11 @@ public class ChocoCustomRP extends CustomizablePlannerModule {
 
     private List<VJob> queue;
 
+    /**
+     * The constraint to restrict the migrations with regards to the network, if any.
+     */
+    private BandwidthPlanner network;
+
     /**
      * Make a new plan module.
      *
@@ -141,6 +147,9 @@ public class ChocoCustomRP extends CustomizablePlannerModule {
         //System.err.println(on);
         //System.err.println(off);
         model = new DefaultReconfigurationProblem(src, run, wait, sleep, stop, vms, on, off, this.getDurationEvaluator());
+        if (network != null) {
+            network.add(model);
+        }
         System.currentTimeMillis();
         //System.err.println((t2 - t1) + " ms to make the core RP");
         Map<Class, Integer> occurences = new HashMap<Class, Integer>();
@@ -368,6 +377,22 @@ public class ChocoCustomRP extends CustomizablePlannerModule {
     }
 
 
+    /**
+     * Restrict the number of simultaneous migrations with regards to the bandwidth
+     * of the network interface of the nodes.
+     *
+     * @param capacity  the bandwidth of the network interface of each node, in each direction.
+     *                  {@code 0} to ignore the network
+     * @param bandwidth the bandwidth consumed by a migration
+     */
+    public void setMigrationBandwidth(int capacity, int bandwidth) {
+        if (capacity > 0) {
+            this.network = new BandwidthPlanner(capacity, bandwidth);
+        } else {
+            this.network = null;
+        }
+    }
+
     /**
      * Make a sum of a large number of variables using
      * decomposition
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.plan.choco.constraint.sliceScheduling;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import choco.kernel.solver.variables.integer.IntDomainVar;
+import entropy.configuration.Configuration;
+import entropy.configuration.VirtualMachine;
+import entropy.plan.Plan;
+import entropy.plan.choco.ReconfigurationProblem;
+import entropy.plan.choco.actionModel.MigratableActionModel;
+import entropy.plan.choco.actionModel.VirtualMachineActionModel;
+import entropy.plan.choco.constraint.GlobalConstraint;
+import entropy.vjob.ExplodedSet;
+
+/**
+ * A global constraint to restrict the number of simultaneous migrations
+ * with regards to the bandwidth of the network interfaces of the nodes.
+ * Each migration consumes bandwidth on the outgoing link of its source node
+ * and on the incoming link of its destination node.
+ *
+ * @author Fabien Hermenier
+ */
+public class BandwidthPlanner implements GlobalConstraint {
+
+    /**
+     * The bandwidth of the network interface of each node.
+     */
+    private int capacity;
+
+    /**
+     * The bandwidth consumed by a migration.
+     */
+    private int bandwidth;
+
+    /**
+     * Make a new constraint.
+     *
+     * @param capacity  the bandwidth of the network interface of each node, in each direction
+     * @param bandwidth the bandwidth consumed by a migration
+     */
+    public BandwidthPlanner(int capacity, int bandwidth) {
+        this.capacity = capacity;
+        this.bandwidth = bandwidth;
+    }
+
+    /**
+     * Get the bandwidth of the network interface of each node.
+     *
+     * @return a positive integer
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Get the bandwidth consumed by a migration.
+     *
+     * @return a positive integer
+     */
+    public int getBandwidth() {
+        return bandwidth;
+    }
+
+    /**
+     * Get the bandwidth consumed by the migration of a virtual machine.
+     *
+     * @param vm the virtual machine
+     * @return a positive integer
+     */
+    protected int getBandwidth(VirtualMachine vm) {
+        return bandwidth;
+    }
+
+    @Override
+    public void add(ReconfigurationProblem rp) {
+        List<MigratableActionModel> migs = new ArrayList<MigratableActionModel>();
+        for (VirtualMachineActionModel a : rp.getVirtualMachineActions()) {
+            if (a instanceof MigratableActionModel) {
+                //Only the VMs that are known to stay on their current node are not considered
+                IntDomainVar dHoster = a.getDemandingSlice().hoster();
+                if (!dHoster.isInstantiated() || dHoster.getVal() != a.getConsumingSlice().hoster().getVal()) {
+                    migs.add((MigratableActionModel) a);
+                }
+            }
+        }
+        if (migs.isEmpty()) {
+            return;
+        }
+
+        int[] sources = new int[migs.size()];
+        int[] heights = new int[migs.size()];
+        IntDomainVar[] dHosters = new IntDomainVar[migs.size()];
+        IntDomainVar[] starts = new IntDomainVar[migs.size()];
+        IntDomainVar[] ends = new IntDomainVar[migs.size()];
+        for (int i = 0; i < sources.length; i++) {
+            MigratableActionModel a = migs.get(i);
+            sources[i] = a.getConsumingSlice().hoster().getVal();
+            dHosters[i] = a.getDemandingSlice().hoster();
+            starts[i] = a.start();
+            ends[i] = a.end();
+            heights[i] = getBandwidth(a.getVirtualMachine());
+        }
+
+        int[] capaIn = new int[rp.getNodes().length];
+        int[] capaOut = new int[rp.getNodes().length];
+        for (int idx = 0; idx < capaIn.length; idx++) {
+            capaIn[idx] = capacity;
+            capaOut[idx] = capacity;
+        }
+        Plan.logger.debug("BandwidthPlanner branched on " + migs.size() + " potential migrations");
+        rp.post(new BandwidthScheduler(capaIn, capaOut, sources, dHosters, starts, ends, heights));
+    }
+
+    @Override
+    public boolean isSatisfied(Configuration cfg) {
+        return true;
+    }
+
+    @Override
+    public ExplodedSet<VirtualMachine> getAllVirtualMachines() {
+        return new ExplodedSet<VirtualMachine>();
+    }
+
+    @Override
+    public ExplodedSet<VirtualMachine> getMisPlaced(Configuration cfg) {
+        return new ExplodedSet<VirtualMachine>();
+    }
+
+    @Override
+    public String toString() {
+        return "bandwidth(" + capacity + ", " + bandwidth + ")";
+    }
+}
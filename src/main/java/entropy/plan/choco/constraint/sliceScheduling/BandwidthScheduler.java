@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.plan.choco.constraint.sliceScheduling;
+
+import java.util.Arrays;
+
+import choco.cp.solver.variables.integer.IntVarEvent;
+import choco.kernel.common.util.tools.ArrayUtils;
+import choco.kernel.solver.ContradictionException;
+import choco.kernel.solver.constraints.integer.AbstractLargeIntSConstraint;
+import choco.kernel.solver.variables.integer.IntDomainVar;
+
+/**
+ * A cumulative constraint on the network interfaces of the nodes.
+ * Each migration consumes a constant bandwidth on the outgoing link of its source node
+ * and on the incoming link of its destination node from its start to its end.
+ * A migration is only considered once its destination is known and differs from its source.
+ * <p/>
+ * The filtering is a time-table reasoning on the compulsory parts of the migrations.
+ *
+ * @author Fabien Hermenier
+ */
+public class BandwidthScheduler extends AbstractLargeIntSConstraint {
+
+    /**
+     * The current hoster of each migrating VM.
+     */
+    private int[] sources;
+
+    /**
+     * The future hoster of each migrating VM.
+     */
+    private IntDomainVar[] dHosters;
+
+    /**
+     * The moment each migration starts.
+     */
+    private IntDomainVar[] starts;
+
+    /**
+     * The moment each migration ends.
+     */
+    private IntDomainVar[] ends;
+
+    /**
+     * The bandwidth used by each migration.
+     */
+    private int[] heights;
+
+    /**
+     * The incoming bandwidth of each node.
+     */
+    private int[] capacityIn;
+
+    /**
+     * The outgoing bandwidth of each node.
+     */
+    private int[] capacityOut;
+
+    /**
+     * Make a new constraint.
+     *
+     * @param capacityIn  the incoming bandwidth of each node
+     * @param capacityOut the outgoing bandwidth of each node
+     * @param sources     the index of the current hoster of each migrating VM
+     * @param dHosters    the future hoster of each migrating VM
+     * @param starts      the moment each migration starts
+     * @param ends        the moment each migration ends
+     * @param heights     the bandwidth used by each migration
+     */
+    public BandwidthScheduler(int[] capacityIn,
+                              int[] capacityOut,
+                              int[] sources,
+                              IntDomainVar[] dHosters,
+                              IntDomainVar[] starts,
+                              IntDomainVar[] ends,
+                              int[] heights) {
+        super(ArrayUtils.append(dHosters, starts, ends));
+        this.capacityIn = capacityIn;
+        this.capacityOut = capacityOut;
+        this.sources = sources;
+        this.dHosters = dHosters;
+        this.starts = starts;
+        this.ends = ends;
+        this.heights = heights;
+    }
+
+    @Override
+    public int getFilteredEventMask(int idx) {
+        if (idx < dHosters.length) {
+            return IntVarEvent.INSTINT_MASK;
+        }
+        return IntVarEvent.INSTINT_MASK + IntVarEvent.BOUNDS_MASK;
+    }
+
+    /**
+     * Check whether a migration will be performed for sure.
+     *
+     * @param i the index of the migration
+     * @return {@code true} if the destination is known and differs from the source
+     */
+    private boolean isMoving(int i) {
+        return dHosters[i].isInstantiated() && dHosters[i].getVal() != sources[i];
+    }
+
+    @Override
+    public void propagate() throws ContradictionException {
+        for (int x = 0; x < capacityOut.length; x++) {
+            filter(x, true);
+            filter(x, false);
+        }
+    }
+
+    /**
+     * Filter the moments of the migrations that use one link of a node.
+     *
+     * @param node     the index of the node
+     * @param outgoing {@code true} to consider the outgoing link, {@code false} for the incoming link
+     * @throws ContradictionException if the link is overloaded
+     */
+    private void filter(int node, boolean outgoing) throws ContradictionException {
+        int capa = outgoing ? capacityOut[node] : capacityIn[node];
+        int[] users = users(node, outgoing);
+        if (users.length == 0) {
+            return;
+        }
+        int[][] profile = compulsoryProfile(users);
+        int[] moments = profile[0];
+        int[] loads = profile[1];
+        for (int i = 0; i < loads.length; i++) {
+            if (loads[i] > capa) {
+                fail();
+            }
+        }
+
+        for (int i : users) {
+            if (heights[i] > capa) {
+                fail();
+            }
+            //A migration that starts at t occupies the link at least in [t, t+1)
+            if (!starts[i].isInstantiated()) {
+                int lb = starts[i].getInf();
+                for (int x = 0; x < moments.length - 1; x++) {
+                    if (moments[x + 1] <= lb) {
+                        continue;
+                    }
+                    if (moments[x] > lb) {
+                        break;
+                    }
+                    if (loads[x] - ownLoad(i, moments[x]) + heights[i] > capa) {
+                        lb = moments[x + 1];
+                    }
+                }
+                if (lb > starts[i].getInf()) {
+                    starts[i].setInf(lb);
+                }
+            }
+            //A migration that ends at t occupies the link at least in [t-1, t)
+            if (!ends[i].isInstantiated()) {
+                int ub = ends[i].getSup();
+                for (int x = moments.length - 2; x >= 0; x--) {
+                    if (moments[x] >= ub) {
+                        continue;
+                    }
+                    if (moments[x + 1] < ub) {
+                        break;
+                    }
+                    if (loads[x] - ownLoad(i, moments[x]) + heights[i] > capa) {
+                        ub = moments[x];
+                    }
+                }
+                if (ub < ends[i].getSup()) {
+                    ends[i].setSup(ub);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the migrations that are known to use a link of a node.
+     *
+     * @param node     the index of the node
+     * @param outgoing {@code true} for the outgoing link, {@code false} for the incoming link
+     * @return the indexes of the migrations
+     */
+    private int[] users(int node, boolean outgoing) {
+        int[] us = new int[sources.length];
+        int nb = 0;
+        for (int i = 0; i < sources.length; i++) {
+            if (isMoving(i) && (outgoing ? sources[i] : dHosters[i].getVal()) == node) {
+                us[nb++] = i;
+            }
+        }
+        return Arrays.copyOf(us, nb);
+    }
+
+    /**
+     * The load of a migration at a given moment with regards to its compulsory part.
+     *
+     * @param i the index of the migration
+     * @param t the moment
+     * @return its height if the moment is inside its compulsory part, {@code 0} otherwise
+     */
+    private int ownLoad(int i, int t) {
+        int st = starts[i].getSup();
+        int ed = ends[i].getInf();
+        return st < ed && st <= t && t < ed ? heights[i] : 0;
+    }
+
+    /**
+     * Compute the profile of the compulsory parts of some migrations.
+     *
+     * @param users the index of the migrations
+     * @return the sorted moments where the profile changes in the first array and
+     *         the load of the link between a moment and the next one in the second array
+     */
+    private int[][] compulsoryProfile(int[] users) {
+        int[] evts = new int[users.length * 2];
+        int nb = 0;
+        for (int i : users) {
+            int st = starts[i].getSup();
+            int ed = ends[i].getInf();
+            if (st < ed) {
+                evts[nb++] = st;
+                evts[nb++] = ed;
+            }
+        }
+        int[] moments = Arrays.copyOf(evts, nb);
+        Arrays.sort(moments);
+        int nbMoments = 0;
+        for (int x = 0; x < moments.length; x++) {
+            if (nbMoments == 0 || moments[nbMoments - 1] != moments[x]) {
+                moments[nbMoments++] = moments[x];
+            }
+        }
+        moments = Arrays.copyOf(moments, nbMoments);
+        int[] loads = new int[nbMoments];
+        for (int i : users) {
+            int st = starts[i].getSup();
+            int ed = ends[i].getInf();
+            if (st < ed) {
+                for (int x = Arrays.binarySearch(moments, st); moments[x] < ed; x++) {
+                    loads[x] += heights[i];
+                }
+            }
+        }
+        return new int[][]{moments, loads};
+    }
+
+    @Override
+    public boolean isSatisfied(int[] vals) {
+        int nb = dHosters.length;
+        for (int i = 0; i < nb; i++) {
+            int dst = vals[i];
+            if (dst == sources[i]) {
+                continue;
+            }
+            //The load on the links of the source and the destination at the moment the migration starts
+            int out = 0;
+            int in = 0;
+            int t = vals[i + nb];
+            for (int j = 0; j < nb; j++) {
+                if (vals[j] != sources[j] && vals[j + nb] <= t && t < vals[j + 2 * nb]) {
+                    if (sources[j] == sources[i]) {
+                        out += heights[j];
+                    }
+                    if (vals[j] == dst) {
+                        in += heights[j];
+                    }
+                }
+            }
+            if (out > capacityOut[sources[i]] || in > capacityIn[dst]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -19,6 +19,8 @@
 package entropy.plan.durationEvaluator;
 
 
+import java.util.EnumSet;
+
 import org.antlr.runtime.ANTLRStringStream;
 import org.antlr.runtime.CharStream;
 import org.antlr.runtime.CommonTokenStream;
@@ -29,6 +31,9 @@ import entropy.configuration.VirtualMachine;
 
 /**
  * A duration evaluator based on ANTLR.
+ * <p/>
+ * Each expression is parsed once, when the evaluator is created, into a
+ * {@link DurationExpression}. The evaluations then only walk the compiled trees.
  *
  * @author Fabien Hermenier
  */
@@ -37,48 +42,58 @@ public class ANTLRDurationEvaluator implements DurationEvaluator {
     /**
      * Index for the migration.
      */
-    private static final int MIGRATE_STREAM = 0;
+    static final int MIGRATE_STREAM = 0;
 
     /**
      * Index for the run.
      */
-    private static final int RUN_STREAM = 1;
+    static final int RUN_STREAM = 1;
 
     /**
      * Index for the stop.
      */
-    private static final int STOP_STREAM = 2;
+    static final int STOP_STREAM = 2;
 
     /**
      * Index for the local suspend.
      */
-    private static final int LOCAL_SUSPEND_STREAM = 3;
+    static final int LOCAL_SUSPEND_STREAM = 3;
 
     /**
      * Index for the local resume.
      */
-    private static final int LOCAL_RESUME_STREAM = 4;
+    static final int LOCAL_RESUME_STREAM = 4;
 
     /**
      * Index for the remote resume.
      */
-    private static final int REMOTE_RESUME_STREAM = 5;
+    static final int REMOTE_RESUME_STREAM = 5;
 
     /**
      * Index for the startup.
      */
-    private static final int STARTUP_STREAM = 6;
+    static final int STARTUP_STREAM = 6;
 
     /**
      * Index for the shutdown.
      */
-    private static final int SHUTDOWN_STREAM = 7;
+    static final int SHUTDOWN_STREAM = 7;
 
     /**
      * the different expressions. Use the different indexes to manipulate it.
      */
     private String[] exprs;
 
+    /**
+     * The compiled expressions. Use the different indexes to manipulate it.
+     */
+    private DurationExpression[] compiled;
+
+    /**
+     * The errors that occurred while compiling the expressions, if any.
+     */
+    private RecognitionException[] errors;
+
     /**
      * Make a new evaluator that evaluate different expressions.
      *
@@ -109,6 +124,20 @@ public class ANTLRDurationEvaluator implements DurationEvaluator {
         this.exprs[LOCAL_SUSPEND_STREAM] = localSuspendExpr;
         this.exprs[STARTUP_STREAM] = startupExpr;
         this.exprs[SHUTDOWN_STREAM] = shutdownExpr;
+
+        this.compiled = new DurationExpression[exprs.length];
+        this.errors = new RecognitionException[exprs.length];
+        for (int i = 0; i < exprs.length; i++) {
+            if (exprs[i] == null) {
+                continue;
+            }
+            try {
+                ANTLRDurationEvaluatorParser p = new ANTLRDurationEvaluatorParser(this.read(i));
+                compiled[i] = i == STARTUP_STREAM || i == SHUTDOWN_STREAM ? p.compileNode() : p.compileVM();
+            } catch (RecognitionException e) {
+                errors[i] = e;
+            }
+        }
     }
 
     /**
@@ -131,11 +160,10 @@ public class ANTLRDurationEvaluator implements DurationEvaluator {
      * @param idx the index of the expression
      * @param vm  the virtual machine
      * @return the estimation of the expression
-     * @throws RecognitionException if an error occurs during the evaluation
+     * @throws RecognitionException if the expression can not be compiled
      */
     private int evaluate(int idx, VirtualMachine vm) throws RecognitionException {
-        ANTLRDurationEvaluatorParser p = new ANTLRDurationEvaluatorParser(this.read(idx));
-        return p.evaluate(vm);
+        return get(idx).evaluate(vm);
     }
 
     /**
@@ -144,11 +172,34 @@ public class ANTLRDurationEvaluator implements DurationEvaluator {
      * @param idx the index of the expression
      * @param n   the node
      * @return the estimation of the expression
-     * @throws RecognitionException if an error occurs during the evaluation
+     * @throws RecognitionException if the expression can not be compiled
      */
     private int evaluate(int idx, Node n) throws RecognitionException {
-        ANTLRDurationEvaluatorParser p = new ANTLRDurationEvaluatorParser(this.read(idx));
-        return p.evaluate(n);
+        return get(idx).evaluate(n);
+    }
+
+    /**
+     * Get the variables an expression refers to.
+     *
+     * @param idx the index of the expression
+     * @return the variables, {@code null} if the expression can not be compiled
+     */
+    EnumSet<DurationExpression.Variable> getVariables(int idx) {
+        return compiled[idx] == null ? null : compiled[idx].getVariables();
+    }
+
+    /**
+     * Get a compiled expression.
+     *
+     * @param idx the index of the expression
+     * @return the compiled expression
+     * @throws RecognitionException if the expression can not be compiled
+     */
+    private DurationExpression get(int idx) throws RecognitionException {
+        if (errors[idx] != null) {
+            throw errors[idx];
+        }
+        return compiled[idx];
     }
 
     @Override
@@ -0,0 +1,265 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.plan.durationEvaluator;
+
+import gnu.trove.map.hash.TObjectIntHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import entropy.configuration.Node;
+import entropy.configuration.VirtualMachine;
+
+/**
+ * A decorator that memorizes the durations computed by a DurationEvaluator.
+ * <p/>
+ * A duration is stored with a key made of the resources of the virtual machine or
+ * the node the expression refers to. With an {@link ANTLRDurationEvaluator}, the key only
+ * contains the variables of each expression, so all the virtual machines of a same flavour
+ * share their durations. With another evaluator, the key contains all the resources.
+ * <p/>
+ * The keys are hashed and compared using their values, so any resource can be stored.
+ * Each action has its own cache, guarded by its own lock, that is flushed once it contains
+ * {@link #MAX_ENTRIES} durations.
+ *
+ * @author Fabien Hermenier
+ */
+public class CachedDurationEvaluator implements DurationEvaluator {
+
+    /**
+     * The maximum number of durations stored for an action.
+     */
+    public static final int MAX_ENTRIES = 4096;
+
+    private final DurationEvaluator ev;
+
+    /**
+     * For each action, the variables that compose the key.
+     */
+    private final DurationExpression.Variable[][] variables;
+
+    /**
+     * For each action, the stored durations.
+     */
+    private final List<TObjectIntHashMap<Key>> caches;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Make a new cache.
+     *
+     * @param ev the evaluator that computes the durations
+     */
+    public CachedDurationEvaluator(DurationEvaluator ev) {
+        this.ev = ev;
+        variables = new DurationExpression.Variable[8][];
+        caches = new ArrayList<TObjectIntHashMap<Key>>(variables.length);
+        for (int i = 0; i < variables.length; i++) {
+            EnumSet<DurationExpression.Variable> vars = null;
+            if (ev instanceof ANTLRDurationEvaluator) {
+                vars = ((ANTLRDurationEvaluator) ev).getVariables(i);
+            }
+            if (vars == null) {
+                boolean node = i == ANTLRDurationEvaluator.STARTUP_STREAM || i == ANTLRDurationEvaluator.SHUTDOWN_STREAM;
+                vars = node ? DurationExpression.Variable.NODE : DurationExpression.Variable.VM;
+            }
+            variables[i] = vars.toArray(new DurationExpression.Variable[vars.size()]);
+            caches.add(new TObjectIntHashMap<Key>());
+        }
+    }
+
+    /**
+     * Get the decorated evaluator.
+     *
+     * @return the evaluator that computes the durations
+     */
+    public DurationEvaluator getEvaluator() {
+        return ev;
+    }
+
+    /**
+     * The values of the variables of an expression for an element.
+     */
+    private static final class Key {
+
+        private final int[] values;
+
+        private final int hash;
+
+        /**
+         * Make the key of a duration.
+         *
+         * @param vars the variables of the key
+         * @param vm   the virtual machine
+         * @param n    the node
+         */
+        Key(DurationExpression.Variable[] vars, VirtualMachine vm, Node n) {
+            values = new int[vars.length];
+            for (int i = 0; i < vars.length; i++) {
+                values[i] = vars[i].of(vm, n);
+            }
+            hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(values, ((Key) o).values);
+        }
+    }
+
+    /**
+     * Get a duration from the cache, or compute it.
+     *
+     * @param idx the index of the action
+     * @param vm  the virtual machine, for an action on a virtual machine
+     * @param n   the node, for an action on a node
+     * @return the duration
+     * @throws DurationEvaluationException if an error occurred while computing the duration
+     */
+    private int get(int idx, VirtualMachine vm, Node n) throws DurationEvaluationException {
+        if (vm == null && n == null) {
+            return compute(idx, vm, n);
+        }
+        Key k = new Key(variables[idx], vm, n);
+        TObjectIntHashMap<Key> cache = caches.get(idx);
+        synchronized (cache) {
+            if (cache.containsKey(k)) {
+                hits.incrementAndGet();
+                return cache.get(k);
+            }
+        }
+        int d = compute(idx, vm, n);
+        misses.incrementAndGet();
+        synchronized (cache) {
+            if (cache.size() >= MAX_ENTRIES) {
+                cache.clear();
+            }
+            cache.put(k, d);
+        }
+        return d;
+    }
+
+    private int compute(int idx, VirtualMachine vm, Node n) throws DurationEvaluationException {
+        switch (idx) {
+            case ANTLRDurationEvaluator.MIGRATE_STREAM:
+                return ev.evaluateMigration(vm);
+            case ANTLRDurationEvaluator.RUN_STREAM:
+                return ev.evaluateRun(vm);
+            case ANTLRDurationEvaluator.STOP_STREAM:
+                return ev.evaluateStop(vm);
+            case ANTLRDurationEvaluator.LOCAL_SUSPEND_STREAM:
+                return ev.evaluateLocalSuspend(vm);
+            case ANTLRDurationEvaluator.LOCAL_RESUME_STREAM:
+                return ev.evaluateLocalResume(vm);
+            case ANTLRDurationEvaluator.REMOTE_RESUME_STREAM:
+                return ev.evaluateRemoteResume(vm);
+            case ANTLRDurationEvaluator.STARTUP_STREAM:
+                return ev.evaluateStartup(n);
+            default:
+                return ev.evaluateShutdown(n);
+        }
+    }
+
+    @Override
+    public int evaluateMigration(VirtualMachine vm) throws DurationEvaluationException {
+        return get(ANTLRDurationEvaluator.MIGRATE_STREAM, vm, null);
+    }
+
+    @Override
+    public int evaluateRun(VirtualMachine vm) throws DurationEvaluationException {
+        return get(ANTLRDurationEvaluator.RUN_STREAM, vm, null);
+    }
+
+    @Override
+    public int evaluateStop(VirtualMachine vm) throws DurationEvaluationException {
+        return get(ANTLRDurationEvaluator.STOP_STREAM, vm, null);
+    }
+
+    @Override
+    public int evaluateLocalSuspend(VirtualMachine vm) throws DurationEvaluationException {
+        return get(ANTLRDurationEvaluator.LOCAL_SUSPEND_STREAM, vm, null);
+    }
+
+    @Override
+    public int evaluateLocalResume(VirtualMachine vm) throws DurationEvaluationException {
+        return get(ANTLRDurationEvaluator.LOCAL_RESUME_STREAM, vm, null);
+    }
+
+    @Override
+    public int evaluateRemoteResume(VirtualMachine vm) throws DurationEvaluationException {
+        return get(ANTLRDurationEvaluator.REMOTE_RESUME_STREAM, vm, null);
+    }
+
+    @Override
+    public int evaluateStartup(Node node) throws DurationEvaluationException {
+        return get(ANTLRDurationEvaluator.STARTUP_STREAM, null, node);
+    }
+
+    @Override
+    public int evaluateShutdown(Node node) throws DurationEvaluationException {
+        return get(ANTLRDurationEvaluator.SHUTDOWN_STREAM, null, node);
+    }
+
+    /**
+     * Get the number of durations retrieved from the cache.
+     *
+     * @return a positive number
+     */
+    public long getNbHits() {
+        return hits.get();
+    }
+
+    /**
+     * Get the number of durations that were computed by the decorated evaluator.
+     *
+     * @return a positive number
+     */
+    public long getNbMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Remove the stored durations and reset the counters.
+     */
+    public void clear() {
+        for (TObjectIntHashMap<Key> c : caches) {
+            synchronized (c) {
+                c.clear();
+            }
+        }
+        hits.set(0);
+        misses.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "cache(" + ev + ", hits=" + hits.get() + ", misses=" + misses.get() + ")";
+    }
+}
@@ -73,6 +73,21 @@ public final class DurationEvaluatorFactory {
 	 */
 	public static final String SHUTDOWN_DURATION_PROPERTY = BASE_PROPERTY + "shutdown";
 
+	/**
+	 * Identifier of the flag to memorize the durations. Disabled by default.
+	 */
+	public static final String CACHE_PROPERTY = BASE_PROPERTY + "cache";
+
+	/**
+	 * Identifier of the flag to learn the durations from the executed actions. Disabled by default.
+	 */
+	public static final String LEARN_PROPERTY = BASE_PROPERTY + "learn";
+
+	/**
+	 * Identifier of the number of samples required to use a learned duration.
+	 */
+	public static final String LEARN_MIN_SAMPLES_PROPERTY = LEARN_PROPERTY + ".minSamples";
+
 	/**
 	 * No instantiation please.
 	 */
@@ -82,6 +97,8 @@ public final class DurationEvaluatorFactory {
 	
 	/**
 	 * Get a DurationEvaluator by reading properties.
+	 * The evaluator is decorated by a {@link CachedDurationEvaluator} if the cache is enabled.
+	 * If the learning is enabled, the result is a {@link LearnedDurationEvaluator} that uses this evaluator as a fallback.
 	 * @param props the properties that contain the expressions.
 	 * @return a duration evaluator
 	 * @throws entropy.PropertiesHelperException if the property file does not contains all the required properties
@@ -95,6 +112,13 @@ public final class DurationEvaluatorFactory {
 		String remoteResume = props.getRequiredProperty(REMOTE_RESUME_DURATION_PROPERTY);
 		String startup = props.getRequiredProperty(STARTUP_DURATION_PROPERTY);
 		String shutdown = props.getRequiredProperty(SHUTDOWN_DURATION_PROPERTY);
-		return new ANTLRDurationEvaluator(mig, stop, run, suspend, localResume, remoteResume, startup, shutdown);
+		DurationEvaluator ev = new ANTLRDurationEvaluator(mig, stop, run, suspend, localResume, remoteResume, startup, shutdown);
+		if (props.getOptionalProperty(CACHE_PROPERTY, false)) {
+			ev = new CachedDurationEvaluator(ev);
+		}
+		if (props.getOptionalProperty(LEARN_PROPERTY, false)) {
+			ev = new LearnedDurationEvaluator(ev, props.getOptionalProperty(LEARN_MIN_SAMPLES_PROPERTY, LearnedDurationEvaluator.DEFAULT_MIN_SAMPLES));
+		}
+		return ev;
 	}
 }
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.plan.durationEvaluator;
+
+import java.util.EnumSet;
+
+import entropy.configuration.Node;
+import entropy.configuration.VirtualMachine;
+
+/**
+ * An arithmetic expression compiled by {@link ANTLRDurationEvaluatorParser}
+ * into a tree that can be evaluated without being parsed again.
+ * <p/>
+ * The sub-expressions that do not depend on a variable are computed once, at compilation.
+ * A compiled expression is immutable, so it can be evaluated by several threads.
+ *
+ * @author Fabien Hermenier
+ */
+public abstract class DurationExpression {
+
+    /**
+     * The binary operators.
+     */
+    public static enum Operator {
+        ADD, SUB, MUL, DIV
+    }
+
+    /**
+     * The variables, that refer to the resources of a virtual machine or a node.
+     */
+    public static enum Variable {
+        VM_MEMORY, VM_CPU_CONSUMPTION, VM_CPU_NB, VM_MEMORY_DEMAND, VM_CPU_DEMAND,
+        NODE_MEMORY, NODE_CPU_CAPACITY, NODE_CPU_NB;
+
+        /**
+         * The variables that refer to a virtual machine.
+         */
+        public static final EnumSet<Variable> VM = EnumSet.range(VM_MEMORY, VM_CPU_DEMAND);
+
+        /**
+         * The variables that refer to a node.
+         */
+        public static final EnumSet<Variable> NODE = EnumSet.range(NODE_MEMORY, NODE_CPU_NB);
+
+        /**
+         * Get the value of the variable.
+         *
+         * @param vm the virtual machine, if the variable refers to a virtual machine
+         * @param n  the node, if the variable refers to a node
+         * @return the value
+         */
+        public int of(VirtualMachine vm, Node n) {
+            switch (this) {
+                case VM_MEMORY:
+                    return vm.getMemoryConsumption();
+                case VM_CPU_CONSUMPTION:
+                    return vm.getCPUConsumption();
+                case VM_CPU_NB:
+                    return vm.getNbOfCPUs();
+                case VM_MEMORY_DEMAND:
+                    return vm.getMemoryDemand();
+                case VM_CPU_DEMAND:
+                    return vm.getCPUDemand();
+                case NODE_MEMORY:
+                    return n.getMemoryCapacity();
+                case NODE_CPU_CAPACITY:
+                    return n.getCPUCapacity();
+                default:
+                    return n.getNbOfCPUs();
+            }
+        }
+    }
+
+    /**
+     * Evaluate the expression.
+     *
+     * @param vm the virtual machine the variables of the expression refer to. May be {@code null} for a node expression
+     * @param n  the node the variables of the expression refer to. May be {@code null} for a virtual machine expression
+     * @return the value of the expression
+     */
+    public abstract double value(VirtualMachine vm, Node n);
+
+    /**
+     * Get the variables the expression refers to.
+     *
+     * @return a set of variables, empty if the expression is a constant
+     */
+    public EnumSet<Variable> getVariables() {
+        EnumSet<Variable> vars = EnumSet.noneOf(Variable.class);
+        collect(vars);
+        return vars;
+    }
+
+    /**
+     * Add the variables of the expression to a set.
+     *
+     * @param vars the set to fill
+     */
+    abstract void collect(EnumSet<Variable> vars);
+
+    /**
+     * Evaluate the expression of a virtual machine.
+     *
+     * @param vm the virtual machine
+     * @return the value of the expression, truncated. {@code -1} if the virtual machine is {@code null}
+     */
+    public int evaluate(VirtualMachine vm) {
+        if (vm == null) {
+            return -1;
+        }
+        return (int) value(vm, null);
+    }
+
+    /**
+     * Evaluate the expression of a node.
+     *
+     * @param n the node
+     * @return the value of the expression, truncated. {@code -1} if the node is {@code null}
+     */
+    public int evaluate(Node n) {
+        if (n == null) {
+            return -1;
+        }
+        return (int) value(null, n);
+    }
+
+    /**
+     * Make a constant.
+     *
+     * @param v the value of the constant
+     * @return the expression
+     */
+    public static DurationExpression constant(double v) {
+        return new Constant(v);
+    }
+
+    /**
+     * Make a variable.
+     *
+     * @param v the variable
+     * @return the expression
+     */
+    public static DurationExpression variable(Variable v) {
+        return new Var(v);
+    }
+
+    /**
+     * Make a binary operation. If the two operands are constants, the result
+     * is directly computed.
+     *
+     * @param op the operator
+     * @param l  the left operand
+     * @param r  the right operand
+     * @return the expression
+     */
+    public static DurationExpression binary(Operator op, DurationExpression l, DurationExpression r) {
+        if (l instanceof Constant && r instanceof Constant) {
+            return new Constant(apply(op, ((Constant) l).v, ((Constant) r).v));
+        }
+        return new Binary(op, l, r);
+    }
+
+    private static double apply(Operator op, double l, double r) {
+        switch (op) {
+            case ADD:
+                return l + r;
+            case SUB:
+                return l - r;
+            case MUL:
+                return l * r;
+            default:
+                return l / r;
+        }
+    }
+
+    /**
+     * A constant value.
+     */
+    private static final class Constant extends DurationExpression {
+
+        private final double v;
+
+        private Constant(double v) {
+            this.v = v;
+        }
+
+        @Override
+        public double value(VirtualMachine vm, Node n) {
+            return v;
+        }
+
+        @Override
+        void collect(EnumSet<Variable> vars) {
+        }
+
+        @Override
+        public String toString() {
+            return Double.toString(v);
+        }
+    }
+
+    /**
+     * A resource of the virtual machine or the node.
+     */
+    private static final class Var extends DurationExpression {
+
+        private final Variable v;
+
+        private Var(Variable v) {
+            this.v = v;
+        }
+
+        @Override
+        public double value(VirtualMachine vm, Node n) {
+            return v.of(vm, n);
+        }
+
+        @Override
+        void collect(EnumSet<Variable> vars) {
+            vars.add(v);
+        }
+
+        @Override
+        public String toString() {
+            return v.toString();
+        }
+    }
+
+    /**
+     * A binary operation.
+     */
+    private static final class Binary extends DurationExpression {
+
+        private final Operator op;
+
+        private final DurationExpression l;
+
+        private final DurationExpression r;
+
+        private Binary(Operator op, DurationExpression l, DurationExpression r) {
+            this.op = op;
+            this.l = l;
+            this.r = r;
+        }
+
+        @Override
+        public double value(VirtualMachine vm, Node n) {
+            return apply(op, l.value(vm, n), r.value(vm, n));
+        }
+
+        @Override
+        void collect(EnumSet<Variable> vars) {
+            l.collect(vars);
+            r.collect(vars);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + l + " " + op + " " + r + ")";
+        }
+    }
+}
@@ -0,0 +1,398 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.plan.durationEvaluator;
+
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+import entropy.configuration.Node;
+import entropy.configuration.VirtualMachine;
+import entropy.plan.action.Action;
+import entropy.plan.action.Migration;
+import entropy.plan.action.Resume;
+import entropy.plan.action.Run;
+import entropy.plan.action.Shutdown;
+import entropy.plan.action.Startup;
+import entropy.plan.action.Stop;
+import entropy.plan.action.Suspend;
+
+/**
+ * A duration evaluator that learns from the durations of the executed actions.
+ * <p/>
+ * For each kind of action, the evaluator maintains:
+ * <ul>
+ * <li>a moving average of the durations of each signature, i.e. each couple (memory, number of CPUs)
+ * of the virtual machines or the nodes;</li>
+ * <li>a linear regression, updated with a recursive least squares and a forgetting factor,
+ * of the duration on the memory and the CPU consumption of the virtual machines, or the memory and
+ * the number of CPUs of the nodes.</li>
+ * </ul>
+ * A duration is estimated using the average of the signature if it has enough samples, then the
+ * regression if it has enough samples and if the recorded features determine all its coefficients,
+ * then the fallback evaluator. With a single flavour of virtual machines, the regression would
+ * extrapolate a constant to the other flavours, so the fallback is used. Durations are expressed in seconds.
+ *
+ * @author Fabien Hermenier
+ */
+public class LearnedDurationEvaluator implements DurationEvaluator {
+
+    /**
+     * The default number of samples required to use an estimation.
+     */
+    public static final int DEFAULT_MIN_SAMPLES = 3;
+
+    /**
+     * The weight of a new sample in the moving averages.
+     */
+    private static final double ALPHA = 0.3;
+
+    /**
+     * The forgetting factor of the regressions.
+     */
+    private static final double LAMBDA = 0.98;
+
+    /**
+     * The initial uncertainty of the regressions.
+     */
+    private static final double DELTA = 1000;
+
+    /**
+     * The relative norm under which a feature is considered as a combination of the previous ones.
+     */
+    private static final double EPSILON = 1e-6;
+
+    private final DurationEvaluator fallback;
+
+    private final int minSamples;
+
+    /**
+     * For each action, the moving average of each signature.
+     */
+    private final TLongObjectHashMap<double[]>[] averages;
+
+    /**
+     * For each action, the regression.
+     */
+    private final Regression[] regressions;
+
+    private long nbSamples;
+
+    private long nbFallbacks;
+
+    /**
+     * Make a new evaluator with {@link #DEFAULT_MIN_SAMPLES} samples.
+     *
+     * @param fallback the evaluator to use when there is not enough samples
+     */
+    public LearnedDurationEvaluator(DurationEvaluator fallback) {
+        this(fallback, DEFAULT_MIN_SAMPLES);
+    }
+
+    /**
+     * Make a new evaluator.
+     *
+     * @param fallback   the evaluator to use when there is not enough samples
+     * @param minSamples the number of samples required to use an estimation
+     */
+    @SuppressWarnings("unchecked")
+    public LearnedDurationEvaluator(DurationEvaluator fallback, int minSamples) {
+        this.fallback = fallback;
+        this.minSamples = minSamples;
+        averages = new TLongObjectHashMap[8];
+        regressions = new Regression[averages.length];
+        for (int i = 0; i < averages.length; i++) {
+            averages[i] = new TLongObjectHashMap<double[]>();
+            regressions[i] = new Regression();
+        }
+    }
+
+    /**
+     * Get the evaluator used when there is not enough samples.
+     *
+     * @return an evaluator
+     */
+    public DurationEvaluator getFallback() {
+        return fallback;
+    }
+
+    /**
+     * Record the duration of an executed action.
+     * Actions that are not estimated by a DurationEvaluator are ignored.
+     *
+     * @param a      the action
+     * @param millis the duration of its execution in milliseconds
+     */
+    public void record(Action a, long millis) {
+        double secs = millis / 1000.0;
+        if (a instanceof Migration) {
+            record(ANTLRDurationEvaluator.MIGRATE_STREAM, ((Migration) a).getVirtualMachine(), null, secs);
+        } else if (a instanceof Run) {
+            record(ANTLRDurationEvaluator.RUN_STREAM, ((Run) a).getVirtualMachine(), null, secs);
+        } else if (a instanceof Stop) {
+            record(ANTLRDurationEvaluator.STOP_STREAM, ((Stop) a).getVirtualMachine(), null, secs);
+        } else if (a instanceof Suspend) {
+            record(ANTLRDurationEvaluator.LOCAL_SUSPEND_STREAM, ((Suspend) a).getVirtualMachine(), null, secs);
+        } else if (a instanceof Resume) {
+            Resume r = (Resume) a;
+            int idx = r.getHost().equals(r.getDestination()) ? ANTLRDurationEvaluator.LOCAL_RESUME_STREAM
+                    : ANTLRDurationEvaluator.REMOTE_RESUME_STREAM;
+            record(idx, r.getVirtualMachine(), null, secs);
+        } else if (a instanceof Startup) {
+            record(ANTLRDurationEvaluator.STARTUP_STREAM, null, ((Startup) a).getNode(), secs);
+        } else if (a instanceof Shutdown) {
+            record(ANTLRDurationEvaluator.SHUTDOWN_STREAM, null, ((Shutdown) a).getNode(), secs);
+        }
+    }
+
+    private synchronized void record(int idx, VirtualMachine vm, Node n, double secs) {
+        long k = signature(vm, n);
+        double[] avg = averages[idx].get(k);
+        if (avg == null) {
+            averages[idx].put(k, new double[]{secs, 1});
+        } else {
+            avg[0] += ALPHA * (secs - avg[0]);
+            avg[1]++;
+        }
+        regressions[idx].update(features(vm, n), secs);
+        nbSamples++;
+    }
+
+    private static long signature(VirtualMachine vm, Node n) {
+        if (vm != null) {
+            return ((long) vm.getMemoryConsumption() << 32) | (vm.getNbOfCPUs() & 0xffffffffL);
+        }
+        return ((long) n.getMemoryCapacity() << 32) | (n.getNbOfCPUs() & 0xffffffffL);
+    }
+
+    /**
+     * The features of the regressions, scaled to similar magnitudes.
+     */
+    private static double[] features(VirtualMachine vm, Node n) {
+        if (vm != null) {
+            return new double[]{1, vm.getMemoryConsumption() / 1024.0, vm.getCPUConsumption() / 100.0};
+        }
+        return new double[]{1, n.getMemoryCapacity() / 1024.0, n.getNbOfCPUs()};
+    }
+
+    /**
+     * Estimate a duration.
+     *
+     * @param idx the index of the action
+     * @param vm  the virtual machine, for an action on a virtual machine
+     * @param n   the node, for an action on a node
+     * @return the estimated duration, {@code -1} if there is not enough samples
+     */
+    private synchronized int estimate(int idx, VirtualMachine vm, Node n) {
+        double[] avg = averages[idx].get(signature(vm, n));
+        if (avg != null && avg[1] >= minSamples) {
+            return toDuration(avg[0]);
+        }
+        Regression r = regressions[idx];
+        if (r.nb >= minSamples && r.isDetermined()) {
+            return toDuration(r.predict(features(vm, n)));
+        }
+        nbFallbacks++;
+        return -1;
+    }
+
+    private static int toDuration(double secs) {
+        return (int) Math.max(1, Math.round(secs));
+    }
+
+    @Override
+    public int evaluateMigration(VirtualMachine vm) throws DurationEvaluationException {
+        int d = vm == null ? -1 : estimate(ANTLRDurationEvaluator.MIGRATE_STREAM, vm, null);
+        return d >= 0 ? d : fallback.evaluateMigration(vm);
+    }
+
+    @Override
+    public int evaluateRun(VirtualMachine vm) throws DurationEvaluationException {
+        int d = vm == null ? -1 : estimate(ANTLRDurationEvaluator.RUN_STREAM, vm, null);
+        return d >= 0 ? d : fallback.evaluateRun(vm);
+    }
+
+    @Override
+    public int evaluateStop(VirtualMachine vm) throws DurationEvaluationException {
+        int d = vm == null ? -1 : estimate(ANTLRDurationEvaluator.STOP_STREAM, vm, null);
+        return d >= 0 ? d : fallback.evaluateStop(vm);
+    }
+
+    @Override
+    public int evaluateLocalSuspend(VirtualMachine vm) throws DurationEvaluationException {
+        int d = vm == null ? -1 : estimate(ANTLRDurationEvaluator.LOCAL_SUSPEND_STREAM, vm, null);
+        return d >= 0 ? d : fallback.evaluateLocalSuspend(vm);
+    }
+
+    @Override
+    public int evaluateLocalResume(VirtualMachine vm) throws DurationEvaluationException {
+        int d = vm == null ? -1 : estimate(ANTLRDurationEvaluator.LOCAL_RESUME_STREAM, vm, null);
+        return d >= 0 ? d : fallback.evaluateLocalResume(vm);
+    }
+
+    @Override
+    public int evaluateRemoteResume(VirtualMachine vm) throws DurationEvaluationException {
+        int d = vm == null ? -1 : estimate(ANTLRDurationEvaluator.REMOTE_RESUME_STREAM, vm, null);
+        return d >= 0 ? d : fallback.evaluateRemoteResume(vm);
+    }
+
+    @Override
+    public int evaluateStartup(Node node) throws DurationEvaluationException {
+        int d = node == null ? -1 : estimate(ANTLRDurationEvaluator.STARTUP_STREAM, null, node);
+        return d >= 0 ? d : fallback.evaluateStartup(node);
+    }
+
+    @Override
+    public int evaluateShutdown(Node node) throws DurationEvaluationException {
+        int d = node == null ? -1 : estimate(ANTLRDurationEvaluator.SHUTDOWN_STREAM, null, node);
+        return d >= 0 ? d : fallback.evaluateShutdown(node);
+    }
+
+    /**
+     * Get the number of recorded durations.
+     *
+     * @return a positive number
+     */
+    public synchronized long getNbSamples() {
+        return nbSamples;
+    }
+
+    /**
+     * Get the number of durations that were estimated by the fallback evaluator.
+     *
+     * @return a positive number
+     */
+    public synchronized long getNbFallbacks() {
+        return nbFallbacks;
+    }
+
+    @Override
+    public String toString() {
+        return "learned(" + fallback + ")";
+    }
+
+    /**
+     * A linear regression updated by a recursive least squares.
+     */
+    private static final class Regression {
+
+        private final double[] theta = new double[3];
+
+        private final double[][] p = new double[3][3];
+
+        private int nb;
+
+        /**
+         * An orthonormal basis of the recorded features.
+         */
+        private final double[][] basis = new double[3][];
+
+        /**
+         * The number of linearly independent features recorded.
+         */
+        private int rank;
+
+        private Regression() {
+            for (int i = 0; i < p.length; i++) {
+                p[i][i] = DELTA;
+            }
+        }
+
+        private double predict(double[] x) {
+            double y = 0;
+            for (int i = 0; i < x.length; i++) {
+                y += theta[i] * x[i];
+            }
+            return y;
+        }
+
+        private void update(double[] x, double y) {
+            int l = x.length;
+            double[] px = new double[l];
+            double denom = LAMBDA;
+            for (int i = 0; i < l; i++) {
+                for (int j = 0; j < l; j++) {
+                    px[i] += p[i][j] * x[j];
+                }
+                denom += x[i] * px[i];
+            }
+            double err = y - predict(x);
+            for (int i = 0; i < l; i++) {
+                theta[i] += px[i] / denom * err;
+            }
+            double trace = 0;
+            for (int i = 0; i < l; i++) {
+                for (int j = 0; j < l; j++) {
+                    p[i][j] -= px[i] * px[j] / denom;
+                }
+                trace += p[i][i];
+            }
+            //Forget only while the uncertainty is bounded, otherwise it explodes
+            //when the samples do not vary
+            if (trace < DELTA * l) {
+                for (int i = 0; i < l; i++) {
+                    for (int j = 0; j < l; j++) {
+                        p[i][j] /= LAMBDA;
+                    }
+                }
+            }
+            span(x);
+            nb++;
+        }
+
+        /**
+         * Add a feature to the basis if it is not a combination of the recorded ones.
+         */
+        private void span(double[] x) {
+            if (rank == basis.length) {
+                return;
+            }
+            double[] r = x.clone();
+            for (int k = 0; k < rank; k++) {
+                double d = dot(r, basis[k]);
+                for (int i = 0; i < r.length; i++) {
+                    r[i] -= d * basis[k][i];
+                }
+            }
+            double norm = Math.sqrt(dot(r, r));
+            if (norm > EPSILON * Math.sqrt(dot(x, x))) {
+                for (int i = 0; i < r.length; i++) {
+                    r[i] /= norm;
+                }
+                basis[rank++] = r;
+            }
+        }
+
+        /**
+         * Indicates whether the recorded features determine all the coefficients.
+         *
+         * @return {@code true} if the features span all the dimensions
+         */
+        private boolean isDetermined() {
+            return rank == theta.length;
+        }
+
+        private static double dot(double[] a, double[] b) {
+            double s = 0;
+            for (int i = 0; i < a.length; i++) {
+                s += a[i] * b[i];
+            }
+            return s;
+        }
+    }
+}
@@ -23,6 +23,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 import entropy.plan.TimedReconfigurationPlan;
 
@@ -46,7 +47,7 @@ public abstract class FileTimedReconfigurationPlanSerializer implements TimedRec
         FileInputStream in = null;
         try {
             in = new FileInputStream(path);
-            return unSerialize(in);
+            return unSerialize(in, new File(path).getAbsoluteFile().getParentFile());
         } finally {
             if (in != null) {
                 in.close();
@@ -78,4 +79,19 @@ public abstract class FileTimedReconfigurationPlanSerializer implements TimedRec
             }
         }
     }
+
+    /**
+     * Un-serialize a plan stored into a file.
+     * By default, the location of the file is ignored.
+     *
+     * @param in  the stream of the file
+     * @param dir the folder of the file, to resolve the relative paths it contains
+     * @return the plan
+     * @throws java.io.IOException if an error occurred while reading the stream
+     * @throws TimedReconfigurationPlanSerializerException
+     *                             if an error occurred while parsing the stream
+     */
+    protected TimedReconfigurationPlan unSerialize(InputStream in, File dir) throws IOException, TimedReconfigurationPlanSerializerException {
+        return unSerialize(in);
+    }
 }
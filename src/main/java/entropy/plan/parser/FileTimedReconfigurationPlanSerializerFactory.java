@@ -31,6 +31,7 @@ import entropy.plan.TimedReconfigurationPlan;
  * <ul>
  * <li>{@link entropy.configuration.parser.PlainTextConfigurationSerializer}: File extension must be {@value #PLAIN_TEXT_EXTENSION}. </li>
  * <li>{@link entropy.configuration.parser.ProtobufConfigurationSerializer}: File extension must be {@value #PROTOBUF_EXTENSION}. </li>
+ * <li>{@link StreamedTimedReconfigurationPlanSerializer}: File extension must be {@value #STREAMED_PROTOBUF_EXTENSION}. </li>
  * </ul>
  *
  * @author Fabien Hermenier
@@ -47,6 +48,11 @@ public final class FileTimedReconfigurationPlanSerializerFactory {
      */
     public static final String PROTOBUF_EXTENSION = ".pbd";
 
+    /**
+     * File extension to specify a storage using a stream of protobuf messages.
+     */
+    public static final String STREAMED_PROTOBUF_EXTENSION = ".pbs";
+
     /**
      * File extension to specify a storage using plain text.
      */
@@ -114,6 +120,8 @@ public final class FileTimedReconfigurationPlanSerializerFactory {
             return PlainTextTimedReconfigurationPlanSerializer.getInstance();
         } else if (path.endsWith(PROTOBUF_EXTENSION)) {
             return ProtobufTimedReconfigurationPlanSerializer.getInstance();
+        } else if (path.endsWith(STREAMED_PROTOBUF_EXTENSION)) {
+            return StreamedTimedReconfigurationPlanSerializer.getInstance();
         }
         return null;
     }
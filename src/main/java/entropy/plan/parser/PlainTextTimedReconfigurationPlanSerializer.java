@@ -188,7 +188,7 @@ public class PlainTextTimedReconfigurationPlanSerializer extends FileTimedReconf
     }
 
     @Override
-    public void serialize(TimedReconfigurationPlan plan, OutputStream o) throws IOException {
+    public synchronized void serialize(TimedReconfigurationPlan plan, OutputStream o) throws IOException {
         try {
             out = new BufferedWriter(new OutputStreamWriter(o));
             PlainTextConfigurationSerializer.getInstance().serialize(plan.getSource(), o);
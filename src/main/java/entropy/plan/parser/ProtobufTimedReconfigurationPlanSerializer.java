@@ -101,7 +101,7 @@ public class ProtobufTimedReconfigurationPlanSerializer extends FileTimedReconfi
     }
 
     @Override
-    public void serialize(TimedReconfigurationPlan plan, OutputStream out) throws IOException {
+    public synchronized void serialize(TimedReconfigurationPlan plan, OutputStream out) throws IOException {
         planBuilder = PBTimedReconfigurationPlan.TimedReconfigurationPlan.newBuilder();
         planBuilder.setSource(ProtobufConfigurationSerializer.getInstance().convert(plan.getSource()));
 
@@ -161,83 +161,119 @@ public class ProtobufTimedReconfigurationPlanSerializer extends FileTimedReconfi
 
     @Override
     public void serialize(Migration a) throws IOException {
+        planBuilder.addMigrations(convert(a));
+    }
+
+    static PBTimedReconfigurationPlan.TimedReconfigurationPlan.Migration convert(Migration a) {
         PBTimedReconfigurationPlan.TimedReconfigurationPlan.Migration.Builder b = PBTimedReconfigurationPlan.TimedReconfigurationPlan.Migration.newBuilder();
         b.setStart(a.getStartMoment()).setEnd(a.getFinishMoment())
                 .setIdVm(a.getVirtualMachine().getName())
                 .setIdSrc(a.getHost().getName())
                 .setIdDst(a.getDestination().getName());
-        planBuilder.addMigrations(b.build());
+        return b.build();
     }
 
     @Override
     public void serialize(Run a) throws IOException {
+        planBuilder.addRuns(convert(a));
+    }
+
+    static PBTimedReconfigurationPlan.TimedReconfigurationPlan.Run convert(Run a) {
         PBTimedReconfigurationPlan.TimedReconfigurationPlan.Run.Builder b = PBTimedReconfigurationPlan.TimedReconfigurationPlan.Run.newBuilder();
         b.setStart(a.getStartMoment()).setEnd(a.getFinishMoment())
                 .setIdVm(a.getVirtualMachine().getName())
                 .setIdN(a.getHost().getName());
-        planBuilder.addRuns(b.build());
+        return b.build();
     }
 
     @Override
     public void serialize(Stop a) throws IOException {
+        planBuilder.addStops(convert(a));
+    }
+
+    static PBTimedReconfigurationPlan.TimedReconfigurationPlan.Stop convert(Stop a) {
         PBTimedReconfigurationPlan.TimedReconfigurationPlan.Stop.Builder b = PBTimedReconfigurationPlan.TimedReconfigurationPlan.Stop.newBuilder();
         b.setStart(a.getStartMoment()).setEnd(a.getFinishMoment())
                 .setIdVm(a.getVirtualMachine().getName())
                 .setIdN(a.getHost().getName());
-        planBuilder.addStops(b.build());
+        return b.build();
     }
 
     @Override
     public void serialize(Suspend a) throws IOException {
+        planBuilder.addSuspends(convert(a));
+    }
+
+    static PBTimedReconfigurationPlan.TimedReconfigurationPlan.Suspend convert(Suspend a) {
         PBTimedReconfigurationPlan.TimedReconfigurationPlan.Suspend.Builder b = PBTimedReconfigurationPlan.TimedReconfigurationPlan.Suspend.newBuilder();
         b.setStart(a.getStartMoment()).setEnd(a.getFinishMoment())
                 .setIdVm(a.getVirtualMachine().getName())
                 .setIdSrc(a.getHost().getName())
                 .setIdDst(a.getDestination().getName());
-        planBuilder.addSuspends(b.build());
+        return b.build();
     }
 
     @Override
     public void serialize(Resume a) throws IOException {
+        planBuilder.addResumes(convert(a));
+    }
+
+    static PBTimedReconfigurationPlan.TimedReconfigurationPlan.Resume convert(Resume a) {
         PBTimedReconfigurationPlan.TimedReconfigurationPlan.Resume.Builder b = PBTimedReconfigurationPlan.TimedReconfigurationPlan.Resume.newBuilder();
         b.setStart(a.getStartMoment()).setEnd(a.getFinishMoment())
                 .setIdVm(a.getVirtualMachine().getName())
                 .setIdSrc(a.getHost().getName())
                 .setIdDst(a.getDestination().getName());
-        planBuilder.addResumes(b.build());
+        return b.build();
     }
 
     @Override
     public void serialize(Startup a) throws IOException {
+        planBuilder.addStartups(convert(a));
+    }
+
+    static PBTimedReconfigurationPlan.TimedReconfigurationPlan.Startup convert(Startup a) {
         PBTimedReconfigurationPlan.TimedReconfigurationPlan.Startup.Builder b = PBTimedReconfigurationPlan.TimedReconfigurationPlan.Startup.newBuilder();
         b.setStart(a.getStartMoment()).setEnd(a.getFinishMoment())
                 .setIdN(a.getNode().getName());
-        planBuilder.addStartups(b.build());
+        return b.build();
     }
 
     @Override
     public void serialize(Shutdown a) throws IOException {
+        planBuilder.addShutdowns(convert(a));
+    }
+
+    static PBTimedReconfigurationPlan.TimedReconfigurationPlan.Shutdown convert(Shutdown a) {
         PBTimedReconfigurationPlan.TimedReconfigurationPlan.Shutdown.Builder b = PBTimedReconfigurationPlan.TimedReconfigurationPlan.Shutdown.newBuilder();
         b.setStart(a.getStartMoment()).setEnd(a.getFinishMoment())
                 .setIdN(a.getNode().getName());
-        planBuilder.addShutdowns(b.build());
+        return b.build();
     }
 
     @Override
     public void serialize(Pause a) throws IOException {
+        planBuilder.addPauses(convert(a));
+    }
+
+    static PBTimedReconfigurationPlan.TimedReconfigurationPlan.Pause convert(Pause a) {
         PBTimedReconfigurationPlan.TimedReconfigurationPlan.Pause.Builder b = PBTimedReconfigurationPlan.TimedReconfigurationPlan.Pause.newBuilder();
         b.setStart(a.getStartMoment()).setEnd(a.getFinishMoment())
                 .setIdVm(a.getVirtualMachine().getName())
                 .setIdN(a.getHost().getName());
-        planBuilder.addPauses(b.build());
+        return b.build();
     }
 
     @Override
     public void serialize(UnPause a) throws IOException {
+        planBuilder.addUnpauses(convert(a));
+    }
+
+    static PBTimedReconfigurationPlan.TimedReconfigurationPlan.Unpause convert(UnPause a) {
         PBTimedReconfigurationPlan.TimedReconfigurationPlan.Unpause.Builder b = PBTimedReconfigurationPlan.TimedReconfigurationPlan.Unpause.newBuilder();
         b.setStart(a.getStartMoment()).setEnd(a.getFinishMoment())
                 .setIdVm(a.getVirtualMachine().getName())
                 .setIdN(a.getHost().getName());
-        planBuilder.addUnpauses(b.build());
+        return b.build();
     }
 }
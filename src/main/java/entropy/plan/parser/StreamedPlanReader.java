@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.plan.parser;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import entropy.configuration.Configuration;
+import entropy.configuration.Node;
+import entropy.configuration.VirtualMachine;
+import entropy.configuration.parser.ConfigurationSerializerException;
+import entropy.configuration.parser.FileConfigurationSerializerFactory;
+import entropy.configuration.parser.PBConfiguration;
+import entropy.configuration.parser.ProtobufConfigurationSerializer;
+import entropy.plan.action.Action;
+import entropy.plan.action.Migration;
+import entropy.plan.action.Pause;
+import entropy.plan.action.Resume;
+import entropy.plan.action.Run;
+import entropy.plan.action.Shutdown;
+import entropy.plan.action.Startup;
+import entropy.plan.action.Stop;
+import entropy.plan.action.Suspend;
+import entropy.plan.action.UnPause;
+
+/**
+ * Read the actions of a plan serialized by {@link StreamedTimedReconfigurationPlanSerializer}
+ * one by one, without building the plan. Only one block of actions is in memory at once.
+ * <p/>
+ * Typical usage:
+ * <pre>
+ * StreamedPlanReader r = StreamedPlanReader.open("plan.pbs");
+ * try {
+ *     for (Action a = r.next(); a != null; a = r.next()) {
+ *         ...
+ *     }
+ * } finally {
+ *     r.close();
+ * }
+ * </pre>
+ *
+ * @author Fabien Hermenier
+ */
+public final class StreamedPlanReader implements Closeable {
+
+    private final InputStream in;
+
+    private final CodedInputStream cin;
+
+    private final Configuration source;
+
+    private final Inflater inflater;
+
+    private final Map<String, VirtualMachine> vms;
+
+    private final Map<String, Node> nodes;
+
+    /**
+     * The current block.
+     */
+    private CodedInputStream block;
+
+    /**
+     * The number of actions remaining in the current block.
+     */
+    private int remaining;
+
+    private boolean ended;
+
+    /**
+     * Open a stream and read the source configuration of the plan.
+     *
+     * @param in the stream to read
+     * @throws IOException if an error occurred while reading the stream
+     * @throws TimedReconfigurationPlanSerializerException
+     *                     if the stream does not contain a plan or if the source configuration can not be read
+     */
+    public StreamedPlanReader(InputStream in) throws IOException, TimedReconfigurationPlanSerializerException {
+        this(in, null);
+    }
+
+    /**
+     * Open a stream which source configuration may be already known.
+     * A relative reference to the source configuration is resolved against the working directory.
+     *
+     * @param in  the stream to read
+     * @param src the source configuration to use if the stream only references it.
+     *            {@code null} to read the referenced configuration
+     * @throws IOException if an error occurred while reading the stream
+     * @throws TimedReconfigurationPlanSerializerException
+     *                     if the stream does not contain a plan or if the source configuration can not be read
+     */
+    public StreamedPlanReader(InputStream in, Configuration src) throws IOException, TimedReconfigurationPlanSerializerException {
+        this(in, src, null);
+    }
+
+    /**
+     * Open a stream which source configuration may be already known.
+     *
+     * @param in  the stream to read
+     * @param src the source configuration to use if the stream only references it.
+     *            {@code null} to read the referenced configuration
+     * @param dir the folder of the plan file, to resolve a relative reference to the source configuration.
+     *            {@code null} to resolve it against the working directory
+     * @throws IOException if an error occurred while reading the stream
+     * @throws TimedReconfigurationPlanSerializerException
+     *                     if the stream does not contain a plan or if the source configuration can not be read
+     */
+    public StreamedPlanReader(InputStream in, Configuration src, File dir) throws IOException, TimedReconfigurationPlanSerializerException {
+        this.in = in;
+        cin = CodedInputStream.newInstance(in);
+        if (cin.readRawLittleEndian32() != StreamedTimedReconfigurationPlanSerializer.MAGIC) {
+            throw new TimedReconfigurationPlanSerializerException("Not a streamed plan: bad magic number");
+        }
+        int flags = cin.readRawByte();
+        if ((flags & StreamedTimedReconfigurationPlanSerializer.FLAG_SOURCE_REFERENCE) != 0) {
+            String path = cin.readString();
+            if (dir != null && !new File(path).isAbsolute()) {
+                path = new File(dir, path).getPath();
+            }
+            try {
+                source = src != null ? src : FileConfigurationSerializerFactory.getInstance().read(path);
+            } catch (ConfigurationSerializerException e) {
+                throw new TimedReconfigurationPlanSerializerException(e);
+            }
+            if (source == null) {
+                throw new TimedReconfigurationPlanSerializerException("No serializer available for the source configuration '" + path + "'");
+            }
+        } else {
+            try {
+                source = ProtobufConfigurationSerializer.getInstance().convert(PBConfiguration.Configuration.parseFrom(next(cin)));
+            } catch (InvalidProtocolBufferException e) {
+                throw new TimedReconfigurationPlanSerializerException(e);
+            }
+        }
+        inflater = (flags & StreamedTimedReconfigurationPlanSerializer.FLAG_COMPRESSED) != 0 ? new Inflater() : null;
+
+        vms = new HashMap<String, VirtualMachine>();
+        for (VirtualMachine vm : source.getAllVirtualMachines()) {
+            vms.put(vm.getName(), vm);
+        }
+        nodes = new HashMap<String, Node>();
+        for (Node n : source.getAllNodes()) {
+            nodes.put(n.getName(), n);
+        }
+    }
+
+    /**
+     * Open a file.
+     *
+     * @param path the file to read
+     * @return the reader
+     * @throws IOException if an error occurred while reading the file
+     * @throws TimedReconfigurationPlanSerializerException
+     *                     if the file does not contain a plan
+     */
+    public static StreamedPlanReader open(String path) throws IOException, TimedReconfigurationPlanSerializerException {
+        InputStream in = new BufferedInputStream(new FileInputStream(path));
+        try {
+            return new StreamedPlanReader(in, null, new File(path).getAbsoluteFile().getParentFile());
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        } catch (TimedReconfigurationPlanSerializerException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Get the source configuration of the plan.
+     *
+     * @return a configuration
+     */
+    public Configuration getSource() {
+        return source;
+    }
+
+    /**
+     * Read a length-prefixed message.
+     */
+    private static byte[] next(CodedInputStream in) throws IOException {
+        byte[] b = in.readRawBytes(in.readRawVarint32());
+        //The stream is not bounded
+        in.resetSizeCounter();
+        return b;
+    }
+
+    /**
+     * Read the next block of actions.
+     *
+     * @return {@code false} if there is no more blocks
+     */
+    private boolean nextBlock() throws IOException, TimedReconfigurationPlanSerializerException {
+        remaining = cin.readRawVarint32();
+        if (remaining == 0) {
+            ended = true;
+            return false;
+        }
+        int rawSize = cin.readRawVarint32();
+        byte[] b;
+        if (inflater == null) {
+            b = cin.readRawBytes(rawSize);
+            cin.resetSizeCounter();
+        } else {
+            byte[] raw = new byte[rawSize];
+            inflater.reset();
+            inflater.setInput(next(cin));
+            try {
+                if (inflater.inflate(raw) != rawSize || !inflater.finished()) {
+                    throw new TimedReconfigurationPlanSerializerException("Corrupted block of actions");
+                }
+            } catch (DataFormatException e) {
+                throw new TimedReconfigurationPlanSerializerException(e);
+            }
+            b = raw;
+        }
+        block = CodedInputStream.newInstance(b);
+        return true;
+    }
+
+    /**
+     * Read the next action of the plan.
+     *
+     * @return the action or {@code null} if all the actions were read
+     * @throws IOException if an error occurred while reading the stream
+     * @throws TimedReconfigurationPlanSerializerException
+     *                     if an error occurred while parsing the action
+     */
+    public Action next() throws IOException, TimedReconfigurationPlanSerializerException {
+        if (ended || (remaining == 0 && !nextBlock())) {
+            return null;
+        }
+        remaining--;
+        int type = block.readRawVarint32();
+        byte[] b = block.readRawBytes(block.readRawVarint32());
+        try {
+            switch (type) {
+                case StreamedTimedReconfigurationPlanSerializer.MIGRATION:
+                    return convert(PBTimedReconfigurationPlan.TimedReconfigurationPlan.Migration.parseFrom(b));
+                case StreamedTimedReconfigurationPlanSerializer.RUN:
+                    return convert(PBTimedReconfigurationPlan.TimedReconfigurationPlan.Run.parseFrom(b));
+                case StreamedTimedReconfigurationPlanSerializer.STOP:
+                    return convert(PBTimedReconfigurationPlan.TimedReconfigurationPlan.Stop.parseFrom(b));
+                case StreamedTimedReconfigurationPlanSerializer.SUSPEND:
+                    return convert(PBTimedReconfigurationPlan.TimedReconfigurationPlan.Suspend.parseFrom(b));
+                case StreamedTimedReconfigurationPlanSerializer.RESUME:
+                    return convert(PBTimedReconfigurationPlan.TimedReconfigurationPlan.Resume.parseFrom(b));
+                case StreamedTimedReconfigurationPlanSerializer.STARTUP:
+                    return convert(PBTimedReconfigurationPlan.TimedReconfigurationPlan.Startup.parseFrom(b));
+                case StreamedTimedReconfigurationPlanSerializer.SHUTDOWN:
+                    return convert(PBTimedReconfigurationPlan.TimedReconfigurationPlan.Shutdown.parseFrom(b));
+                case StreamedTimedReconfigurationPlanSerializer.PAUSE:
+                    return convert(PBTimedReconfigurationPlan.TimedReconfigurationPlan.Pause.parseFrom(b));
+                case StreamedTimedReconfigurationPlanSerializer.UNPAUSE:
+                    return convert(PBTimedReconfigurationPlan.TimedReconfigurationPlan.Unpause.parseFrom(b));
+                default:
+                    throw new TimedReconfigurationPlanSerializerException("Unknown type of action: " + type);
+            }
+        } catch (InvalidProtocolBufferException e) {
+            throw new TimedReconfigurationPlanSerializerException(e);
+        }
+    }
+
+    private VirtualMachine vm(String name) throws TimedReconfigurationPlanSerializerException {
+        VirtualMachine vm = vms.get(name);
+        if (vm == null) {
+            throw new TimedReconfigurationPlanSerializerException("Unknown virtual machine '" + name + "'");
+        }
+        return vm;
+    }
+
+    private Node node(String name) throws TimedReconfigurationPlanSerializerException {
+        Node n = nodes.get(name);
+        if (n == null) {
+            throw new TimedReconfigurationPlanSerializerException("Unknown node '" + name + "'");
+        }
+        return n;
+    }
+
+    private Migration convert(PBTimedReconfigurationPlan.TimedReconfigurationPlan.Migration a) throws TimedReconfigurationPlanSerializerException {
+        return new Migration(vm(a.getIdVm()), node(a.getIdSrc()), node(a.getIdDst()), a.getStart(), a.getEnd());
+    }
+
+    private Run convert(PBTimedReconfigurationPlan.TimedReconfigurationPlan.Run a) throws TimedReconfigurationPlanSerializerException {
+        return new Run(vm(a.getIdVm()), node(a.getIdN()), a.getStart(), a.getEnd());
+    }
+
+    private Stop convert(PBTimedReconfigurationPlan.TimedReconfigurationPlan.Stop a) throws TimedReconfigurationPlanSerializerException {
+        return new Stop(vm(a.getIdVm()), node(a.getIdN()), a.getStart(), a.getEnd());
+    }
+
+    private Startup convert(PBTimedReconfigurationPlan.TimedReconfigurationPlan.Startup a) throws TimedReconfigurationPlanSerializerException {
+        return new Startup(node(a.getIdN()), a.getStart(), a.getEnd());
+    }
+
+    private Shutdown convert(PBTimedReconfigurationPlan.TimedReconfigurationPlan.Shutdown a) throws TimedReconfigurationPlanSerializerException {
+        return new Shutdown(node(a.getIdN()), a.getStart(), a.getEnd());
+    }
+
+    private Suspend convert(PBTimedReconfigurationPlan.TimedReconfigurationPlan.Suspend a) throws TimedReconfigurationPlanSerializerException {
+        return new Suspend(vm(a.getIdVm()), node(a.getIdSrc()), node(a.getIdDst()), a.getStart(), a.getEnd());
+    }
+
+    private Resume convert(PBTimedReconfigurationPlan.TimedReconfigurationPlan.Resume a) throws TimedReconfigurationPlanSerializerException {
+        return new Resume(vm(a.getIdVm()), node(a.getIdSrc()), node(a.getIdDst()), a.getStart(), a.getEnd());
+    }
+
+    private Pause convert(PBTimedReconfigurationPlan.TimedReconfigurationPlan.Pause a) throws TimedReconfigurationPlanSerializerException {
+        return new Pause(vm(a.getIdVm()), node(a.getIdN()), a.getStart(), a.getEnd());
+    }
+
+    private UnPause convert(PBTimedReconfigurationPlan.TimedReconfigurationPlan.Unpause a) throws TimedReconfigurationPlanSerializerException {
+        return new UnPause(vm(a.getIdVm()), node(a.getIdN()), a.getStart(), a.getEnd());
+    }
+
+    /**
+     * Release the resources used to decompress the actions.
+     * The underlying stream is left open.
+     */
+    void release() {
+        if (inflater != null) {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Close the reader and the underlying stream.
+     *
+     * @throws IOException if an error occurred while closing the stream
+     */
+    @Override
+    public void close() throws IOException {
+        release();
+        in.close();
+    }
+}
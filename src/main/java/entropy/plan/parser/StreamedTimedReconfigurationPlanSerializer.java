@@ -0,0 +1,419 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.plan.parser;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.MessageLite;
+
+import entropy.configuration.parser.ProtobufConfigurationSerializer;
+import entropy.plan.DefaultTimedReconfigurationPlan;
+import entropy.plan.TimedReconfigurationPlan;
+import entropy.plan.action.Action;
+import entropy.plan.action.Migration;
+import entropy.plan.action.Pause;
+import entropy.plan.action.Resume;
+import entropy.plan.action.Run;
+import entropy.plan.action.Shutdown;
+import entropy.plan.action.Startup;
+import entropy.plan.action.Stop;
+import entropy.plan.action.Suspend;
+import entropy.plan.action.UnPause;
+
+/**
+ * Serialize and un-serialize a plan from/to a stream of Google Protocol buffers messages.
+ * Contrary to {@link ProtobufTimedReconfigurationPlanSerializer}, the plan is never converted
+ * into a single message: the source configuration is written once, possibly as a reference
+ * to a configuration file, then the actions are written as delimited records grouped by blocks
+ * of at most {@value #BLOCK_SIZE} actions. Each block may be compressed.
+ * <p/>
+ * Use {@link StreamedPlanReader} to iterate over the actions of a plan without building it.
+ * <p/>
+ * Layout of the stream:
+ * <ul>
+ * <li>{@link #MAGIC} as a little-endian integer, then a byte of flags:
+ * {@link #FLAG_COMPRESSED}, {@link #FLAG_SOURCE_REFERENCE}</li>
+ * <li>the source configuration: the path of a configuration file readable by
+ * {@link entropy.configuration.parser.FileConfigurationSerializerFactory} if
+ * {@link #FLAG_SOURCE_REFERENCE} is set, a length-prefixed {@code PBConfiguration.Configuration} message otherwise.
+ * A relative path is relative to the folder of the plan file</li>
+ * <li>the blocks of actions: the number of actions, the length of the uncompressed block, the length
+ * of the compressed block if {@link #FLAG_COMPRESSED} is set, then the content of the block.
+ * A block is a sequence of records made of the type of the action and a length-prefixed
+ * {@code PBTimedReconfigurationPlan.TimedReconfigurationPlan} action message</li>
+ * <li>an empty block, to mark the end of the plan</li>
+ * </ul>
+ * Actions are written grouped by type, in the order used by {@link ProtobufTimedReconfigurationPlanSerializer},
+ * then by start moment, so the actions of a same type are compressed together. This is not an order
+ * of application: the actions must be sorted by start moment to be applied on the source configuration.
+ *
+ * @author Fabien Hermenier
+ */
+public final class StreamedTimedReconfigurationPlanSerializer extends FileTimedReconfigurationPlanSerializer {
+
+    /**
+     * The first integer of the stream.
+     */
+    public static final int MAGIC = 0x4e4c5045;
+
+    /**
+     * The flag that indicates the blocks of actions are compressed.
+     */
+    public static final int FLAG_COMPRESSED = 1;
+
+    /**
+     * The flag that indicates the source configuration is a path to a file.
+     */
+    public static final int FLAG_SOURCE_REFERENCE = 2;
+
+    /**
+     * The maximum number of actions in a block.
+     */
+    public static final int BLOCK_SIZE = 512;
+
+    static final int MIGRATION = 1;
+
+    static final int RUN = 2;
+
+    static final int STOP = 3;
+
+    static final int SUSPEND = 4;
+
+    static final int RESUME = 5;
+
+    static final int STARTUP = 6;
+
+    static final int SHUTDOWN = 7;
+
+    static final int PAUSE = 8;
+
+    static final int UNPAUSE = 9;
+
+    /**
+     * The order of the types of actions.
+     */
+    private static final Class<?>[] TYPES_ORDER = {Migration.class, Stop.class, Startup.class, Run.class,
+            Resume.class, Suspend.class, Pause.class, UnPause.class, Shutdown.class};
+
+    /**
+     * Sort the actions by type then by start moment.
+     */
+    private static final Comparator<Action> APPLY_ORDER = new Comparator<Action>() {
+        @Override
+        public int compare(Action a1, Action a2) {
+            int r = rank(a1) - rank(a2);
+            return r != 0 ? r : a1.getStartMoment() - a2.getStartMoment();
+        }
+    };
+
+    /**
+     * The instance of the singleton.
+     */
+    private static final StreamedTimedReconfigurationPlanSerializer INSTANCE = new StreamedTimedReconfigurationPlanSerializer();
+
+    /**
+     * The blocks of the plan being serialized.
+     */
+    private BlockWriter writer;
+
+    /**
+     * Private constructor, managed by the singleton.
+     */
+    private StreamedTimedReconfigurationPlanSerializer() {
+    }
+
+    /**
+     * Get the unique instance.
+     *
+     * @return an instance
+     */
+    public static StreamedTimedReconfigurationPlanSerializer getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public TimedReconfigurationPlan unSerialize(InputStream in) throws IOException, TimedReconfigurationPlanSerializerException {
+        return unSerialize(in, null);
+    }
+
+    /**
+     * Un-serialize a plan. A relative reference to the source configuration is resolved against
+     * the folder of the plan file, or against the working directory if the folder is {@code null}.
+     *
+     * @param in  the stream to read
+     * @param dir the folder of the plan file
+     * @return the plan
+     * @throws IOException if an error occurred while reading the stream
+     * @throws TimedReconfigurationPlanSerializerException
+     *                     if the stream does not contain a plan
+     */
+    @Override
+    protected TimedReconfigurationPlan unSerialize(InputStream in, File dir) throws IOException, TimedReconfigurationPlanSerializerException {
+        StreamedPlanReader r = new StreamedPlanReader(in, null, dir);
+        try {
+            TimedReconfigurationPlan plan = new DefaultTimedReconfigurationPlan(r.getSource());
+            Action a = r.next();
+            while (a != null) {
+                plan.add(a);
+                a = r.next();
+            }
+            return plan;
+        } finally {
+            r.release();
+        }
+    }
+
+    /**
+     * Serialize a plan with its source configuration and compressed blocks of actions.
+     *
+     * @param plan the plan to serialize
+     * @param out  the stream to write to. It is flushed but not closed
+     * @throws IOException if an error occurred while writing to the stream
+     */
+    @Override
+    public void serialize(TimedReconfigurationPlan plan, OutputStream out) throws IOException {
+        serialize(plan, out, null, true);
+    }
+
+    /**
+     * Serialize a plan.
+     *
+     * @param plan      the plan to serialize
+     * @param out       the stream to write to. It is flushed but not closed
+     * @param sourceRef the path of a file that contains the source configuration of the plan, relative
+     *                  to the folder of the plan file or absolute.
+     *                  {@code null} to write the source configuration into the stream
+     * @param compress  {@code true} to compress the blocks of actions
+     * @throws IOException if an error occurred while writing to the stream
+     */
+    public synchronized void serialize(TimedReconfigurationPlan plan, OutputStream out, String sourceRef, boolean compress) throws IOException {
+        CodedOutputStream o = CodedOutputStream.newInstance(out);
+        o.writeRawLittleEndian32(MAGIC);
+        o.writeRawByte((compress ? FLAG_COMPRESSED : 0) | (sourceRef != null ? FLAG_SOURCE_REFERENCE : 0));
+        if (sourceRef != null) {
+            o.writeStringNoTag(sourceRef);
+        } else {
+            MessageLite src = ProtobufConfigurationSerializer.getInstance().convert(plan.getSource());
+            o.writeRawVarint32(src.getSerializedSize());
+            src.writeTo(o);
+        }
+        writer = new BlockWriter(o, compress);
+        try {
+            List<Action> actions = new ArrayList<Action>(plan.getActions());
+            Collections.sort(actions, APPLY_ORDER);
+            for (Action a : actions) {
+                a.serialize(this);
+            }
+            writer.flush();
+            o.writeRawVarint32(0);
+            o.flush();
+        } finally {
+            writer.release();
+            writer = null;
+        }
+    }
+
+    /**
+     * Make the path of a file relative to a folder, if the file is inside the folder.
+     *
+     * @param dir  the folder
+     * @param path the path of the file, relative to the working directory or absolute
+     * @return the relative path, or the absolute path of the file
+     */
+    private static String relativize(File dir, String path) {
+        File file = new File(path).getAbsoluteFile();
+        URI rel = dir.toURI().relativize(file.toURI());
+        return rel.isAbsolute() ? file.getPath() : rel.getPath();
+    }
+
+    private static int rank(Action a) {
+        for (int i = 0; i < TYPES_ORDER.length; i++) {
+            if (TYPES_ORDER[i].isInstance(a)) {
+                return i;
+            }
+        }
+        return TYPES_ORDER.length;
+    }
+
+    /**
+     * Write a plan into a file.
+     * If the parent folder does not exists, it is created.
+     * The source configuration is referenced relatively to the folder of the plan
+     * if it is inside this folder, using an absolute path otherwise.
+     *
+     * @param plan      the plan to write
+     * @param path      the path of the file
+     * @param sourceRef the path of a file that contains the source configuration of the plan, relative
+     *                  to the working directory or absolute.
+     *                  {@code null} to write the source configuration into the file
+     * @param compress  {@code true} to compress the blocks of actions
+     * @throws IOException if an error occurred while writing the file
+     */
+    public void write(TimedReconfigurationPlan plan, String path, String sourceRef, boolean compress) throws IOException {
+        File f = new File(path).getAbsoluteFile();
+        File parent = f.getParentFile();
+        if (!parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Unable to create folder '" + parent.getAbsolutePath() + "'");
+        }
+        OutputStream out = null;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(f));
+            serialize(plan, out, sourceRef != null ? relativize(parent, sourceRef) : null, compress);
+        } finally {
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+
+    @Override
+    public void serialize(Migration a) throws IOException {
+        writer.add(MIGRATION, ProtobufTimedReconfigurationPlanSerializer.convert(a));
+    }
+
+    @Override
+    public void serialize(Run a) throws IOException {
+        writer.add(RUN, ProtobufTimedReconfigurationPlanSerializer.convert(a));
+    }
+
+    @Override
+    public void serialize(Stop a) throws IOException {
+        writer.add(STOP, ProtobufTimedReconfigurationPlanSerializer.convert(a));
+    }
+
+    @Override
+    public void serialize(Suspend a) throws IOException {
+        writer.add(SUSPEND, ProtobufTimedReconfigurationPlanSerializer.convert(a));
+    }
+
+    @Override
+    public void serialize(Resume a) throws IOException {
+        writer.add(RESUME, ProtobufTimedReconfigurationPlanSerializer.convert(a));
+    }
+
+    @Override
+    public void serialize(Startup a) throws IOException {
+        writer.add(STARTUP, ProtobufTimedReconfigurationPlanSerializer.convert(a));
+    }
+
+    @Override
+    public void serialize(Shutdown a) throws IOException {
+        writer.add(SHUTDOWN, ProtobufTimedReconfigurationPlanSerializer.convert(a));
+    }
+
+    @Override
+    public void serialize(Pause a) throws IOException {
+        writer.add(PAUSE, ProtobufTimedReconfigurationPlanSerializer.convert(a));
+    }
+
+    @Override
+    public void serialize(UnPause a) throws IOException {
+        writer.add(UNPAUSE, ProtobufTimedReconfigurationPlanSerializer.convert(a));
+    }
+
+    /**
+     * Write the actions of one plan by blocks.
+     */
+    private static final class BlockWriter {
+
+        private final CodedOutputStream out;
+
+        private final ByteArrayOutputStream block;
+
+        private final CodedOutputStream records;
+
+        private final Deflater deflater;
+
+        private final byte[] buffer;
+
+        private int nb;
+
+        private BlockWriter(CodedOutputStream out, boolean compress) {
+            this.out = out;
+            block = new ByteArrayOutputStream();
+            records = CodedOutputStream.newInstance(block);
+            if (compress) {
+                deflater = new Deflater();
+                buffer = new byte[4096];
+            } else {
+                deflater = null;
+                buffer = null;
+            }
+        }
+
+        private void add(int type, MessageLite m) throws IOException {
+            records.writeRawVarint32(type);
+            records.writeRawVarint32(m.getSerializedSize());
+            m.writeTo(records);
+            if (++nb == BLOCK_SIZE) {
+                flush();
+            }
+        }
+
+        /**
+         * Write the pending actions as a block.
+         *
+         * @throws IOException if an error occurred while writing
+         */
+        private void flush() throws IOException {
+            if (nb == 0) {
+                return;
+            }
+            records.flush();
+            byte[] raw = block.toByteArray();
+            out.writeRawVarint32(nb);
+            out.writeRawVarint32(raw.length);
+            if (deflater != null) {
+                deflater.reset();
+                deflater.setInput(raw);
+                deflater.finish();
+                ByteArrayOutputStream z = new ByteArrayOutputStream(raw.length / 2 + 16);
+                while (!deflater.finished()) {
+                    z.write(buffer, 0, deflater.deflate(buffer));
+                }
+                out.writeRawVarint32(z.size());
+                out.writeRawBytes(z.toByteArray());
+            } else {
+                out.writeRawBytes(raw);
+            }
+            block.reset();
+            nb = 0;
+        }
+
+        private void release() {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+    }
+}
@@ -23,6 +23,8 @@ import java.util.ArrayList;
 import java.util.List;
 
 import entropy.configuration.Configuration;
+import entropy.configuration.Configurations;
+import entropy.configuration.ElementRegistry;
 import entropy.configuration.ManagedElementSet;
 import entropy.configuration.Node;
 import entropy.configuration.VirtualMachine;
@@ -41,8 +43,18 @@ public class OtherPartitioning implements PlanPartitioner {
 
     private List<Partition> parts;
 
+    /**
+     * The registry of the partitions, shared with the configuration when possible
+     * so the comparisons with the sets of the constraints are made using bitsets.
+     */
+    private ElementRegistry registry;
+
     public OtherPartitioning(Configuration cfg) {
         this.parts = new ArrayList<Partition>();
+        registry = Configurations.getRegistry(cfg);
+        if (registry == null) {
+            registry = new ElementRegistry();
+        }
     }
 
     @Override
@@ -66,7 +78,7 @@ public class OtherPartitioning implements PlanPartitioner {
             }
         }
         if (parent == null) {
-            Partition p = new Partition();
+            Partition p = new Partition(registry);
             p.getNodes().addAll(ns);
             p.getVirtualMachines().addAll(vms);
             p.getConstraints().add(f);
@@ -114,7 +126,7 @@ public class OtherPartitioning implements PlanPartitioner {
             }
         }
         if (parent == null) {
-            Partition p = new Partition();
+            Partition p = new Partition(registry);
             p.getNodes().addAll(of.getGroups().getElements());
             p.getVirtualMachines().addAll(vms);
             p.getConstraints().add(of);
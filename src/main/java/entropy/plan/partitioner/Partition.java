@@ -22,6 +22,8 @@ package entropy.plan.partitioner;
 import java.util.ArrayList;
 import java.util.List;
 
+import entropy.configuration.ElementRegistry;
+import entropy.configuration.IndexedManagedElementSet;
 import entropy.configuration.ManagedElementSet;
 import entropy.configuration.Node;
 import entropy.configuration.SimpleManagedElementSet;
@@ -45,6 +47,17 @@ public class Partition {
         this.constraints = new ArrayList<PlacementConstraint>();
     }
 
+    /**
+     * Make a partition which sets of elements rely on a registry.
+     *
+     * @param registry the registry that identifies the elements
+     */
+    public Partition(ElementRegistry registry) {
+        this.vms = new IndexedManagedElementSet<VirtualMachine>(registry);
+        this.nodes = new IndexedManagedElementSet<Node>(registry);
+        this.constraints = new ArrayList<PlacementConstraint>();
+    }
+
     public ManagedElementSet<Node> getNodes() {
         return this.nodes;
     }
@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import entropy.configuration.Configuration;
+import entropy.configuration.parser.ConfigurationSerializerException;
+import entropy.configuration.parser.FileConfigurationSerializer;
+import entropy.configuration.parser.FileConfigurationSerializerFactory;
+import entropy.plan.TimedReconfigurationPlan;
+import entropy.plan.parser.FileTimedReconfigurationPlanSerializer;
+import entropy.plan.parser.FileTimedReconfigurationPlanSerializerFactory;
+import entropy.plan.parser.TimedReconfigurationPlanSerializerException;
+
+/**
+ * Convert a large number of configuration or plan files on a pool of threads.
+ * <p/>
+ * An input may be a file, a directory or a glob pattern. A directory is explored recursively.
+ * In a glob pattern, {@code *} and {@code ?} match characters inside a path component and {@code **} matches
+ * any number of path components. The converted files keep the path of the original ones relative to the
+ * parent of the explored directory, or to the part of the pattern without wildcards, so files having the
+ * same name in different folders do not collide.
+ * <p/>
+ * A file is skipped if its conversion is more recent than itself.
+ *
+ * @author Fabien Hermenier
+ */
+public class BatchConverter {
+
+    /**
+     * The number of conversions that may wait for a worker.
+     */
+    private static final int QUEUE_SIZE = 1024;
+
+    private final boolean plans;
+
+    private final String inputFormat;
+
+    private final String outputFormat;
+
+    private final File outputDir;
+
+    private final int nbWorkers;
+
+    private final AtomicInteger converted = new AtomicInteger();
+
+    private final AtomicInteger skipped = new AtomicInteger();
+
+    private final AtomicInteger failed = new AtomicInteger();
+
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    private long duration;
+
+    /**
+     * Make a new converter.
+     *
+     * @param plans        {@code true} to convert plans, {@code false} to convert configurations
+     * @param inputFormat  the format of the input files. {@code null} to infer it from the file extensions
+     * @param outputFormat the format of the converted files
+     * @param outputDir    the root folder of the converted files
+     * @param nbWorkers    the number of threads that convert files
+     */
+    public BatchConverter(boolean plans, String inputFormat, String outputFormat, String outputDir, int nbWorkers) {
+        this.plans = plans;
+        this.inputFormat = inputFormat;
+        this.outputFormat = outputFormat;
+        this.outputDir = new File(outputDir);
+        this.nbWorkers = nbWorkers;
+        if ((plans ? DataConverter.planSerializer(outputFormat) : DataConverter.configurationSerializer(outputFormat)) == null) {
+            throw new IllegalArgumentException("Unsupported output format: " + outputFormat);
+        }
+    }
+
+    /**
+     * Convert files.
+     *
+     * @param inputs the files, folders or glob patterns to convert
+     * @throws InterruptedException if the thread is interrupted while waiting for the conversions
+     */
+    public void convert(List<String> inputs) throws InterruptedException {
+        long st = System.currentTimeMillis();
+        ThreadPoolExecutor exec = new ThreadPoolExecutor(nbWorkers, nbWorkers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(QUEUE_SIZE), new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            for (String input : inputs) {
+                submit(exec, input);
+            }
+        } finally {
+            exec.shutdown();
+            exec.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            duration += System.currentTimeMillis() - st;
+        }
+    }
+
+    private void submit(ThreadPoolExecutor exec, String input) {
+        int firstWildcard = -1;
+        String[] parts = input.split("/", -1);
+        for (int i = 0; i < parts.length && firstWildcard < 0; i++) {
+            if (parts[i].indexOf('*') >= 0 || parts[i].indexOf('?') >= 0) {
+                firstWildcard = i;
+            }
+        }
+        if (firstWildcard < 0) {
+            File f = new File(input);
+            if (f.isDirectory()) {
+                walk(exec, f, f.getName() + "/", null);
+            } else if (f.exists()) {
+                exec.execute(new Job(f, ""));
+            } else {
+                System.err.println("Skipping '" + input + "': no such file or directory");
+            }
+        } else {
+            StringBuilder base = new StringBuilder();
+            for (int i = 0; i < firstWildcard; i++) {
+                base.append(parts[i]).append('/');
+            }
+            StringBuilder glob = new StringBuilder();
+            for (int i = firstWildcard; i < parts.length; i++) {
+                glob.append(i > firstWildcard ? "/" : "").append(parts[i]);
+            }
+            File root = new File(base.length() == 0 ? "." : base.toString());
+            if (root.isDirectory()) {
+                walk(exec, root, "", toPattern(glob.toString()));
+            }
+        }
+    }
+
+    /**
+     * Convert a glob pattern into a regular expression.
+     *
+     * @param glob the glob pattern
+     * @return the regular expression
+     */
+    static Pattern toPattern(String glob) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '*') {
+                if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                    i++;
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '/') {
+                        //'**/' matches zero or more folders
+                        i++;
+                        b.append("(?:.*/)?");
+                    } else {
+                        b.append(".*");
+                    }
+                } else {
+                    b.append("[^/]*");
+                }
+            } else if (c == '?') {
+                b.append("[^/]");
+            } else {
+                b.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(b.toString());
+    }
+
+    /**
+     * Explore a folder recursively.
+     *
+     * @param exec    the executor
+     * @param dir     the folder to explore
+     * @param rel     the path of the folder relative to the root of the exploration, with a trailing '/'
+     * @param pattern the pattern the relative path of the files must match. {@code null} to accept any file
+     *                having a compatible format
+     */
+    private void walk(ThreadPoolExecutor exec, File dir, String rel, Pattern pattern) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            System.err.println("Unable to list '" + dir + "'");
+            return;
+        }
+        Arrays.sort(files);
+        for (File f : files) {
+            if (f.isDirectory()) {
+                walk(exec, f, rel + f.getName() + "/", pattern);
+            } else if (pattern != null ? pattern.matcher(rel + f.getName()).matches() : isReadable(f)) {
+                exec.execute(new Job(f, rel));
+            }
+        }
+    }
+
+    private boolean isReadable(File f) {
+        if (inputFormat != null) {
+            return f.getName().endsWith("." + inputFormat);
+        }
+        String p = f.getPath();
+        return plans ? FileTimedReconfigurationPlanSerializerFactory.getInstance().getSerializer(p) != null
+                : FileConfigurationSerializerFactory.getInstance().getSerializer(p) != null;
+    }
+
+    /**
+     * Get the file that will contain the conversion of a file.
+     *
+     * @param in  the file to convert
+     * @param rel the path of the parent folder of the file, relative to the output folder
+     * @return the converted file
+     */
+    File getOutputFile(File in, String rel) {
+        String name = in.getName();
+        int idx = name.lastIndexOf('.');
+        if (idx > 0) {
+            name = name.substring(0, idx);
+        }
+        return new File(new File(outputDir, rel), name + "." + outputFormat);
+    }
+
+    /**
+     * The conversion of one file.
+     */
+    private class Job implements Runnable {
+
+        private final File in;
+
+        private final String rel;
+
+        Job(File in, String rel) {
+            this.in = in;
+            this.rel = rel;
+        }
+
+        @Override
+        public void run() {
+            File out = getOutputFile(in, rel);
+            if (out.exists() && out.lastModified() >= in.lastModified()) {
+                skipped.incrementAndGet();
+                return;
+            }
+            try {
+                if (plans) {
+                    convertPlan(out);
+                } else {
+                    convertConfiguration(out);
+                }
+                converted.incrementAndGet();
+                bytesRead.addAndGet(in.length());
+                bytesWritten.addAndGet(out.length());
+            } catch (IOException e) {
+                failed.incrementAndGet();
+                System.err.println("Error while converting '" + in + "': " + e.getMessage());
+            } catch (ConfigurationSerializerException e) {
+                failed.incrementAndGet();
+                System.err.println("Error while parsing '" + in + "': " + e.getMessage());
+            } catch (TimedReconfigurationPlanSerializerException e) {
+                failed.incrementAndGet();
+                System.err.println("Error while parsing '" + in + "': " + e.getMessage());
+            }
+        }
+
+        private void convertConfiguration(File out) throws IOException, ConfigurationSerializerException {
+            FileConfigurationSerializer src = inputFormat != null ? DataConverter.configurationSerializer(inputFormat)
+                    : FileConfigurationSerializerFactory.getInstance().getSerializer(in.getPath());
+            if (src == null) {
+                throw new ConfigurationSerializerException("Unsupported input format");
+            }
+            Configuration cfg = src.read(in.getPath());
+            DataConverter.configurationSerializer(outputFormat).write(cfg, out.getPath());
+        }
+
+        private void convertPlan(File out) throws IOException, TimedReconfigurationPlanSerializerException {
+            FileTimedReconfigurationPlanSerializer src = inputFormat != null ? DataConverter.planSerializer(inputFormat)
+                    : FileTimedReconfigurationPlanSerializerFactory.getInstance().getSerializer(in.getPath());
+            if (src == null) {
+                throw new TimedReconfigurationPlanSerializerException("Unsupported input format");
+            }
+            TimedReconfigurationPlan plan = src.read(in.getPath());
+            DataConverter.planSerializer(outputFormat).write(plan, out.getPath());
+        }
+    }
+
+    /**
+     * Get the number of converted files.
+     *
+     * @return a positive integer
+     */
+    public int getNbConverted() {
+        return converted.get();
+    }
+
+    /**
+     * Get the number of files that were skipped as their conversion was up to date.
+     *
+     * @return a positive integer
+     */
+    public int getNbSkipped() {
+        return skipped.get();
+    }
+
+    /**
+     * Get the number of files that were not converted due to an error.
+     *
+     * @return a positive integer
+     */
+    public int getNbFailures() {
+        return failed.get();
+    }
+
+    /**
+     * Textual representation of the statistics of the conversions.
+     *
+     * @return a summary of the conversions and their throughput
+     */
+    public String getStatistics() {
+        double secs = Math.max(duration, 1) / 1000.0;
+        return converted.get() + " file(s) converted, " + skipped.get() + " skipped, "
+                + failed.get() + " failure(s) in " + duration + " ms using " + nbWorkers + " worker(s)\n"
+                + String.format("%.1f file(s)/s, %.2f MB/s read, %.2f MB/s written",
+                converted.get() / secs,
+                bytesRead.get() / secs / (1024 * 1024),
+                bytesWritten.get() / secs / (1024 * 1024));
+    }
+}
@@ -30,11 +30,14 @@ import entropy.configuration.parser.FileConfigurationSerializer;
 import entropy.configuration.parser.FileConfigurationSerializerFactory;
 import entropy.configuration.parser.PlainTextConfigurationSerializer;
 import entropy.configuration.parser.ProtobufConfigurationSerializer;
+import entropy.configuration.parser.SnapshotConfigurationSerializer;
+import entropy.configuration.parser.StreamedProtobufConfigurationSerializer;
 import entropy.plan.TimedReconfigurationPlan;
 import entropy.plan.parser.FileTimedReconfigurationPlanSerializer;
 import entropy.plan.parser.FileTimedReconfigurationPlanSerializerFactory;
 import entropy.plan.parser.PlainTextTimedReconfigurationPlanSerializer;
 import entropy.plan.parser.ProtobufTimedReconfigurationPlanSerializer;
+import entropy.plan.parser.StreamedTimedReconfigurationPlanSerializer;
 import entropy.plan.parser.TimedReconfigurationPlanSerializerException;
 
 /**
@@ -56,6 +59,14 @@ public final class DataConverter {
 
     public static final String TXT_FORMAT = "txt";
 
+    public static final String SNP_FORMAT = "snp";
+
+    public static final String PBS_FORMAT = "pbs";
+
+    public static final String BATCH_FLAG = "-batch";
+
+    public static final String WORKERS_FLAG = "-j";
+
     private DataConverter() {
     }
 
@@ -72,15 +83,20 @@ public final class DataConverter {
 
         if (args.length < 5) {
             System.err.println("Convert configuration file");
-            System.err.println("Usage: dataConv [-plan | -cfg] [-if pbd|txt] -of pbd|txt input_files output");
+            System.err.println("Usage: dataConv [-plan | -cfg] [-if pbd|pbs|txt|snp] -of pbd|pbs|txt|snp [-batch [-j nb]] input_files output");
             System.err.println("input_files: series of files. Format may be inferred wrt. the files extension");
             System.err.println("output: the ouput folder");
+            System.err.println("-batch: input_files may also be folders or glob patterns ('*', '?', '**')."
+                    + " Files are converted in parallel, their relative path is kept and up-to-date conversions are skipped");
+            System.err.println("-j: the number of files to convert in parallel in batch mode. Default is the number of processors");
             System.err.println("Supported datafile:");
             System.err.println("\t-plan reconfiguration plan");
             System.err.println("\t-cfg configuration");
             System.err.println("supported formats:");
             System.err.println("\tpbd - binary format from protobuf messages");
+            System.err.println("\tpbs - binary format from a stream of protobuf messages");
             System.err.println("\ttxt - plain text format");
+            System.err.println("\tsnp - memory-mappable snapshot, configurations only");
             System.exit(1);
         }
         String outputPath;
@@ -88,10 +104,17 @@ public final class DataConverter {
         String outputFormat = null;
         String mode = null;
         List<String> inputs = new LinkedList<String>();
+        boolean batch = false;
+        int nbWorkers = Runtime.getRuntime().availableProcessors();
         int i = 0;
         while (i < args.length) {
             if (args[i].equals(PLAN_MODE) || args[i].equals(CFG_MODE)) {
                 mode = args[i];
+            } else if (args[i].equals(BATCH_FLAG)) {
+                batch = true;
+            } else if (args[i].equals(WORKERS_FLAG)) {
+                nbWorkers = Integer.parseInt(args[i + 1]);
+                i++;
             } else if (args[i].equals(INPUT_FORMAT_FLAG)) {
                 inputFormat = args[i + 1];
                 i++;
@@ -115,8 +138,8 @@ public final class DataConverter {
             exitOnError("Output format must be specified");
         }
 
-        if (inputFormat != null && (inputFormat.equals(PB_FORMAT)
-                || inputFormat.equals(TXT_FORMAT))) {
+        if (inputFormat != null
+                && (PLAN_MODE.equals(mode) ? planSerializer(inputFormat) : configurationSerializer(inputFormat)) == null) {
             exitOnError("Unsupported input format: " + inputFormat);
         }
 
@@ -124,7 +147,16 @@ public final class DataConverter {
             exitOnError("No input configurations");
         }
 
-        if (mode.equals(PLAN_MODE)) {
+        if (batch) {
+            BatchConverter c = new BatchConverter(mode.equals(PLAN_MODE), inputFormat, outputFormat, outputPath, nbWorkers);
+            try {
+                c.convert(inputs);
+            } catch (InterruptedException e) {
+                System.err.println("Conversion interrupted");
+            }
+            System.out.println(c.getStatistics());
+            System.exit(c.getNbFailures() == 0 ? 0 : 1);
+        } else if (mode.equals(PLAN_MODE)) {
             convertPlan(inputs, inputFormat, outputFormat, outputPath);
         } else {
             convertConfiguration(inputs, inputFormat, outputFormat, outputPath);
@@ -132,12 +164,8 @@ public final class DataConverter {
     }
 
     private static void convertConfiguration(List<String> inputs, String inputFormat, String outputFormat, String outputPath) {
-        FileConfigurationSerializer out = null;
-        if (outputFormat.equals(PB_FORMAT)) {
-            out = ProtobufConfigurationSerializer.getInstance();
-        } else if (outputFormat.equals(TXT_FORMAT)) {
-            out = PlainTextConfigurationSerializer.getInstance();
-        } else {
+        FileConfigurationSerializer out = configurationSerializer(outputFormat);
+        if (out == null) {
             exitOnError("Unsupported output format: " + outputFormat);
         }
         for (String input : inputs) {
@@ -148,10 +176,8 @@ public final class DataConverter {
                     System.err.println("Skipping '" + input + "': not compatible with the input format");
                     continue;
                 }
-            } else if (inputFormat.equals(PB_FORMAT)) {
-                src = ProtobufConfigurationSerializer.getInstance();
-            } else if (inputFormat.equals(TXT_FORMAT)) {
-                src = PlainTextConfigurationSerializer.getInstance();
+            } else {
+                src = configurationSerializer(inputFormat);
             }
 
             //Make the conversion
@@ -175,12 +201,8 @@ public final class DataConverter {
     }
 
     private static void convertPlan(List<String> inputs, String inputFormat, String outputFormat, String outputPath) {
-        FileTimedReconfigurationPlanSerializer out = null;
-        if (outputFormat.equals(PB_FORMAT)) {
-            out = ProtobufTimedReconfigurationPlanSerializer.getInstance();
-        } else if (outputFormat.equals(TXT_FORMAT)) {
-            out = PlainTextTimedReconfigurationPlanSerializer.getInstance();
-        } else {
+        FileTimedReconfigurationPlanSerializer out = planSerializer(outputFormat);
+        if (out == null) {
             exitOnError("Unsupported output format: " + outputFormat);
         }
         for (String input : inputs) {
@@ -191,10 +213,8 @@ public final class DataConverter {
                     System.err.println("Skipping '" + input + "': not compatible with the input format");
                     continue;
                 }
-            } else if (inputFormat.equals(PB_FORMAT)) {
-                src = ProtobufTimedReconfigurationPlanSerializer.getInstance();
-            } else if (inputFormat.equals(TXT_FORMAT)) {
-                src = PlainTextTimedReconfigurationPlanSerializer.getInstance();
+            } else {
+                src = planSerializer(inputFormat);
             }
 
             //Make the conversion
@@ -216,6 +236,42 @@ public final class DataConverter {
         }
     }
 
+    /**
+     * Get the serializer associated to a format of configuration.
+     *
+     * @param format the format
+     * @return the serializer or {@code null} if the format is not supported
+     */
+    static FileConfigurationSerializer configurationSerializer(String format) {
+        if (format.equals(PB_FORMAT)) {
+            return ProtobufConfigurationSerializer.getInstance();
+        } else if (format.equals(PBS_FORMAT)) {
+            return StreamedProtobufConfigurationSerializer.getInstance();
+        } else if (format.equals(TXT_FORMAT)) {
+            return PlainTextConfigurationSerializer.getInstance();
+        } else if (format.equals(SNP_FORMAT)) {
+            return SnapshotConfigurationSerializer.getInstance();
+        }
+        return null;
+    }
+
+    /**
+     * Get the serializer associated to a format of plan.
+     *
+     * @param format the format
+     * @return the serializer or {@code null} if the format is not supported
+     */
+    static FileTimedReconfigurationPlanSerializer planSerializer(String format) {
+        if (format.equals(PB_FORMAT)) {
+            return ProtobufTimedReconfigurationPlanSerializer.getInstance();
+        } else if (format.equals(PBS_FORMAT)) {
+            return StreamedTimedReconfigurationPlanSerializer.getInstance();
+        } else if (format.equals(TXT_FORMAT)) {
+            return PlainTextTimedReconfigurationPlanSerializer.getInstance();
+        }
+        return null;
+    }
+
     private static String convertFileName(String path, String outputPath, String outputFormat) {
         File x = new File(path);
         String name = x.getName().substring(0, x.getName().lastIndexOf("."));
@@ -24,7 +24,6 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
-import entropy.configuration.DefaultManagedElementSet;
 import entropy.configuration.ManagedElement;
 import entropy.configuration.ManagedElementSet;
 
@@ -138,9 +137,13 @@ public class ExplodedMultiSet<T extends ManagedElement> implements VJobMultiSet<
 
     @Override
     public ManagedElementSet<T> getElements() {
-        ManagedElementSet<T> r = new DefaultManagedElementSet<T>();
-        for (VJobSet<T> t : content) {
-            r.addAll(t.getElements());
+        if (content.isEmpty()) {
+            return new ExplodedSet<T>();
+        }
+        //The union relies on the registry of the first set, if any
+        ManagedElementSet<T> r = new ExplodedSet<T>(content.get(0).flatten());
+        for (int i = 1; i < content.size(); i++) {
+            r.addAll(content.get(i).flatten());
         }
         return r;
     }
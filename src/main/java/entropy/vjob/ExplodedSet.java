@@ -19,16 +19,21 @@
 
 package entropy.vjob;
 
+import entropy.configuration.ElementRegistry;
+import entropy.configuration.IndexedManagedElementSet;
 import entropy.configuration.ManagedElement;
 import entropy.configuration.ManagedElementSet;
-import entropy.configuration.SimpleManagedElementSet;
 
 /**
  * A set of elements specified individually.
+ * <p/>
+ * When the set relies on a registry, the set operations
+ * with the other sets that rely on the same registry are made using bitsets.
+ * A set made from another one relies on the same registry.
  *
  * @author Fabien Hermenier
  */
-public class ExplodedSet<T extends ManagedElement> extends SimpleManagedElementSet<T> implements VJobSet<T> {
+public class ExplodedSet<T extends ManagedElement> extends IndexedManagedElementSet<T> implements VJobSet<T> {
 
     /**
      * The label of the set. Optionnal
@@ -51,6 +56,26 @@ public class ExplodedSet<T extends ManagedElement> extends SimpleManagedElementS
 
     }
 
+    /**
+     * Make an empty set that relies on a registry.
+     *
+     * @param registry the registry that identifies the elements. May be {@code null}
+     */
+    public ExplodedSet(ElementRegistry registry) {
+        super(registry);
+    }
+
+    /**
+     * Make an empty set with a label that relies on a registry.
+     *
+     * @param id       the label of the set
+     * @param registry the registry that identifies the elements. May be {@code null}
+     */
+    public ExplodedSet(String id, ElementRegistry registry) {
+        super(registry);
+        label = id;
+    }
+
     /**
      * Make a set composed of the element of a common set.
      *
@@ -58,8 +83,8 @@ public class ExplodedSet<T extends ManagedElement> extends SimpleManagedElementS
      * @param back the set to copy
      */
     public ExplodedSet(String id, ManagedElementSet<T> back) {
-        this(id);
-        this.addAll(back);
+        this(back);
+        label = id;
     }
 
     /**
@@ -68,9 +93,23 @@ public class ExplodedSet<T extends ManagedElement> extends SimpleManagedElementS
      * @param back the set to copy
      */
     public ExplodedSet(ManagedElementSet<T> back) {
+        super(registryOf(back));
         this.addAll(back);
     }
 
+    /**
+     * Get the registry of a set.
+     *
+     * @param s the set
+     * @return its registry, {@code null} if it does not rely on a registry
+     */
+    static ElementRegistry registryOf(ManagedElementSet<?> s) {
+        if (s instanceof IndexedManagedElementSet) {
+            return ((IndexedManagedElementSet<?>) s).getRegistry();
+        }
+        return null;
+    }
+
     @Override
     public ExplodedSet<T> flatten() {
         return this;
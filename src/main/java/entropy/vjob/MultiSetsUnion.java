@@ -73,6 +73,6 @@ public class MultiSetsUnion<T extends DefaultManagedElement> extends ComposedMul
 
     @Override
     public int size() {
-        return expand().size();
+        return first().size() + second().size();
     }
 }
@@ -19,6 +19,7 @@
 
 package entropy.vjob;
 
+import entropy.configuration.ElementRegistry;
 import entropy.configuration.ManagedElement;
 
 /**
@@ -44,6 +45,18 @@ public class RangeOfElements<T extends ManagedElement> extends ExplodedSet<T> {
         this.range = pattern;
     }
 
+    /**
+     * Make a new set that relies on a registry.
+     *
+     * @param pattern  the pattern used to select the elements.
+     * @param label    the label of the set. Optionnal
+     * @param registry the registry that identifies the elements. May be {@code null}
+     */
+    public RangeOfElements(String pattern, String label, ElementRegistry registry) {
+        super(label, registry);
+        this.range = pattern;
+    }
+
     /**
      * Make a new set.
      *
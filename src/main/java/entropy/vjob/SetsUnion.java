@@ -50,8 +50,7 @@ public class SetsUnion<T extends ManagedElement> extends ComposedSet<T> {
      */
     public SetsUnion(String label, VJobSet<T> h, VJobSet<T> t) {
         super(label, h, t);
-        res = new ExplodedSet<T>(label);
-        res.addAll(h.flatten());
+        res = new ExplodedSet<T>(label, h.flatten());
         res.addAll(t.flatten());
     }
 
@@ -73,7 +73,7 @@ public class ExplodedIntervalTree extends VJobTree {
         range.append(tail);
         VirtualMachine vm = elemBuilder.matchAsVirtualMachine(first);
         if (vm != null) {
-            ex = new RangeOfElements<VirtualMachine>(range.toString(), range.toString());
+            ex = new RangeOfElements<VirtualMachine>(range.toString(), range.toString(), elemBuilder.getRegistry());
             for (int i = 1; i <= getChildCount() - 2; i++) {
                 vm = elemBuilder.matchAsVirtualMachine(head + getChild(i).getText() + tail);
                 if (vm == null) {
@@ -86,7 +86,7 @@ public class ExplodedIntervalTree extends VJobTree {
         }
         Node n = elemBuilder.matchAsNode(first);
         if (n != null) {
-            ex = new RangeOfElements<Node>(range.toString(), range.toString());
+            ex = new RangeOfElements<Node>(range.toString(), range.toString(), elemBuilder.getRegistry());
             for (int i = 1; i <= getChildCount() - 2; i++) {
                 n = elemBuilder.matchAsNode(head + getChild(i).getText() + tail);
                 if (n == null) {
@@ -34,14 +34,21 @@ import entropy.vjob.VJobSet;
  */
 public class ExplodedSetTree extends VJobTree {
 
+    /**
+     * The builder that provides the registry of the sets.
+     */
+    private VJobElementBuilder elemBuilder;
+
     /**
      * Make a new parser.
      *
      * @param t    the root token
      * @param errs the errors to report
+     * @param eb   the builder that provides the registry of the sets
      */
-    public ExplodedSetTree(Token t, SemanticErrors errs) {
+    public ExplodedSetTree(Token t, SemanticErrors errs, VJobElementBuilder eb) {
         super(t, errs);
+        this.elemBuilder = eb;
     }
 
     @Override
@@ -84,7 +91,7 @@ public class ExplodedSetTree extends VJobTree {
     }
 
     private Content makeSet(Content.Type expect, Content.Type produce) {
-        ExplodedSet set = new ExplodedSet();
+        ExplodedSet set = new ExplodedSet(elemBuilder.getRegistry());
         for (int i = 0; i < getChildCount(); i++) {
             Content tx = ((VJobTree) getChild(i)).go(this);
             if (!tx.type().equals(expect)) {
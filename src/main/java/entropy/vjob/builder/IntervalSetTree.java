@@ -66,7 +66,7 @@ public class IntervalSetTree extends VJobTree {
 
         VirtualMachine vm = elemBuilder.matchAsVirtualMachine(first);
         if (vm != null) {
-            ex = new RangeOfElements<VirtualMachine>(range, range);
+            ex = new RangeOfElements<VirtualMachine>(range, range, elemBuilder.getRegistry());
             for (int i = start; i <= end; i++) {
                 vm = elemBuilder.matchAsVirtualMachine(head + i + tail);
                 if (vm == null) {
@@ -79,7 +79,7 @@ public class IntervalSetTree extends VJobTree {
         }
         Node n = elemBuilder.matchAsNode(first);
         if (n != null) {
-            ex = new RangeOfElements<Node>(range, range);
+            ex = new RangeOfElements<Node>(range, range, elemBuilder.getRegistry());
             for (int i = start; i <= end; i++) {
                 n = elemBuilder.matchAsNode(head + i + tail);
                 if (n == null) {
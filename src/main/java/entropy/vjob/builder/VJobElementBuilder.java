@@ -23,12 +23,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import entropy.configuration.Configuration;
+import entropy.configuration.Configurations;
+import entropy.configuration.ElementRegistry;
 import entropy.configuration.Node;
 import entropy.configuration.VirtualMachine;
 
 /**
  * Build the element of the vjobs from their
  * value.
+ * <p/>
+ * The sets of elements rely on the registry of the current configuration
+ * when available, so the set operations are made using bitsets.
  *
  * @author Fabien Hermenier
  */
@@ -46,6 +51,11 @@ public class VJobElementBuilder {
      */
     private Configuration curConfig;
 
+    /**
+     * The registry that identifies the elements of the sets.
+     */
+    private ElementRegistry registry;
+
     /**
      * Make a new vmBuilder.
      *
@@ -53,6 +63,7 @@ public class VJobElementBuilder {
      */
     public VJobElementBuilder(VirtualMachineBuilder b) {
         vmBuilder = b;
+        registry = new ElementRegistry();
     }
 
     /**
@@ -62,6 +73,18 @@ public class VJobElementBuilder {
      */
     public void useConfiguration(Configuration cfg) {
         curConfig = cfg;
+        ElementRegistry r = cfg == null ? null : Configurations.getRegistry(cfg);
+        registry = r != null ? r : new ElementRegistry();
+    }
+
+    /**
+     * Get the registry to use to identify the elements of the sets.
+     * This is the registry of the current configuration if it relies on one.
+     *
+     * @return a registry
+     */
+    public ElementRegistry getRegistry() {
+        return registry;
     }
 
     /**
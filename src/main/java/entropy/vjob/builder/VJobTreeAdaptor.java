@@ -70,7 +70,7 @@ public class VJobTreeAdaptor extends CommonTreeAdaptor {
             case ANTLRVJob3Lexer.INTERVAL:
                 return new IntervalSetTree(payload, errors, elemBuilder);
             case ANTLRVJob3Lexer.EXPLODED_SET:
-                return new ExplodedSetTree(payload, errors);
+                return new ExplodedSetTree(payload, errors, elemBuilder);
             case ANTLRVJob3Lexer.VAL:
                 return new ValTree(payload, errors, elemBuilder);
             case ANTLRVJob3Lexer.EQUALS:
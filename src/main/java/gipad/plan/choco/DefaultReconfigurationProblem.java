@@ -76,6 +76,7 @@ import org.discovery.DiscoveryModel.model.VirtualMachine;
 
 import solver.*;
 import solver.constraints.ICF;
+import solver.constraints.LCF;
 import solver.constraints.set.SCF;
 import solver.variables.*;
 
@@ -334,6 +335,7 @@ public final class DefaultReconfigurationProblem implements ReconfigurationProbl
         this.makeResourcesCapacities(); 
 		// creation de toutes les variables qui représentent les sommes de
 		// comsommations sur chaque noeud
+        this.makeNetworkCumulatives();
         //TODO
         this.vmGrp = new ArrayList<IntVar>(this.vms.length);
         for (int i = 0; i < vms.length; i++) {
@@ -430,6 +432,45 @@ public final class DefaultReconfigurationProblem implements ReconfigurationProbl
 		}
     }
 
+    /**
+     * Post a cumulative constraint on the network interface of each node.
+     * A leaving slice consumes the output bandwidth of its hoster while an incoming
+     * slice consumes the input bandwidth of the node it will be assigned to.
+     * This prevents too many simultaneous migrations to share the same link.
+     */
+    private void makeNetworkCumulatives() {
+        for (int i = 0; i < nodes.length; i++) {
+            if (netInCapacities[i] == null) {
+                continue;
+            }
+            List<Task> tasks = new ArrayList<Task>();
+            List<IntVar<?>[]> heights = new ArrayList<IntVar<?>[]>();
+            for (LeavingSlice l : leavingSlices) {
+                if (l.hoster().instantiatedTo(i)) {
+                    tasks.add(l.getTask());
+                    heights.add(new IntVar[]{VF.fixed(0, s), l.getBwOutput()});
+                }
+            }
+            for (IncomingSlice in : incomingSlices) {
+                if (in.hoster().contains(i)) {
+                    //The input bandwidth is only consumed on the node that will host the slice
+                    IntVar<?> h = VF.bounded(in.getName() + "#netIn@" + nodes[i].name(), 0, in.getBwInput().getUB(), s);
+                    s.post(LCF.ifThenElse(ICF.arithm(in.hoster(), "=", i),
+                            ICF.arithm(h, "=", in.getBwInput()),
+                            ICF.arithm(h, "=", 0)));
+                    tasks.add(in.getTask());
+                    heights.add(new IntVar[]{h, VF.fixed(0, s)});
+                }
+            }
+            if (!tasks.isEmpty()) {
+                IntVar<?>[] capas = new IntVar[]{VF.fixed(netInCapacities[i].getUB(), s),
+                        VF.fixed(netOutCapacities[i].getUB(), s)};
+                s.post(new CumulativeMultiDim(tasks.toArray(new Task[tasks.size()]),
+                        heights.toArray(new IntVar[heights.size()][]), capas, s, new int[0]));
+            }
+        }
+    }
+
     /**
      * Check all the nodes belong to only one set.
      *
@@ -670,6 +711,9 @@ public final class DefaultReconfigurationProblem implements ReconfigurationProbl
         this.consumingSlices = new ArrayList<ConsumingSlice>();
         this.consumingSlices.addAll(ActionModelUtils.extractConsumingSlices(getVirtualMachineActions()));
         this.consumingSlices.addAll(ActionModelUtils.extractConsumingSlices(getNodeMachineActions()));
+
+        this.leavingSlices = ActionModelUtils.extractLeavingSlices(getVirtualMachineActions());
+        this.incomingSlices = ActionModelUtils.extractIncomingSlices(getVirtualMachineActions());
     }
 
     @Override
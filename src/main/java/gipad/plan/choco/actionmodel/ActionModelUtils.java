@@ -38,4 +38,36 @@ public class ActionModelUtils {
         }
         return slices;
     }
+
+    /**
+     * Extract all the leaving slices of a list of actions.
+     *
+     * @param actions the list of action
+     * @return a list of leaving slice. May be empty
+     */
+    public static List<LeavingSlice> extractLeavingSlices(List<? extends ActionModel> actions) {
+        List<LeavingSlice> slices = new ArrayList<LeavingSlice>();
+        for (ActionModel a : actions) {
+            if (a.getLeavingSlice() != null) {
+                slices.add(a.getLeavingSlice());
+            }
+        }
+        return slices;
+    }
+
+    /**
+     * Extract all the incoming slices of a list of actions.
+     *
+     * @param actions the list of action
+     * @return a list of incoming slice. May be empty
+     */
+    public static List<IncomingSlice> extractIncomingSlices(List<? extends ActionModel> actions) {
+        List<IncomingSlice> slices = new ArrayList<IncomingSlice>();
+        for (ActionModel a : actions) {
+            if (a.getIncomingSlice() != null) {
+                slices.add(a.getIncomingSlice());
+            }
+        }
+        return slices;
+    }
 }
@@ -176,6 +176,15 @@ public class Slice {
     	core.getSolver().post(ICF.arithm(this.getEnd(), "<=", core.getEnd()));
     }
 
+    /**
+     * Get the task associated to the slice.
+     *
+     * @return a task
+     */
+    public Task getTask() {
+        return task;
+    }
+
     /**
      * Get the moment the slice starts.
      *
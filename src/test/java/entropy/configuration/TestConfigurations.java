@@ -190,4 +190,121 @@ public class TestConfigurations {
             Assert.fail(e.getMessage(), e);
         }
     }
+    /**
+     * Apply some changes on a configuration.
+     *
+     * @param c the configuration to modify
+     */
+    private void modify(Configuration c) {
+        c.setRunOn(c.getRunnings().get("VM1"), c.getOnlines().get("N4"));
+        c.setRunOn(c.getSleepings().get("VM10"), c.getOnlines().get("N2"));
+        c.addWaiting(new SimpleVirtualMachine("VM12", 1, 1, 1));
+        c.remove(c.getRunnings().get("VM9"));
+        c.addOnline(c.getOfflines().get("N11"));
+        c.addOffline(c.getOnlines().get("N10"));
+        c.addOnline(new SimpleNode("N12", 1, 5, 5));
+    }
+
+    /**
+     * Check the delta computed after {@link #modify(Configuration)}.
+     *
+     * @param src the source configuration
+     * @param dst the modified configuration
+     */
+    private void checkDelta(Configuration src, Configuration dst) {
+        ConfigurationDelta d = Configurations.diff(src, dst);
+        Assert.assertEquals(d.size(), 7, d.toString());
+        Assert.assertEquals(d.getMovedVirtualMachines().size(), 1);
+        Assert.assertTrue(d.getMovedVirtualMachines().contains(new SimpleVirtualMachine("VM1")));
+        Assert.assertEquals(d.getNewLocation(new SimpleVirtualMachine("VM1")).getName(), "N4");
+        Assert.assertEquals(d.getStateChangedVirtualMachines().size(), 1);
+        Assert.assertEquals(d.getNewState(new SimpleVirtualMachine("VM10")), ConfigurationDelta.State.Running);
+        Assert.assertTrue(d.getAddedVirtualMachines().contains(new SimpleVirtualMachine("VM12")));
+        Assert.assertTrue(d.getRemovedVirtualMachines().contains(new SimpleVirtualMachine("VM9")));
+        Assert.assertEquals(d.getStateChangedNodes().size(), 2);
+        Assert.assertTrue(d.getAddedNodes().contains(new SimpleNode("N12")));
+        Assert.assertTrue(d.getRemovedNodes().isEmpty());
+        Assert.assertNull(d.getNewState(new SimpleVirtualMachine("VM2")));
+
+        //Replaying the delta
+        Configuration res = src.clone();
+        try {
+            d.apply(res);
+        } catch (ConfigurationsException e) {
+            Assert.fail(e.getMessage(), e);
+        }
+        Assert.assertEquals(res, dst);
+        Assert.assertTrue(Configurations.diff(res, dst).isEmpty());
+        Assert.assertTrue(Configurations.diff(dst, dst).isEmpty());
+    }
+
+    /**
+     * Test diff() and apply() on two unrelated configurations.
+     */
+    public void testDiff() {
+        Configuration src = makeConfiguration();
+        Configuration dst = makeConfiguration();
+        modify(dst);
+        checkDelta(src, dst);
+    }
+
+    /**
+     * Test diff() and apply() on configurations that share their structure.
+     */
+    public void testDiffPersistent() {
+        Configuration src = new PersistentConfiguration(makeConfiguration());
+        Configuration dst = src.clone();
+        modify(dst);
+        checkDelta(src, dst);
+    }
+
+    /**
+     * Test diff() and apply() on configurations that share their identifiers.
+     */
+    public void testDiffDense() {
+        DenseConfiguration src = new DenseConfiguration();
+        Configuration ref = makeConfiguration();
+        for (Node n : ref.getAllNodes()) {
+            if (ref.isOnline(n)) {
+                src.addOnline(n);
+            } else {
+                src.addOffline(n);
+            }
+        }
+        for (VirtualMachine vm : ref.getRunnings()) {
+            src.setRunOn(vm, ref.getLocation(vm));
+        }
+        for (VirtualMachine vm : ref.getSleepings()) {
+            src.setSleepOn(vm, ref.getLocation(vm));
+        }
+        Configuration dst = src.clone();
+        modify(dst);
+        checkDelta(src, dst);
+    }
+
+    /**
+     * Test fingerprint() on equal and modified configurations.
+     */
+    public void testFingerprint() {
+        Configuration src = makeConfiguration();
+        long fp = Configurations.fingerprint(src);
+        Assert.assertEquals(Configurations.fingerprint(makeConfiguration()), fp);
+        Assert.assertEquals(Configurations.fingerprint(new PersistentConfiguration(src)), fp);
+
+        Configuration dst = src.clone();
+        dst.setRunOn(dst.getRunnings().get("VM1"), dst.getOnlines().get("N2"));
+        Assert.assertFalse(Configurations.fingerprint(dst) == fp);
+
+        dst = src.clone();
+        dst.setSleepOn(dst.getRunnings().get("VM1"), dst.getOnlines().get("N1"));
+        Assert.assertFalse(Configurations.fingerprint(dst) == fp);
+
+        dst = makeConfiguration();
+        dst.getRunnings().get("VM1").setCPUDemand(3);
+        Assert.assertFalse(Configurations.fingerprint(dst) == fp);
+
+        dst = makeConfiguration();
+        dst.addOnline(dst.getOfflines().get("N11"));
+        Assert.assertFalse(Configurations.fingerprint(dst) == fp);
+    }
 }
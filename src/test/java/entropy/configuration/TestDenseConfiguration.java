@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.configuration;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for DenseConfiguration.
+ * The common tests are in {@link AbstractConfigurationTest}.
+ *
+ * @author Fabien Hermenier
+ */
+@Test(groups = "unit")
+public class TestDenseConfiguration extends AbstractConfigurationTest {
+
+    @Override
+    protected Configuration make() {
+        return new DenseConfiguration();
+    }
+
+    /**
+     * Test that a clone shares the registry but not the states.
+     */
+    public void testCloneIsolation() {
+        DenseConfiguration c = (DenseConfiguration) makeDefaultConfiguration();
+        DenseConfiguration c2 = (DenseConfiguration) c.clone();
+        Assert.assertSame(c2.getRegistry(), c.getRegistry());
+        VirtualMachine vm = c.getRunnings().get("VM0");
+        Node n = c.getOnlines().get("N12");
+        Assert.assertTrue(c2.setRunOn(vm, n));
+        Assert.assertEquals(c2.getLocation(vm), n);
+        Assert.assertEquals(c.getLocation(vm), c.getOnlines().get("N0"));
+        Assert.assertEquals(c.getRunnings(n).size(), 0);
+        c2.remove(vm);
+        Assert.assertTrue(c.isRunning(vm));
+        Assert.assertFalse(c2.contains(vm));
+
+        //New elements after the clone
+        VirtualMachine vm2 = new SimpleVirtualMachine("VMX", 1, 2, 3);
+        c2.addWaiting(vm2);
+        Assert.assertFalse(c.contains(vm2));
+        Assert.assertTrue(c2.isWaiting(vm2));
+    }
+
+    /**
+     * Test that the registry identifies the virtual machines by their names and stores them as is.
+     */
+    public void testResources() {
+        DenseConfiguration c = (DenseConfiguration) makeDefaultConfiguration();
+        ElementRegistry reg = c.getRegistry();
+        VirtualMachine vm = c.getRunnings().get("VM3");
+        int id = reg.getId(vm);
+        Assert.assertEquals(reg.getId(new SimpleVirtualMachine("VM3")), id);
+        Assert.assertEquals(vm.getCPUConsumption(), 1024);
+        vm.setCPUConsumption(512);
+        vm.setMemoryDemand(5);
+        Assert.assertSame(reg.getVirtualMachine(id), vm);
+        Assert.assertEquals(c.clone().getRunnings().get("VM3").getCPUConsumption(), 512);
+        Assert.assertEquals(reg.getId(new SimpleVirtualMachine("zob")), ElementRegistry.NO_ID);
+    }
+
+    /**
+     * Test with a large number of elements.
+     */
+    public void testGrowth() {
+        Configuration c = new DenseConfiguration();
+        for (int i = 0; i < 100; i++) {
+            Node n = new SimpleNode("N" + i, 1, 2, 3);
+            c.addOnline(n);
+            for (int j = 0; j < 10; j++) {
+                c.setRunOn(new SimpleVirtualMachine("VM" + i + "-" + j, 1, 2, 3), n);
+            }
+        }
+        Assert.assertEquals(c.getRunnings().size(), 1000);
+        Assert.assertEquals(c.getOnlines().size(), 100);
+        for (Node n : c.getOnlines()) {
+            Assert.assertEquals(c.getRunnings(n).size(), 10);
+        }
+        Node n0 = c.getOnlines().get("N0");
+        for (VirtualMachine vm : c.getRunnings(c.getOnlines().get("N1"))) {
+            c.setRunOn(vm, n0);
+        }
+        Assert.assertEquals(c.getRunnings(n0).size(), 20);
+        Assert.assertTrue(c.remove(c.getOnlines().get("N1")));
+        Assert.assertFalse(c.remove(n0));
+        Assert.assertEquals(c.getAllNodes().size(), 99);
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.configuration;
+
+import java.util.Collections;
+import java.util.Comparator;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+
+/**
+ * Unit tests for IndexedManagedElementSet.
+ *
+ * @author Fabien Hermenier
+ */
+@Test(groups = {"unit"})
+public class TestIndexedManagedElementSet {
+
+    /**
+     * Make a default set of elements.
+     *
+     * @return a proper set
+     */
+    private static ManagedElementSet<MockManagedElement> makeDefaultSet() {
+        ManagedElementSet<MockManagedElement> set = new IndexedManagedElementSet<MockManagedElement>();
+        MockManagedElement n = new MockManagedElement("N0");
+        set.add(n);
+
+        n = new MockManagedElement("N1");
+        set.add(n);
+
+        n = new MockManagedElement("N2");
+        set.add(n);
+
+        n = new MockManagedElement("N3");
+        set.add(n);
+
+        return set;
+    }
+
+    public void testSingleton() {
+        MockManagedElement n = new MockManagedElement("N0");
+        ManagedElementSet<MockManagedElement> set = new IndexedManagedElementSet<MockManagedElement>(n);
+        Assert.assertTrue(set.contains(n));
+        Assert.assertEquals(set.size(), 1);
+    }
+
+    public void testGetFromName() {
+        ManagedElementSet<MockManagedElement> orig = TestIndexedManagedElementSet.makeDefaultSet();
+        Assert.assertEquals(orig.get("N0"), new MockManagedElement("N0"));
+        Assert.assertNull(orig.get("N7"));
+    }
+
+    /**
+     * Check that the copy constructor makes a deep copy.
+     */
+    public void testCopyConstructor() {
+        ManagedElementSet<MockManagedElement> orig = TestIndexedManagedElementSet.makeDefaultSet();
+        ManagedElementSet<MockManagedElement> copy = orig.clone();
+
+        // Not the same reference
+        Assert.assertFalse(orig == copy,
+                "The copy should not have the same reference");
+
+        // But the same content
+        Assert.assertEquals(copy, orig);
+    }
+
+    /**
+     * Test the non-possibility of having 2 elements with the same name.
+     */
+    public void testAdd() {
+        ManagedElementSet<MockManagedElement> orig = TestIndexedManagedElementSet.makeDefaultSet();
+        Assert.assertFalse(orig.add(new MockManagedElement("N0")));
+        Assert.assertEquals(orig.size(), 4);
+    }
+
+    public void testRemove() {
+        ManagedElementSet<MockManagedElement> orig = TestIndexedManagedElementSet.makeDefaultSet();
+        MockManagedElement m = orig.get("N1");
+        Assert.assertTrue(orig.remove(m));
+        Assert.assertFalse(orig.contains(m));
+        MockManagedElement m2 = new MockManagedElement("hop");
+        Assert.assertFalse(orig.remove(m2));
+    }
+
+    public void testClear() {
+        ManagedElementSet<MockManagedElement> orig = TestIndexedManagedElementSet.makeDefaultSet();
+        ManagedElementSet<MockManagedElement> orig2 = orig.clone();
+        orig2.clear();
+        Assert.assertEquals(orig2.size(), 0);
+        for (MockManagedElement e : orig) {
+            Assert.assertFalse(orig2.contains(e));
+        }
+
+    }
+
+    /**
+     * Test the equals() method.
+     */
+    public void testEquals() {
+        ManagedElementSet<MockManagedElement> orig = TestIndexedManagedElementSet.makeDefaultSet();
+        ManagedElementSet<MockManagedElement> clone = TestIndexedManagedElementSet.makeDefaultSet();
+        Assert.assertEquals(clone, orig);
+        clone.remove(clone.size() - 1);
+        Assert.assertNotSame(clone, orig);
+
+        clone = TestIndexedManagedElementSet.makeDefaultSet();
+        orig.remove(clone.size() - 1);
+        Assert.assertNotSame(clone, orig);
+
+        Assert.assertFalse(orig.equals(new Object()));
+    }
+
+    /**
+     * Test addAll().
+     */
+    public void testAddAll() {
+        ManagedElementSet<MockManagedElement> set = makeDefaultSet();
+        ManagedElementSet<MockManagedElement> s2 = new IndexedManagedElementSet<MockManagedElement>();
+        Assert.assertFalse(set.addAll(s2));
+        s2.add(new MockManagedElement("N0"));
+        Assert.assertFalse(set.addAll(s2));
+        s2.add(new MockManagedElement("aaaa"));
+        Assert.assertTrue(set.addAll(s2));
+    }
+
+    public void testRetainAll() {
+        ManagedElementSet<MockManagedElement> set = makeDefaultSet();
+        ManagedElementSet<MockManagedElement> toKeep = new IndexedManagedElementSet<MockManagedElement>();
+        MockManagedElement n1 = set.get("N1");
+        MockManagedElement n2 = set.get("N2");
+        MockManagedElement n3 = set.get("N3");
+        MockManagedElement n7 = new MockManagedElement("N7");
+        toKeep.add(n1);
+        toKeep.add(n2);
+        toKeep.add(n7);
+        Assert.assertTrue(set.retainAll(toKeep));
+        Assert.assertTrue(set.contains(n1));
+        Assert.assertTrue(set.contains(n2));
+        Assert.assertFalse(set.contains(n3));
+        Assert.assertNull(set.get("N0"));
+    }
+
+    public void testToString() {
+        ManagedElementSet<MockManagedElement> set = makeDefaultSet();
+        Assert.assertEquals(set.toString(), "{N0, N1, N2, N3}");
+    }
+
+    public void testSet() {
+        ManagedElementSet<MockManagedElement> set = makeDefaultSet();
+        MockManagedElement n0 = set.get(0);
+        MockManagedElement n3 = set.get(3);
+        set.set(3, n0);
+        set.set(0, n3);
+        Assert.assertEquals(set.toString(), "{N3, N1, N2, N0}");
+        Assert.assertTrue(set.contains(n0));
+        Assert.assertTrue(set.contains(n3));
+        Assert.assertEquals(set.get("N3"), n3);
+        Assert.assertEquals(set.get("N0"), n0);
+    }
+    /**
+     * Test that a removal moves the last element.
+     */
+    public void testSwapRemove() {
+        ManagedElementSet<MockManagedElement> s = makeDefaultSet();
+        Assert.assertTrue(s.remove(new MockManagedElement("N1")));
+        Assert.assertEquals(s.size(), 3);
+        Assert.assertEquals(s.get(1).getName(), "N3");
+        Assert.assertEquals(s.indexOf(new MockManagedElement("N3")), 1);
+        Assert.assertEquals(s.get("N3"), new MockManagedElement("N3"));
+        Assert.assertFalse(s.remove(new MockManagedElement("N1")));
+        s.remove(0);
+        Assert.assertEquals(s.get(0).getName(), "N2");
+        Assert.assertNull(s.get("N0"));
+    }
+
+    /**
+     * Test the bulk operations between sets sharing a registry.
+     */
+    public void testBulkWithRegistry() {
+        ElementRegistry reg = new ElementRegistry();
+        IndexedManagedElementSet<Node> s1 = new IndexedManagedElementSet<Node>(reg);
+        IndexedManagedElementSet<Node> s2 = new IndexedManagedElementSet<Node>(reg);
+        for (int i = 0; i < 10; i++) {
+            s1.add(new SimpleNode("N" + i));
+        }
+        for (int i = 5; i < 15; i++) {
+            s2.add(new SimpleNode("N" + i));
+        }
+        Assert.assertFalse(s1.containsAll(s2));
+        Assert.assertEquals(s1.union(s2).size(), 15);
+        Assert.assertEquals(s1.difference(s2).size(), 5);
+        Assert.assertTrue(s1.union(s2).containsAll(s2));
+
+        IndexedManagedElementSet<Node> s3 = s1.clone();
+        Assert.assertTrue(s3.retainAll(s2));
+        Assert.assertEquals(s3.size(), 5);
+        Assert.assertTrue(s2.containsAll(s3));
+        Assert.assertNull(s3.get("N0"));
+        Assert.assertNotNull(s3.get("N7"));
+
+        Assert.assertTrue(s3.removeAll(s2));
+        Assert.assertTrue(s3.isEmpty());
+        Assert.assertFalse(s3.removeAll(s2));
+
+        IndexedManagedElementSet<Node> s4 = new IndexedManagedElementSet<Node>(reg);
+        for (int i = 9; i >= 0; i--) {
+            s4.add(new SimpleNode("N" + i));
+        }
+        Assert.assertTrue(s4.equals(s1));
+        Assert.assertEquals(s4.hashCode(), s1.hashCode());
+        s4.remove(s4.get("N3"));
+        Assert.assertFalse(s4.equals(s1));
+        Assert.assertFalse(s4.containsAll(s1));
+        Assert.assertTrue(s1.containsAll(s4));
+    }
+
+    /**
+     * Test addAll() between sets that share a registry.
+     */
+    public void testAddAllWithRegistry() {
+        ElementRegistry reg = new ElementRegistry();
+        IndexedManagedElementSet<Node> s1 = new IndexedManagedElementSet<Node>(reg);
+        IndexedManagedElementSet<Node> s2 = new IndexedManagedElementSet<Node>(reg);
+        for (int i = 0; i < 10; i++) {
+            s1.add(new SimpleNode("N" + i));
+        }
+        for (int i = 5; i < 15; i++) {
+            s2.add(new SimpleNode("N" + i));
+        }
+        IndexedManagedElementSet<Node> s3 = new IndexedManagedElementSet<Node>(reg);
+        Assert.assertTrue(s3.addAll(s1));
+        Assert.assertTrue(s3.equals(s1));
+        Assert.assertFalse(s3.addAll(s1));
+        Assert.assertTrue(s3.addAll(s2));
+        Assert.assertEquals(s3.size(), 15);
+        for (int i = 0; i < 15; i++) {
+            Node n = s3.get("N" + i);
+            Assert.assertEquals(s3.get(s3.indexOf(n)), n);
+        }
+        s3.remove(s3.get("N0"));
+        Assert.assertEquals(s1.size(), 10);
+        Assert.assertNotNull(s1.get("N0"));
+    }
+
+    /**
+     * Test sorting, that relies on set().
+     */
+    public void testSort() {
+        IndexedManagedElementSet<Node> s = new IndexedManagedElementSet<Node>(new ElementRegistry());
+        for (int i = 9; i >= 0; i--) {
+            s.add(new SimpleNode("N" + i, 1, i, i));
+        }
+        Collections.sort(s, new Comparator<Node>() {
+            @Override
+            public int compare(Node n1, Node n2) {
+                return n1.getCPUCapacity() - n2.getCPUCapacity();
+            }
+        });
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(s.get(i).getName(), "N" + i);
+            Assert.assertEquals(s.indexOf(s.get(i)), i);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.configuration;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for PersistentConfiguration.
+ * The common tests are in {@link AbstractConfigurationTest}.
+ *
+ * @author Fabien Hermenier
+ */
+@Test(groups = "unit")
+public class TestPersistentConfiguration extends AbstractConfigurationTest {
+
+    @Override
+    protected Configuration make() {
+        return new PersistentConfiguration();
+    }
+
+    /**
+     * Test that a clone shares the registry but not the states.
+     */
+    public void testCloneIsolation() {
+        PersistentConfiguration c = (PersistentConfiguration) makeDefaultConfiguration();
+        PersistentConfiguration c2 = (PersistentConfiguration) c.clone();
+        Assert.assertSame(c2.getRegistry(), c.getRegistry());
+        VirtualMachine vm = c.getRunnings().get("VM0");
+        Node n = c.getOnlines().get("N12");
+        Assert.assertTrue(c2.setRunOn(vm, n));
+        Assert.assertEquals(c2.getLocation(vm), n);
+        Assert.assertEquals(c.getLocation(vm), c.getOnlines().get("N0"));
+        Assert.assertEquals(c.getRunnings(n).size(), 0);
+        c2.remove(vm);
+        Assert.assertTrue(c.isRunning(vm));
+        Assert.assertFalse(c2.contains(vm));
+
+        //New elements after the clone
+        VirtualMachine vm2 = new SimpleVirtualMachine("VMX", 1, 2, 3);
+        c2.addWaiting(vm2);
+        Assert.assertFalse(c.contains(vm2));
+        Assert.assertTrue(c2.isWaiting(vm2));
+    }
+
+    /**
+     * Test that the registry identifies the virtual machines by their names and stores them as is.
+     */
+    public void testResources() {
+        PersistentConfiguration c = (PersistentConfiguration) makeDefaultConfiguration();
+        ElementRegistry reg = c.getRegistry();
+        VirtualMachine vm = c.getRunnings().get("VM3");
+        int id = reg.getId(vm);
+        Assert.assertEquals(reg.getId(new SimpleVirtualMachine("VM3")), id);
+        Assert.assertEquals(vm.getCPUConsumption(), 1024);
+        vm.setCPUConsumption(512);
+        vm.setMemoryDemand(5);
+        Assert.assertSame(reg.getVirtualMachine(id), vm);
+        Assert.assertEquals(c.clone().getRunnings().get("VM3").getCPUConsumption(), 512);
+        Assert.assertEquals(reg.getId(new SimpleVirtualMachine("zob")), ElementRegistry.NO_ID);
+    }
+
+    /**
+     * Test with a large number of elements.
+     */
+    public void testGrowth() {
+        Configuration c = new PersistentConfiguration();
+        for (int i = 0; i < 100; i++) {
+            Node n = new SimpleNode("N" + i, 1, 2, 3);
+            c.addOnline(n);
+            for (int j = 0; j < 10; j++) {
+                c.setRunOn(new SimpleVirtualMachine("VM" + i + "-" + j, 1, 2, 3), n);
+            }
+        }
+        Assert.assertEquals(c.getRunnings().size(), 1000);
+        Assert.assertEquals(c.getOnlines().size(), 100);
+        for (Node n : c.getOnlines()) {
+            Assert.assertEquals(c.getRunnings(n).size(), 10);
+        }
+        Node n0 = c.getOnlines().get("N0");
+        for (VirtualMachine vm : c.getRunnings(c.getOnlines().get("N1"))) {
+            c.setRunOn(vm, n0);
+        }
+        Assert.assertEquals(c.getRunnings(n0).size(), 20);
+        Assert.assertTrue(c.remove(c.getOnlines().get("N1")));
+        Assert.assertFalse(c.remove(n0));
+        Assert.assertEquals(c.getAllNodes().size(), 99);
+    }
+    /**
+     * Test a chain of snapshots, each one being modified.
+     */
+    public void testSnapshots() {
+        Configuration c = new PersistentConfiguration();
+        for (int i = 0; i < 600; i++) {
+            c.addOnline(new SimpleNode("N" + i, 1, 2, 3));
+        }
+        Node n0 = c.getOnlines().get("N0");
+        for (int i = 0; i < 600; i++) {
+            c.setRunOn(new SimpleVirtualMachine("VM" + i, 1, 2, 3), n0);
+        }
+        Configuration[] snaps = new Configuration[600];
+        snaps[0] = c;
+        for (int i = 1; i < snaps.length; i++) {
+            snaps[i] = snaps[i - 1].clone();
+            snaps[i].setRunOn(new SimpleVirtualMachine("VM" + i), snaps[i].getOnlines().get("N" + i));
+        }
+        for (int i = 0; i < snaps.length; i++) {
+            Assert.assertEquals(snaps[i].getRunnings(n0).size(), 600 - i);
+            for (int j = 1; j < snaps.length; j++) {
+                Node expected = j <= i ? snaps[i].getOnlines().get("N" + j) : n0;
+                Assert.assertEquals(snaps[i].getLocation(new SimpleVirtualMachine("VM" + j)), expected);
+            }
+        }
+    }
+
+    /**
+     * Test the copy constructor from another implementation.
+     */
+    public void testCopyFromConfiguration() {
+        Configuration src = new SimpleConfiguration();
+        Node n1 = new SimpleNode("N1", 1, 2, 3);
+        Node n2 = new SimpleNode("N2", 1, 2, 3);
+        src.addOnline(n1);
+        src.addOffline(n2);
+        src.setRunOn(new SimpleVirtualMachine("VM1", 1, 2, 3), n1);
+        src.setSleepOn(new SimpleVirtualMachine("VM2", 1, 2, 3), n1);
+        src.addWaiting(new SimpleVirtualMachine("VM3", 1, 2, 3));
+        Configuration c = new PersistentConfiguration(src);
+        Assert.assertEquals(c, src);
+        Assert.assertEquals(src, c);
+        Assert.assertEquals(c.getRunnings().get("VM1").getMemoryConsumption(), 3);
+    }
+
+    /**
+     * Test that the modifications of the source after a clone are not visible from the clone.
+     */
+    public void testSourceModifiedAfterClone() {
+        Configuration c = makeDefaultConfiguration();
+        Configuration c2 = c.clone();
+        Configuration ref = makeDefaultConfiguration();
+        Node n0 = c.getOnlines().get("N0");
+        Node n12 = c.getOnlines().get("N12");
+        c.setRunOn(c.getRunnings().get("VM0"), n12);
+        c.setSleepOn(c.getRunnings().get("VM1"), n12);
+        c.addWaiting(c.getRunnings().get("VM2"));
+        c.setRunOn(c.getWaitings().get("VM10"), n0);
+        c.remove(c.getSleepings().get("VM15"));
+        Assert.assertTrue(c.addOffline(c.getOnlines().get("N13")));
+        Assert.assertTrue(c.remove(c.getOnlines().get("N14")));
+
+        Assert.assertEquals(c2, ref);
+        Assert.assertEquals(c2.toString(), ref.toString());
+        Assert.assertEquals(c2.getRunnings(n12).size(), 0);
+        Assert.assertEquals(c2.getRunnings(n0).size(), 1);
+        Assert.assertTrue(c2.getRunnings(n0).contains(new SimpleVirtualMachine("VM0")));
+        Assert.assertEquals(c2.getSleepings().size(), 5);
+        Assert.assertEquals(c2.getOnlines().size(), 15);
+        Assert.assertEquals(c2.getOfflines().size(), 5);
+    }
+
+    /**
+     * Test that sibling clones modifying the same pages are isolated, and that the clone
+     * of a clone does not see its later modifications.
+     */
+    public void testSiblingClones() {
+        Configuration c = new PersistentConfiguration();
+        Node n0 = new SimpleNode("N0", 1, 2, 3);
+        Node n1 = new SimpleNode("N1", 1, 2, 3);
+        Node n2 = new SimpleNode("N2", 1, 2, 3);
+        c.addOnline(n0);
+        c.addOnline(n1);
+        c.addOnline(n2);
+        for (int i = 0; i < 10; i++) {
+            c.setRunOn(new SimpleVirtualMachine("VM" + i, 1, 2, 3), n0);
+        }
+        Configuration a = c.clone();
+        Configuration b = c.clone();
+        //Neighbour identifiers, so the same pages
+        a.setRunOn(new SimpleVirtualMachine("VM3"), n1);
+        b.setRunOn(new SimpleVirtualMachine("VM4"), n2);
+        b.setSleepOn(new SimpleVirtualMachine("VM3"), n2);
+
+        Assert.assertEquals(c.getRunnings(n0).size(), 10);
+        Assert.assertEquals(a.getRunnings(n0).size(), 9);
+        Assert.assertEquals(b.getRunnings(n0).size(), 8);
+        Assert.assertEquals(a.getLocation(new SimpleVirtualMachine("VM3")), n1);
+        Assert.assertEquals(a.getLocation(new SimpleVirtualMachine("VM4")), n0);
+        Assert.assertTrue(a.isRunning(new SimpleVirtualMachine("VM3")));
+        Assert.assertTrue(b.isSleeping(new SimpleVirtualMachine("VM3")));
+        Assert.assertEquals(b.getRunnings(n2).size(), 1);
+        Assert.assertEquals(a.getRunnings(n2).size(), 0);
+
+        Configuration a2 = a.clone();
+        a.remove(new SimpleVirtualMachine("VM3"));
+        a.setRunOn(new SimpleVirtualMachine("VM5"), n1);
+        Assert.assertEquals(a2.getRunnings(n1).size(), 1);
+        Assert.assertTrue(a2.getRunnings(n1).contains(new SimpleVirtualMachine("VM3")));
+        Assert.assertEquals(a2.getRunnings(n0).size(), 9);
+        Assert.assertEquals(a.getRunnings(n1).size(), 1);
+        Assert.assertTrue(a.getRunnings(n1).contains(new SimpleVirtualMachine("VM5")));
+
+        //The lists of each configuration are still consistent
+        for (Configuration x : new Configuration[]{c, a, b, a2}) {
+            int nb = 0;
+            for (Node n : x.getOnlines()) {
+                for (VirtualMachine vm : x.getRunnings(n)) {
+                    Assert.assertEquals(x.getLocation(vm), n);
+                    nb++;
+                }
+            }
+            Assert.assertEquals(nb, x.getRunnings().size());
+        }
+    }
+
+    /**
+     * Test that the clone of a virtual machine keeps its vjob identifier.
+     */
+    public void testCloneVirtualMachine() {
+        Configuration src = new DefaultConfiguration();
+        Node n1 = new DefaultNode("N1", 1, 2, 3);
+        DefaultVirtualMachine vm1 = new DefaultVirtualMachine("VM1", 1, 2, 3);
+        vm1.updateValue(DefaultVirtualMachine.VJOB_ID, "myVJob");
+        src.addOnline(n1);
+        src.setRunOn(vm1, n1);
+        src.addWaiting(new SimpleVirtualMachine("VM2", 1, 2, 3));
+        Configuration c = new PersistentConfiguration(src);
+        VirtualMachine vm = c.getRunnings().get("VM1").clone();
+        Assert.assertEquals(vm.getVJobId(), "myVJob");
+        Assert.assertEquals(vm.getMemoryConsumption(), 3);
+        Assert.assertEquals(c.getWaitings().get("VM2").clone().getVJobId(), "0");
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.configuration;
+
+import gnu.trove.set.hash.TIntHashSet;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for SharedIntArray.
+ *
+ * @author Fabien Hermenier
+ */
+@Test(groups = {"unit"})
+public class TestSharedIntArray {
+
+    /**
+     * Test get() and set() with the default value.
+     */
+    public void testGetSet() {
+        SharedIntArray a = new SharedIntArray(-1);
+        Assert.assertEquals(a.get(0), -1);
+        Assert.assertEquals(a.get(10000), -1);
+        a.set(5, 3);
+        a.set(10000, 7);
+        Assert.assertEquals(a.get(5), 3);
+        Assert.assertEquals(a.get(10000), 7);
+        Assert.assertEquals(a.get(6), -1);
+        Assert.assertEquals(a.get(9999), -1);
+    }
+
+    /**
+     * Test that the modifications of a copy are not visible in the original and vice versa.
+     */
+    public void testCopy() {
+        SharedIntArray a = new SharedIntArray(0);
+        for (int i = 0; i < 1000; i++) {
+            a.set(i, i);
+        }
+        SharedIntArray b = a.copy();
+        SharedIntArray c = b.copy();
+        b.set(3, -3);
+        a.set(600, -600);
+        c.set(5000, 1);
+        Assert.assertEquals(a.get(3), 3);
+        Assert.assertEquals(b.get(3), -3);
+        Assert.assertEquals(c.get(3), 3);
+        Assert.assertEquals(a.get(600), -600);
+        Assert.assertEquals(b.get(600), 600);
+        Assert.assertEquals(c.get(600), 600);
+        Assert.assertEquals(a.get(5000), 0);
+        Assert.assertEquals(c.get(5000), 1);
+        for (int i = 0; i < 1000; i++) {
+            if (i != 3 && i != 600) {
+                Assert.assertEquals(a.get(i), i);
+                Assert.assertEquals(b.get(i), i);
+            }
+        }
+    }
+
+    /**
+     * Test diff() between shared copies and with a plain array.
+     */
+    public void testDiff() {
+        SharedIntArray a = new SharedIntArray(-1);
+        for (int i = 0; i < 1000; i++) {
+            a.set(i, i);
+        }
+        SharedIntArray b = a.copy();
+        b.set(3, 4);
+        b.set(2000, 1);
+        TIntHashSet res = new TIntHashSet();
+        a.diff(b, res);
+        Assert.assertEquals(res.size(), 2);
+        Assert.assertTrue(res.contains(3) && res.contains(2000));
+
+        PlainIntArray p = new PlainIntArray(-1, 10);
+        for (int i = 0; i < 1000; i++) {
+            p.set(i, i);
+        }
+        p.set(600, 0);
+        res.clear();
+        a.diff(p, res);
+        Assert.assertEquals(res.size(), 1);
+        Assert.assertTrue(res.contains(600));
+        res.clear();
+        p.diff(b, res);
+        Assert.assertEquals(res.size(), 3);
+        Assert.assertTrue(res.contains(3) && res.contains(600) && res.contains(2000));
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.configuration;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import entropy.configuration.parser.ConfigurationSerializerException;
+import entropy.configuration.parser.FileConfigurationSerializerFactory;
+import entropy.configuration.parser.SnapshotConfigurationSerializer;
+
+/**
+ * Tests for SnapshotConfiguration.
+ *
+ * @author Fabien Hermenier
+ */
+@Test(groups = "unit")
+public class TestSnapshotConfiguration {
+
+    /**
+     * Make a configuration for test purpose.
+     * VM0 to VM9 run on N0 to N9, VM15 to VM19 sleep on N5 to N9. Nodes N10 to N14 are unused,
+     * nodes -N10 to -N14 are offline and VM10 to VM14 are waiting.
+     *
+     * @return the configuration
+     */
+    private static Configuration makeConfiguration() {
+        Configuration c = new SimpleConfiguration();
+        for (int i = 0; i < 10; i++) {
+            Node n = new SimpleNode("N" + i, 2, 100 + i, 4096);
+            c.addOnline(n);
+            c.setRunOn(new SimpleVirtualMachine("VM" + i, 1, 10 + i, 1024, 20 + i, 2048), n);
+        }
+        for (int i = 0; i < 5; i++) {
+            c.addOnline(new SimpleNode("N1" + i, 1, 100, 4096));
+            c.addOffline(new SimpleNode("-N1" + i, 1, 100, 4096));
+        }
+        for (int i = 10; i < 15; i++) {
+            c.addWaiting(new SimpleVirtualMachine("VM" + i, 1, 0, 1024));
+        }
+        for (int i = 15; i < 20; i++) {
+            c.setSleepOn(new SimpleVirtualMachine("VM" + i, 1, 0, 512), c.getOnlines().get("N" + (i - 10)));
+        }
+        return c;
+    }
+
+    private static SnapshotConfiguration snapshot(Configuration c) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SnapshotConfiguration.write(c, out);
+        return new SnapshotConfiguration(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    /**
+     * Check the states, the locations and the resources are restored.
+     *
+     * @throws Exception if an error occurred
+     */
+    public void testRoundTrip() throws Exception {
+        Configuration c = makeConfiguration();
+        SnapshotConfiguration s = snapshot(c);
+        Assert.assertEquals(s, c);
+        Assert.assertEquals(c, s);
+        Assert.assertEquals(s.getAllNodes().size(), 20);
+        Assert.assertEquals(s.getAllVirtualMachines().size(), 20);
+        Assert.assertEquals(s.getRunnings().size(), 10);
+        Assert.assertEquals(s.getSleepings().size(), 5);
+        Assert.assertEquals(s.getRunnings(c.getOnlines()).size(), 10);
+
+        VirtualMachine vm = s.getRunnings().get("VM3");
+        Assert.assertEquals(vm.getCPUConsumption(), 13);
+        Assert.assertEquals(vm.getMemoryConsumption(), 1024);
+        Assert.assertEquals(vm.getCPUDemand(), 23);
+        Assert.assertEquals(vm.getMemoryDemand(), 2048);
+        Node n = s.getOnlines().get("N3");
+        Assert.assertEquals(n.getNbOfCPUs(), 2);
+        Assert.assertEquals(n.getCPUCapacity(), 103);
+        Assert.assertEquals(n.getMemoryCapacity(), 4096);
+        Assert.assertFalse(s.isCopied());
+    }
+
+    /**
+     * Test the lookups of the elements.
+     *
+     * @throws Exception if an error occurred
+     */
+    public void testLookups() throws Exception {
+        SnapshotConfiguration s = snapshot(makeConfiguration());
+        VirtualMachine vm7 = new SimpleVirtualMachine("VM7", 1, 0, 0);
+        VirtualMachine vm17 = new SimpleVirtualMachine("VM17", 1, 0, 0);
+        VirtualMachine vm12 = new SimpleVirtualMachine("VM12", 1, 0, 0);
+        Node n7 = new SimpleNode("N7", 1, 1, 1);
+        Assert.assertTrue(s.isRunning(vm7));
+        Assert.assertTrue(s.isSleeping(vm17));
+        Assert.assertTrue(s.isWaiting(vm12));
+        Assert.assertEquals(s.getRunningLocation(vm7), n7);
+        Assert.assertEquals(s.getSleepingLocation(vm17), n7);
+        Assert.assertNull(s.getRunningLocation(vm17));
+        Assert.assertNull(s.getLocation(vm12));
+        Assert.assertTrue(s.isOnline(new SimpleNode("N12", 1, 1, 1)));
+        Assert.assertTrue(s.isOffline(new SimpleNode("-N12", 1, 1, 1)));
+
+        Assert.assertFalse(s.contains(new SimpleVirtualMachine("VM20", 1, 0, 0)));
+        Assert.assertFalse(s.contains(new SimpleNode("N20", 1, 1, 1)));
+        Assert.assertNull(s.getRunnings(new SimpleNode("N20", 1, 1, 1)));
+        Assert.assertEquals(s.getSleepings(new SimpleNode("N10", 1, 1, 1)).size(), 0);
+    }
+
+    /**
+     * Check a modification copies the snapshot and let the clones unchanged.
+     *
+     * @throws Exception if an error occurred
+     */
+    public void testCopyOnWrite() throws Exception {
+        Configuration c = makeConfiguration();
+        SnapshotConfiguration s = snapshot(c);
+        SnapshotConfiguration cl = (SnapshotConfiguration) s.clone();
+        Node n = s.getOnlines().get("N12");
+        VirtualMachine vm = s.getWaitings().get("VM12");
+        Assert.assertTrue(s.setRunOn(vm, n));
+        Assert.assertTrue(s.isCopied());
+        Assert.assertTrue(s.isRunning(vm));
+        Assert.assertEquals(s.getRunningLocation(vm), n);
+        Assert.assertFalse(s.equals(c));
+
+        Assert.assertFalse(cl.isCopied());
+        Assert.assertTrue(cl.isWaiting(vm));
+        Assert.assertEquals(cl, c);
+        Assert.assertTrue(s.clone() instanceof SimpleConfiguration);
+    }
+
+    /**
+     * Test an empty configuration.
+     *
+     * @throws Exception if an error occurred
+     */
+    public void testEmpty() throws Exception {
+        SnapshotConfiguration s = snapshot(new SimpleConfiguration());
+        Assert.assertEquals(s.getAllNodes().size(), 0);
+        Assert.assertEquals(s.getAllVirtualMachines().size(), 0);
+        Assert.assertFalse(s.contains(new SimpleNode("N1", 1, 1, 1)));
+    }
+
+    /**
+     * Test the reading of a buffer that is not a snapshot.
+     */
+    @Test(expectedExceptions = {IllegalArgumentException.class})
+    public void testBadMagic() {
+        new SnapshotConfiguration(ByteBuffer.wrap(new byte[64]));
+    }
+
+    /**
+     * Test the writing and the mapping of a file through the factory.
+     *
+     * @throws Exception if an error occurred
+     */
+    public void testFile() throws Exception {
+        File f = File.createTempFile("cfg", FileConfigurationSerializerFactory.SNAPSHOT_EXTENSION);
+        f.deleteOnExit();
+        Configuration c = makeConfiguration();
+        SnapshotConfigurationSerializer.getInstance().write(c, f.getPath());
+        Configuration s = FileConfigurationSerializerFactory.getInstance().read(f.getPath());
+        Assert.assertTrue(s instanceof SnapshotConfiguration);
+        Assert.assertEquals(s, c);
+    }
+
+    /**
+     * Test the reading of a truncated file.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test(expectedExceptions = {ConfigurationSerializerException.class})
+    public void testTruncated() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SnapshotConfiguration.write(makeConfiguration(), out);
+        byte[] b = out.toByteArray();
+        SnapshotConfigurationSerializer.getInstance().unSerialize(new ByteArrayInputStream(b, 0, b.length / 2));
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.configuration.parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import entropy.configuration.Configuration;
+import entropy.configuration.DefaultConfiguration;
+import entropy.configuration.DefaultNode;
+import entropy.configuration.DefaultVirtualMachine;
+import entropy.configuration.DenseConfiguration;
+import entropy.configuration.Node;
+import entropy.configuration.VirtualMachine;
+
+/**
+ * Unit tests for {@link MappedPlainTextConfigurationParser}.
+ *
+ * @author Fabien Hermenier
+ */
+@Test(groups = {"unit"})
+public class TestMappedPlainTextConfigurationParser {
+
+    private static ByteBuffer buffer(String s) {
+        byte[] b = new byte[s.length()];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) s.charAt(i);
+        }
+        return ByteBuffer.wrap(b);
+    }
+
+    /**
+     * Read a file written by the plain text serializer.
+     */
+    public void testReadMapped() throws IOException, ConfigurationSerializerException {
+        Configuration cfg = new DefaultConfiguration();
+        for (int i = 1; i <= 10; i++) {
+            Node n = new DefaultNode("N" + i, i, i + 1, i + 2);
+            if (i % 3 == 0) {
+                cfg.addOffline(n);
+            } else {
+                cfg.addOnline(n);
+            }
+        }
+        Random rnd = new Random();
+        for (int i = 1; i <= 50; i++) {
+            VirtualMachine vm = new DefaultVirtualMachine("VM" + i, i, i + 1, i + 2);
+            vm.setCPUDemand(i + 3);
+            Node n = cfg.getOnlines().get(rnd.nextInt(cfg.getOnlines().size()));
+            if (i % 3 == 0) {
+                cfg.setSleepOn(vm, n);
+            } else if (i % 5 == 0) {
+                cfg.addWaiting(vm);
+            } else {
+                cfg.setRunOn(vm, n);
+            }
+        }
+        File tmpF = File.createTempFile("mapped", ".txt");
+        try {
+            PlainTextConfigurationSerializer.getInstance().write(cfg, tmpF.getAbsolutePath());
+            DenseConfiguration r = PlainTextConfigurationSerializer.getInstance().readMapped(tmpF.getAbsolutePath());
+            Assert.assertEquals(r, cfg);
+            for (VirtualMachine vm : cfg.getAllVirtualMachines()) {
+                VirtualMachine v2 = r.getAllVirtualMachines().get(vm.getName());
+                Assert.assertEquals(v2.getNbOfCPUs(), vm.getNbOfCPUs());
+                Assert.assertEquals(v2.getCPUConsumption(), vm.getCPUConsumption());
+                Assert.assertEquals(v2.getCPUDemand(), vm.getCPUDemand());
+                Assert.assertEquals(v2.getMemoryConsumption(), vm.getMemoryConsumption());
+                Assert.assertEquals(v2.getMemoryDemand(), vm.getMemoryDemand());
+            }
+            for (Node n : cfg.getAllNodes()) {
+                Node n2 = r.getAllNodes().get(n.getName());
+                Assert.assertEquals(n2.getNbOfCPUs(), n.getNbOfCPUs());
+                Assert.assertEquals(n2.getCPUCapacity(), n.getCPUCapacity());
+                Assert.assertEquals(n2.getMemoryCapacity(), n.getMemoryCapacity());
+            }
+        } finally {
+            tmpF.delete();
+        }
+    }
+
+    /**
+     * Test the parsing of a buffer with Windows line endings, demands and a plan after the configuration.
+     */
+    public void testParse() throws ConfigurationSerializerException {
+        String in = "#list of nodes\r\nN1 2 200 1024\r\nN2 1 100 512\r\nN3 1 100 512\r\n"
+                + "#list of VMs\r\nVM1 1 10->30 128\r\nVM2 2 20 256->512 3\r\nVM3 1 5 64\r\n\r\n"
+                + "#initial configuration\r\nN1 VM1 (VM2)\r\nN2\r\n(N3)\r\nFARM VM3\r\n"
+                + "#Reconfiguration plan\r\nfoo\r\n";
+        DenseConfiguration cfg = new MappedPlainTextConfigurationParser().parse(buffer(in));
+        Assert.assertEquals(cfg.getOnlines().size(), 2);
+        Assert.assertEquals(cfg.getOfflines().size(), 1);
+        Assert.assertTrue(cfg.getOfflines().get("N3") != null);
+        Node n1 = cfg.getOnlines().get("N1");
+        Assert.assertEquals(n1.getCPUCapacity(), 200);
+        VirtualMachine vm1 = cfg.getRunnings().get("VM1");
+        Assert.assertEquals(cfg.getRunningLocation(vm1), n1);
+        Assert.assertEquals(vm1.getCPUConsumption(), 10);
+        Assert.assertEquals(vm1.getCPUDemand(), 30);
+        Assert.assertEquals(vm1.getMemoryDemand(), 128);
+        VirtualMachine vm2 = cfg.getSleepings().get("VM2");
+        Assert.assertEquals(cfg.getSleepingLocation(vm2), n1);
+        Assert.assertEquals(vm2.getMemoryConsumption(), 256);
+        Assert.assertEquals(vm2.getMemoryDemand(), 512);
+        Assert.assertEquals(cfg.getWaitings().size(), 1);
+        Assert.assertTrue(cfg.getWaitings().get("VM3") != null);
+    }
+
+    /**
+     * Test the parsing of a placement that refers to an unknown virtual machine.
+     */
+    @Test(expectedExceptions = {ConfigurationSerializerException.class})
+    public void testUnknownVirtualMachine() throws ConfigurationSerializerException {
+        String in = "#list of nodes\nN1 2 200 1024\n#list of VMs\nVM1 1 10 128\n#initial configuration\nN1 VM1 VM2\n";
+        new MappedPlainTextConfigurationParser().parse(buffer(in));
+    }
+
+    /**
+     * Test the parsing of a bad content.
+     */
+    @Test(expectedExceptions = {ConfigurationSerializerException.class})
+    public void testBadContent() throws ConfigurationSerializerException {
+        new MappedPlainTextConfigurationParser().parse(buffer("toto\n"));
+    }
+
+    /**
+     * Test the parsing of an incorrect number.
+     */
+    @Test(expectedExceptions = {ConfigurationSerializerException.class})
+    public void testBadNumber() throws ConfigurationSerializerException {
+        new MappedPlainTextConfigurationParser().parse(buffer("#list of VMs\nVM1 1 1O 128\n"));
+    }
+
+    /**
+     * Test the decoding of names that are not ASCII: the names must be the ones
+     * read by the plain text parser, whatever the default charset.
+     */
+    public void testNonAsciiNames() throws IOException, ConfigurationSerializerException {
+        Configuration cfg = new DefaultConfiguration();
+        Node n = new DefaultNode("N\u00e9\u4e2d", 1, 100, 512);
+        cfg.addOnline(n);
+        cfg.setRunOn(new DefaultVirtualMachine("VM\u00e9\u4e2d", 1, 10, 128), n);
+        File tmpF = File.createTempFile("mapped", ".txt");
+        try {
+            PlainTextConfigurationSerializer.getInstance().write(cfg, tmpF.getAbsolutePath());
+            Configuration expected = PlainTextConfigurationSerializer.getInstance().read(tmpF.getAbsolutePath());
+            DenseConfiguration r = PlainTextConfigurationSerializer.getInstance().readMapped(tmpF.getAbsolutePath());
+            Assert.assertEquals(r.getAllNodes().get(0).getName(), expected.getAllNodes().get(0).getName());
+            Assert.assertEquals(r.getRunnings().get(0).getName(), expected.getRunnings().get(0).getName());
+        } finally {
+            tmpF.delete();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.configuration.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import entropy.configuration.Configuration;
+import entropy.configuration.DefaultConfiguration;
+import entropy.configuration.DefaultNode;
+import entropy.configuration.DefaultVirtualMachine;
+import entropy.configuration.Node;
+
+/**
+ * Unit tests for {@link StreamedProtobufConfigurationSerializer}.
+ *
+ * @author Fabien Hermenier
+ */
+@Test(groups = {"unit"})
+public class TestStreamedProtobufConfigurationSerializer {
+
+    private static Configuration makeConfiguration(int nbNodes, int nbVMs) {
+        Configuration cfg = new DefaultConfiguration();
+        for (int i = 1; i <= nbNodes; i++) {
+            DefaultNode n = new DefaultNode("N" + i, i, i + 1, i + 2);
+            if (i % 3 == 0) {
+                cfg.addOffline(n);
+            } else {
+                cfg.addOnline(n);
+            }
+        }
+        Random rnd = new Random();
+        for (int i = 1; i <= nbVMs; i++) {
+            DefaultVirtualMachine vm = new DefaultVirtualMachine("VM" + i, i, i + 1, i + 2);
+            vm.setCPUNeed(i + 3);
+            Node n = cfg.getOnlines().get(rnd.nextInt(cfg.getOnlines().size()));
+            if (i % 3 == 0) {
+                cfg.setSleepOn(vm, n);
+            } else if (i % 5 == 0) {
+                cfg.addWaiting(vm);
+            } else {
+                cfg.setRunOn(vm, n);
+            }
+        }
+        return cfg;
+    }
+
+    /**
+     * Test serialization/unserialization through the factory.
+     */
+    public void test() throws IOException, ConfigurationSerializerException {
+        Configuration cfg = makeConfiguration(10, 20);
+        File tmpF = File.createTempFile("out", FileConfigurationSerializerFactory.STREAMED_PROTOBUF_EXTENSION);
+        try {
+            FileConfigurationSerializer s = FileConfigurationSerializerFactory.getInstance().getSerializer(tmpF.getName());
+            Assert.assertEquals(s, StreamedProtobufConfigurationSerializer.getInstance());
+            s.write(cfg, tmpF.getAbsolutePath());
+            Assert.assertEquals(s.read(tmpF.getAbsolutePath()), cfg);
+            Assert.assertEquals(StreamedProtobufConfigurationSerializer.getInstance().read(tmpF.getAbsolutePath(), 2), cfg);
+        } finally {
+            tmpF.delete();
+        }
+    }
+
+    /**
+     * Test the parallel parsing with several chunks of online nodes.
+     */
+    public void testParallel() throws IOException, ConfigurationSerializerException {
+        Configuration cfg = makeConfiguration(StreamedProtobufConfigurationSerializer.CHUNK_SIZE * 5, 5000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamedProtobufConfigurationSerializer s = StreamedProtobufConfigurationSerializer.getInstance();
+        s.serialize(cfg, out);
+        Configuration r = s.unSerialize(new ByteArrayInputStream(out.toByteArray()), 3);
+        Assert.assertEquals(r, cfg);
+        for (Node n : cfg.getOnlines()) {
+            Assert.assertEquals(r.getRunnings(n), cfg.getRunnings(n));
+            Assert.assertEquals(r.getSleepings(n), cfg.getSleepings(n));
+        }
+    }
+
+    /**
+     * Test the parsing of a truncated stream.
+     */
+    @Test(expectedExceptions = {ConfigurationSerializerException.class})
+    public void testTruncated() throws IOException, ConfigurationSerializerException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamedProtobufConfigurationSerializer s = StreamedProtobufConfigurationSerializer.getInstance();
+        s.serialize(makeConfiguration(10, 20), out);
+        byte[] b = out.toByteArray();
+        s.unSerialize(new ByteArrayInputStream(Arrays.copyOf(b, b.length / 2)));
+    }
+}
@@ -20,7 +20,9 @@ package entropy.controlLoop;
 
 
 import java.io.File;
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.Semaphore;
 
 import org.testng.Assert;
 import org.testng.annotations.Test;
@@ -28,11 +30,23 @@ import org.testng.annotations.Test;
 import entropy.TestHelper;
 import entropy.configuration.Configuration;
 import entropy.configuration.Configurations;
+import entropy.configuration.DefaultConfiguration;
+import entropy.configuration.DefaultNode;
+import entropy.configuration.DefaultVirtualMachine;
+import entropy.configuration.Node;
+import entropy.configuration.VirtualMachine;
 import entropy.execution.TimedReconfigurationExecuter;
+import entropy.execution.driver.Driver;
+import entropy.execution.driver.DriverException;
+import entropy.execution.driver.DriverFactory;
+import entropy.execution.driver.DriverInstantiationException;
 import entropy.execution.driver.MockDriverFactory;
 import entropy.monitoring.MockConfigurationAdapter;
 import entropy.monitoring.Monitor;
+import entropy.plan.MockPlannerModule;
 import entropy.plan.action.Action;
+import entropy.plan.action.Migration;
+import entropy.plan.action.Run;
 import entropy.plan.durationEvaluator.DurationEvaluator;
 import entropy.plan.durationEvaluator.MockDurationEvaluator;
 import entropy.vjob.builder.MockVirtualMachineBuilder;
@@ -104,4 +118,191 @@ public class TestCustomizableControlLoop {
         Assert.assertEquals(Configurations.currentlyOverloadedNodes(src).size(), 0);
     }
 
+
+    /**
+     * A factory of drivers that are terminated by the test.
+     */
+    private static class GatedDriverFactory extends DriverFactory {
+
+        /**
+         * A permit per driver in progress.
+         */
+        private final Semaphore arrived = new Semaphore(0);
+
+        /**
+         * A permit per driver allowed to terminate.
+         */
+        private final Semaphore gate = new Semaphore(0);
+
+        public GatedDriverFactory() {
+            super(null);
+        }
+
+        /**
+         * Wait for the beginning of the execution of some drivers.
+         *
+         * @param nb the number of drivers
+         */
+        public void awaitStarted(int nb) {
+            arrived.acquireUninterruptibly(nb);
+        }
+
+        /**
+         * Allow some drivers to terminate.
+         *
+         * @param nb the number of drivers
+         */
+        public void terminate(int nb) {
+            gate.release(nb);
+        }
+
+        @Override
+        public Driver transform(final Action a) throws DriverInstantiationException {
+            return new Driver(a) {
+                @Override
+                public void execute() throws DriverException {
+                    arrived.release();
+                    gate.acquireUninterruptibly();
+                }
+
+                @Override
+                public String toString() {
+                    return a.toString();
+                }
+            };
+        }
+    }
+
+    /**
+     * Make a loop without vjobs that uses a mock plan module.
+     *
+     * @param adapter the adapter that provides the configuration
+     * @param factory the factory of drivers
+     * @param planner the plan module
+     * @return the loop
+     * @throws IOException if the folder of the queue cannot be created
+     */
+    private static CustomizableControlLoop makeLoop(MockConfigurationAdapter adapter, DriverFactory factory, MockPlannerModule planner) throws IOException {
+        File dir = File.createTempFile("queue", "");
+        Assert.assertTrue(dir.delete());
+        dir.deleteOnExit();
+        MockVirtualMachineBuilder vmBuilder = new MockVirtualMachineBuilder();
+        VJobBuilder b = new VJobBuilder(new VJobElementBuilder(vmBuilder), null);
+        VJobsPool queue = new FCFSPersistentQueue(b, dir);
+        CustomizableControlLoop loop = new CustomizableControlLoop(new Monitor(adapter), queue, b,
+                planner.getDurationEvaluator(), new TimedReconfigurationExecuter(factory));
+        loop.setPlannerModule(planner);
+        return loop;
+    }
+
+    /**
+     * Test the pipelined mode. An iteration plans from the configuration projected
+     * after the running plan, but not after a completed one.
+     *
+     * @throws IOException if the loop cannot be made
+     */
+    public void testPipelinedRunLoop() throws IOException {
+        DefaultConfiguration src = new DefaultConfiguration();
+        VirtualMachine vm1 = new DefaultVirtualMachine("VM1", 1, 1, 1);
+        VirtualMachine vm2 = new DefaultVirtualMachine("VM2", 1, 1, 1);
+        Node n1 = new DefaultNode("N1", 2, 2, 2);
+        Node n2 = new DefaultNode("N2", 2, 2, 2);
+        src.addOnline(n1);
+        src.addOnline(n2);
+        src.setRunOn(vm1, n1);
+        src.setRunOn(vm2, n1);
+        MockConfigurationAdapter adapter = new MockConfigurationAdapter();
+        adapter.useConfiguration(src);
+        GatedDriverFactory factory = new GatedDriverFactory();
+        MockPlannerModule planner = new MockPlannerModule(new MockDurationEvaluator(1, 2, 3, 4, 5, 6, 7, 8, 9));
+        CustomizableControlLoop loop = makeLoop(adapter, factory, planner);
+        loop.setPipelined(true);
+        try {
+            planner.enqueue(new Migration(vm1, n1, n2, 0, 3));
+            loop.runLoop();
+            factory.awaitStarted(1);
+
+            //The first plan is running, nothing to submit
+            loop.runLoop();
+
+            //The hand-off of the second plan waits for the end of the first one
+            factory.terminate(1);
+            planner.enqueue(new Migration(vm2, n1, n2, 0, 3));
+            loop.runLoop();
+            factory.awaitStarted(1);
+
+            //The second plan is running, the first one is completed
+            loop.runLoop();
+            factory.terminate(1);
+
+            List<Configuration> srcs = planner.getSources();
+            Assert.assertEquals(srcs.size(), 4);
+            Assert.assertEquals(srcs.get(0).getLocation(vm1), n1);
+            Assert.assertEquals(srcs.get(1).getLocation(vm1), n2);
+            Assert.assertEquals(srcs.get(1).getLocation(vm2), n1);
+            //The mock drivers do not update the monitored configuration
+            Assert.assertEquals(srcs.get(3).getLocation(vm1), n1);
+            Assert.assertEquals(srcs.get(3).getLocation(vm2), n2);
+        } finally {
+            loop.destroy();
+        }
+    }
+
+    /**
+     * Test the preemptive mode. A plan that will not fix a new violation is cancelled,
+     * and the next iteration plans from the configuration projected after its started actions.
+     *
+     * @throws Exception if an error occurred
+     */
+    public void testPreemptiveRunLoop() throws Exception {
+        DefaultConfiguration src = new DefaultConfiguration();
+        VirtualMachine vm1 = new DefaultVirtualMachine("VM1", 1, 1, 1);
+        VirtualMachine vm2 = new DefaultVirtualMachine("VM2", 1, 1, 1);
+        VirtualMachine vm3 = new DefaultVirtualMachine("VM3", 1, 1, 1);
+        Node n1 = new DefaultNode("N1", 1, 1, 1);
+        Node n2 = new DefaultNode("N2", 1, 1, 1);
+        src.addOnline(n1);
+        src.addOnline(n2);
+        src.setRunOn(vm1, n1);
+        src.addWaiting(vm2);
+        MockConfigurationAdapter adapter = new MockConfigurationAdapter();
+        adapter.useConfiguration(src);
+        GatedDriverFactory factory = new GatedDriverFactory();
+        MockPlannerModule planner = new MockPlannerModule(new MockDurationEvaluator(1, 2, 3, 4, 5, 6, 7, 8, 9));
+        final CustomizableControlLoop loop = makeLoop(adapter, factory, planner);
+        loop.setPreemptive(true);
+        try {
+            //The run of VM2 waits for the migration of VM1
+            planner.enqueue(new Migration(vm1, n1, n2, 0, 3), new Run(vm2, n1, 3, 5));
+            Thread t = new Thread() {
+                @Override
+                public void run() {
+                    loop.runLoop();
+                }
+            };
+            t.start();
+            factory.awaitStarted(1);
+
+            //A new VM is waiting. The next refresh cancels the plan while the migration is in progress
+            DefaultConfiguration next = new DefaultConfiguration(src);
+            next.addWaiting(vm3);
+            adapter.useConfiguration(next);
+            t.join();
+
+            loop.runLoop();
+            loop.runLoop();
+            factory.terminate(1);
+
+            List<Configuration> srcs = planner.getSources();
+            Assert.assertEquals(srcs.size(), 3);
+            Assert.assertEquals(srcs.get(1).getLocation(vm1), n2);
+            Assert.assertTrue(srcs.get(1).isWaiting(vm2));
+            Assert.assertTrue(srcs.get(1).isWaiting(vm3));
+            //The started actions are only considered by the iteration that follows the cancellation
+            Assert.assertEquals(srcs.get(2).getLocation(vm1), n1);
+            Assert.assertTrue(srcs.get(2).isWaiting(vm3));
+        } finally {
+            loop.destroy();
+        }
+    }
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.controlLoop;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for EventQueue.
+ *
+ * @author Fabien Hermenier
+ */
+@Test(groups = {"unit"})
+public class TestEventQueue {
+
+    private static final Set<LoopEvent> TRIGGERS = EnumSet.of(LoopEvent.VIOLATION, LoopEvent.VJOBS_CHANGED);
+
+    /**
+     * Test the coalescing of the pending events.
+     *
+     * @throws InterruptedException if the test is interrupted
+     */
+    public void testCoalescing() throws InterruptedException {
+        EventQueue q = new EventQueue();
+        q.post(LoopEvent.CONFIGURATION_CHANGED);
+        q.post(LoopEvent.CONFIGURATION_CHANGED);
+        q.post(LoopEvent.VIOLATION);
+        Assert.assertEquals(q.getNbPosted(), 3);
+        Set<LoopEvent> evts = q.await(TRIGGERS, 5000, 0);
+        Assert.assertEquals(evts, EnumSet.of(LoopEvent.CONFIGURATION_CHANGED, LoopEvent.VIOLATION));
+        //The events were consumed
+        Assert.assertTrue(q.await(TRIGGERS, 10, 0).isEmpty());
+    }
+
+    /**
+     * Test that non-triggering events do not end the waiting.
+     *
+     * @throws InterruptedException if the test is interrupted
+     */
+    public void testTimeout() throws InterruptedException {
+        EventQueue q = new EventQueue();
+        q.post(LoopEvent.PLAN_COMPLETED);
+        long st = System.currentTimeMillis();
+        Set<LoopEvent> evts = q.await(TRIGGERS, 200, 0);
+        Assert.assertTrue(System.currentTimeMillis() - st >= 190);
+        Assert.assertEquals(evts, EnumSet.of(LoopEvent.PLAN_COMPLETED));
+    }
+
+    /**
+     * Test the wake up by an event posted by another thread, and the debouncing.
+     *
+     * @throws InterruptedException if the test is interrupted
+     */
+    public void testWakeUpAndDebounce() throws InterruptedException {
+        final EventQueue q = new EventQueue();
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                    q.post(LoopEvent.VJOBS_CHANGED);
+                    Thread.sleep(100);
+                    q.post(LoopEvent.VIOLATION);
+                } catch (InterruptedException e) {
+                    Assert.fail(e.getMessage(), e);
+                }
+            }
+        };
+        t.start();
+        long st = System.currentTimeMillis();
+        Set<LoopEvent> evts = q.await(TRIGGERS, 10000, 500);
+        long d = System.currentTimeMillis() - st;
+        t.join();
+        Assert.assertTrue(d < 5000, "Not woken up: " + d);
+        Assert.assertEquals(evts, EnumSet.of(LoopEvent.VJOBS_CHANGED, LoopEvent.VIOLATION));
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.controlLoop;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import entropy.configuration.Configuration;
+import entropy.configuration.Node;
+import entropy.configuration.SimpleConfiguration;
+import entropy.configuration.SimpleNode;
+import entropy.configuration.SimpleVirtualMachine;
+import entropy.configuration.VirtualMachine;
+import entropy.plan.DefaultTimedReconfigurationPlan;
+import entropy.plan.TimedReconfigurationPlan;
+import entropy.plan.action.Migration;
+import entropy.plan.action.Shutdown;
+
+/**
+ * Unit tests for Journal and JournalReader.
+ *
+ * @author Fabien Hermenier
+ */
+@Test(groups = {"unit"})
+public class TestJournal {
+
+    private static File makeDir() throws Exception {
+        File d = File.createTempFile("journal", "");
+        Assert.assertTrue(d.delete());
+        return d;
+    }
+
+    private static void delete(File d) {
+        File[] fs = d.listFiles();
+        if (fs != null) {
+            for (File f : fs) {
+                f.delete();
+            }
+        }
+        d.delete();
+    }
+
+    /**
+     * Make a sequence of configurations where the virtual machines move,
+     * change their state and their resources, and where elements appear and disappear.
+     *
+     * @return the configurations
+     */
+    private static List<Configuration> makeConfigurations() {
+        List<Configuration> cfgs = new ArrayList<Configuration>();
+        Configuration cfg = new SimpleConfiguration();
+        Node n1 = new SimpleNode("N1", 2, 200, 2048);
+        Node n2 = new SimpleNode("N2", 2, 200, 2048);
+        Node n3 = new SimpleNode("N3", 1, 100, 1024);
+        cfg.addOnline(n1);
+        cfg.addOnline(n2);
+        cfg.addOffline(n3);
+        VirtualMachine vm1 = new SimpleVirtualMachine("VM1", 1, 20, 512, 30, 512);
+        VirtualMachine vm2 = new SimpleVirtualMachine("VM2", 1, 40, 256, 40, 256);
+        VirtualMachine vm3 = new SimpleVirtualMachine("VM3", 1, 10, 128, 10, 128);
+        cfg.setRunOn(vm1, n1);
+        cfg.setRunOn(vm2, n1);
+        cfg.setSleepOn(vm3, n2);
+        cfgs.add(cfg.clone());
+
+        for (int i = 0; i < 12; i++) {
+            cfg.setRunOn(vm1, i % 2 == 0 ? n2 : n1);
+            vm2.setCPUConsumption(40 + i);
+            cfgs.add(cfg.clone());
+        }
+
+        cfg.addOnline(n3);
+        cfg.setRunOn(vm3, n3);
+        cfg.addWaiting(vm2);
+        cfgs.add(cfg.clone());
+
+        cfg.remove(vm2);
+        cfg.setRunOn(vm1, n3);
+        cfg.addOffline(n1);
+        cfg.setRunOn(new SimpleVirtualMachine("VM4", 1, 10, 128), n2);
+        cfgs.add(cfg.clone());
+
+        cfg.remove(n1);
+        n2.setCPUCapacity(400);
+        cfgs.add(cfg.clone());
+        return cfgs;
+    }
+
+    /**
+     * Journal a sequence of configurations with frequent snapshots and small segments,
+     * then check each iteration is rebuilt.
+     *
+     * @throws Exception if an error occurred
+     */
+    public void testConfigurations() throws Exception {
+        File d = makeDir();
+        try {
+            List<Configuration> cfgs = makeConfigurations();
+            Journal j = new Journal(d.getPath(), cfgs.size(), 4, 256);
+            for (int i = 0; i < cfgs.size(); i++) {
+                Assert.assertTrue(j.append(i, new Date(), cfgs.get(i)));
+            }
+            j.close();
+            Assert.assertEquals(j.getNbDropped(), 0);
+            Assert.assertFalse(j.append(cfgs.size(), new Date(), cfgs.get(0)));
+            Assert.assertEquals(j.getNbDropped(), 1);
+
+            JournalReader r = new JournalReader(d.getPath());
+            Assert.assertTrue(r.getNbSegments() > 1);
+            Assert.assertEquals(r.getIterations().size(), cfgs.size());
+            for (int i = 0; i < cfgs.size(); i++) {
+                Assert.assertEquals(r.getConfiguration(i), cfgs.get(i), "Iteration " + i);
+            }
+            Assert.assertEquals(r.getConfiguration(cfgs.size() + 10), cfgs.get(cfgs.size() - 1));
+            Assert.assertNull(r.getConfiguration(-1));
+        } finally {
+            delete(d);
+        }
+    }
+
+    /**
+     * Test a journal reopened after a first use: the segments are appended.
+     *
+     * @throws Exception if an error occurred
+     */
+    public void testReopen() throws Exception {
+        File d = makeDir();
+        try {
+            List<Configuration> cfgs = makeConfigurations();
+            Journal j = new Journal(d.getPath());
+            j.append(0, new Date(), cfgs.get(0));
+            j.close();
+            j = new Journal(d.getPath());
+            j.append(1, new Date(), cfgs.get(1));
+            j.close();
+            JournalReader r = new JournalReader(d.getPath());
+            Assert.assertEquals(r.getNbSegments(), 2);
+            Assert.assertEquals(r.getConfiguration(0), cfgs.get(0));
+            Assert.assertEquals(r.getConfiguration(1), cfgs.get(1));
+        } finally {
+            delete(d);
+        }
+    }
+
+    /**
+     * Journal a plan and rebuild it.
+     *
+     * @throws Exception if an error occurred
+     */
+    public void testPlan() throws Exception {
+        File d = makeDir();
+        try {
+            Configuration cfg = new SimpleConfiguration();
+            Node n1 = new SimpleNode("N1", 1, 100, 1024);
+            Node n2 = new SimpleNode("N2", 1, 100, 1024);
+            cfg.addOnline(n1);
+            cfg.addOnline(n2);
+            VirtualMachine vm1 = new SimpleVirtualMachine("VM1", 1, 20, 512);
+            cfg.setRunOn(vm1, n1);
+            TimedReconfigurationPlan p = new DefaultTimedReconfigurationPlan(cfg);
+            Assert.assertTrue(p.add(new Migration(vm1, n1, n2, 0, 5)));
+            Assert.assertTrue(p.add(new Shutdown(n1, 5, 8)));
+
+            Journal j = new Journal(d.getPath());
+            j.append(0, new Date(), cfg);
+            j.append(3, new Date(), cfg);
+            j.append(3, new Date(), p);
+            j.close();
+
+            JournalReader r = new JournalReader(d.getPath());
+            Assert.assertEquals(r.getPlan(3), p);
+            Assert.assertNull(r.getPlan(0));
+            Assert.assertEquals(r.getConfiguration(3), cfg);
+        } finally {
+            delete(d);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package entropy.controlLoop;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for StageStatistics.
+ *
+ * @author Fabien Hermenier
+ */
+@Test(groups = {"unit"})
+public class TestStageStatistics {
+
+    /**
+     * Test the aggregation of the durations.
+     */
+    public void testRecord() {
+        StageStatistics st = new StageStatistics("planning");
+        Assert.assertEquals(st.getAverage(), 0.0);
+        st.record(10);
+        st.record(30);
+        st.record(20);
+        Assert.assertEquals(st.getNbSamples(), 3);
+        Assert.assertEquals(st.getLast(), 20);
+        Assert.assertEquals(st.getMax(), 30);
+        Assert.assertEquals(st.getAverage(), 20.0);
+        Assert.assertTrue(st.toString().startsWith("planning: 3 executions"));
+    }
+}
@@ -100,4 +100,42 @@ public class TestTimedExecutionGraph {
         Assert.assertNotNull(g.toEventAgenda());
     }
 
+    /**
+     * Test the dependencies of a node that receives and liberates many virtual machines,
+     * and the update of the dependencies after an insertion.
+     */
+    public void testHubDependencies() {
+        TimedExecutionGraph g = new TimedExecutionGraph();
+        DefaultNode hub = new DefaultNode("N0", 1000, 1000, 1000);
+        DefaultNode other = new DefaultNode("N1", 1000, 1000, 1000);
+        Migration[] outs = new Migration[10];
+        Migration[] ins = new Migration[10];
+        for (int i = 0; i < outs.length; i++) {
+            outs[i] = new Migration(new DefaultVirtualMachine("VMo" + i, 1, 1, 1), hub, other, 0, i + 1);
+            ins[i] = new Migration(new DefaultVirtualMachine("VMi" + i, 1, 1, 1), other, hub, i, i + 5);
+            outs[i].insertIntoGraph(g);
+            ins[i].insertIntoGraph(g);
+        }
+        Set<Dependencies> deps = g.extractDependencies();
+        Assert.assertEquals(deps.size(), 20);
+        for (int i = 0; i < ins.length; i++) {
+            //An incoming migration started at i waits for the outgoing migrations terminated at i
+            Dependencies d = new Dependencies(ins[i]);
+            for (int j = 0; j < i; j++) {
+                d.addDependency(outs[j]);
+            }
+            Assert.assertTrue(deps.contains(d), d.toString());
+        }
+
+        Migration late = new Migration(new DefaultVirtualMachine("VMx", 1, 1, 1), other, hub, 20, 25);
+        late.insertIntoGraph(g);
+        deps = g.extractDependencies();
+        Assert.assertEquals(deps.size(), 21);
+        Dependencies d = new Dependencies(late);
+        for (Migration m : outs) {
+            d.addDependency(m);
+        }
+        Assert.assertTrue(deps.contains(d));
+    }
+
 }
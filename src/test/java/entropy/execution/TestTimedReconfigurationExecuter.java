@@ -18,12 +18,20 @@
  */
 package entropy.execution;
 
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
 import entropy.configuration.DefaultConfiguration;
 import entropy.configuration.DefaultNode;
 import entropy.configuration.DefaultVirtualMachine;
+import entropy.execution.driver.Driver;
+import entropy.execution.driver.DriverException;
+import entropy.execution.driver.DriverFactory;
+import entropy.execution.driver.DriverInstantiationException;
 import entropy.execution.driver.MockDriver;
 import entropy.execution.driver.MockDriverFactory;
 import entropy.plan.DefaultTimedReconfigurationPlan;
@@ -31,6 +39,8 @@ import entropy.plan.TimedReconfigurationPlan;
 import entropy.plan.action.Action;
 import entropy.plan.action.Migration;
 import entropy.plan.action.Run;
+import entropy.plan.durationEvaluator.LearnedDurationEvaluator;
+import entropy.plan.durationEvaluator.MockDurationEvaluator;
 
 /**
  * Unit tests for BetterExecution.
@@ -80,6 +90,30 @@ public class TestTimedReconfigurationExecuter {
         Assert.assertEquals(be.getUncommitedActions().size(), 0);
     }
 
+    /**
+     * Test the recording of the durations of the actions.
+     */
+    public void testLearner() {
+        DefaultConfiguration cfg = new DefaultConfiguration();
+        DefaultVirtualMachine vm1 = new DefaultVirtualMachine("VM1", 1, 1, 1);
+        DefaultVirtualMachine vm2 = new DefaultVirtualMachine("VM2", 1, 1, 1);
+        DefaultNode n1 = new DefaultNode("N1", 1, 1, 1);
+        DefaultNode n2 = new DefaultNode("N2", 1, 1, 1);
+        cfg.addOnline(n1);
+        cfg.addOnline(n2);
+        cfg.setRunOn(vm1, n1);
+        cfg.addWaiting(vm2);
+        TimedReconfigurationPlan plan = new DefaultTimedReconfigurationPlan(cfg);
+        Assert.assertTrue(plan.add(new Migration(vm1, n1, n2, 0, 3)));
+        Assert.assertTrue(plan.add(new Run(vm2, n1, 3, 5)));
+        TimedReconfigurationExecuter be = new TimedReconfigurationExecuter(new MockDriverFactory());
+        LearnedDurationEvaluator l = new LearnedDurationEvaluator(new MockDurationEvaluator(1, 2, 3, 4, 5, 6, 7, 8, 9));
+        be.setLearner(l);
+        be.start(plan);
+        Assert.assertEquals(be.getUncommitedActions().size(), 0);
+        Assert.assertEquals(l.getNbSamples(), 2);
+    }
+
     /**
      * Another test
      */
@@ -145,4 +179,298 @@ public class TestTimedReconfigurationExecuter {
         be.start(plan);
         Assert.assertEquals(be.getUncommitedActions().size(), 0);
     }
+
+    /**
+     * A factory of drivers that are terminated by the test, and record the actions
+     * in their order of termination and the maximum number of simultaneous executions.
+     */
+    private static class SlowDriverFactory extends DriverFactory {
+
+        private final List<Action> ended = new LinkedList<Action>();
+
+        /**
+         * A permit per driver in progress.
+         */
+        private final Semaphore arrived = new Semaphore(0);
+
+        /**
+         * A permit per driver allowed to terminate.
+         */
+        private final Semaphore gate = new Semaphore(0);
+
+        private int running;
+
+        private int maxRunning;
+
+        public SlowDriverFactory() {
+            super(null);
+        }
+
+        /**
+         * Wait for the beginning of the execution of some drivers.
+         *
+         * @param nb the number of drivers
+         */
+        public void awaitStarted(int nb) {
+            arrived.acquireUninterruptibly(nb);
+        }
+
+        /**
+         * Allow some drivers to terminate.
+         *
+         * @param nb the number of drivers
+         */
+        public void terminate(int nb) {
+            gate.release(nb);
+        }
+
+        /**
+         * Wait for the beginning of the execution of some drivers,
+         * check no other driver is running, then let them terminate.
+         *
+         * @param nb the number of drivers
+         */
+        public void step(int nb) {
+            awaitStarted(nb);
+            synchronized (ended) {
+                Assert.assertEquals(running, nb);
+            }
+            terminate(nb);
+        }
+
+        @Override
+        public Driver transform(final Action a) throws DriverInstantiationException {
+            return new Driver(a) {
+                @Override
+                public void execute() throws DriverException {
+                    synchronized (ended) {
+                        running++;
+                        maxRunning = Math.max(maxRunning, running);
+                    }
+                    arrived.release();
+                    gate.acquireUninterruptibly();
+                    synchronized (ended) {
+                        running--;
+                        ended.add(a);
+                    }
+                }
+
+                @Override
+                public String toString() {
+                    return a.toString();
+                }
+            };
+        }
+    }
+
+    /**
+     * Execute a plan in a new thread.
+     *
+     * @param be   the executer
+     * @param plan the plan to execute
+     * @return the started thread
+     */
+    private static Thread startInBackground(final TimedReconfigurationExecuter be, final TimedReconfigurationPlan plan) {
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                be.start(plan);
+            }
+        };
+        t.start();
+        return t;
+    }
+
+    /**
+     * Test the cancellation of a plan, then the execution of a new plan while
+     * an action of the cancelled plan is in progress.
+     *
+     * @throws InterruptedException if the test is interrupted
+     */
+    public void testCancel() throws InterruptedException {
+        DefaultConfiguration cfg = new DefaultConfiguration();
+        DefaultVirtualMachine vm1 = new DefaultVirtualMachine("VM1", 1, 1, 1);
+        DefaultVirtualMachine vm2 = new DefaultVirtualMachine("VM2", 1, 1, 1);
+        DefaultNode n1 = new DefaultNode("N1", 1, 1, 1);
+        DefaultNode n2 = new DefaultNode("N2", 1, 1, 1);
+        cfg.addOnline(n1);
+        cfg.addOnline(n2);
+        cfg.setRunOn(vm1, n1);
+        cfg.addWaiting(vm2);
+        final TimedReconfigurationPlan plan = new DefaultTimedReconfigurationPlan(cfg);
+        Action m1 = new Migration(vm1, n1, n2, 0, 3);
+        Assert.assertTrue(plan.add(m1));
+        Assert.assertTrue(plan.add(new Run(vm2, n1, 3, 5)));
+        SlowDriverFactory factory = new SlowDriverFactory();
+        TimedReconfigurationExecuter be = new TimedReconfigurationExecuter(factory);
+        Thread t = startInBackground(be, plan);
+        factory.awaitStarted(1);
+        TimedReconfigurationPlan partial = be.cancel();
+        //The execution returns while the migration is still in progress
+        t.join();
+        Assert.assertEquals(factory.ended.size(), 0);
+        Assert.assertEquals(partial.size(), 1);
+        Assert.assertEquals(partial.getDestination().getLocation(vm1), n2);
+        Assert.assertTrue(partial.getDestination().isWaiting(vm2));
+        Assert.assertEquals(be.getUncommitedActions().size(), 1);
+
+        //The migration back is delayed until the end of the first one
+        TimedReconfigurationPlan next = new DefaultTimedReconfigurationPlan(partial.getDestination());
+        Action m2 = new Migration(vm1, n2, n1, 0, 3);
+        Assert.assertTrue(next.add(m2));
+        t = startInBackground(be, next);
+        factory.terminate(1);
+        factory.step(1);
+        t.join();
+        Assert.assertEquals(be.getUncommitedActions().size(), 0);
+        Assert.assertEquals(factory.ended.size(), 2);
+        Assert.assertSame(factory.ended.get(0), m1);
+        Assert.assertSame(factory.ended.get(1), m2);
+        Assert.assertNull(be.cancel());
+    }
+
+    /**
+     * Test the bound on the number of simultaneous actions, and the termination
+     * of the execution as soon as the last action is committed.
+     *
+     * @throws InterruptedException if the test is interrupted
+     */
+    public void testBoundedPool() throws InterruptedException {
+        DefaultConfiguration cfg = new DefaultConfiguration();
+        DefaultNode n1 = new DefaultNode("N1", 100, 100, 100);
+        cfg.addOnline(n1);
+        TimedReconfigurationPlan plan = new DefaultTimedReconfigurationPlan(cfg);
+        for (int i = 0; i < 20; i++) {
+            DefaultVirtualMachine vm = new DefaultVirtualMachine("VM" + i, 1, 1, 1);
+            cfg.addWaiting(vm);
+            Assert.assertTrue(plan.add(new Run(vm, n1, 0, 1)));
+        }
+        SlowDriverFactory factory = new SlowDriverFactory();
+        TimedReconfigurationExecuter be = new TimedReconfigurationExecuter(factory, 4);
+        Assert.assertEquals(be.getPoolSize(), 4);
+        Thread t = startInBackground(be, plan);
+        //The actions are executed by groups of 4, the execution ends with the last group
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(t.isAlive());
+            factory.step(4);
+        }
+        t.join();
+        Assert.assertEquals(be.getUncommitedActions().size(), 0);
+        Assert.assertEquals(factory.ended.size(), 20);
+        Assert.assertEquals(factory.maxRunning, 4);
+        be.shutdown();
+    }
+
+    /**
+     * Test the limit on the outgoing migrations of a node.
+     *
+     * @throws InterruptedException if the test is interrupted
+     */
+    public void testMigrationLimitPerNode() throws InterruptedException {
+        DefaultConfiguration cfg = new DefaultConfiguration();
+        DefaultNode src = new DefaultNode("N0", 100, 100, 100);
+        cfg.addOnline(src);
+        for (int i = 0; i < 6; i++) {
+            cfg.addOnline(new DefaultNode("N" + (i + 1), 100, 100, 100));
+            cfg.setRunOn(new DefaultVirtualMachine("VM" + i, 1, 1, 1), src);
+        }
+        TimedReconfigurationPlan plan = new DefaultTimedReconfigurationPlan(cfg);
+        for (int i = 0; i < 6; i++) {
+            Assert.assertTrue(plan.add(new Migration(cfg.getRunnings().get("VM" + i), src, cfg.getOnlines().get("N" + (i + 1)), 0, 1)));
+        }
+        SlowDriverFactory factory = new SlowDriverFactory();
+        TimedReconfigurationExecuter be = new TimedReconfigurationExecuter(factory);
+        be.setMigrationLimits(2, 0, 0);
+        Thread t = startInBackground(be, plan);
+        for (int i = 0; i < 3; i++) {
+            factory.step(2);
+        }
+        t.join();
+        Assert.assertEquals(be.getUncommitedActions().size(), 0);
+        Assert.assertEquals(factory.ended.size(), 6);
+        Assert.assertEquals(factory.maxRunning, 2);
+    }
+
+    /**
+     * Test the global limit, and the priority to the actions with the longest critical path.
+     *
+     * @throws InterruptedException if the test is interrupted
+     */
+    public void testMigrationPriority() throws InterruptedException {
+        DefaultConfiguration cfg = new DefaultConfiguration();
+        for (int i = 0; i < 10; i++) {
+            cfg.addOnline(new DefaultNode("N" + i, 100, 100, 100));
+        }
+        for (int i = 0; i < 5; i++) {
+            cfg.setRunOn(new DefaultVirtualMachine("VM" + i, 1, 1, 1), cfg.getOnlines().get("N" + (2 * i)));
+        }
+        TimedReconfigurationPlan plan = new DefaultTimedReconfigurationPlan(cfg);
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(plan.add(new Migration(cfg.getRunnings().get("VM" + i), cfg.getOnlines().get("N" + (2 * i)),
+                    cfg.getOnlines().get("N" + (2 * i + 1)), 0, i + 1)));
+        }
+        SlowDriverFactory factory = new SlowDriverFactory();
+        TimedReconfigurationExecuter be = new TimedReconfigurationExecuter(factory);
+        be.setMigrationLimits(0, 0, 1);
+        Assert.assertEquals(be.getMaxMigrations(), 1);
+        Thread t = startInBackground(be, plan);
+        for (int i = 0; i < 5; i++) {
+            factory.step(1);
+        }
+        t.join();
+        Assert.assertEquals(factory.maxRunning, 1);
+        Assert.assertEquals(factory.ended.size(), 5);
+        //The first started migration is admitted directly, the others by decreasing durations
+        for (int i = 2; i < factory.ended.size(); i++) {
+            Action prev = factory.ended.get(i - 1);
+            Action cur = factory.ended.get(i);
+            Assert.assertTrue(prev.getFinishMoment() > cur.getFinishMoment(), prev + " before " + cur);
+        }
+    }
+
+    /**
+     * Test that an action without driver does not hold its migration slots.
+     *
+     * @throws InterruptedException if the test is interrupted
+     */
+    public void testDriverInstantiationFailure() throws InterruptedException {
+        DefaultConfiguration cfg = new DefaultConfiguration();
+        for (int i = 0; i < 4; i++) {
+            cfg.addOnline(new DefaultNode("N" + i, 100, 100, 100));
+        }
+        cfg.setRunOn(new DefaultVirtualMachine("VM0", 1, 1, 1), cfg.getOnlines().get("N0"));
+        cfg.setRunOn(new DefaultVirtualMachine("VM1", 1, 1, 1), cfg.getOnlines().get("N2"));
+        TimedReconfigurationPlan plan = new DefaultTimedReconfigurationPlan(cfg);
+        final Action bad = new Migration(cfg.getRunnings().get("VM0"), cfg.getOnlines().get("N0"), cfg.getOnlines().get("N1"), 0, 2);
+        Action good = new Migration(cfg.getRunnings().get("VM1"), cfg.getOnlines().get("N2"), cfg.getOnlines().get("N3"), 0, 1);
+        Assert.assertTrue(plan.add(bad));
+        Assert.assertTrue(plan.add(good));
+        SlowDriverFactory factory = new SlowDriverFactory() {
+            @Override
+            public Driver transform(Action a) throws DriverInstantiationException {
+                if (a == bad) {
+                    throw new DriverInstantiationException(a);
+                }
+                return super.transform(a);
+            }
+        };
+        TimedReconfigurationExecuter be = new TimedReconfigurationExecuter(factory);
+        be.setMigrationLimits(0, 0, 1);
+        Thread t = startInBackground(be, plan);
+        factory.step(1);
+        t.join();
+        Assert.assertEquals(be.getUncommitedActions().size(), 0);
+        Assert.assertEquals(factory.ended.size(), 1);
+        Assert.assertSame(factory.ended.get(0), good);
+
+        //The slot is available for the next plans
+        TimedReconfigurationPlan next = new DefaultTimedReconfigurationPlan(plan.getDestination());
+        Action back = new Migration(cfg.getRunnings().get("VM1"), cfg.getOnlines().get("N3"), cfg.getOnlines().get("N2"), 0, 1);
+        Assert.assertTrue(next.add(back));
+        t = startInBackground(be, next);
+        factory.step(1);
+        t.join();
+        Assert.assertEquals(factory.ended.size(), 2);
+        Assert.assertSame(factory.ended.get(1), back);
+    }
 }
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package entropy.execution.driver;
+
+import java.io.IOException;
+
+import com.jcraft.jsch.JSchException;
+
+/**
+ * A stub of SSHExec, for tests purpose.
+ * The session is not opened for real, and the command "sleep N" waits for N milliseconds.
+ *
+ * @author Fabien Hermenier
+ */
+public class MockSSHExec extends SSHExec {
+
+    private volatile boolean connected;
+
+    private volatile boolean dropping;
+
+    private int nbChannels;
+
+    private int maxChannels;
+
+    private int nbCommands;
+
+    /**
+     * Make a new stub.
+     *
+     * @param host     the hostname of the server
+     * @param p        the listening port
+     * @param username the login of the user
+     * @throws JSchException if an error occurs
+     */
+    public MockSSHExec(String host, int p, String username) throws JSchException {
+        super(host, p, username);
+    }
+
+    @Override
+    public void connect() throws JSchException {
+        connected = true;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public void disconnect() {
+        connected = false;
+    }
+
+    @Override
+    public int executeCommand(String command, StringBuilder out, StringBuilder err) throws JSchException, IOException {
+        if (!connected) {
+            throw new SSHCommandNotSentException("session is down");
+        }
+        if (dropping) {
+            dropping = false;
+            connected = false;
+            out.append("partial");
+            err.append("partial");
+            throw new JSchException("session is down");
+        }
+        synchronized (this) {
+            nbChannels++;
+            nbCommands++;
+            maxChannels = Math.max(maxChannels, nbChannels);
+        }
+        try {
+            if (command.startsWith("sleep ")) {
+                Thread.sleep(Long.parseLong(command.substring(6)));
+            }
+            out.append(getHostname()).append(": ").append(command);
+            return 0;
+        } catch (InterruptedException e) {
+            throw new IOException(e.getMessage());
+        } finally {
+            synchronized (this) {
+                nbChannels--;
+            }
+        }
+    }
+
+    /**
+     * Close the session while the next command is executed, after a part of its output is read.
+     */
+    public void dropDuringNextCommand() {
+        dropping = true;
+    }
+
+    /**
+     * Get the maximum number of commands that were executed simultaneously.
+     *
+     * @return a positive number
+     */
+    public synchronized int getMaxChannels() {
+        return maxChannels;
+    }
+
+    /**
+     * Get the number of executed commands.
+     *
+     * @return a positive number
+     */
+    public synchronized int getNbCommands() {
+        return nbCommands;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package entropy.execution.driver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.jcraft.jsch.JSchException;
+
+/**
+ * A pool of {@link MockSSHExec}, for tests purpose.
+ *
+ * @author Fabien Hermenier
+ */
+public class MockSSHSessionPool extends SSHSessionPool {
+
+    private final List<MockSSHExec> opened = new ArrayList<MockSSHExec>();
+
+    /**
+     * Make a new pool.
+     *
+     * @param maxSessions the maximum number of sessions per host
+     * @param maxChannels the maximum number of channels per session
+     * @param keepAlive   the interval between two keep-alive messages, in milliseconds
+     */
+    public MockSSHSessionPool(int maxSessions, int maxChannels, int keepAlive) {
+        super(maxSessions, maxChannels, keepAlive);
+    }
+
+    @Override
+    protected SSHExec open(String host, int port, String user, String identity) throws JSchException {
+        MockSSHExec ssh = new MockSSHExec(host, port, user);
+        synchronized (opened) {
+            opened.add(ssh);
+        }
+        return ssh;
+    }
+
+    /**
+     * Get the sessions opened by the pool.
+     *
+     * @return a list of sessions
+     */
+    public List<MockSSHExec> getOpened() {
+        synchronized (opened) {
+            return new ArrayList<MockSSHExec>(opened);
+        }
+    }
+}
@@ -131,7 +131,12 @@ public class TestDriverFactory {
         try {
             PropertiesHelper props = TestHelper.readEntropyProperties("src/test/resources/entropy/execution/driver/TestDriverFactory.defaultProperties.txt");
             DriverFactory f = new DriverFactory(props);
-            Assert.assertEquals(f.transform(a).getClass(), c);
+            Driver d = f.transform(a);
+            Assert.assertEquals(d.getClass(), c);
+            if (d instanceof SSHDriver) {
+                //The SSH drivers share the sessions of the factory
+                Assert.assertSame(((SSHDriver) d).getSessionPool(), f.getSSHSessionPool());
+            }
         } catch (Exception e) {
             Assert.fail(e.getMessage(), e);
         }
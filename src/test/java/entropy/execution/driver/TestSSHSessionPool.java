@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package entropy.execution.driver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import com.jcraft.jsch.JSchException;
+
+/**
+ * Unit tests for SSHSessionPool.
+ *
+ * @author Fabien Hermenier
+ */
+@Test(groups = {"unit"})
+public class TestSSHSessionPool {
+
+    private static int exec(SSHSessionPool pool, String host, String cmd) throws Exception {
+        return pool.executeCommand(host, SSHExec.DEFAULT_PORT, "root", "myKey", cmd, new StringBuilder(), new StringBuilder());
+    }
+
+    /**
+     * Test the reuse of a session by the successive commands.
+     *
+     * @throws Exception if an error occurred
+     */
+    public void testReuse() throws Exception {
+        MockSSHSessionPool pool = new MockSSHSessionPool(2, 4, 60000);
+        StringBuilder out = new StringBuilder();
+        Assert.assertEquals(pool.executeCommand("N1", 22, "root", "myKey", "ls", out, new StringBuilder()), 0);
+        Assert.assertEquals(out.toString(), "N1: ls");
+        for (int i = 0; i < 20; i++) {
+            exec(pool, "N1", "ls");
+        }
+        Assert.assertEquals(pool.getNbOpenedSessions(), 1);
+        Assert.assertEquals(pool.getOpened().get(0).getNbCommands(), 21);
+
+        //A session per host and per user
+        exec(pool, "N2", "ls");
+        pool.executeCommand("N1", 22, "toto", "myKey", "ls", new StringBuilder(), new StringBuilder());
+        Assert.assertEquals(pool.getNbSessions(), 3);
+        pool.close();
+        Assert.assertEquals(pool.getNbSessions(), 0);
+    }
+
+    /**
+     * Test the limits of channels per session and of sessions per host.
+     *
+     * @throws Exception if an error occurred
+     */
+    public void testLimits() throws Exception {
+        final MockSSHSessionPool pool = new MockSSHSessionPool(2, 3, 60000);
+        final List<Exception> errors = new ArrayList<Exception>();
+        Thread[] threads = new Thread[12];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        exec(pool, "N1", "sleep 100");
+                    } catch (Exception e) {
+                        synchronized (errors) {
+                            errors.add(e);
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        Assert.assertTrue(errors.isEmpty(), errors.toString());
+        List<MockSSHExec> opened = pool.getOpened();
+        Assert.assertEquals(opened.size(), 2);
+        int nb = 0;
+        for (MockSSHExec ssh : opened) {
+            Assert.assertTrue(ssh.getMaxChannels() <= 3, "Up to 3 channels expected: " + ssh.getMaxChannels());
+            nb += ssh.getNbCommands();
+        }
+        Assert.assertEquals(nb, threads.length);
+        pool.close();
+    }
+
+    /**
+     * Test the replacement of a session closed by the server.
+     *
+     * @throws Exception if an error occurred
+     */
+    public void testBrokenSession() throws Exception {
+        MockSSHSessionPool pool = new MockSSHSessionPool(1, 4, 60000);
+        exec(pool, "N1", "ls");
+        pool.getOpened().get(0).disconnect();
+        Assert.assertEquals(exec(pool, "N1", "ls"), 0);
+        Assert.assertEquals(pool.getNbOpenedSessions(), 2);
+        Assert.assertEquals(pool.getNbSessions(), 1);
+
+        //A failure once the command was sent is not retried
+        pool.getOpened().get(1).dropDuringNextCommand();
+        try {
+            exec(pool, "N1", "ls");
+            Assert.fail("The command should not be executed again");
+        } catch (JSchException e) {
+            Assert.assertFalse(e instanceof SSHCommandNotSentException);
+        }
+        Assert.assertEquals(pool.getNbOpenedSessions(), 2);
+        Assert.assertEquals(pool.getOpened().get(1).getNbCommands(), 1);
+
+        //The next command is sent into a new session
+        Assert.assertEquals(exec(pool, "N1", "ls"), 0);
+        Assert.assertEquals(pool.getNbOpenedSessions(), 3);
+        pool.close();
+    }
+
+    /**
+     * Test the closing of the idle sessions.
+     *
+     * @throws Exception if an error occurred
+     */
+    public void testCloseIdleSessions() throws Exception {
+        MockSSHSessionPool pool = new MockSSHSessionPool(2, 4, 100);
+        exec(pool, "N1", "ls");
+        exec(pool, "N2", "ls");
+        pool.closeIdleSessions();
+        Assert.assertEquals(pool.getNbSessions(), 2);
+        Thread.sleep(300);
+        Assert.assertEquals(pool.getNbSessions(), 0);
+        Assert.assertFalse(pool.getOpened().get(0).isConnected());
+
+        exec(pool, "N1", "ls");
+        Assert.assertEquals(pool.getNbOpenedSessions(), 3);
+        pool.close();
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package entropy.plan;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import entropy.configuration.Configuration;
+import entropy.configuration.DefaultConfiguration;
+import entropy.configuration.ManagedElementSet;
+import entropy.configuration.Node;
+import entropy.configuration.VirtualMachine;
+import entropy.plan.action.Action;
+import entropy.plan.durationEvaluator.DurationEvaluator;
+import entropy.vjob.VJob;
+
+/**
+ * A mock plan module that returns scripted plans, and records
+ * the source configurations it has received.
+ *
+ * @author Fabien Hermenier
+ */
+public class MockPlannerModule extends CustomizablePlannerModule {
+
+    /**
+     * The actions of the next plans. An empty plan is computed once there is no more actions.
+     */
+    private final LinkedList<List<Action>> scripted = new LinkedList<List<Action>>();
+
+    private final List<Configuration> sources = new ArrayList<Configuration>();
+
+    /**
+     * Make a new module.
+     *
+     * @param eval the evaluator for each action
+     */
+    public MockPlannerModule(DurationEvaluator eval) {
+        super(eval);
+    }
+
+    /**
+     * Append a plan to compute.
+     *
+     * @param actions the actions of the plan, applied on the source configuration received by the module
+     */
+    public synchronized void enqueue(Action... actions) {
+        List<Action> l = new ArrayList<Action>();
+        Collections.addAll(l, actions);
+        scripted.add(l);
+    }
+
+    /**
+     * Get a copy of the source configurations received by the module.
+     *
+     * @return a list of configurations, in the order of the computations
+     */
+    public synchronized List<Configuration> getSources() {
+        return new ArrayList<Configuration>(sources);
+    }
+
+    @Override
+    public synchronized TimedReconfigurationPlan compute(Configuration src,
+                                                         ManagedElementSet<VirtualMachine> run,
+                                                         ManagedElementSet<VirtualMachine> wait,
+                                                         ManagedElementSet<VirtualMachine> sleep,
+                                                         ManagedElementSet<VirtualMachine> stop,
+                                                         ManagedElementSet<Node> on,
+                                                         ManagedElementSet<Node> off,
+                                                         List<VJob> queue) throws PlanException {
+        sources.add(new DefaultConfiguration(src));
+        TimedReconfigurationPlan plan = new DefaultTimedReconfigurationPlan(src);
+        if (!scripted.isEmpty()) {
+            for (Action a : scripted.removeFirst()) {
+                if (!plan.add(a)) {
+                    throw new PlanException("Unable to apply '" + a + "' on the source configuration");
+                }
+            }
+        }
+        return plan;
+    }
+
+    @Override
+    public List<SolutionStatistics> getSolutionsStatistics() {
+        return new ArrayList<SolutionStatistics>();
+    }
+
+    @Override
+    public SolvingStatistics getSolvingStatistics() {
+        return SolvingStatistics.getStatisticsForNotSolvingProcess();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.plan;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Unit tests for AdaptivePlanningBudget.
+ *
+ * @author Fabien Hermenier
+ */
+@Test(groups = {"unit"})
+public class TestAdaptivePlanningBudget {
+
+    private static List<SolutionStatistics> solutions(int... timesAndObjectives) {
+        List<SolutionStatistics> l = new ArrayList<SolutionStatistics>();
+        for (int i = 0; i < timesAndObjectives.length; i += 2) {
+            l.add(new SolutionStatistics(10, 10, timesAndObjectives[i], false, timesAndObjectives[i + 1]));
+        }
+        return l;
+    }
+
+    /**
+     * Test the timeout without history, then from the plateaus.
+     */
+    public void testPlateau() {
+        AdaptivePlanningBudget b = new AdaptivePlanningBudget(1, 300);
+        Assert.assertEquals(b.getTimeout(100), 300);
+
+        //The plateau is reached after 2 seconds, the last marginal improvement after 50
+        b.record(100, solutions(500, 1000, 2000, 200, 50000, 199), new SolvingStatistics(10, 10, 300000, true));
+        Assert.assertEquals(b.getNbSamples(), 1);
+        Assert.assertEquals(b.getTimeout(100), 4);
+        Assert.assertEquals(b.getTimeout(1000), 40);
+        Assert.assertEquals(b.getTimeout(10), 1);
+        Assert.assertEquals(b.getTimeout(100000), 300);
+    }
+
+    /**
+     * Test the increase of the timeout when no solution is found.
+     */
+    public void testNoSolution() {
+        AdaptivePlanningBudget b = new AdaptivePlanningBudget(1, 300);
+        b.record(100, solutions(1000, 10), new SolvingStatistics(10, 10, 1000, false));
+        Assert.assertEquals(b.getTimeout(100), 2);
+        b.record(200, solutions(), new SolvingStatistics(10, 10, 4000, true));
+        b.record(200, solutions(), new SolvingStatistics(10, 10, 16000, true));
+        Assert.assertEquals(b.getNbTimeouts(), 2);
+        Assert.assertEquals(b.getTimeout(200), 16);
+
+        //An infeasible problem does not change the timeout
+        b.record(200, solutions(), new SolvingStatistics(10, 10, 100, false));
+        Assert.assertEquals(b.getTimeout(200), 16);
+
+        b.record(200, solutions(3000, 10), new SolvingStatistics(10, 10, 3000, false));
+        Assert.assertEquals(b.getNbTimeouts(), 0);
+        Assert.assertEquals(b.getTimeout(200), 6);
+    }
+}
@@ -25,6 +25,16 @@ import java.util.List;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import entropy.configuration.Configuration;
+import entropy.configuration.DefaultNode;
+import entropy.configuration.DefaultVirtualMachine;
+import entropy.configuration.Node;
+import entropy.configuration.SimpleConfiguration;
+import entropy.configuration.VirtualMachine;
+import entropy.plan.action.Migration;
+import entropy.plan.action.Shutdown;
+import entropy.plan.action.Startup;
+import entropy.plan.action.Stop;
 import entropy.plan.parser.PlainTextTimedReconfigurationPlanSerializer;
 
 /**
@@ -55,5 +65,45 @@ public class TestTimedReconfigurationPlans {
         } catch (Exception e) {
             Assert.fail(e.getMessage(), e);
         }
-    }
-}
+    }
+
+    /**
+     * Test the projection of a configuration in the middle of the execution of a plan.
+     */
+    public void testProject() {
+        Node n1 = new DefaultNode("N1", 1, 100, 2048);
+        Node n2 = new DefaultNode("N2", 1, 100, 2048);
+        Node n3 = new DefaultNode("N3", 1, 100, 2048);
+        VirtualMachine vm1 = new DefaultVirtualMachine("VM1", 1, 20, 512);
+        VirtualMachine vm2 = new DefaultVirtualMachine("VM2", 1, 20, 512);
+        Configuration src = new SimpleConfiguration();
+        src.addOnline(n1);
+        src.addOnline(n2);
+        src.addOffline(n3);
+        src.setRunOn(vm1, n1);
+        src.setRunOn(vm2, n2);
+        TimedReconfigurationPlan p = new DefaultTimedReconfigurationPlan(src);
+        Assert.assertTrue(p.add(new Startup(n3, 0, 5)));
+        Assert.assertTrue(p.add(new Migration(vm1, n1, n3, 5, 10)));
+        Assert.assertTrue(p.add(new Stop(vm2, n2, 0, 2)));
+        Assert.assertTrue(p.add(new Shutdown(n2, 2, 4)));
+
+        //The node is booted and the VM stopped, with a fresher consumption and a new VM
+        Configuration cur = new SimpleConfiguration();
+        cur.addOnline(new DefaultNode("N1", 1, 100, 2048));
+        cur.addOnline(new DefaultNode("N2", 1, 100, 2048));
+        cur.addOnline(new DefaultNode("N3", 1, 100, 2048));
+        VirtualMachine fresh = new DefaultVirtualMachine("VM1", 1, 80, 512);
+        cur.setRunOn(fresh, cur.getAllNodes().get("N1"));
+        cur.setRunOn(new DefaultVirtualMachine("VM3", 1, 10, 256), cur.getAllNodes().get("N1"));
+
+        Configuration res = TimedReconfigurationPlans.project(cur, p);
+        Assert.assertEquals(res.getLocation(fresh), n3);
+        Assert.assertEquals(res.getAllVirtualMachines().get("VM1").getCPUConsumption(), 80);
+        Assert.assertEquals(res.getLocation(res.getAllVirtualMachines().get("VM3")), n1);
+        Assert.assertNull(res.getAllVirtualMachines().get("VM2"));
+        Assert.assertTrue(res.isOffline(n2));
+        //The current configuration is not modified
+        Assert.assertEquals(cur.getLocation(fresh), n1);
+    }
+}
@@ -429,4 +429,60 @@ public class TestChocoCustomRP {
             ChocoLogging.flushLogs();
         }
     }
+
+    /**
+     * Test that the migrations leaving a same node are serialized
+     * when the bandwidth of its network interface cannot carry all of them at once.
+     */
+    public void testMigrationBandwidth() {
+        Configuration src = new SimpleConfiguration();
+        Node n1 = new SimpleNode("N1", 8, 8, 8);
+        src.addOnline(n1);
+        ManagedElementSet<Node> onlines = new SimpleManagedElementSet<Node>();
+        for (int i = 2; i <= 5; i++) {
+            Node n = new SimpleNode("N" + i, 8, 8, 8);
+            src.addOnline(n);
+            onlines.add(n);
+        }
+        for (int i = 1; i <= 4; i++) {
+            src.setRunOn(new SimpleVirtualMachine("VM" + i, 1, 1, 1), n1);
+        }
+        ManagedElementSet<Node> offlines = new SimpleManagedElementSet<Node>();
+        offlines.add(n1);
+
+        ChocoCustomRP planner = makeModule();
+        planner.setRepairMode(false);
+        //A link carries 2 migrations at once, so the 4 migrations leaving N1 are made in 2 steps at least
+        planner.setMigrationBandwidth(2, 1);
+        try {
+            TimedReconfigurationPlan plan = planner.compute(src,
+                    src.getRunnings(),
+                    new SimpleManagedElementSet<VirtualMachine>(),
+                    new SimpleManagedElementSet<VirtualMachine>(),
+                    new SimpleManagedElementSet<VirtualMachine>(),
+                    onlines,
+                    offlines,
+                    new ArrayList<VJob>());
+            List<Migration> migs = new ArrayList<Migration>();
+            for (Action a : plan.getActions()) {
+                if (a instanceof Migration) {
+                    migs.add((Migration) a);
+                }
+            }
+            Assert.assertEquals(migs.size(), 4);
+            for (Migration m : migs) {
+                int nb = 0;
+                for (Migration m2 : migs) {
+                    if (m2.getStartMoment() <= m.getStartMoment() && m.getStartMoment() < m2.getFinishMoment()) {
+                        nb++;
+                    }
+                }
+                Assert.assertTrue(nb <= 2, "Too many simultaneous migrations at " + m.getStartMoment() + ": " + plan);
+            }
+        } catch (Exception e) {
+            Assert.fail(e.getMessage(), e);
+        } finally {
+            ChocoLogging.flushLogs();
+        }
+    }
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.plan.durationEvaluator;
+
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.CommonTokenStream;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import entropy.configuration.DefaultVirtualMachine;
+import entropy.configuration.VirtualMachine;
+
+/**
+ * Compare the throughput of the compiled expressions of ANTLRDurationEvaluator
+ * with a parsing of the expression at each evaluation, and with a CachedDurationEvaluator.
+ * Not a part of the unit tests, run it with the group "benchmark".
+ *
+ * @author Fabien Hermenier
+ */
+@Test(groups = {"benchmark"})
+public class BenchANTLRDurationEvaluator {
+
+    private static final String EXPR = "(3 + 2) * VM#cpu_nb + VM#memory / 100 + 2 * VM#cpu_cons";
+
+    private static final int NB_VMS = 1000;
+
+    private static final int NB_ROUNDS = 50;
+
+    private static VirtualMachine[] makeVMs() {
+        VirtualMachine[] vms = new VirtualMachine[NB_VMS];
+        for (int i = 0; i < vms.length; i++) {
+            vms[i] = new DefaultVirtualMachine("VM" + i, 1 + i % 4, 10 * (i % 10), 512 + i);
+        }
+        return vms;
+    }
+
+    /**
+     * Evaluate an expression by parsing it each time, as the evaluator did before
+     * compiling the expressions.
+     */
+    private static int parseAndEvaluate(VirtualMachine vm) throws Exception {
+        CommonTokenStream tokens = new CommonTokenStream();
+        tokens.setTokenSource(new ANTLRDurationEvaluatorLexer(new ANTLRStringStream(EXPR)));
+        return new ANTLRDurationEvaluatorParser(tokens).evaluate(vm);
+    }
+
+    /**
+     * Print the number of evaluations per second with and without compilation.
+     *
+     * @throws Exception if an error occurred
+     */
+    public void benchEvaluateMigration() throws Exception {
+        VirtualMachine[] vms = makeVMs();
+        DurationEvaluator ev = new ANTLRDurationEvaluator(EXPR, "1", "1", "1", "1", "1", "1", "1");
+        for (VirtualMachine vm : vms) {
+            Assert.assertEquals(ev.evaluateMigration(vm), parseAndEvaluate(vm));
+        }
+
+        long st = System.nanoTime();
+        long sum = 0;
+        for (int r = 0; r < NB_ROUNDS; r++) {
+            for (VirtualMachine vm : vms) {
+                sum += parseAndEvaluate(vm);
+            }
+        }
+        double parsed = NB_ROUNDS * NB_VMS / ((System.nanoTime() - st) / 1e9);
+
+        st = System.nanoTime();
+        for (int r = 0; r < NB_ROUNDS; r++) {
+            for (VirtualMachine vm : vms) {
+                sum -= ev.evaluateMigration(vm);
+            }
+        }
+        double compiled = NB_ROUNDS * NB_VMS / ((System.nanoTime() - st) / 1e9);
+        Assert.assertEquals(sum, 0);
+        System.out.println(String.format("parsed: %.0f evaluations/s, compiled: %.0f evaluations/s (x%.1f)",
+                parsed, compiled, compiled / parsed));
+    }
+
+    /**
+     * Print the number of evaluations per second of the compiled expressions, with and without a cache.
+     * Each round evaluates the same virtual machines, so all the evaluations but the first round are hits.
+     *
+     * @throws Exception if an error occurred
+     */
+    public void benchCache() throws Exception {
+        VirtualMachine[] vms = makeVMs();
+        DurationEvaluator ev = new ANTLRDurationEvaluator(EXPR, "1", "1", "1", "1", "1", "1", "1");
+        CachedDurationEvaluator cached = new CachedDurationEvaluator(ev);
+        long sum = 0;
+        //Warm up
+        for (int r = 0; r < NB_ROUNDS; r++) {
+            for (VirtualMachine vm : vms) {
+                sum += ev.evaluateMigration(vm) - cached.evaluateMigration(vm);
+            }
+        }
+
+        long st = System.nanoTime();
+        for (int r = 0; r < NB_ROUNDS; r++) {
+            for (VirtualMachine vm : vms) {
+                sum += ev.evaluateMigration(vm);
+            }
+        }
+        double compiled = NB_ROUNDS * NB_VMS / ((System.nanoTime() - st) / 1e9);
+
+        st = System.nanoTime();
+        for (int r = 0; r < NB_ROUNDS; r++) {
+            for (VirtualMachine vm : vms) {
+                sum -= cached.evaluateMigration(vm);
+            }
+        }
+        double hit = NB_ROUNDS * NB_VMS / ((System.nanoTime() - st) / 1e9);
+        Assert.assertEquals(sum, 0);
+        System.out.println(String.format("compiled: %.0f evaluations/s, cached: %.0f evaluations/s (x%.1f)",
+                compiled, hit, hit / compiled));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.plan.durationEvaluator;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import entropy.configuration.DefaultNode;
+import entropy.configuration.DefaultVirtualMachine;
+import entropy.configuration.Node;
+import entropy.configuration.VirtualMachine;
+
+/**
+ * Unit tests for CachedDurationEvaluator.
+ *
+ * @author Fabien Hermenier
+ */
+@Test(groups = {"unit"})
+public class TestCachedDurationEvaluator {
+
+    private static CachedDurationEvaluator make() {
+        return new CachedDurationEvaluator(new ANTLRDurationEvaluator("VM#memory / 100", "2 * VM#memory + VM#cpu_nb", "3",
+                "1", "1", "1", "node#memory / 500", "node#cpu_nb + node#cpu_capa"));
+    }
+
+    /**
+     * Test that the key only contains the variables of each expression.
+     *
+     * @throws DurationEvaluationException if an error occurred
+     */
+    public void testKeyOnReferencedVariables() throws DurationEvaluationException {
+        CachedDurationEvaluator ev = make();
+        VirtualMachine vm1 = new DefaultVirtualMachine("VM1", 1, 10, 1024);
+        VirtualMachine vm2 = new DefaultVirtualMachine("VM2", 2, 50, 1024);
+        VirtualMachine vm3 = new DefaultVirtualMachine("VM3", 1, 10, 2048);
+
+        Assert.assertEquals(ev.evaluateMigration(vm1), 10);
+        Assert.assertEquals(ev.evaluateMigration(vm2), 10);
+        Assert.assertEquals(ev.evaluateMigration(vm3), 20);
+        Assert.assertEquals(ev.getNbHits(), 1);
+        Assert.assertEquals(ev.getNbMisses(), 2);
+
+        //The number of CPUs is a part of the key of a stop
+        Assert.assertEquals(ev.evaluateStop(vm1), 2049);
+        Assert.assertEquals(ev.evaluateStop(vm2), 2050);
+        Assert.assertEquals(ev.getNbMisses(), 4);
+
+        //A constant is computed once
+        for (VirtualMachine vm : new VirtualMachine[]{vm1, vm2, vm3}) {
+            Assert.assertEquals(ev.evaluateRun(vm), 3);
+        }
+        Assert.assertEquals(ev.getNbHits(), 3);
+        Assert.assertEquals(ev.getNbMisses(), 5);
+
+        ev.clear();
+        Assert.assertEquals(ev.getNbHits(), 0);
+        Assert.assertEquals(ev.evaluateMigration(vm1), 10);
+        Assert.assertEquals(ev.getNbMisses(), 1);
+    }
+
+    /**
+     * Test the evaluation of the nodes.
+     *
+     * @throws DurationEvaluationException if an error occurred
+     */
+    public void testNodes() throws DurationEvaluationException {
+        CachedDurationEvaluator ev = make();
+        Node n1 = new DefaultNode("N1", 2, 100, 1500);
+        Node n2 = new DefaultNode("N2", 2, 100, 1500);
+        Assert.assertEquals(ev.evaluateStartup(n1), 3);
+        Assert.assertEquals(ev.evaluateStartup(n2), 3);
+        Assert.assertEquals(ev.evaluateShutdown(n1), 102);
+        Assert.assertEquals(ev.evaluateShutdown(n2), 102);
+        Assert.assertEquals(ev.getNbHits(), 2);
+        Assert.assertEquals(ev.getNbMisses(), 2);
+    }
+
+    /**
+     * Test the large resources with a key made of all the resources, and the null parameters.
+     *
+     * @throws DurationEvaluationException if an error occurred
+     */
+    public void testLargeValues() throws DurationEvaluationException {
+        CachedDurationEvaluator ev = new CachedDurationEvaluator(new MockDurationEvaluator(1, 2, 3, 4, 5, 6, 7, 8, 9));
+        VirtualMachine vm = new DefaultVirtualMachine("VM1", 1, 10, 1 << 20);
+        Assert.assertEquals(ev.evaluateMigration(vm), 1);
+        Assert.assertEquals(ev.evaluateMigration(vm), 1);
+        Assert.assertEquals(ev.getNbHits(), 1);
+        Assert.assertEquals(ev.getNbMisses(), 1);
+
+        vm.setMemoryConsumption(1 << 21);
+        Assert.assertEquals(ev.evaluateMigration(vm), 1);
+        Assert.assertEquals(ev.getNbHits(), 1);
+        Assert.assertEquals(ev.getNbMisses(), 2);
+
+        Assert.assertEquals(make().evaluateMigration(null), -1);
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.plan.durationEvaluator;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import entropy.configuration.DefaultNode;
+import entropy.configuration.DefaultVirtualMachine;
+import entropy.configuration.Node;
+import entropy.configuration.VirtualMachine;
+import entropy.plan.action.Migration;
+import entropy.plan.action.Resume;
+import entropy.plan.action.Startup;
+
+/**
+ * Unit tests for LearnedDurationEvaluator.
+ *
+ * @author Fabien Hermenier
+ */
+@Test(groups = {"unit"})
+public class TestLearnedDurationEvaluator {
+
+    private static LearnedDurationEvaluator make() {
+        return new LearnedDurationEvaluator(new MockDurationEvaluator(1, 2, 3, 4, 5, 6, 7, 8, 9), 3);
+    }
+
+    /**
+     * Test the fallback, then the average of a signature.
+     *
+     * @throws DurationEvaluationException if an error occurred
+     */
+    public void testSignature() throws DurationEvaluationException {
+        LearnedDurationEvaluator ev = make();
+        Node n1 = new DefaultNode("N1", 1, 100, 4096);
+        Node n2 = new DefaultNode("N2", 1, 100, 4096);
+        VirtualMachine vm = new DefaultVirtualMachine("VM1", 1, 50, 1024);
+        Assert.assertEquals(ev.evaluateMigration(vm), 1);
+        ev.record(new Migration(vm, n1, n2), 10000);
+        ev.record(new Migration(vm, n1, n2), 10000);
+        Assert.assertEquals(ev.evaluateMigration(vm), 1);
+        Assert.assertEquals(ev.getNbFallbacks(), 2);
+        ev.record(new Migration(vm, n1, n2), 10000);
+        Assert.assertEquals(ev.evaluateMigration(vm), 10);
+        Assert.assertEquals(ev.getNbSamples(), 3);
+
+        //The other actions are not impacted
+        Assert.assertEquals(ev.evaluateRun(vm), 3);
+        Assert.assertEquals(ev.evaluateMigration(null), 1);
+
+        //A slower migration moves the average
+        ev.record(new Migration(vm, n1, n2), 20000);
+        Assert.assertEquals(ev.evaluateMigration(vm), 13);
+    }
+
+    /**
+     * Test the regression for virtual machines having an unknown signature.
+     *
+     * @throws DurationEvaluationException if an error occurred
+     */
+    public void testRegression() throws DurationEvaluationException {
+        LearnedDurationEvaluator ev = make();
+        Node n1 = new DefaultNode("N1", 1, 100, 16384);
+        Node n2 = new DefaultNode("N2", 1, 100, 16384);
+        //A migration lasts 5 seconds per GB, plus 10 seconds at full load
+        for (int i = 0; i < 20; i++) {
+            int mem = 512 * (1 + i % 6);
+            int cpu = 25 * (i % 5);
+            VirtualMachine vm = new DefaultVirtualMachine("VM" + i, 1, cpu, mem);
+            ev.record(new Migration(vm, n1, n2), (long) (5000.0 * mem / 1024 + 10000.0 * cpu / 100));
+        }
+        VirtualMachine vm = new DefaultVirtualMachine("VMx", 2, 100, 8192);
+        Assert.assertEquals(ev.evaluateMigration(vm), 50);
+    }
+
+    /**
+     * Test the fallback for an unknown signature while the recorded features
+     * do not determine the regression.
+     *
+     * @throws DurationEvaluationException if an error occurred
+     */
+    public void testUndeterminedRegression() throws DurationEvaluationException {
+        LearnedDurationEvaluator ev = make();
+        Node n1 = new DefaultNode("N1", 1, 100, 16384);
+        Node n2 = new DefaultNode("N2", 1, 100, 16384);
+        VirtualMachine vm1 = new DefaultVirtualMachine("VM1", 1, 50, 1024);
+        VirtualMachine vm2 = new DefaultVirtualMachine("VM2", 1, 50, 2048);
+        VirtualMachine vmx = new DefaultVirtualMachine("VMx", 1, 100, 8192);
+        for (int i = 0; i < 5; i++) {
+            ev.record(new Migration(vm1, n1, n2), 10000);
+        }
+        Assert.assertEquals(ev.evaluateMigration(vmx), 1);
+
+        //Two flavours with the same CPU consumption do not determine the regression either
+        ev.record(new Migration(vm2, n1, n2), 15000);
+        Assert.assertEquals(ev.evaluateMigration(vmx), 1);
+        Assert.assertEquals(ev.getNbFallbacks(), 2);
+
+        VirtualMachine vm3 = new DefaultVirtualMachine("VM3", 1, 100, 1024);
+        ev.record(new Migration(vm3, n1, n2), 20000);
+        Assert.assertTrue(ev.evaluateMigration(vmx) > 1);
+        Assert.assertEquals(ev.getNbFallbacks(), 2);
+    }
+
+    /**
+     * Test the distinction between the local and the remote resumes, and the nodes.
+     *
+     * @throws DurationEvaluationException if an error occurred
+     */
+    public void testActionKinds() throws DurationEvaluationException {
+        LearnedDurationEvaluator ev = make();
+        Node n1 = new DefaultNode("N1", 1, 100, 4096);
+        Node n2 = new DefaultNode("N2", 1, 100, 4096);
+        VirtualMachine vm = new DefaultVirtualMachine("VM1", 1, 50, 1024);
+        for (int i = 0; i < 3; i++) {
+            ev.record(new Resume(vm, n1, n2), 30000);
+            ev.record(new Startup(n1), 60000);
+        }
+        Assert.assertEquals(ev.evaluateRemoteResume(vm), 30);
+        Assert.assertEquals(ev.evaluateLocalResume(vm), 4);
+        Assert.assertEquals(ev.evaluateStartup(n2), 60);
+        Assert.assertEquals(ev.evaluateShutdown(n2), 8);
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.plan.parser;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import entropy.configuration.Configuration;
+import entropy.configuration.Node;
+import entropy.configuration.SimpleConfiguration;
+import entropy.configuration.SimpleNode;
+import entropy.configuration.SimpleVirtualMachine;
+import entropy.configuration.VirtualMachine;
+import entropy.configuration.parser.PlainTextConfigurationSerializer;
+import entropy.plan.DefaultTimedReconfigurationPlan;
+import entropy.plan.TimedReconfigurationPlan;
+import entropy.plan.action.Action;
+import entropy.plan.action.Migration;
+import entropy.plan.action.Run;
+import entropy.plan.action.Shutdown;
+import entropy.plan.action.Startup;
+import entropy.plan.action.Stop;
+import entropy.plan.action.Suspend;
+
+/**
+ * Unit tests for StreamedTimedReconfigurationPlanSerializer and StreamedPlanReader.
+ *
+ * @author Fabien Hermenier
+ */
+@Test(groups = {"unit"})
+public class TestStreamedTimedReconfigurationPlanSerializer {
+
+    private static TimedReconfigurationPlan makePlan() {
+        Configuration cfg = new SimpleConfiguration();
+        Node n1 = new SimpleNode("N1", 1, 2, 3);
+        Node n2 = new SimpleNode("N2", 1, 2, 3);
+        Node n3 = new SimpleNode("N3", 1, 2, 3);
+        Node n4 = new SimpleNode("N4", 1, 2, 3);
+        cfg.addOnline(n1);
+        cfg.addOnline(n2);
+        cfg.addOnline(n3);
+        cfg.addOffline(n4);
+
+        VirtualMachine vm1 = new SimpleVirtualMachine("VM1", 1, 2, 3);
+        VirtualMachine vm4 = new SimpleVirtualMachine("VM4", 1, 2, 3);
+        VirtualMachine vm5 = new SimpleVirtualMachine("VM5", 1, 2, 3);
+        VirtualMachine vm6 = new SimpleVirtualMachine("VM6", 1, 2, 3);
+        VirtualMachine vm7 = new SimpleVirtualMachine("VM7", 1, 2, 3);
+        cfg.setRunOn(vm1, n1);
+        cfg.setRunOn(vm4, n2);
+        cfg.addWaiting(vm5);
+        cfg.setRunOn(vm6, n3);
+        cfg.setRunOn(vm7, n3);
+
+        TimedReconfigurationPlan p = new DefaultTimedReconfigurationPlan(cfg);
+        Assert.assertTrue(p.add(new Migration(vm1, n1, n2, 0, 5)));
+        Assert.assertTrue(p.add(new Startup(n4, 0, 3)));
+        Assert.assertTrue(p.add(new Migration(vm6, n3, n2, 2, 5)));
+        Assert.assertTrue(p.add(new Suspend(vm7, n3, n4, 7, 10)));
+        Assert.assertTrue(p.add(new Run(vm5, n4, 0, 1)));
+        Assert.assertTrue(p.add(new Stop(vm4, n2, 1, 2)));
+        Assert.assertTrue(p.add(new Shutdown(n3, 10, 15)));
+        return p;
+    }
+
+    /**
+     * Make a plan with a lot of migrations, to have several blocks.
+     *
+     * @return the plan
+     */
+    private static TimedReconfigurationPlan makeLargePlan() {
+        Configuration cfg = new SimpleConfiguration();
+        Node n1 = new SimpleNode("N1", 1, 2, 3);
+        Node n2 = new SimpleNode("N2", 1, 2, 3);
+        cfg.addOnline(n1);
+        cfg.addOnline(n2);
+        for (int i = 0; i < 3 * StreamedTimedReconfigurationPlanSerializer.BLOCK_SIZE + 7; i++) {
+            cfg.setRunOn(new SimpleVirtualMachine("VM" + i, 1, 2, 3), n1);
+        }
+        TimedReconfigurationPlan p = new DefaultTimedReconfigurationPlan(cfg);
+        for (VirtualMachine vm : cfg.getRunnings()) {
+            Assert.assertTrue(p.add(new Migration(vm, n1, n2, 0, 5)));
+        }
+        return p;
+    }
+
+    /**
+     * Serialize then un-serialize a plan.
+     */
+    private static TimedReconfigurationPlan roundTrip(TimedReconfigurationPlan p, boolean compress) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamedTimedReconfigurationPlanSerializer.getInstance().serialize(p, out, null, compress);
+        return StreamedTimedReconfigurationPlanSerializer.getInstance().unSerialize(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    /**
+     * Test the serialization with and without compression.
+     *
+     * @throws Exception if an error occurred
+     */
+    public void testRoundTrip() throws Exception {
+        TimedReconfigurationPlan p = makePlan();
+        Assert.assertEquals(roundTrip(p, true), p);
+        Assert.assertEquals(roundTrip(p, false), p);
+        p = makeLargePlan();
+        Assert.assertEquals(roundTrip(p, true), p);
+        Assert.assertEquals(roundTrip(p, false), p);
+    }
+
+    /**
+     * Test the iteration over the actions with the reader.
+     *
+     * @throws Exception if an error occurred
+     */
+    public void testReader() throws Exception {
+        TimedReconfigurationPlan p = makeLargePlan();
+        File f = File.createTempFile("plan", FileTimedReconfigurationPlanSerializerFactory.STREAMED_PROTOBUF_EXTENSION);
+        f.deleteOnExit();
+        FileTimedReconfigurationPlanSerializerFactory.getInstance().write(p, f.getPath());
+        StreamedPlanReader r = StreamedPlanReader.open(f.getPath());
+        try {
+            Assert.assertEquals(r.getSource(), p.getSource());
+            Set<Action> actions = new HashSet<Action>();
+            for (Action a = r.next(); a != null; a = r.next()) {
+                Assert.assertTrue(actions.add(a));
+            }
+            Assert.assertEquals(actions, p.getActions());
+            Assert.assertNull(r.next());
+        } finally {
+            r.close();
+        }
+    }
+
+    /**
+     * Test a plan that references its source configuration.
+     *
+     * @throws Exception if an error occurred
+     */
+    public void testSourceReference() throws Exception {
+        TimedReconfigurationPlan p = makePlan();
+        File src = File.createTempFile("src", ".txt");
+        src.deleteOnExit();
+        PlainTextConfigurationSerializer.getInstance().write(p.getSource(), src.getPath());
+        File f = File.createTempFile("plan", FileTimedReconfigurationPlanSerializerFactory.STREAMED_PROTOBUF_EXTENSION);
+        f.deleteOnExit();
+        StreamedTimedReconfigurationPlanSerializer.getInstance().write(p, f.getPath(), src.getPath(), true);
+        Assert.assertEquals(FileTimedReconfigurationPlanSerializerFactory.getInstance().read(f.getPath()), p);
+    }
+
+    /**
+     * Test a plan that references a source configuration of its folder,
+     * once the folder is moved.
+     *
+     * @throws Exception if an error occurred
+     */
+    public void testRelativeSourceReference() throws Exception {
+        TimedReconfigurationPlan p = makePlan();
+        File dir = File.createTempFile("logs", "");
+        Assert.assertTrue(dir.delete());
+        File src = new File(dir, "src.txt");
+        File f = new File(dir, "plan" + FileTimedReconfigurationPlanSerializerFactory.STREAMED_PROTOBUF_EXTENSION);
+        PlainTextConfigurationSerializer.getInstance().write(p.getSource(), src.getPath());
+        StreamedTimedReconfigurationPlanSerializer.getInstance().write(p, f.getPath(), src.getPath(), true);
+
+        File moved = new File(dir.getPath() + "-moved");
+        Assert.assertTrue(dir.renameTo(moved));
+        File mf = new File(moved, f.getName());
+        File msrc = new File(moved, src.getName());
+        try {
+            Assert.assertEquals(FileTimedReconfigurationPlanSerializerFactory.getInstance().read(mf.getPath()), p);
+            StreamedPlanReader r = StreamedPlanReader.open(mf.getPath());
+            try {
+                Assert.assertEquals(r.getSource(), p.getSource());
+            } finally {
+                r.close();
+            }
+        } finally {
+            Assert.assertTrue(mf.delete());
+            Assert.assertTrue(msrc.delete());
+            Assert.assertTrue(moved.delete());
+        }
+    }
+
+    /**
+     * Test the reading of a stream that does not contain a plan.
+     *
+     * @throws Exception if an error occurred
+     */
+    @Test(expectedExceptions = {TimedReconfigurationPlanSerializerException.class})
+    public void testBadMagic() throws Exception {
+        StreamedTimedReconfigurationPlanSerializer.getInstance().unSerialize(new ByteArrayInputStream(new byte[16]));
+    }
+}
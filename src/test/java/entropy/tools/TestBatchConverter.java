@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) Fabien Hermenier
+ *
+ * This file is part of Entropy.
+ *
+ * Entropy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Entropy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Entropy.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package entropy.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import entropy.configuration.Configuration;
+import entropy.configuration.Node;
+import entropy.configuration.SimpleConfiguration;
+import entropy.configuration.SimpleNode;
+import entropy.configuration.SimpleVirtualMachine;
+import entropy.configuration.parser.FileConfigurationSerializerFactory;
+import entropy.configuration.parser.PlainTextConfigurationSerializer;
+
+/**
+ * Unit tests for BatchConverter.
+ *
+ * @author Fabien Hermenier
+ */
+@Test(groups = {"unit"})
+public class TestBatchConverter {
+
+    private static Configuration makeConfiguration(int nb) {
+        Configuration cfg = new SimpleConfiguration();
+        Node n = new SimpleNode("N1", 1, 2, 3);
+        cfg.addOnline(n);
+        for (int i = 0; i < nb; i++) {
+            cfg.setRunOn(new SimpleVirtualMachine("VM" + i, 1, 2, 3), n);
+        }
+        return cfg;
+    }
+
+    /**
+     * Make a temporary archive: two folders with two configurations having the same names
+     * in each, and a file that is not a configuration.
+     *
+     * @return the root of the archive
+     * @throws IOException if an error occurred while writing the files
+     */
+    private static File makeArchive() throws IOException {
+        File root = File.createTempFile("archive", "");
+        Assert.assertTrue(root.delete());
+        for (String d : new String[]{"day1", "day2"}) {
+            for (int i = 0; i < 2; i++) {
+                PlainTextConfigurationSerializer.getInstance().write(makeConfiguration(i + 1), root.getPath() + "/" + d + "/" + i + "-src.txt");
+            }
+        }
+        Assert.assertTrue(new File(root, "day1/README").createNewFile());
+        return root;
+    }
+
+    private static void delete(File f) {
+        File[] children = f.listFiles();
+        if (children != null) {
+            for (File c : children) {
+                delete(c);
+            }
+        }
+        f.delete();
+    }
+
+    /**
+     * Test the conversion of a folder, then the skipping of the up-to-date conversions.
+     *
+     * @throws Exception if an error occurred
+     */
+    public void testFolder() throws Exception {
+        File root = makeArchive();
+        File out = new File(root, "out");
+        try {
+            BatchConverter c = new BatchConverter(false, null, DataConverter.PB_FORMAT, out.getPath(), 2);
+            c.convert(Arrays.asList(root.getPath() + "/day1", root.getPath() + "/day2"));
+            Assert.assertEquals(c.getNbConverted(), 4);
+            Assert.assertEquals(c.getNbSkipped(), 0);
+            Assert.assertEquals(c.getNbFailures(), 0);
+            Assert.assertEquals(FileConfigurationSerializerFactory.getInstance().read(out.getPath() + "/day2/1-src.pbd"), makeConfiguration(2));
+
+            c = new BatchConverter(false, null, DataConverter.PB_FORMAT, out.getPath(), 2);
+            c.convert(Arrays.asList(root.getPath() + "/day1", root.getPath() + "/day2"));
+            Assert.assertEquals(c.getNbConverted(), 0);
+            Assert.assertEquals(c.getNbSkipped(), 4);
+            Assert.assertEquals(c.getNbFailures(), 0);
+        } finally {
+            delete(root);
+        }
+    }
+
+    /**
+     * Test the conversion of files selected by a glob pattern. The relative paths are kept.
+     *
+     * @throws Exception if an error occurred
+     */
+    public void testGlob() throws Exception {
+        File root = makeArchive();
+        File out = new File(root, "out");
+        try {
+            BatchConverter c = new BatchConverter(false, null, DataConverter.SNP_FORMAT, out.getPath(), 3);
+            c.convert(Arrays.asList(root.getPath() + "/day*/1-*.txt"));
+            Assert.assertEquals(c.getNbConverted(), 2);
+            Assert.assertEquals(c.getNbFailures(), 0);
+            for (String d : new String[]{"day1", "day2"}) {
+                Configuration cfg = FileConfigurationSerializerFactory.getInstance().read(out.getPath() + "/" + d + "/1-src.snp");
+                Assert.assertEquals(cfg, makeConfiguration(2));
+            }
+            Assert.assertFalse(new File(out, "day1/0-src.snp").exists());
+        } finally {
+            delete(root);
+        }
+    }
+
+    /**
+     * Test the conversion of glob patterns.
+     */
+    public void testToPattern() {
+        Pattern p = BatchConverter.toPattern("day?/*.txt");
+        Assert.assertTrue(p.matcher("day1/1-src.txt").matches());
+        Assert.assertFalse(p.matcher("day1/x/1-src.txt").matches());
+        Assert.assertFalse(p.matcher("day12/1-src.txt").matches());
+        p = BatchConverter.toPattern("**/*.pbd");
+        Assert.assertTrue(p.matcher("a.pbd").matches());
+        Assert.assertTrue(p.matcher("x/y/a.pbd").matches());
+        Assert.assertFalse(p.matcher("x/y/apbd").matches());
+    }
+}
@@ -24,6 +24,7 @@ import org.testng.annotations.Test;
 
 import entropy.configuration.DefaultManagedElementSet;
 import entropy.configuration.DefaultNode;
+import entropy.configuration.ElementRegistry;
 
 /**
  * Unit tests for {@code SetsDifference}.
@@ -53,6 +54,29 @@ public class TestSetsDifference {
         Assert.assertEquals(d.flatten(), res);
     }
 
+    public void testExpandWithRegistry() {
+        ElementRegistry registry = new ElementRegistry();
+        ExplodedSet<DefaultNode> ns1 = new ExplodedSet<DefaultNode>(registry);
+        ExplodedSet<DefaultNode> ns2 = new ExplodedSet<DefaultNode>(registry);
+        DefaultManagedElementSet<DefaultNode> res = new DefaultManagedElementSet<DefaultNode>();
+        for (int i = 1; i <= 10; i++) {
+            DefaultNode n = new DefaultNode("N" + i, 1, 1, 1);
+            if (i <= 7) {
+                ns1.add(n);
+            }
+            if (i >= 5) {
+                ns2.add(n);
+            }
+            if (i < 5) {
+                res.add(n);
+            }
+        }
+        VJobSet<DefaultNode> d = new SetsDifference<DefaultNode>(ns1, ns2);
+        Assert.assertEquals(d.flatten(), res);
+        Assert.assertEquals(d.flatten().getRegistry(), registry);
+        Assert.assertEquals(ns1.size(), 7);
+    }
+
     public void testWithoutLabel() {
         VJobSet u = new SetsUnion<DefaultNode>(new ExplodedSet<DefaultNode>("$T2"), new RangeOfElements<DefaultNode>("VM[1..5]"));
         Assert.assertEquals(u.definition(), "$T2 + VM[1..5]");
@@ -25,6 +25,7 @@ import org.testng.annotations.Test;
 import entropy.configuration.DefaultConfiguration;
 import entropy.configuration.DefaultNode;
 import entropy.configuration.DefaultVirtualMachine;
+import entropy.configuration.SimpleConfiguration;
 
 /**
  * Unit tests for {@link VJobElementBuilder}.
@@ -82,4 +83,18 @@ public class TestVJobElementBuilder {
         eb = new VJobElementBuilder(mock);
         Assert.assertEquals(eb.matchAsVirtualMachine("VM2"), vm2);
     }
+
+    /**
+     * Test the registry is the one of the configuration when possible.
+     */
+    public void testRegistry() {
+        VJobElementBuilder eb = new VJobElementBuilder(null);
+        Assert.assertNotNull(eb.getRegistry());
+        SimpleConfiguration cfg = new SimpleConfiguration();
+        eb.useConfiguration(cfg);
+        Assert.assertSame(eb.getRegistry(), cfg.getRegistry());
+        eb.useConfiguration(new DefaultConfiguration());
+        Assert.assertNotNull(eb.getRegistry());
+        Assert.assertNotSame(eb.getRegistry(), cfg.getRegistry());
+    }
 }